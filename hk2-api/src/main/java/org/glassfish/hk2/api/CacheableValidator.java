@@ -0,0 +1,74 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.api;
+
+/**
+ * A {@link Validator} whose decisions on {@link Operation#LOOKUP} may be
+ * remembered by the {@link ServiceLocator}.  A decision is remembered
+ * per validation service, candidate and either the injection point (if the
+ * lookup is on behalf of an {@link Injectee}) or the calling class (if the
+ * lookup was made directly with the API and {@link #isCallerSensitive()}
+ * returns true)
+ * <p>
+ * Remembered decisions are forgotten whenever any descriptor or validation
+ * service is added to or removed from the locator or any of its parents.
+ * Decisions on {@link Operation#BIND} and {@link Operation#UNBIND} are
+ * never remembered
+ * <p>
+ * A cacheable validator must not base its decision on the {@link Filter}
+ * of the lookup or on any state other than those listed above
+ * 
+ * @author jwells
+ *
+ */
+public interface CacheableValidator extends Validator {
+    /**
+     * Returns true if the decision for a lookup made directly with the
+     * {@link ServiceLocator} API depends on the class calling the API.  In
+     * that case the name of the calling class (as given by
+     * {@link ValidationInformation#getCaller()}) is remembered along with
+     * the decision, which means the caller must be found on every such lookup.
+     * If false the decision is remembered for all callers
+     * 
+     * @return true if the decision on API lookups depends on the calling class
+     */
+    public boolean isCallerSensitive();
+}
@@ -56,7 +56,9 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
 public interface Populator {
     /**
      * This method can be used to populate the service locator with files that
-     * have been written out using the {@link DescriptorImpl} writeObject method.
+     * have been written out using the {@link DescriptorImpl} writeObject method,
+     * or in binary form with {@link org.glassfish.hk2.utilities.BinaryDescriptorFile}.
+     * The two forms are told apart by the first bytes of each file
      * 
      * @param fileFinder An object that finds files in the environment.  If this is null
      * then the system will look in the service locator for an implementation of
@@ -0,0 +1,203 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.api;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A ServiceInjector holds the result of analyzing one service class
+ * at build time, and can construct and inject instances of that class
+ * without reflection when the members involved are accessible to it.
+ * Implementations are normally generated by the hk2-metadata-generator,
+ * which records the name of the generated class in the descriptor metadata
+ * under {@link #INJECTOR_METADATA_KEY}.
+ * <p>
+ * HK2 only uses a ServiceInjector when the descriptor uses the default
+ * {@link ClassAnalyzer} and the only injection annotation in the locator is
+ * {@link javax.inject.Inject}.  Otherwise the class is analyzed at runtime
+ * as usual.  Implementations must have a public zero-argument constructor
+ * 
+ * @author jwells
+ * @param <T> The type of service this injector constructs and injects
+ */
+public interface ServiceInjector<T> {
+    /**
+     * The descriptor metadata key whose value is the fully qualified
+     * name of the ServiceInjector for the implementation class
+     */
+    public final static String INJECTOR_METADATA_KEY = "org.glassfish.hk2.metadata.injector";
+    
+    /**
+     * The constructor that would be chosen by the default {@link ClassAnalyzer}
+     * 
+     * @return The non-null constructor to use for creating this service
+     * @throws NoSuchMethodException if the class has changed since the injector was generated
+     */
+    public Constructor<T> getConstructor() throws NoSuchMethodException;
+    
+    /**
+     * The fields that would be chosen by the default {@link ClassAnalyzer}.
+     * The index of a field in this list is the index given to
+     * {@link #canInject(int)} and {@link #inject(int, Object, Object)}
+     * 
+     * @return A non-null but possibly empty list of initialization fields
+     * @throws NoSuchFieldException if the class has changed since the injector was generated
+     */
+    public List<Field> getFields() throws NoSuchFieldException;
+    
+    /**
+     * The initializer methods that would be chosen by the default {@link ClassAnalyzer}.
+     * The index of a method in this list is the index given to
+     * {@link #canInitialize(int)} and {@link #initialize(int, Object, Object[])}
+     * 
+     * @return A non-null but possibly empty list of initialization methods
+     * @throws NoSuchMethodException if the class has changed since the injector was generated
+     */
+    public List<Method> getInitializerMethods() throws NoSuchMethodException;
+    
+    /**
+     * The postConstruct method that would be chosen by the default {@link ClassAnalyzer}
+     * 
+     * @return A possibly null postConstruct method
+     * @throws NoSuchMethodException if the class has changed since the injector was generated
+     */
+    public Method getPostConstructMethod() throws NoSuchMethodException;
+    
+    /**
+     * The preDestroy method that would be chosen by the default {@link ClassAnalyzer}
+     * 
+     * @return A possibly null preDestroy method
+     * @throws NoSuchMethodException if the class has changed since the injector was generated
+     */
+    public Method getPreDestroyMethod() throws NoSuchMethodException;
+    
+    /**
+     * Tells if {@link #construct(Object[])} can be used, or if
+     * the constructor must be called reflectively
+     * 
+     * @return true if this injector can call the constructor directly
+     */
+    public boolean canConstruct();
+    
+    /**
+     * Calls the constructor returned from {@link #getConstructor()}
+     * 
+     * @param args The arguments to the constructor, in parameter order
+     * @return The newly constructed instance
+     * @throws Throwable Whatever the constructor throws
+     */
+    public T construct(Object args[]) throws Throwable;
+    
+    /**
+     * Tells if {@link #inject(int, Object, Object)} can be used for the
+     * given field, or if the field must be set reflectively
+     * 
+     * @param fieldIndex The index of the field in {@link #getFields()}
+     * @return true if this injector can set the field directly
+     */
+    public boolean canInject(int fieldIndex);
+    
+    /**
+     * Sets one of the fields returned from {@link #getFields()}
+     * 
+     * @param fieldIndex The index of the field in {@link #getFields()}
+     * @param instance The instance to set the field on
+     * @param value The value to set the field to
+     * @throws Throwable If the field could not be set
+     */
+    public void inject(int fieldIndex, T instance, Object value) throws Throwable;
+    
+    /**
+     * Tells if {@link #initialize(int, Object, Object[])} can be used for the
+     * given method, or if the method must be called reflectively
+     * 
+     * @param methodIndex The index of the method in {@link #getInitializerMethods()}
+     * @return true if this injector can call the method directly
+     */
+    public boolean canInitialize(int methodIndex);
+    
+    /**
+     * Calls one of the methods returned from {@link #getInitializerMethods()}
+     * 
+     * @param methodIndex The index of the method in {@link #getInitializerMethods()}
+     * @param instance The instance to call the method on
+     * @param args The arguments to the method, in parameter order
+     * @throws Throwable Whatever the method throws
+     */
+    public void initialize(int methodIndex, T instance, Object args[]) throws Throwable;
+    
+    /**
+     * Tells if {@link #postConstruct(Object)} can be used, or if the
+     * method returned from {@link #getPostConstructMethod()} must be
+     * called reflectively
+     * 
+     * @return true if this injector can call the postConstruct method directly
+     */
+    public boolean canPostConstruct();
+    
+    /**
+     * Calls the method returned from {@link #getPostConstructMethod()}
+     * 
+     * @param instance The instance to call the method on
+     * @throws Throwable Whatever the method throws
+     */
+    public void postConstruct(T instance) throws Throwable;
+    
+    /**
+     * Tells if {@link #preDestroy(Object)} can be used, or if the
+     * method returned from {@link #getPreDestroyMethod()} must be
+     * called reflectively
+     * 
+     * @return true if this injector can call the preDestroy method directly
+     */
+    public boolean canPreDestroy();
+    
+    /**
+     * Calls the method returned from {@link #getPreDestroyMethod()}
+     * 
+     * @param instance The instance to call the method on
+     * @throws Throwable Whatever the method throws
+     */
+    public void preDestroy(T instance) throws Throwable;
+
+}
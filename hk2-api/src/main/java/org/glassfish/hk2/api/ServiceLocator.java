@@ -144,6 +144,44 @@ public interface ServiceLocator {
      */
     public <T> T getService(Type contractOrImpl, String name, Annotation... qualifiers) throws MultiException;
     
+    /**
+     * Creates a reusable lookup for the best service from this locator
+     * that implements this contract or has this implementation.  Using
+     * the returned {@link ServiceLookup} many times is cheaper than
+     * calling {@link #getService(Type, Annotation...)} many times, since
+     * the best service and its {@link Context} are only resolved again
+     * after the configuration of this locator changes
+     * 
+     * @param contractOrImpl May not be null, and is the contract
+     * or concrete implementation to get the best instance of
+     * @param qualifiers The set of qualifiers that must match this service
+     * definition
+     * @return A lookup for the best service matching the given criteria.
+     * Will not return null
+     * @throws IllegalArgumentException if contractOrImpl is null
+     */
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, Annotation... qualifiers);
+    
+    /**
+     * Creates a reusable lookup for the best service from this locator
+     * that implements this contract or has this implementation and has
+     * the given name.  Using the returned {@link ServiceLookup} many times
+     * is cheaper than calling {@link #getService(Type, String, Annotation...)}
+     * many times, since the best service and its {@link Context} are only
+     * resolved again after the configuration of this locator changes
+     * 
+     * @param contractOrImpl May not be null, and is the contract
+     * or concrete implementation to get the best instance of
+     * @param name May be null (to indicate any name is ok), and is the name of the
+     * implementation to be returned
+     * @param qualifiers The set of qualifiers that must match this service
+     * definition
+     * @return A lookup for the best service matching the given criteria.
+     * Will not return null
+     * @throws IllegalArgumentException if contractOrImpl is null
+     */
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, String name, Annotation... qualifiers);
+    
     /**
      * Gets all services from this locator that implement this contract or have this
      * implementation and have the provided qualifiers
@@ -0,0 +1,100 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.api;
+
+/**
+ * A reusable lookup of the best service for a fixed contract, name
+ * and set of qualifiers.  A ServiceLookup is obtained from
+ * {@link ServiceLocator#createLookup(java.lang.reflect.Type, String, java.lang.annotation.Annotation...)}
+ * and is intended for code that repeatedly looks up the same service,
+ * since the work of resolving the best descriptor and its {@link Context}
+ * is remembered between calls.
+ * <p>
+ * The result of the lookup always reflects the current state of the
+ * locator.  When the configuration of the locator (or of any of its
+ * parents) changes the lookup is resolved again the next time it is
+ * used.
+ * <p>
+ * Implementations of this interface are thread safe
+ * 
+ * @author jwells
+ * @param <T> The type of the service this lookup returns
+ */
+public interface ServiceLookup<T> {
+    /**
+     * Gets the best service for this lookup.  This is equivalent
+     * to calling {@link ServiceLocator#getService(java.lang.reflect.Type, String, java.lang.annotation.Annotation...)}
+     * with the parameters of this lookup
+     * 
+     * @return An instance of the contract or impl.  May return
+     * null if there is no provider that provides the given
+     * implementation or contract
+     * @throws MultiException if there was an error during service creation
+     */
+    public T getService() throws MultiException;
+    
+    /**
+     * Gets a {@link ServiceHandle} for the best service for this lookup
+     * 
+     * @return The service handle of the best service, or null if no
+     * matching service could be found
+     * @throws MultiException if there was an issue during lookup
+     */
+    public ServiceHandle<T> getServiceHandle() throws MultiException;
+    
+    /**
+     * Gets the descriptor of the best service for this lookup
+     * 
+     * @return The best descriptor matching this lookup, or null
+     * if no matching service could be found
+     * @throws MultiException if there was an issue during lookup
+     */
+    public ActiveDescriptor<T> getActiveDescriptor() throws MultiException;
+    
+    /**
+     * Returns the locator this lookup was created by
+     * 
+     * @return The locator this lookup was created by.  Will not
+     * return null
+     */
+    public ServiceLocator getServiceLocator();
+
+}
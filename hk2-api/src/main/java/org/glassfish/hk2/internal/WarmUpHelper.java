@@ -0,0 +1,292 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Context;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.Immediate;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.ImmediateErrorHandler;
+import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
+
+/**
+ * Creates the {@link Singleton} and {@link Immediate} services of a locator
+ * ahead of demand.  The injection points of every service are resolved in
+ * order to build the graph of which service needs which, and that graph is
+ * then created one topological layer at a time, with all the services of a
+ * layer being created in parallel on the given executor.  Services that are
+ * part of a dependency cycle are created one at a time at the end, exactly
+ * as they would have been created on demand.  {@link Immediate} services
+ * are only created if an {@link Immediate} context is active in the locator
+ * 
+ * @author jwells
+ *
+ */
+public class WarmUpHelper {
+    private final ServiceLocator locator;
+    private final Executor executor;
+    private final List<ImmediateErrorHandler> errorHandlers;
+    
+    private WarmUpHelper(ServiceLocator locator, Executor executor) {
+        this.locator = locator;
+        this.executor = executor;
+        this.errorHandlers = locator.getAllServices(ImmediateErrorHandler.class);
+    }
+    
+    /**
+     * Creates all the {@link Singleton} and {@link Immediate} services of the
+     * given locator that match the filter
+     * 
+     * @param locator The non-null locator whose services should be created
+     * @param filter A filter further restricting the services to create, or
+     * null if all of them should be created
+     * @param executor The executor to create independent services on, or null
+     * if all services should be created on the calling thread
+     * @throws MultiException if the calling thread is interrupted while waiting
+     * for a layer to be created, in which case its interrupt flag is left set
+     */
+    public static void warmUp(ServiceLocator locator, Filter filter, Executor executor) throws MultiException {
+        if (locator == null) throw new IllegalArgumentException();
+        
+        WarmUpHelper helper = new WarmUpHelper(locator, executor);
+        helper.createAll(locator.getDescriptors(new WarmUpFilter(locator.getLocatorId(),
+                isImmediateActive(locator), filter)));
+    }
+    
+    private static boolean isImmediateActive(ServiceLocator locator) {
+        for (ServiceHandle<?> handle : locator.getAllServiceHandles(
+                new ParameterizedTypeImpl(Context.class, Immediate.class))) {
+            Context<?> context = (Context<?>) handle.getService();
+            if (context != null && context.isActive()) return true;
+        }
+        
+        return false;
+    }
+    
+    private void createAll(List<ActiveDescriptor<?>> descriptors) {
+        LinkedHashMap<ActiveDescriptor<?>, Node> nodes = new LinkedHashMap<ActiveDescriptor<?>, Node>();
+        for (ActiveDescriptor<?> descriptor : descriptors) {
+            ActiveDescriptor<?> reified;
+            try {
+                reified = locator.reifyDescriptor(descriptor);
+            }
+            catch (Throwable th) {
+                reportFailure(descriptor, th);
+                continue;
+            }
+            
+            nodes.put(reified, new Node(reified));
+        }
+        
+        for (Node node : nodes.values()) {
+            for (Injectee injectee : node.descriptor.getInjectees()) {
+                ActiveDescriptor<?> dependency;
+                try {
+                    dependency = locator.getInjecteeDescriptor(injectee);
+                }
+                catch (Throwable th) {
+                    // Will be reported when the service itself is created
+                    continue;
+                }
+                
+                if (dependency == null) continue;
+                if (Boolean.TRUE.equals(dependency.isProxiable())) continue;
+                
+                Node dependencyNode = nodes.get(dependency);
+                if (dependencyNode == null || dependencyNode == node) continue;
+                
+                if (dependencyNode.dependents.add(node)) {
+                    node.remainingDependencies++;
+                }
+            }
+        }
+        
+        List<Node> layer = new ArrayList<Node>();
+        for (Node node : nodes.values()) {
+            if (node.remainingDependencies == 0) {
+                layer.add(node);
+            }
+        }
+        
+        int numCreated = 0;
+        while (!layer.isEmpty()) {
+            createLayer(layer);
+            numCreated += layer.size();
+            
+            List<Node> nextLayer = new ArrayList<Node>();
+            for (Node node : layer) {
+                for (Node dependent : node.dependents) {
+                    if (--dependent.remainingDependencies == 0) {
+                        nextLayer.add(dependent);
+                    }
+                }
+            }
+            
+            layer = nextLayer;
+        }
+        
+        if (numCreated == nodes.size()) return;
+        
+        // What is left is in a cycle, which must be resolved on one thread
+        for (Node node : nodes.values()) {
+            if (node.remainingDependencies > 0) {
+                create(node.descriptor);
+            }
+        }
+    }
+    
+    private void createLayer(List<Node> layer) {
+        if (executor == null || layer.size() == 1) {
+            for (Node node : layer) {
+                create(node.descriptor);
+            }
+            
+            return;
+        }
+        
+        final CountDownLatch latch = new CountDownLatch(layer.size());
+        for (final Node node : layer) {
+            Runnable creator = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        create(node.descriptor);
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+                
+            };
+            
+            try {
+                executor.execute(creator);
+            }
+            catch (RejectedExecutionException ree) {
+                creator.run();
+            }
+        }
+        
+        try {
+            latch.await();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            
+            throw new MultiException(ie);
+        }
+    }
+    
+    private void create(ActiveDescriptor<?> descriptor) {
+        try {
+            locator.getServiceHandle(descriptor).getService();
+        }
+        catch (Throwable th) {
+            reportFailure(descriptor, th);
+        }
+    }
+    
+    private void reportFailure(ActiveDescriptor<?> descriptor, Throwable th) {
+        for (ImmediateErrorHandler ieh : errorHandlers) {
+            try {
+                ieh.postConstructFailed(descriptor, th);
+            }
+            catch (Throwable th2) {
+                // ignore
+            }
+        }
+    }
+    
+    private static class Node {
+        private final ActiveDescriptor<?> descriptor;
+        private final LinkedHashSet<Node> dependents = new LinkedHashSet<Node>();
+        private int remainingDependencies;
+        
+        private Node(ActiveDescriptor<?> descriptor) {
+            this.descriptor = descriptor;
+        }
+    }
+    
+    private static class WarmUpFilter implements Filter {
+        private final long locatorId;
+        private final boolean immediateActive;
+        private final Filter filter;
+        
+        private WarmUpFilter(long locatorId, boolean immediateActive, Filter filter) {
+            this.locatorId = locatorId;
+            this.immediateActive = immediateActive;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean matches(Descriptor d) {
+            String scope = d.getScope();
+            if (scope == null) return false;
+            if (d.getLocatorId() != locatorId) return false;
+            
+            if (Immediate.class.getName().equals(scope)) {
+                // Without an active context these could not be created at all
+                if (!immediateActive) return false;
+            }
+            else if (!Singleton.class.getName().equals(scope)) {
+                return false;
+            }
+            
+            return (filter == null) || filter.matches(d);
+        }
+    }
+}
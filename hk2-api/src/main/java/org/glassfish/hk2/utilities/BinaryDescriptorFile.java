@@ -0,0 +1,581 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+
+/**
+ * A compact binary form of a descriptor file.  All strings are kept once
+ * in a string table and are decoded only when first asked for, and the
+ * file carries an index of descriptors by contract and by name.  The index
+ * is for readers that want only some of the descriptors of a file, see
+ * {@link #getDescriptorsByContract(String)}.  The {@link org.glassfish.hk2.api.Populator}
+ * binds every descriptor of a file and so does not read it
+ * <p>
+ * The descriptors returned from this file are {@link DescriptorImpl}s whose
+ * metadata is decoded only when first touched.  The metadata is usually
+ * the largest part of a descriptor, and is not needed to add the descriptor
+ * to a locator.  Files
+ * in this format can be mixed with the text format written by
+ * {@link DescriptorImpl#writeObject(java.io.PrintWriter)}, the two
+ * are told apart by the {@link #MAGIC} number at the start of the file
+ * <p>
+ * The layout of the file (all numbers are big-endian ints unless noted) is:
+ * <UL>
+ * <LI>magic, version, string count, descriptor count, contract index offset, name index offset</LI>
+ * <LI>the offset of each string</LI>
+ * <LI>the offset of each descriptor</LI>
+ * <LI>the strings, each a byte length followed by UTF-8 bytes</LI>
+ * <LI>the descriptors, where every string is an index into the string table (-1 for null)</LI>
+ * <LI>the contract index and then the name index, each an entry count followed by
+ * entries of string index, descriptor count and descriptor indexes</LI>
+ * </UL>
+ * 
+ * @author jwells
+ *
+ */
+public class BinaryDescriptorFile {
+    /** The first four bytes of every binary descriptor file ("HK2B") */
+    public final static int MAGIC = 0x484B3242;
+    
+    /** The version of the format written by this class */
+    public final static int VERSION = 1;
+    
+    private final static int HEADER_SIZE = 6 * 4;
+    private final static int NULL_STRING = -1;
+    
+    private final static byte NULL_BOOLEAN = 0;
+    private final static byte FALSE_BOOLEAN = 1;
+    private final static byte TRUE_BOOLEAN = 2;
+    
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int descriptorCount;
+    private final int contractIndexOffset;
+    private final int nameIndexOffset;
+    private final String strings[];
+    
+    private Map<String, int[]> contractIndex;
+    private Map<String, int[]> nameIndex;
+    
+    /**
+     * Opens a binary descriptor file held in the given buffer.  The buffer
+     * is not copied, and so must not be modified while this file is in use
+     * 
+     * @param buffer The non-null buffer holding the entire file from position zero
+     * @throws IOException If the buffer does not hold a binary descriptor file
+     * of a known version
+     */
+    public BinaryDescriptorFile(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("The input is not a binary hk2 descriptor file");
+        }
+        
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unknown binary hk2 descriptor file version " + version +
+                    ", this version of hk2 can read version " + VERSION);
+        }
+        
+        this.buffer = buffer;
+        stringCount = buffer.getInt(8);
+        descriptorCount = buffer.getInt(12);
+        contractIndexOffset = buffer.getInt(16);
+        nameIndexOffset = buffer.getInt(20);
+        
+        strings = new String[stringCount];
+    }
+    
+    /**
+     * Tells if the given stream holds a binary descriptor file without consuming
+     * any of it.  The stream must either be a {@link FileInputStream} or support
+     * {@link InputStream#mark(int)}
+     * 
+     * @param is The non-null stream to check
+     * @return true if the stream starts with {@link #MAGIC}
+     * @throws IOException On a failure reading the stream
+     */
+    public static boolean isBinaryDescriptorFile(InputStream is) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        
+        if (is instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) is).getChannel();
+            
+            long position = channel.position();
+            while (magic.hasRemaining()) {
+                if (channel.read(magic, position + magic.position()) < 0) return false;
+            }
+        }
+        else {
+            if (!is.markSupported()) {
+                throw new IOException("The stream " + is + " does not support mark");
+            }
+            
+            is.mark(4);
+            try {
+                while (magic.hasRemaining()) {
+                    int read = is.read();
+                    if (read < 0) return false;
+                    
+                    magic.put((byte) read);
+                }
+            }
+            finally {
+                is.reset();
+            }
+        }
+        
+        return magic.getInt(0) == MAGIC;
+    }
+    
+    /**
+     * Reads a binary descriptor file from the given stream, which is left
+     * open.  If the stream is a {@link FileInputStream} the file is memory
+     * mapped from the current position of the stream rather than read
+     * 
+     * @param is The non-null stream to read from
+     * @return The binary descriptor file held in the stream
+     * @throws IOException On a failure reading the stream or if the
+     * stream does not hold a binary descriptor file
+     */
+    public static BinaryDescriptorFile read(InputStream is) throws IOException {
+        if (is instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) is).getChannel();
+            
+            long position = channel.position();
+            return new BinaryDescriptorFile(channel.map(FileChannel.MapMode.READ_ONLY,
+                    position, channel.size() - position));
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        byte readBuffer[] = new byte[4096];
+        int read;
+        while ((read = is.read(readBuffer)) > 0) {
+            baos.write(readBuffer, 0, read);
+        }
+        
+        return new BinaryDescriptorFile(ByteBuffer.wrap(baos.toByteArray()));
+    }
+    
+    /**
+     * Writes the given descriptors in binary form to the given stream,
+     * which is left open
+     * 
+     * @param descriptors The non-null descriptors to write, in the order
+     * they should be returned from {@link #getDescriptors()}
+     * @param os The non-null stream to write to
+     * @throws IOException On a failure writing the stream
+     */
+    public static void write(Collection<? extends Descriptor> descriptors, OutputStream os) throws IOException {
+        LinkedHashMap<String, Integer> stringIndexes = new LinkedHashMap<String, Integer>();
+        LinkedHashMap<Integer, List<Integer>> contractEntries = new LinkedHashMap<Integer, List<Integer>>();
+        LinkedHashMap<Integer, List<Integer>> nameEntries = new LinkedHashMap<Integer, List<Integer>>();
+        
+        ByteArrayOutputStream descriptorBytes = new ByteArrayOutputStream();
+        DataOutputStream descriptorData = new DataOutputStream(descriptorBytes);
+        int descriptorOffsets[] = new int[descriptors.size()];
+        
+        int descriptorIndex = 0;
+        for (Descriptor descriptor : descriptors) {
+            descriptorOffsets[descriptorIndex] = descriptorData.size();
+            
+            descriptorData.writeInt(intern(stringIndexes, descriptor.getImplementation()));
+            
+            int name = intern(stringIndexes, descriptor.getName());
+            descriptorData.writeInt(name);
+            if (name != NULL_STRING) {
+                addEntry(nameEntries, name, descriptorIndex);
+            }
+            
+            descriptorData.writeInt(intern(stringIndexes, descriptor.getScope()));
+            
+            DescriptorType descriptorType = descriptor.getDescriptorType();
+            if (descriptorType == null) descriptorType = DescriptorType.CLASS;
+            descriptorData.writeByte(descriptorType.ordinal());
+            
+            DescriptorVisibility descriptorVisibility = descriptor.getDescriptorVisibility();
+            if (descriptorVisibility == null) descriptorVisibility = DescriptorVisibility.NORMAL;
+            descriptorData.writeByte(descriptorVisibility.ordinal());
+            
+            descriptorData.writeInt(descriptor.getRanking());
+            descriptorData.writeByte(writeBoolean(descriptor.isProxiable()));
+            descriptorData.writeByte(writeBoolean(descriptor.isProxyForSameScope()));
+            descriptorData.writeInt(intern(stringIndexes, descriptor.getClassAnalysisName()));
+            
+            descriptorData.writeInt(descriptor.getAdvertisedContracts().size());
+            for (String contract : descriptor.getAdvertisedContracts()) {
+                int contractString = intern(stringIndexes, contract);
+                
+                descriptorData.writeInt(contractString);
+                addEntry(contractEntries, contractString, descriptorIndex);
+            }
+            
+            descriptorData.writeInt(descriptor.getQualifiers().size());
+            for (String qualifier : descriptor.getQualifiers()) {
+                descriptorData.writeInt(intern(stringIndexes, qualifier));
+            }
+            
+            // The metadata is read lazily
+            descriptorData.writeInt(descriptor.getMetadata().size());
+            for (Map.Entry<String, List<String>> entry : descriptor.getMetadata().entrySet()) {
+                descriptorData.writeInt(intern(stringIndexes, entry.getKey()));
+                
+                descriptorData.writeInt(entry.getValue().size());
+                for (String value : entry.getValue()) {
+                    descriptorData.writeInt(intern(stringIndexes, value));
+                }
+            }
+            
+            descriptorIndex++;
+        }
+        descriptorData.close();
+        
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringData = new DataOutputStream(stringBytes);
+        int stringOffsets[] = new int[stringIndexes.size()];
+        
+        int stringIndex = 0;
+        for (String string : stringIndexes.keySet()) {
+            stringOffsets[stringIndex++] = stringData.size();
+            
+            byte encoded[] = string.getBytes(UTF8);
+            stringData.writeInt(encoded.length);
+            stringData.write(encoded);
+        }
+        stringData.close();
+        
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream indexData = new DataOutputStream(indexBytes);
+        
+        writeIndex(indexData, contractEntries);
+        int nameIndexStart = indexData.size();
+        writeIndex(indexData, nameEntries);
+        indexData.close();
+        
+        int stringsStart = HEADER_SIZE + (4 * stringOffsets.length) + (4 * descriptorOffsets.length);
+        int descriptorsStart = stringsStart + stringBytes.size();
+        int indexStart = descriptorsStart + descriptorBytes.size();
+        
+        DataOutputStream out = new DataOutputStream(os);
+        
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(stringOffsets.length);
+        out.writeInt(descriptorOffsets.length);
+        out.writeInt(indexStart);
+        out.writeInt(indexStart + nameIndexStart);
+        
+        for (int offset : stringOffsets) {
+            out.writeInt(stringsStart + offset);
+        }
+        
+        for (int offset : descriptorOffsets) {
+            out.writeInt(descriptorsStart + offset);
+        }
+        
+        stringBytes.writeTo(out);
+        descriptorBytes.writeTo(out);
+        indexBytes.writeTo(out);
+        
+        out.flush();
+    }
+    
+    private static int intern(Map<String, Integer> stringIndexes, String string) {
+        if (string == null) return NULL_STRING;
+        
+        Integer retVal = stringIndexes.get(string);
+        if (retVal == null) {
+            retVal = stringIndexes.size();
+            stringIndexes.put(string, retVal);
+        }
+        
+        return retVal;
+    }
+    
+    private static void addEntry(Map<Integer, List<Integer>> entries, int string, int descriptorIndex) {
+        List<Integer> descriptorIndexes = entries.get(string);
+        if (descriptorIndexes == null) {
+            descriptorIndexes = new ArrayList<Integer>(1);
+            entries.put(string, descriptorIndexes);
+        }
+        
+        descriptorIndexes.add(descriptorIndex);
+    }
+    
+    private static void writeIndex(DataOutputStream out, Map<Integer, List<Integer>> entries) throws IOException {
+        out.writeInt(entries.size());
+        
+        for (Map.Entry<Integer, List<Integer>> entry : entries.entrySet()) {
+            out.writeInt(entry.getKey());
+            
+            out.writeInt(entry.getValue().size());
+            for (Integer descriptorIndex : entry.getValue()) {
+                out.writeInt(descriptorIndex);
+            }
+        }
+    }
+    
+    private static byte writeBoolean(Boolean value) {
+        if (value == null) return NULL_BOOLEAN;
+        return (value.booleanValue()) ? TRUE_BOOLEAN : FALSE_BOOLEAN;
+    }
+    
+    private static Boolean readBoolean(byte value) {
+        switch (value) {
+        case TRUE_BOOLEAN:
+            return Boolean.TRUE;
+        case FALSE_BOOLEAN:
+            return Boolean.FALSE;
+        default:
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the number of descriptors in this file
+     * 
+     * @return The number of descriptors in this file
+     */
+    public int getSize() {
+        return descriptorCount;
+    }
+    
+    /**
+     * Creates the descriptor at the given index in this file.  A new
+     * descriptor is created on every call.  The metadata of the
+     * returned descriptor is read from this file when first used
+     * 
+     * @param index The index of the descriptor, from zero to {@link #getSize()}
+     * @return A new descriptor for the given index
+     */
+    public DescriptorImpl getDescriptor(int index) {
+        if (index < 0 || index >= descriptorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not between 0 and " + descriptorCount);
+        }
+        
+        int offset = buffer.getInt(HEADER_SIZE + (4 * stringCount) + (4 * index));
+        
+        DescriptorImpl retVal = new DescriptorImpl();
+        
+        retVal.setImplementation(getString(buffer.getInt(offset)));
+        retVal.setName(getString(buffer.getInt(offset + 4)));
+        retVal.setScope(getString(buffer.getInt(offset + 8)));
+        retVal.setDescriptorType(DescriptorType.values()[buffer.get(offset + 12)]);
+        retVal.setDescriptorVisibility(DescriptorVisibility.values()[buffer.get(offset + 13)]);
+        retVal.setRanking(buffer.getInt(offset + 14));
+        retVal.setProxiable(readBoolean(buffer.get(offset + 18)));
+        retVal.setProxyForSameScope(readBoolean(buffer.get(offset + 19)));
+        retVal.setClassAnalysisName(getString(buffer.getInt(offset + 20)));
+        
+        offset += 24;
+        int numContracts = buffer.getInt(offset);
+        offset += 4;
+        for (int lcv = 0; lcv < numContracts; lcv++) {
+            retVal.addAdvertisedContract(getString(buffer.getInt(offset)));
+            offset += 4;
+        }
+        
+        int numQualifiers = buffer.getInt(offset);
+        offset += 4;
+        for (int lcv = 0; lcv < numQualifiers; lcv++) {
+            retVal.addQualifier(getString(buffer.getInt(offset)));
+            offset += 4;
+        }
+        
+        retVal.setLazyMetadata(this, offset);
+        
+        return retVal;
+    }
+    
+    /**
+     * Creates all of the descriptors in this file, in the order
+     * they were written
+     * 
+     * @return A new list of new descriptors
+     */
+    public List<DescriptorImpl> getDescriptors() {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(descriptorCount);
+        
+        for (int lcv = 0; lcv < descriptorCount; lcv++) {
+            retVal.add(getDescriptor(lcv));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Creates the descriptors in this file that advertise the given contract,
+     * using the index in the file rather than reading every descriptor
+     * 
+     * @param contract The fully qualified name of the contract
+     * @return A new, possibly empty, list of new descriptors
+     */
+    public List<DescriptorImpl> getDescriptorsByContract(String contract) {
+        int indexes[];
+        synchronized (this) {
+            if (contractIndex == null) {
+                contractIndex = readIndex(contractIndexOffset);
+            }
+            
+            indexes = contractIndex.get(contract);
+        }
+        
+        return getDescriptors(indexes);
+    }
+    
+    /**
+     * Creates the descriptors in this file that have the given name,
+     * using the index in the file rather than reading every descriptor
+     * 
+     * @param name The name of the descriptors
+     * @return A new, possibly empty, list of new descriptors
+     */
+    public List<DescriptorImpl> getDescriptorsByName(String name) {
+        int indexes[];
+        synchronized (this) {
+            if (nameIndex == null) {
+                nameIndex = readIndex(nameIndexOffset);
+            }
+            
+            indexes = nameIndex.get(name);
+        }
+        
+        return getDescriptors(indexes);
+    }
+    
+    private List<DescriptorImpl> getDescriptors(int indexes[]) {
+        if (indexes == null) return Collections.emptyList();
+        
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(indexes.length);
+        for (int index : indexes) {
+            retVal.add(getDescriptor(index));
+        }
+        
+        return retVal;
+    }
+    
+    private Map<String, int[]> readIndex(int offset) {
+        int numEntries = buffer.getInt(offset);
+        offset += 4;
+        
+        Map<String, int[]> retVal = new HashMap<String, int[]>();
+        for (int lcv = 0; lcv < numEntries; lcv++) {
+            String key = getString(buffer.getInt(offset));
+            int indexes[] = new int[buffer.getInt(offset + 4)];
+            offset += 8;
+            
+            for (int inner = 0; inner < indexes.length; inner++) {
+                indexes[inner] = buffer.getInt(offset);
+                offset += 4;
+            }
+            
+            retVal.put(key, indexes);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Reads the metadata of a descriptor into the descriptor,
+     * from the offset given to it in {@link #getDescriptor(int)}
+     * 
+     * @param offset The offset of the metadata of the descriptor
+     * @param descriptor The descriptor to add the metadata to
+     */
+    /* package */ void readLazyMetadata(int offset, DescriptorImpl descriptor) {
+        int numKeys = buffer.getInt(offset);
+        offset += 4;
+        for (int lcv = 0; lcv < numKeys; lcv++) {
+            String key = getString(buffer.getInt(offset));
+            int numValues = buffer.getInt(offset + 4);
+            offset += 8;
+            
+            for (int inner = 0; inner < numValues; inner++) {
+                descriptor.addMetadata(key, getString(buffer.getInt(offset)));
+                offset += 4;
+            }
+        }
+    }
+    
+    /**
+     * Strings are decoded once, after which every descriptor
+     * from this file shares the same String instance
+     */
+    private synchronized String getString(int index) {
+        if (index == NULL_STRING) return null;
+        
+        String retVal = strings[index];
+        if (retVal != null) return retVal;
+        
+        int offset = buffer.getInt(HEADER_SIZE + (4 * index));
+        byte encoded[] = new byte[buffer.getInt(offset)];
+        
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset + 4);
+        duplicate.get(encoded);
+        
+        retVal = new String(encoded, UTF8);
+        strings[index] = retVal;
+        
+        return retVal;
+    }
+}
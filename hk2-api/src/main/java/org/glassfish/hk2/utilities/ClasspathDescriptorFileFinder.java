@@ -40,6 +40,8 @@
 
 package org.glassfish.hk2.utilities;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -72,6 +74,7 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
     });
     
     private final static String DEFAULT_NAME = "default";
+    private final static String FILE_PROTOCOL = "file";
 
     private final ClassLoader classLoader;
     private final String names[];
@@ -149,7 +152,13 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
                 
                 InputStream inputStream;
                 try {
-                    inputStream = url.openStream();
+                    if (FILE_PROTOCOL.equals(url.getProtocol())) {
+                        // Lets binary descriptor files be memory mapped
+                        inputStream = new FileInputStream(new File(url.toURI()));
+                    }
+                    else {
+                        inputStream = url.openStream();
+                    }
                 }
                 catch (IOException ioe) {
                     if (DEBUG_DESCRIPTOR_FINDER) {
@@ -0,0 +1,346 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Named;
+
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+
+/**
+ * Build-time generators record the generic contract types and qualifier
+ * values of a service in its descriptor metadata using the keys and
+ * formats defined here.  The locator uses this metadata to discard
+ * candidates that cannot satisfy a parameterized lookup or a qualifier
+ * with values before loading the implementation class.
+ * <p>
+ * The value of {@link #CONTRACT_SIGNATURE_METADATA_KEY} has one entry for every
+ * occurrence of an advertised contract in the type hierarchy of the service.
+ * An entry is the binary name of the contract, followed by its type arguments
+ * (if any) in angle brackets separated by semi-colons.  A type argument is either
+ * {@link #UNKNOWN_ARGUMENT} or the binary name of the argument class followed by the
+ * names of all of its super classes and interfaces, separated by vertical bars.
+ * The super types of classes in the java packages are not listed since they
+ * depend on the JDK in use, the locator looks those up itself:
+ * <pre>
+ * com.acme.Cache&lt;com.acme.Key|com.acme.BaseKey|java.io.Serializable;*&gt;
+ * </pre>
+ * The value of {@link #QUALIFIER_VALUE_METADATA_KEY} has one entry for every
+ * member of a qualifier annotation on the service whose value is a string, a
+ * primitive, an enum constant or a class:
+ * <pre>
+ * com.acme.Color#value=RED
+ * </pre>
+ * Generators that cannot determine a value exactly must either leave it out
+ * (qualifier values) or record it as {@link #UNKNOWN_ARGUMENT} (type arguments)
+ * 
+ * @author jwells
+ */
+public final class ContractSignatures {
+    /**
+     * The descriptor metadata key whose values are the generic signatures of the
+     * contracts advertised by the service
+     */
+    public final static String CONTRACT_SIGNATURE_METADATA_KEY = "org.glassfish.hk2.metadata.contractSignature";
+    
+    /**
+     * The descriptor metadata key whose values are the qualifier member values of the service
+     */
+    public final static String QUALIFIER_VALUE_METADATA_KEY = "org.glassfish.hk2.metadata.qualifierValue";
+    
+    /**
+     * A type argument that is a type variable, wildcard, array or anything
+     * else that could not be recorded as a class
+     */
+    public final static String UNKNOWN_ARGUMENT = "*";
+    
+    /**
+     * Classes in packages starting with this prefix are not expanded into their
+     * super types in a type argument
+     */
+    public final static String PLATFORM_PACKAGE_PREFIX = "java.";
+    
+    private final static char ARGUMENTS_START = '<';
+    private final static char ARGUMENTS_END = '>';
+    private final static char ARGUMENT_SEPARATOR = ';';
+    private final static char CLOSURE_SEPARATOR = '|';
+    private final static char MEMBER_SEPARATOR = '#';
+    private final static char VALUE_SEPARATOR = '=';
+    
+    private ContractSignatures() {
+    }
+    
+    /**
+     * Encodes one contract signature
+     * 
+     * @param rawName The binary name of the contract class
+     * @param arguments One entry per type argument of the contract.  A null
+     * entry is an unknown argument, otherwise it is the binary name of the
+     * argument class followed by the names of all of its super types
+     * @return The signature to record under {@link #CONTRACT_SIGNATURE_METADATA_KEY}
+     */
+    public static String encodeSignature(String rawName, List<? extends Collection<String>> arguments) {
+        if (arguments == null || arguments.isEmpty()) return rawName;
+        
+        StringBuffer sb = new StringBuffer(rawName);
+        sb.append(ARGUMENTS_START);
+        
+        boolean first = true;
+        for (Collection<String> argument : arguments) {
+            if (first) {
+                first = false;
+            }
+            else {
+                sb.append(ARGUMENT_SEPARATOR);
+            }
+            
+            if (argument == null || argument.isEmpty()) {
+                sb.append(UNKNOWN_ARGUMENT);
+                continue;
+            }
+            
+            boolean firstName = true;
+            for (String name : argument) {
+                if (firstName) {
+                    firstName = false;
+                }
+                else {
+                    sb.append(CLOSURE_SEPARATOR);
+                }
+                
+                sb.append(name);
+            }
+        }
+        
+        sb.append(ARGUMENTS_END);
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Encodes the value of one member of a qualifier
+     * 
+     * @param qualifierName The binary name of the qualifier annotation
+     * @param memberName The name of the annotation member
+     * @param value The value of the member.  Strings and primitives use their
+     * string form, enum constants their name and classes their binary name
+     * @return The entry to record under {@link #QUALIFIER_VALUE_METADATA_KEY}
+     */
+    public static String encodeQualifierValue(String qualifierName, String memberName, String value) {
+        return qualifierName + MEMBER_SEPARATOR + memberName + VALUE_SEPARATOR + value;
+    }
+    
+    /**
+     * Returns false if the metadata of the given descriptor proves that none of its
+     * contracts can be assigned to the required type.  Returns true if the descriptor
+     * may be type safe, including when it carries no contract signatures for the raw
+     * class of the required type or when the required type is not a parameterized type.  This never loads the implementation
+     * class of the descriptor
+     * 
+     * @param requiredType The type being looked up
+     * @param descriptor The candidate descriptor
+     * @return false if the descriptor can certainly not be assigned to requiredType
+     */
+    public static boolean mayBeTypeSafe(Type requiredType, Descriptor descriptor) {
+        if (!(requiredType instanceof ParameterizedType)) return true;
+        
+        List<String> signatures = getValues(descriptor, CONTRACT_SIGNATURE_METADATA_KEY);
+        if (signatures == null) return true;
+        
+        Class<?> requiredClass = ReflectionHelper.getRawClass(requiredType);
+        if (requiredClass == null) return true;
+        String requiredName = requiredClass.getName();
+        
+        Type requiredArguments[] = ((ParameterizedType) requiredType).getActualTypeArguments();
+        boolean found = false;
+        for (String signature : signatures) {
+            // Only the signatures of the contract being looked up say anything about it
+            if (!requiredName.equals(getRawName(signature))) continue;
+            found = true;
+            
+            if (mayBeTypeSafe(requiredArguments, signature)) return true;
+        }
+        
+        // No signature of the contract was recorded, so nothing is proven
+        return !found;
+    }
+    
+    private static String getRawName(String signature) {
+        int start = signature.indexOf(ARGUMENTS_START);
+        if (start < 0) return signature;
+        
+        return signature.substring(0, start);
+    }
+    
+    private static boolean mayBeTypeSafe(Type requiredArguments[], String signature) {
+        int start = signature.indexOf(ARGUMENTS_START);
+        if (start < 0) {
+            // A contract without type arguments is raw, so the arity cannot match
+            return (requiredArguments.length == 0);
+        }
+        
+        int end = signature.lastIndexOf(ARGUMENTS_END);
+        if (end < start) return true;
+        
+        String arguments[] = signature.substring(start + 1, end).split(String.valueOf(ARGUMENT_SEPARATOR), -1);
+        if (arguments.length != requiredArguments.length) return false;
+        
+        for (int lcv = 0; lcv < arguments.length; lcv++) {
+            if (!mayBeArgumentSafe(requiredArguments[lcv], arguments[lcv])) return false;
+        }
+        
+        return true;
+    }
+    
+    private static boolean mayBeArgumentSafe(Type requiredArgument, String argument) {
+        if (UNKNOWN_ARGUMENT.equals(argument)) return true;
+        if (!(requiredArgument instanceof Class) && !(requiredArgument instanceof ParameterizedType)) {
+            // Wildcards and type variables are checked against bounds, leave them to the full check
+            return true;
+        }
+        
+        Class<?> requiredClass = ReflectionHelper.getRawClass(requiredArgument);
+        if (requiredClass == null || requiredClass.isArray() || Object.class.equals(requiredClass)) return true;
+        
+        String requiredName = requiredClass.getName();
+        
+        for (String superTypeName : argument.split("\\" + CLOSURE_SEPARATOR)) {
+            if (requiredName.equals(superTypeName)) return true;
+            
+            if (superTypeName.startsWith(PLATFORM_PACKAGE_PREFIX) &&
+                    isPlatformSubclass(requiredClass, superTypeName)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private static boolean isPlatformSubclass(Class<?> requiredClass, String platformName) {
+        Class<?> platformClass;
+        try {
+            // Platform classes come from the bootstrap loader, which never loads application code
+            platformClass = Class.forName(platformName, false, null);
+        }
+        catch (Throwable th) {
+            return true;
+        }
+        
+        return requiredClass.isAssignableFrom(platformClass);
+    }
+    
+    /**
+     * Returns false if the metadata of the given descriptor proves that one of
+     * the required qualifiers has a member value different from the one on the
+     * service.  This never loads the implementation class of the descriptor
+     * 
+     * @param requiredQualifiers The qualifiers being looked up
+     * @param descriptor The candidate descriptor
+     * @return false if the descriptor can certainly not have all of the required qualifiers
+     */
+    public static boolean mayHaveQualifiers(Set<Annotation> requiredQualifiers, Descriptor descriptor) {
+        if (requiredQualifiers.isEmpty()) return true;
+        
+        List<String> values = getValues(descriptor, QUALIFIER_VALUE_METADATA_KEY);
+        if (values == null) return true;
+        
+        for (String value : values) {
+            int memberIndex = value.indexOf(MEMBER_SEPARATOR);
+            if (memberIndex < 0) continue;
+            
+            int valueIndex = value.indexOf(VALUE_SEPARATOR, memberIndex);
+            if (valueIndex < 0) continue;
+            
+            String qualifierName = value.substring(0, memberIndex);
+            for (Annotation required : requiredQualifiers) {
+                if (required instanceof Named) continue;
+                if (!qualifierName.equals(required.annotationType().getName())) continue;
+                
+                String requiredValue = getMemberValue(required, value.substring(memberIndex + 1, valueIndex));
+                if (requiredValue == null) continue;
+                
+                if (!requiredValue.equals(value.substring(valueIndex + 1))) return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private static String getMemberValue(Annotation annotation, String memberName) {
+        Object value;
+        try {
+            Method member = annotation.annotationType().getMethod(memberName);
+            value = ReflectionHelper.invoke(annotation, member, new Object[0], false);
+        }
+        catch (Throwable th) {
+            return null;
+        }
+        
+        if (value == null) return null;
+        if (value instanceof Enum) return ((Enum<?>) value).name();
+        if (value instanceof Class) return ((Class<?>) value).getName();
+        if (value instanceof String || value instanceof Number ||
+                value instanceof Boolean || value instanceof Character) {
+            return value.toString();
+        }
+        
+        return null;
+    }
+    
+    private static List<String> getValues(Descriptor descriptor, String key) {
+        Map<String, List<String>> metadata = descriptor.getMetadata();
+        if (metadata == null) return null;
+        
+        List<String> retVal = metadata.get(key);
+        if (retVal == null || retVal.isEmpty()) return null;
+        
+        return retVal;
+    }
+}
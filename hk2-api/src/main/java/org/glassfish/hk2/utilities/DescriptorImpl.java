@@ -120,6 +120,10 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	private Long id;
 	private Long locatorId;
 	
+	/** Set while the metadata is still only in a binary descriptor file */
+	private transient BinaryDescriptorFile lazyFile;
+	private transient int lazyOffset;
+	
 	/**
 	 * For serialization
 	 */
@@ -350,6 +354,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 
 	@Override
 	public synchronized Map<String, List<String>> getMetadata() {
+	    materialize();
 	    if (metadatas == null) return EMPTY_METADATAS_MAP;
 		return Collections.unmodifiableMap(metadatas);
 	}
@@ -364,6 +369,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * should have
 	 */
 	public synchronized void setMetadata(Map<String, List<String>> metadata) {
+	    materialize();
 	    if (metadatas == null) {
 	        metadatas = new LinkedHashMap<String, List<String>>();
 	    }
@@ -382,6 +388,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * to add to the metadata map
 	 */
 	public synchronized void addMetadata(Map<String, List<String>> metadata) {
+	    materialize();
 	    if (metadatas == null) metadatas = new LinkedHashMap<String, List<String>>();
 	    
         metadatas.putAll(ReflectionHelper.deepCopyMetadata(metadata));
@@ -395,6 +402,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * @param value The value to add.  May not be null
 	 */
 	public synchronized void addMetadata(String key, String value) {
+	    materialize();
 	    if (metadatas == null) metadatas = new LinkedHashMap<String, List<String>>();
 	    ReflectionHelper.addMetadata(metadatas, key, value);
 	}
@@ -408,6 +416,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * @return true if the value was removed
 	 */
 	public synchronized boolean removeMetadata(String key, String value) {
+	    materialize();
 	    if (metadatas == null) return false;
 	    return ReflectionHelper.removeMetadata(metadatas, key, value);
 	}
@@ -419,6 +428,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * @return true if any value was removed
 	 */
 	public synchronized boolean removeAllMetadata(String key) {
+	    materialize();
 	    if (metadatas == null) return false;
 	    return ReflectionHelper.removeAllMetadata(metadatas, key);
 	}
@@ -427,6 +437,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
      * Removes all metadata values
      */
     public synchronized void clearMetadata() {
+        materialize();
         metadatas = null;
     }
 	
@@ -537,7 +548,30 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	    this.locatorId = locatorId;
 	}
 	
+	/**
+	 * Leaves the metadata of this descriptor in the given
+	 * binary descriptor file until it is first used
+	 * 
+	 * @param file The file holding the metadata
+	 * @param offset The offset of the metadata in the file
+	 */
+	/* package */ synchronized void setLazyMetadata(BinaryDescriptorFile file, int offset) {
+	    lazyFile = file;
+	    lazyOffset = offset;
+	}
+	
+	private synchronized void materialize() {
+	    if (lazyFile == null) return;
+	    
+	    BinaryDescriptorFile file = lazyFile;
+	    lazyFile = null;
+	    
+	    file.readLazyMetadata(lazyOffset, this);
+	}
+	
 	public int hashCode() {
+	    materialize();
+	    
 	    int retVal = 0;
 	    
 	    if (implementation != null) {
@@ -766,6 +800,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
 	 * @throws IOException on failure
 	 */
 	public void writeObject(PrintWriter out) throws IOException {
+	    materialize();
 	
         out.print(START_START);
         
@@ -843,6 +878,7 @@ public class DescriptorImpl implements Descriptor, Externalizable {
     }
 	
 	private void reinitialize() {
+	    lazyFile = null;
 	    contracts = null;
 	    implementation = null;
 	    name = null;
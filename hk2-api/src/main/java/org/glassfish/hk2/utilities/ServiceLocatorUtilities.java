@@ -51,6 +51,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.inject.Singleton;
 
@@ -79,6 +80,7 @@ import org.glassfish.hk2.api.ImmediateController.ImmediateServiceState;
 import org.glassfish.hk2.internal.ImmediateHelper;
 import org.glassfish.hk2.internal.InheritableThreadContext;
 import org.glassfish.hk2.internal.PerThreadContext;
+import org.glassfish.hk2.internal.WarmUpHelper;
 
 /**
  * This is a set of useful utilities for working with {@link ServiceLocator}.
@@ -171,6 +173,43 @@ public abstract class ServiceLocatorUtilities {
         return locator.getService(ImmediateController.class);
     }
 
+    /**
+     * This method will create all of the {@link Singleton} and {@link Immediate}
+     * services of the given locator (but not of its parents) before they are
+     * first looked up.  The injection points of the services are used to
+     * find out which services need which others, and services that do not need
+     * each other are created in parallel on the given executor.  This method
+     * returns when all of the services have been created or have failed.
+     * <p>
+     * Any failures will be given to the current set of {@link ImmediateErrorHandler}
+     * implementations.  {@link Immediate} services will only be created if the
+     * {@link Immediate} scope has been enabled in the locator
+     *
+     * @param locator The non-null locator whose services should be created
+     * @param executor The executor used to create services in parallel.  If
+     * null all services will be created on the calling thread
+     * @throws MultiException if the calling thread is interrupted
+     */
+    public static void warmUp(ServiceLocator locator, Executor executor) {
+        warmUp(locator, null, executor);
+    }
+    
+    /**
+     * This method will create those {@link Singleton} and {@link Immediate}
+     * services of the given locator (but not of its parents) that match the
+     * given filter.  It otherwise behaves like {@link #warmUp(ServiceLocator, Executor)}
+     *
+     * @param locator The non-null locator whose services should be created
+     * @param filter Only services matching this filter will be created.  If
+     * null all {@link Singleton} and {@link Immediate} services will be created
+     * @param executor The executor used to create services in parallel.  If
+     * null all services will be created on the calling thread
+     * @throws MultiException if the calling thread is interrupted
+     */
+    public static void warmUp(ServiceLocator locator, Filter filter, Executor executor) {
+        WarmUpHelper.warmUp(locator, filter, executor);
+    }
+
     /**
      * This method will bind all of the binders given together in a
      * single config transaction.
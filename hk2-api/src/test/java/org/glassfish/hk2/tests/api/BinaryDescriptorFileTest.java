@@ -0,0 +1,218 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the binary descriptor file format
+ * 
+ * @author jwells
+ */
+public class BinaryDescriptorFileTest {
+    private final static String IMPL_A = "com.acme.ServiceA";
+    private final static String IMPL_B = "com.acme.ServiceB";
+    private final static String CONTRACT = "com.acme.Contract";
+    private final static String NAME = "Alice";
+    private final static String KEY = "key";
+    private final static String VALUE1 = "value1";
+    private final static String VALUE2 = "value2";
+    
+    private static List<DescriptorImpl> createDescriptors() {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>();
+        
+        DescriptorImpl a = new DescriptorImpl();
+        a.setImplementation(IMPL_A);
+        a.addAdvertisedContract(IMPL_A);
+        a.addAdvertisedContract(CONTRACT);
+        a.setName(NAME);
+        a.addQualifier(Named.class.getName());
+        a.setScope(Singleton.class.getName());
+        a.addMetadata(KEY, VALUE1);
+        a.addMetadata(KEY, VALUE2);
+        a.setRanking(-5);
+        a.setProxiable(Boolean.TRUE);
+        a.setProxyForSameScope(Boolean.FALSE);
+        a.setDescriptorVisibility(DescriptorVisibility.LOCAL);
+        retVal.add(a);
+        
+        DescriptorImpl b = new DescriptorImpl();
+        b.setImplementation(IMPL_B);
+        b.addAdvertisedContract(CONTRACT);
+        b.setDescriptorType(DescriptorType.PROVIDE_METHOD);
+        b.setClassAnalysisName("CustomAnalyzer");
+        retVal.add(b);
+        
+        return retVal;
+    }
+    
+    private static byte[] write(List<DescriptorImpl> descriptors) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(descriptors, baos);
+        baos.close();
+        
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Tests that descriptors read back equal to those written
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<DescriptorImpl> written = createDescriptors();
+        
+        BinaryDescriptorFile file = BinaryDescriptorFile.read(new ByteArrayInputStream(write(written)));
+        Assert.assertEquals(2, file.getSize());
+        
+        List<DescriptorImpl> read = file.getDescriptors();
+        Assert.assertEquals(written, read);
+        
+        DescriptorImpl a = read.get(0);
+        Assert.assertEquals(NAME, a.getName());
+        Assert.assertEquals(-5, a.getRanking());
+        Assert.assertEquals(DescriptorVisibility.LOCAL, a.getDescriptorVisibility());
+        Assert.assertEquals(2, a.getMetadata().get(KEY).size());
+        
+        // Strings are shared between descriptors
+        Assert.assertSame(read.get(0).getAdvertisedContracts().toArray()[1],
+                read.get(1).getAdvertisedContracts().toArray()[0]);
+    }
+    
+    /**
+     * Tests that lazily read fields can be modified
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testModifyLazyFields() throws IOException {
+        BinaryDescriptorFile file = BinaryDescriptorFile.read(new ByteArrayInputStream(write(createDescriptors())));
+        
+        DescriptorImpl a = file.getDescriptor(0);
+        a.addMetadata(KEY, "value3");
+        Assert.assertEquals(3, a.getMetadata().get(KEY).size());
+        Assert.assertEquals(1, a.getQualifiers().size());
+        
+        a = file.getDescriptor(0);
+        Assert.assertTrue(a.removeQualifier(Named.class.getName()));
+        Assert.assertTrue(a.getQualifiers().isEmpty());
+        Assert.assertEquals(2, a.getMetadata().get(KEY).size());
+    }
+    
+    /**
+     * Tests the contract and name indexes
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testIndexes() throws IOException {
+        BinaryDescriptorFile file = BinaryDescriptorFile.read(new ByteArrayInputStream(write(createDescriptors())));
+        
+        List<DescriptorImpl> byContract = file.getDescriptorsByContract(CONTRACT);
+        Assert.assertEquals(2, byContract.size());
+        Assert.assertEquals(IMPL_A, byContract.get(0).getImplementation());
+        Assert.assertEquals(IMPL_B, byContract.get(1).getImplementation());
+        
+        List<DescriptorImpl> byName = file.getDescriptorsByName(NAME);
+        Assert.assertEquals(1, byName.size());
+        Assert.assertEquals(IMPL_A, byName.get(0).getImplementation());
+        
+        Assert.assertTrue(file.getDescriptorsByContract(IMPL_B).isEmpty());
+        Assert.assertTrue(file.getDescriptorsByName("Bob").isEmpty());
+    }
+    
+    /**
+     * Tests that binary and text files are told apart, and
+     * that a file can be memory mapped
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testDetectionAndMapping() throws IOException {
+        byte binary[] = write(createDescriptors());
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(baos);
+        createDescriptors().get(0).writeObject(pw);
+        pw.close();
+        
+        InputStream textStream = new ByteArrayInputStream(baos.toByteArray());
+        Assert.assertFalse(BinaryDescriptorFile.isBinaryDescriptorFile(textStream));
+        Assert.assertEquals('[', textStream.read());
+        
+        File tmpFile = File.createTempFile("BinaryDescriptorFileTest", ".bin");
+        tmpFile.deleteOnExit();
+        
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        fos.write(binary);
+        fos.close();
+        
+        FileInputStream fis = new FileInputStream(tmpFile);
+        try {
+            Assert.assertTrue(BinaryDescriptorFile.isBinaryDescriptorFile(fis));
+            
+            BinaryDescriptorFile file = BinaryDescriptorFile.read(fis);
+            Assert.assertEquals(createDescriptors(), file.getDescriptors());
+        }
+        finally {
+            fis.close();
+        }
+    }
+}
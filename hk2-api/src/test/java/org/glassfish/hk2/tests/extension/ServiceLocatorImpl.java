@@ -54,6 +54,7 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorState;
+import org.glassfish.hk2.api.ServiceLookup;
 import org.glassfish.hk2.api.Unqualified;
 
 /**
@@ -171,6 +172,24 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return null;
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLocator#createLookup(java.lang.reflect.Type, java.lang.annotation.Annotation[])
+     */
+    @Override
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, Annotation... qualifiers) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLocator#createLookup(java.lang.reflect.Type, java.lang.String, java.lang.annotation.Annotation[])
+     */
+    @Override
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, String name, Annotation... qualifiers) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.ServiceLocator#getAllServices(org.glassfish.hk2.api.Filter)
      */
@@ -192,7 +192,9 @@ public class ExtrasUtilities {
      * This method will enable the default topic distribution service.
      * <p>
      * The default distribution service distributes messages on the
-     * same thread as the caller of {@link org.glassfish.hk2.api.messaging.Topic#publish(Object)}.
+     * same thread as the caller of {@link org.glassfish.hk2.api.messaging.Topic#publish(Object)},
+     * unless the subscription method is annotated with
+     * {@link org.glassfish.hk2.extras.events.AsyncSubscription}.
      * Objects to be distributed to will be
      * held with SoftReferences, and hence if they go out of scope they
      * will not be distributed to.  Only services created AFTER the topic
@@ -0,0 +1,120 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.extras.events;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is put onto a subscription method (a method with
+ * one parameter annotated with {@link org.glassfish.hk2.api.messaging.SubscribeTo})
+ * to indicate that messages should be delivered to it asynchronously
+ * by the default topic distribution service.  Messages for the
+ * subscription are put on a bounded queue and the thread that called
+ * {@link org.glassfish.hk2.api.messaging.Topic#publish(Object)}
+ * returns without waiting for the subscriber.  Messages for a single
+ * subscription are delivered in the order they were published.
+ * <p>
+ * If {@link #batch()} is true then the {@link org.glassfish.hk2.api.messaging.SubscribeTo}
+ * parameter must be a {@link java.util.List} of the topic type, and all
+ * the messages that are waiting on the queue (up to {@link #maxBatchSize()})
+ * are given to the subscriber in a single call.  The messages of one call
+ * were all published to the same topic.
+ * <p>
+ * By default messages are delivered on a bounded pool of daemon threads which
+ * is stopped when the locator is shut down.  A
+ * different {@link java.util.concurrent.Executor} can be used by adding it to the locator
+ * with the {@link java.util.concurrent.Executor} contract and the name {@link #EXECUTOR_NAME}.
+ * Errors thrown by asynchronous subscribers are given to the
+ * {@link DefaultTopicDistributionErrorService} implementations
+ * 
+ * @author jwells
+ *
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({METHOD})
+public @interface AsyncSubscription {
+    /**
+     * The name of the {@link java.util.concurrent.Executor} service that will be
+     * used to deliver asynchronous messages if it exists
+     */
+    public final static String EXECUTOR_NAME = "HK2AsyncTopicDistributionExecutor";
+    
+    /**
+     * The maximum number of messages that may be waiting
+     * to be delivered to this subscription
+     * 
+     * @return The capacity of the queue of this subscription.  Must be positive
+     */
+    public int queueSize() default 1024;
+    
+    /**
+     * What to do when a message is published while the queue of
+     * this subscription is full
+     * 
+     * @return The policy to use when the queue of this subscription is full
+     */
+    public BackpressurePolicy backpressure() default BackpressurePolicy.BLOCK;
+    
+    /**
+     * If true the subscription parameter must be a {@link java.util.List}
+     * of the topic type and messages waiting on the queue are
+     * delivered together
+     * 
+     * @return true if messages should be delivered in batches
+     */
+    public boolean batch() default false;
+    
+    /**
+     * The largest number of messages that will be given to
+     * a batch subscription in one call.  Ignored if {@link #batch()}
+     * is false
+     * 
+     * @return The maximum size of a batch.  Must be positive
+     */
+    public int maxBatchSize() default 64;
+
+}
@@ -43,20 +43,28 @@ import java.lang.annotation.Annotation;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -80,6 +88,8 @@ import org.glassfish.hk2.api.messaging.MessageReceiver;
 import org.glassfish.hk2.api.messaging.SubscribeTo;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.extras.events.AsyncSubscription;
+import org.glassfish.hk2.extras.events.BackpressurePolicy;
 import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.utilities.MethodParameterImpl;
@@ -94,6 +104,10 @@ import org.jvnet.hk2.annotations.Optional;
 
 /**
  * This is the default implementation of the TopicDistributionService.
+ * <p>
+ * Subscription methods are called on the thread of the publisher unless
+ * they are annotated with {@link AsyncSubscription}, in which case the
+ * message is queued and delivered on the asynchronous executor
  * 
  * @author jwells
  */
@@ -124,10 +138,29 @@ public class DefaultTopicDistributionService implements
     private final HashMap<ActiveDescriptor<?>, Set<Class<?>>> descriptor2Classes = new HashMap<ActiveDescriptor<?>, Set<Class<?>>>();
     private final HashMap<ActivatorClassKey, List<SubscriberInfo>> class2Subscribers = new HashMap<ActivatorClassKey, List<SubscriberInfo>>();
     
+    /**
+     * The subscribers that match a given topic type and set of topic qualifiers.  Entries
+     * are added lazily on the first publish of a topic and are then kept up to date
+     * (under the write lock) as subscribers come and go
+     */
+    private final ConcurrentHashMap<TopicKey, SubscriberInfo[]> topicIndex = new ConcurrentHashMap<TopicKey, SubscriberInfo[]>();
+    
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
     
+    private final static int MAX_TOPIC_INDEX_SIZE = 1000;
+    
+    private final static int ASYNC_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private final static SubscriberInfo[] NO_SUBSCRIBERS = new SubscriberInfo[0];
+    
+    /** Resolved on first use and again after every configuration change */
+    private volatile Executor asyncExecutor;
+    
+    /** Created on first use, shut down with this service.  Protected by this */
+    private ThreadPoolExecutor defaultAsyncExecutor;
+    private boolean shutdown;
+    
     private void fire(Object message, Method subscription, SubscriberInfo subscriptionInfo, Object target, ServiceLocator locator) throws Throwable {
         List<MethodParameter> mps = new ArrayList<MethodParameter>(subscriptionInfo.otherInjectees.length);
         
@@ -161,60 +194,126 @@ public class DefaultTopicDistributionService implements
         }
     }
     
-    private List<FireResults> handleDescriptorToClass(ActiveDescriptor<?> descriptor, Class<?> clazz, Type eventType, Topic<?> topic) {
-        LinkedList<FireResults> retVal = new LinkedList<FireResults>();
+    private static boolean matches(SubscriberInfo subscriberInfo, Type eventType, Set<Annotation> topicQualifiers) {
+        Type subscriptionType = subscriberInfo.eventType;
         
-        List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
-        if (subscribers == null) subscribers = Collections.emptyList();
+        if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
+            // Not a type match
+            return false;
+        }
+            
+        if (!subscriberInfo.eventQualifiers.isEmpty()) {
+            if (!ReflectionHelper.annotationContainsAll(topicQualifiers, subscriberInfo.eventQualifiers)) {
+                // The qualifiers do not match
+                return false;
+            }
+        }
         
-        for (SubscriberInfo subscriberInfo : subscribers) {    
-            Type subscriptionType = subscriberInfo.eventType;
+        if ((subscriberInfo.unqualified != null) && !topicQualifiers.isEmpty()) {
+            if (subscriberInfo.unqualified.value().length == 0) {
+                // publisher must not have any qualifiers,
+                // but it DOES have some, so forget it!
+                return false;
+            }
             
-            if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
-                // Not a type match
-                continue;
+            Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
+            for (Annotation topicQualifier : topicQualifiers) {
+                topicQualifierClasses.add(topicQualifier.annotationType());
             }
                 
-            if (!subscriberInfo.eventQualifiers.isEmpty()) {
-                if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
-                    // The qualifiers do not match
-                    continue;
+            for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
+                if (topicQualifierClasses.contains(verbotenQualifier)) {
+                    // Found one of the qualifiers we are not allowed to have!
+                    return false;
                 }
             }
-            
-            if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
-                if (subscriberInfo.unqualified.value().length == 0) {
-                    // publisher must not have any qualifiers,
-                    // but it DOES have some, so forget it!
-                    continue;
-                }
-                
-                Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
-                for (Annotation topicQualifier : topic.getTopicQualifiers()) {
-                    topicQualifierClasses.add(topicQualifier.annotationType());
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Must be called with the read lock held.  Finds all the subscribers
+     * for the given topic and remembers them in the index
+     * 
+     * @param key The type and qualifiers of the topic
+     * @return The subscribers matching the topic
+     */
+    private SubscriberInfo[] indexTopic(TopicKey key) {
+        SubscriberInfo[] retVal = topicIndex.get(key);
+        if (retVal != null) return retVal;
+        
+        List<SubscriberInfo> matching = new ArrayList<SubscriberInfo>();
+        for (List<SubscriberInfo> subscribers : class2Subscribers.values()) {
+            for (SubscriberInfo subscriberInfo : subscribers) {
+                if (matches(subscriberInfo, key.eventType, key.qualifiers)) {
+                    matching.add(subscriberInfo);
                 }
-                    
-                boolean found = false;
-                for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
-                    if (topicQualifierClasses.contains(verbotenQualifier)) {
-                        found = true;
-                        break;
+            }
+        }
+        
+        retVal = matching.isEmpty() ? NO_SUBSCRIBERS : matching.toArray(new SubscriberInfo[matching.size()]);
+        
+        if (topicIndex.size() >= MAX_TOPIC_INDEX_SIZE) {
+            // Topics are being made with many different qualifiers, start over
+            topicIndex.clear();
+        }
+        
+        SubscriberInfo[] existing = topicIndex.putIfAbsent(key, retVal);
+        return (existing == null) ? retVal : existing;
+    }
+    
+    /**
+     * Must be called with the write lock held.  Adds the new
+     * subscriber to every indexed topic it matches
+     * 
+     * @param subscriberInfo The newly discovered subscriber
+     */
+    private void addToIndex(SubscriberInfo subscriberInfo) {
+        for (Map.Entry<TopicKey, SubscriberInfo[]> entry : topicIndex.entrySet()) {
+            TopicKey key = entry.getKey();
+            if (!matches(subscriberInfo, key.eventType, key.qualifiers)) continue;
+            
+            SubscriberInfo[] current = entry.getValue();
+            SubscriberInfo[] replacement = new SubscriberInfo[current.length + 1];
+            System.arraycopy(current, 0, replacement, 0, current.length);
+            replacement[current.length] = subscriberInfo;
+            
+            entry.setValue(replacement);
+        }
+    }
+    
+    /**
+     * Must be called with the write lock held.  Removes the
+     * given subscribers from every indexed topic
+     * 
+     * @param removed The subscribers that are no longer valid
+     */
+    private void removeFromIndex(Set<SubscriberInfo> removed) {
+        if (removed.isEmpty()) return;
+        
+        for (Map.Entry<TopicKey, SubscriberInfo[]> entry : topicIndex.entrySet()) {
+            SubscriberInfo[] current = entry.getValue();
+            
+            List<SubscriberInfo> keep = null;
+            for (int lcv = 0; lcv < current.length; lcv++) {
+                if (removed.contains(current[lcv])) {
+                    if (keep == null) {
+                        keep = new ArrayList<SubscriberInfo>(current.length);
+                        for (int lcv2 = 0; lcv2 < lcv; lcv2++) {
+                            keep.add(current[lcv2]);
+                        }
                     }
                 }
-                    
-                if (found) {
-                    // Found one of the qualifiers we are not allowed to have!
-                    continue;
+                else if (keep != null) {
+                    keep.add(current[lcv]);
                 }
             }
             
-            for (WeakReference<Object> targetReference : subscriberInfo.targets) {
-                Object target = targetReference.get();
-                retVal.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
-            }    
+            if (keep != null) {
+                entry.setValue(keep.isEmpty() ? NO_SUBSCRIBERS : keep.toArray(new SubscriberInfo[keep.size()]));
+            }
         }
-        
-        return retVal;
     }
 
     /* (non-Javadoc)
@@ -222,36 +321,67 @@ public class DefaultTopicDistributionService implements
      */
     @Override
     public void distributeMessage(Topic<?> topic, Object message) {
+        TopicKey key = new TopicKey(topic.getTopicType(), topic.getTopicQualifiers());
         
-        Type eventType = topic.getTopicType();
-        
-        LinkedList<FireResults> fireResults = new LinkedList<FireResults>();
-        rLock.lock();
-        try {
-            for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
-                for (Class<?> clazz : d2cEntry.getValue()) {
-                    fireResults.addAll(handleDescriptorToClass(d2cEntry.getKey(), clazz, eventType, topic));
-                }
+        SubscriberInfo[] subscribers = topicIndex.get(key);
+        if (subscribers == null) {
+            rLock.lock();
+            try {
+                subscribers = indexTopic(key);
+            }
+            finally {
+                rLock.unlock();
             }
-        }
-        finally {
-            rLock.unlock();
         }
         
         // Do everything else outside the lock
-        Set<SubscriberInfo> hasDeadReferences = new HashSet<SubscriberInfo>();
+        List<SubscriberInfo> hasDeadReferences = null;
         
         MultiException errors = null;
-        for (FireResults fireResult : fireResults) {
-            if (fireResult.target == null) {
-                hasDeadReferences.add(fireResult.subscriberInfo);
+        for (SubscriberInfo subscriberInfo : subscribers) {
+            if (subscriberInfo.asyncQueue != null) {
+                try {
+                    subscriberInfo.asyncQueue.enqueue(key, topic, message);
+                }
+                catch (InterruptedException ie) {
+                    // The message was not queued, the publisher must still see the interrupt
+                    Thread.currentThread().interrupt();
+                    
+                    if (errors == null) {
+                        errors = new MultiException(ie);
+                    }
+                    else {
+                        errors.addError(ie);
+                    }
+                }
+                catch (Throwable th) {
+                    if (errors == null) {
+                        errors = new MultiException(th);
+                    }
+                    else {
+                        errors.addError(th);
+                    }
+                }
+                
+                continue;
             }
-            else {
+            
+            for (WeakReference<?> targetReference : subscriberInfo.targets) {
+                Object target = targetReference.get();
+                if (target == null) {
+                    if (hasDeadReferences == null) {
+                        hasDeadReferences = new LinkedList<SubscriberInfo>();
+                    }
+                    hasDeadReferences.add(subscriberInfo);
+                    
+                    continue;
+                }
+                
                 try {
                     fire(message,
-                           fireResult.subscriberMethod,
-                           fireResult.subscriberInfo,
-                           fireResult.target,
+                           subscriberInfo.method,
+                           subscriberInfo,
+                           target,
                            locator);
                 }
                 catch (Throwable th) {
@@ -266,34 +396,15 @@ public class DefaultTopicDistributionService implements
         }
         
         if (errors != null) {
-            for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
-                try {
-                    handle.getService().subscribersFailed(topic, message, errors);
-                    
-                    if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
-                        handle.destroy();
-                    }
-                }
-                catch (Throwable ignore) {
-                    // ignore it
-                }
-            }
+            reportErrors(topic, message, errors);
         }
         
-        if (!hasDeadReferences.isEmpty()) {
+        if (hasDeadReferences != null) {
             wLock.lock();
             try {
                 for (SubscriberInfo sInfo : hasDeadReferences) {
-                    Iterator<WeakReference<Object>> iterator = sInfo.targets.iterator();
-                
-                    while (iterator.hasNext()) {
-                        WeakReference<Object> ref = iterator.next();
-                        if (ref.get() == null) {
-                            iterator.remove();
-                        }
-                    }
+                    sInfo.removeTarget(null);
                 }
-            
             }
             finally {
                 wLock.unlock();
@@ -302,6 +413,86 @@ public class DefaultTopicDistributionService implements
         
     }
 
+    private void reportErrors(Topic<?> topic, Object message, MultiException errors) {
+        for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
+            try {
+                handle.getService().subscribersFailed(topic, message, errors);
+                
+                if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
+                    handle.destroy();
+                }
+            }
+            catch (Throwable ignore) {
+                // ignore it
+            }
+        }
+    }
+    
+    private void removeDeadTargets(SubscriberInfo sInfo) {
+        wLock.lock();
+        try {
+            sInfo.removeTarget(null);
+        }
+        finally {
+            wLock.unlock();
+        }
+    }
+    
+    /**
+     * The executor is looked up the first time a subscription queue is scheduled
+     * and again after the configuration of the locator changes, since this service
+     * is created before most other services are added
+     * 
+     * @return The executor to use for asynchronous subscriptions
+     */
+    private Executor getAsyncExecutor() {
+        Executor retVal = asyncExecutor;
+        if (retVal != null) return retVal;
+        
+        retVal = locator.getService(Executor.class, AsyncSubscription.EXECUTOR_NAME);
+        if (retVal == null) {
+            retVal = getDefaultAsyncExecutor();
+        }
+        
+        asyncExecutor = retVal;
+        return retVal;
+    }
+    
+    private synchronized Executor getDefaultAsyncExecutor() {
+        if (shutdown) {
+            throw new IllegalStateException("The topic distribution service has been shut down");
+        }
+        
+        if (defaultAsyncExecutor == null) {
+            defaultAsyncExecutor = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new AsyncTopicThreadFactory());
+            defaultAsyncExecutor.allowCoreThreadTimeOut(true);
+        }
+        
+        return defaultAsyncExecutor;
+    }
+    
+    /**
+     * Stops the threads of the default asynchronous executor, which
+     * happens when the locator of this service is shut down
+     */
+    @PreDestroy
+    private void preDestroy() {
+        ThreadPoolExecutor toShutdown;
+        synchronized (this) {
+            shutdown = true;
+            toShutdown = defaultAsyncExecutor;
+            defaultAsyncExecutor = null;
+        }
+        
+        asyncExecutor = null;
+        if (toShutdown != null) {
+            toShutdown.shutdown();
+        }
+    }
+    
     @Override
     public Filter getFilter() {
         return SUBSCRIBER_FILTER;
@@ -323,7 +514,7 @@ public class DefaultTopicDistributionService implements
             
                 if (existingMethods != null) {
                     for (SubscriberInfo info : existingMethods) {
-                        info.targets.add(new WeakReference<Object>(target));
+                        info.addTarget(target);
                     }
                 
                     return;
@@ -400,9 +591,10 @@ public class DefaultTopicDistributionService implements
             }
             
             SubscriberInfo si = generateSubscriberInfo(descriptor, methodWrapper.getMethod(), useMethod, foundPosition, paramAnnotations);
-            si.targets.add(new WeakReference<Object>(target));
+            si.addTarget(target);
             
             existingMethods.add(si);
+            addToIndex(si);
         }
         
     }
@@ -434,13 +626,36 @@ public class DefaultTopicDistributionService implements
         return null;
     }
     
-    private static SubscriberInfo generateSubscriberInfo(ActiveDescriptor<?> injecteeDescriptor,
+    private SubscriberInfo generateSubscriberInfo(ActiveDescriptor<?> injecteeDescriptor,
             Method subscriber, Method useSubscriber, int subscribeToPosition, Annotation paramAnnotations[][]) {
         Type parameterTypes[] = subscriber.getGenericParameterTypes();
         
         // Get the event type
         Type eventType = parameterTypes[subscribeToPosition];
         
+        AsyncSubscription async = subscriber.getAnnotation(AsyncSubscription.class);
+        if (async != null) {
+            if (async.queueSize() <= 0 || async.maxBatchSize() <= 0) {
+                throw new IllegalArgumentException("The @AsyncSubscription on method " + Pretty.method(subscriber) + " on class " +
+                        subscriber.getDeclaringClass().getName() + " must have a positive queueSize and maxBatchSize");
+            }
+            
+            if (async.batch()) {
+                if (!List.class.equals(ReflectionHelper.getRawClass(eventType))) {
+                    throw new IllegalArgumentException("The batch @AsyncSubscription method " + Pretty.method(subscriber) + " on class " +
+                            subscriber.getDeclaringClass().getName() + " must have a java.util.List as its @SubscribeTo parameter");
+                }
+                
+                // The subscription is for the type of the elements of the list
+                if (eventType instanceof ParameterizedType) {
+                    eventType = ((ParameterizedType) eventType).getActualTypeArguments()[0];
+                }
+                else {
+                    eventType = Object.class;
+                }
+            }
+        }
+        
         // Get the event qualifiers and the Unqualified
         Set<Annotation> eventQualifiers = new HashSet<Annotation>();
         Unqualified eventUnqualified = null;
@@ -500,7 +715,12 @@ public class DefaultTopicDistributionService implements
             }
         }
         
-        return new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, injectees);
+        SubscriberInfo retVal = new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, injectees);
+        if (async != null) {
+            retVal.asyncQueue = new AsyncQueue(retVal, async);
+        }
+        
+        return retVal;
     }
     
     private void preDestruction(InstanceLifecycleEvent lifecycleEvent) {
@@ -514,18 +734,7 @@ public class DefaultTopicDistributionService implements
             List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
             
             for (SubscriberInfo subscriberInfo : subscribers) {
-                Iterator<WeakReference<Object>> targetIterator = subscriberInfo.targets.iterator();
-                
-                while (targetIterator.hasNext()) {
-                    WeakReference<Object> ref = targetIterator.next();
-                    Object subscriberTarget = ref.get();
-                    if (subscriberTarget == null) {
-                        targetIterator.remove();
-                    }
-                    else if (subscriberTarget == target) {
-                        targetIterator.remove();
-                    }
-                }
+                subscriberInfo.removeTarget(target);
             }
         }
         
@@ -559,6 +768,9 @@ public class DefaultTopicDistributionService implements
     
     @Override
     public void configurationChanged() {
+        // The asynchronous executor service may have been added or removed
+        asyncExecutor = null;
+        
         List<ActiveDescriptor<?>> allDescriptors = locator.getDescriptors(getFilter());
         
         wLock.lock();
@@ -566,15 +778,19 @@ public class DefaultTopicDistributionService implements
             HashSet<ActiveDescriptor<?>> removeMe = new HashSet<ActiveDescriptor<?>>(descriptor2Classes.keySet());
             removeMe.removeAll(allDescriptors);
             
+            HashSet<SubscriberInfo> removedSubscribers = new HashSet<SubscriberInfo>();
             for (ActiveDescriptor<?> parent : removeMe) {
                 Set<Class<?>> clazzes = descriptor2Classes.remove(parent);
                 
                 if (clazzes == null) continue;
                 
                 for (Class<?> clazz : clazzes) {
-                    class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    List<SubscriberInfo> removed = class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    if (removed != null) removedSubscribers.addAll(removed);
                 }
             }
+            
+            removeFromIndex(removedSubscribers);
         }
         finally {
             wLock.unlock();
@@ -584,12 +800,17 @@ public class DefaultTopicDistributionService implements
     }
     
     private static class SubscriberInfo {
+        private final static WeakReference<?>[] NO_TARGETS = new WeakReference<?>[0];
+        
         private final Method method;
-        private final LinkedList<WeakReference<Object>> targets = new LinkedList<WeakReference<Object>>();
+        
+        /** Copy-on-write, only modified with the write lock held */
+        private volatile WeakReference<?>[] targets = NO_TARGETS;
         private final Type eventType;
         private final Set<Annotation> eventQualifiers;
         private final Unqualified unqualified;
         private final InjecteeImpl otherInjectees[];  // There will be a null in the slot for the event
+        private AsyncQueue asyncQueue;  // Null for subscribers called on the publishing thread
         
         private SubscriberInfo(Method method,
                 Type eventType,
@@ -602,19 +823,241 @@ public class DefaultTopicDistributionService implements
             this.unqualified = unqualified;
             this.otherInjectees = otherInjectees;
         }
+        
+        private void addTarget(Object target) {
+            WeakReference<?>[] current = targets;
+            WeakReference<?>[] replacement = new WeakReference<?>[current.length + 1];
+            System.arraycopy(current, 0, replacement, 0, current.length);
+            replacement[current.length] = new WeakReference<Object>(target);
+            
+            targets = replacement;
+        }
+        
+        /**
+         * Removes the given target along with any target that
+         * has been collected
+         * 
+         * @param target The target to remove, or null to only
+         * remove the collected targets
+         */
+        private void removeTarget(Object target) {
+            WeakReference<?>[] current = targets;
+            
+            List<WeakReference<?>> keep = new ArrayList<WeakReference<?>>(current.length);
+            for (WeakReference<?> ref : current) {
+                Object subscriberTarget = ref.get();
+                if (subscriberTarget == null) continue;
+                if (subscriberTarget == target) continue;
+                
+                keep.add(ref);
+            }
+            
+            if (keep.size() == current.length) return;
+            
+            targets = keep.isEmpty() ? NO_TARGETS : keep.toArray(new WeakReference<?>[keep.size()]);
+        }
     }
     
-    private static class FireResults {
-        private final Method subscriberMethod;
+    /**
+     * The queue of messages waiting to be delivered to an {@link AsyncSubscription}.
+     * At most one task per queue is given to the executor at any time, which keeps
+     * the messages for one subscription in order
+     * 
+     * @author jwells
+     *
+     */
+    private class AsyncQueue implements Runnable {
         private final SubscriberInfo subscriberInfo;
-        private final Object target;
+        private final BackpressurePolicy backpressure;
+        private final boolean batch;
+        private final int maxBatchSize;
+        private final ArrayBlockingQueue<QueuedMessage> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
         
-        private FireResults(Method subscriberMethod, SubscriberInfo subscriberInfo, Object target) {
-            this.subscriberMethod = subscriberMethod;
+        private AsyncQueue(SubscriberInfo subscriberInfo, AsyncSubscription async) {
             this.subscriberInfo = subscriberInfo;
-            this.target = target;
+            this.backpressure = async.backpressure();
+            this.batch = async.batch();
+            this.maxBatchSize = (batch) ? async.maxBatchSize() : 1;
+            this.queue = new ArrayBlockingQueue<QueuedMessage>(async.queueSize());
+        }
+        
+        private void enqueue(TopicKey key, Topic<?> topic, Object message) throws InterruptedException {
+            QueuedMessage queued = new QueuedMessage(key, topic, message);
+            
+            switch (backpressure) {
+            case BLOCK:
+                queue.put(queued);
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(queued)) {
+                    queue.poll();
+                }
+                break;
+            case FAIL:
+            default:
+                if (!queue.offer(queued)) {
+                    throw new IllegalStateException("The queue of asynchronous subscription " + Pretty.method(subscriberInfo.method) +
+                            " on class " + subscriberInfo.method.getDeclaringClass().getName() + " is full (" + queue.size() + ")");
+                }
+                break;
+            }
+            
+            schedule();
+        }
+        
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            
+            try {
+                getAsyncExecutor().execute(this);
+            }
+            catch (RuntimeException re) {
+                scheduled.set(false);
+                throw re;
+            }
+        }
+        
+        /**
+         * Delivers at most one batch (or one message when not
+         * batching) and then gives the thread back to the executor.
+         * The messages of a batch all come from the same topic, so
+         * a drained run of messages published to different topics
+         * is delivered as one batch per topic, in order
+         */
+        @Override
+        public void run() {
+            try {
+                List<QueuedMessage> drained = new ArrayList<QueuedMessage>(maxBatchSize);
+                queue.drainTo(drained, maxBatchSize);
+                
+                int start = 0;
+                while (start < drained.size()) {
+                    TopicKey key = drained.get(start).key;
+                    
+                    int end = start + 1;
+                    while (end < drained.size() && key.equals(drained.get(end).key)) {
+                        end++;
+                    }
+                    
+                    deliver(drained.subList(start, end));
+                    start = end;
+                }
+            }
+            finally {
+                scheduled.set(false);
+                
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
         }
         
+        private void deliver(List<QueuedMessage> drained) {
+            Topic<?> topic = drained.get(0).topic;
+            Object message;
+            if (batch) {
+                List<Object> messages = new ArrayList<Object>(drained.size());
+                for (QueuedMessage queued : drained) {
+                    messages.add(queued.message);
+                }
+                
+                message = messages;
+            }
+            else {
+                message = drained.get(0).message;
+            }
+            
+            MultiException errors = null;
+            boolean hasDeadReferences = false;
+            for (WeakReference<?> targetReference : subscriberInfo.targets) {
+                Object target = targetReference.get();
+                if (target == null) {
+                    hasDeadReferences = true;
+                    continue;
+                }
+                
+                try {
+                    fire(message, subscriberInfo.method, subscriberInfo, target, locator);
+                }
+                catch (Throwable th) {
+                    if (errors == null) {
+                        errors = new MultiException(th);
+                    }
+                    else {
+                        errors.addError(th);
+                    }
+                }
+            }
+            
+            if (errors != null) {
+                reportErrors(topic, message, errors);
+            }
+            
+            if (hasDeadReferences) {
+                removeDeadTargets(subscriberInfo);
+            }
+        }
+    }
+    
+    private static class QueuedMessage {
+        private final TopicKey key;
+        private final Topic<?> topic;
+        private final Object message;
+        
+        private QueuedMessage(TopicKey key, Topic<?> topic, Object message) {
+            this.key = key;
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+    
+    private static class AsyncTopicThread extends Thread {
+        private AsyncTopicThread(Runnable r) {
+            super(r);
+            setDaemon(true);
+            setName(getClass().getSimpleName() + "-"
+                    + System.currentTimeMillis());
+        }
+    }
+    
+    private static class AsyncTopicThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new AsyncTopicThread(runnable);
+        }
+    }
+    
+    /**
+     * The key of the topic index, the type of the topic
+     * along with its qualifiers
+     * 
+     * @author jwells
+     *
+     */
+    private static class TopicKey {
+        private final Type eventType;
+        private final Set<Annotation> qualifiers;
+        private final int hashCode;
+        
+        private TopicKey(Type eventType, Set<Annotation> qualifiers) {
+            this.eventType = eventType;
+            this.qualifiers = qualifiers;
+            this.hashCode = eventType.hashCode() ^ qualifiers.hashCode();
+        }
+        
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof TopicKey)) return false;
+            
+            TopicKey other = (TopicKey) o;
+            
+            return eventType.equals(other.eventType) && qualifiers.equals(other.qualifiers);
+        }
     }
     
     /**
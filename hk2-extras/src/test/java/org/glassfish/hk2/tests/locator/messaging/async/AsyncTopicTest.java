@@ -0,0 +1,304 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.messaging.Topic;
+import org.glassfish.hk2.extras.events.AsyncSubscription;
+import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.annotations.ContractsProvided;
+
+/**
+ * Tests for subscribers annotated with {@link AsyncSubscription}
+ * 
+ * @author jwells
+ */
+public class AsyncTopicTest {
+    private final static long WAIT_TIME = 20L * 1000L;
+    
+    private static ServiceLocator createLocator(Class<?>... classes) {
+        ServiceLocator locator = Utilities.getLocatorWithTopics();
+        
+        ServiceLocatorUtilities.addClasses(locator, classes);
+        ServiceLocatorUtilities.addClasses(locator, StringPublisher.class);
+        
+        return locator;
+    }
+    
+    /**
+     * Tests that an asynchronous subscriber gets its messages in
+     * order on a thread other than the publisher
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    public void testAsyncDeliveryInOrder() throws InterruptedException {
+        ServiceLocator locator = createLocator(AsyncSubscriber.class);
+        
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        
+        for (int lcv = 0; lcv < 100; lcv++) {
+            publisher.publish("" + lcv);
+        }
+        
+        long elapsed = 0;
+        while (subscriber.getMessages().size() < 100 && elapsed < WAIT_TIME) {
+            Thread.sleep(5);
+            elapsed += 5;
+        }
+        
+        List<String> messages = subscriber.getMessages();
+        Assert.assertEquals(100, messages.size());
+        for (int lcv = 0; lcv < 100; lcv++) {
+            Assert.assertEquals("" + lcv, messages.get(lcv));
+        }
+        
+        for (Thread thread : subscriber.getThreads()) {
+            Assert.assertNotSame(Thread.currentThread(), thread);
+        }
+    }
+    
+    /**
+     * Tests that queued messages are handed to a batch subscriber
+     * as lists no longer than the maximum batch size
+     */
+    @Test
+    public void testBatchDelivery() {
+        ServiceLocator locator = createLocator(BatchSubscriber.class, ManualExecutor.class);
+        
+        BatchSubscriber subscriber = locator.getService(BatchSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        ManualExecutor executor = locator.getService(ManualExecutor.class);
+        
+        for (int lcv = 0; lcv < 7; lcv++) {
+            publisher.publish("" + lcv);
+        }
+        
+        // Only one drain task is ever outstanding per subscription
+        Assert.assertEquals(1, executor.getNumPending());
+        Assert.assertTrue(subscriber.getBatches().isEmpty());
+        
+        executor.runAll();
+        
+        List<List<String>> batches = subscriber.getBatches();
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(3, batches.get(0).size());
+        Assert.assertEquals(3, batches.get(1).size());
+        Assert.assertEquals(1, batches.get(2).size());
+        
+        Assert.assertEquals("0", batches.get(0).get(0));
+        Assert.assertEquals("6", batches.get(2).get(0));
+    }
+    
+    /**
+     * Tests that the messages of one batch were all
+     * published to the same topic
+     */
+    @Test
+    public void testBatchesDoNotMixTopics() {
+        ServiceLocator locator = createLocator(BatchSubscriber.class, ManualExecutor.class, NamedStringPublisher.class);
+        
+        BatchSubscriber subscriber = locator.getService(BatchSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        NamedStringPublisher namedPublisher = locator.getService(NamedStringPublisher.class);
+        ManualExecutor executor = locator.getService(ManualExecutor.class);
+        
+        publisher.publish("a");
+        publisher.publish("b");
+        namedPublisher.publish("c");
+        publisher.publish("d");
+        
+        executor.runAll();
+        
+        List<List<String>> batches = subscriber.getBatches();
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(2, batches.get(0).size());
+        Assert.assertEquals("a", batches.get(0).get(0));
+        Assert.assertEquals("b", batches.get(0).get(1));
+        Assert.assertEquals(1, batches.get(1).size());
+        Assert.assertEquals("c", batches.get(1).get(0));
+        Assert.assertEquals(1, batches.get(2).size());
+        Assert.assertEquals("d", batches.get(2).get(0));
+    }
+    
+    /**
+     * Tests that a publisher interrupted while waiting for room on
+     * a queue keeps its interrupt and the failure is reported
+     */
+    @Test
+    public void testInterruptedPublisherKeepsInterrupt() {
+        ServiceLocator locator = createLocator(AsyncSubscriber.class, ManualExecutor.class, ErrorHandler.class);
+        
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        ErrorHandler errorHandler = locator.getService(ErrorHandler.class);
+        
+        Thread.currentThread().interrupt();
+        try {
+            publisher.publish("interrupted");
+        }
+        finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        
+        MultiException me = errorHandler.lastError;
+        Assert.assertNotNull(me);
+        Assert.assertTrue(me.getErrors().get(0) instanceof InterruptedException);
+        Assert.assertTrue(subscriber.getMessages().isEmpty());
+    }
+    
+    /**
+     * Tests that the DROP_OLDEST policy keeps the newest messages
+     */
+    @Test
+    public void testDropOldest() {
+        ServiceLocator locator = createLocator(DropOldestSubscriber.class, ManualExecutor.class);
+        
+        DropOldestSubscriber subscriber = locator.getService(DropOldestSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        ManualExecutor executor = locator.getService(ManualExecutor.class);
+        
+        for (int lcv = 0; lcv < 5; lcv++) {
+            publisher.publish("" + lcv);
+        }
+        
+        executor.runAll();
+        
+        List<String> messages = subscriber.getMessages();
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("3", messages.get(0));
+        Assert.assertEquals("4", messages.get(1));
+    }
+    
+    /**
+     * Tests that the FAIL policy reports the rejected message to
+     * the error service and keeps the queued message
+     */
+    @Test
+    public void testFailWhenFull() {
+        ServiceLocator locator = createLocator(FailingQueueSubscriber.class, ManualExecutor.class, ErrorHandler.class);
+        
+        FailingQueueSubscriber subscriber = locator.getService(FailingQueueSubscriber.class);
+        StringPublisher publisher = locator.getService(StringPublisher.class);
+        ManualExecutor executor = locator.getService(ManualExecutor.class);
+        ErrorHandler errorHandler = locator.getService(ErrorHandler.class);
+        
+        publisher.publish("first");
+        Assert.assertNull(errorHandler.lastError);
+        
+        publisher.publish("second");
+        
+        MultiException me = errorHandler.lastError;
+        Assert.assertNotNull(me);
+        Assert.assertTrue(me.getErrors().get(0) instanceof IllegalStateException);
+        Assert.assertEquals("second", errorHandler.lastMessage);
+        Assert.assertEquals(publisher.getTopic(), errorHandler.lastTopic);
+        
+        executor.runAll();
+        
+        List<String> messages = subscriber.getMessages();
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals("first", messages.get(0));
+    }
+    
+    /**
+     * An executor that only runs its tasks when asked, so
+     * that the queueing behavior can be observed
+     * 
+     * @author jwells
+     */
+    @Singleton @Named(AsyncSubscription.EXECUTOR_NAME)
+    @ContractsProvided({ManualExecutor.class, Executor.class})
+    private static class ManualExecutor implements Executor {
+        private final LinkedList<Runnable> pending = new LinkedList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            pending.add(command);
+        }
+        
+        private synchronized int getNumPending() {
+            return pending.size();
+        }
+        
+        private void runAll() {
+            while (true) {
+                Runnable next;
+                synchronized (this) {
+                    if (pending.isEmpty()) return;
+                    next = pending.removeFirst();
+                }
+                
+                next.run();
+            }
+        }
+        
+    }
+    
+    @Singleton
+    private static class ErrorHandler implements DefaultTopicDistributionErrorService {
+        private Topic<?> lastTopic;
+        private Object lastMessage;
+        private MultiException lastError;
+
+        @Override
+        public void subscribersFailed(Topic<?> topic, Object message,
+                MultiException error) {
+            lastTopic = topic;
+            lastMessage = message;
+            lastError = error;
+        }
+        
+    }
+
+}
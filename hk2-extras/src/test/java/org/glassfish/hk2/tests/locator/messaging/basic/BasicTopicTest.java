@@ -396,6 +396,47 @@ public class BasicTopicTest {
         Assert.assertTrue(subscriber.isSubscriptionServiceDead());
     }
     
+    /**
+     * Tests that subscribers created after a topic has already
+     * been published to get the later events
+     */
+    @Test
+    public void testSubscriberCreatedAfterFirstPublishGetsEvents() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics();
+        
+        ServiceLocatorUtilities.addClasses(locator, FooPublisher.class,
+                ColorPublisher.class,
+                PerLookupSubscriber.class,
+                SingletonSubscriber.class,
+                ColorSubscriber.class);
+        
+        FooPublisher publisher = locator.getService(FooPublisher.class);
+        ColorPublisher colorPublisher = locator.getService(ColorPublisher.class);
+        
+        // Nobody is listening yet
+        publisher.publishFoo(5);
+        colorPublisher.publishRedEvent();
+        
+        SingletonSubscriber singletonSubscriber = locator.getService(SingletonSubscriber.class);
+        Assert.assertNull(singletonSubscriber.getAndClearLastEvent());
+        
+        ColorSubscriber colorSubscriber = locator.getService(ColorSubscriber.class);
+        Assert.assertEquals(0, colorSubscriber.getRedCount());
+        
+        publisher.publishFoo(6);
+        colorPublisher.publishRedEvent();
+        colorPublisher.publishGreenEvent();
+        
+        Foo singletonFoo = singletonSubscriber.getAndClearLastEvent();
+        Assert.assertNotNull(singletonFoo);
+        Assert.assertEquals(6, singletonFoo.getFooValue());
+        
+        Assert.assertEquals(1, colorSubscriber.getRedCount());
+        Assert.assertEquals(1, colorSubscriber.getGreenCount());
+        Assert.assertEquals(0, colorSubscriber.getBlackCount());
+        Assert.assertEquals(1, colorSubscriber.getNotRedCount());
+    }
+    
     /**
      * Tests that a publisher that never had any subscribers is a-ok
      */
@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.jmx.api;
+
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.jvnet.hk2.jmx.internal.ServiceLocatorMetrics;
+
+/**
+ * Utilities for publishing the internals of a ServiceLocator to JMX
+ * 
+ * @author jwells
+ *
+ */
+public class HK2JmxUtilities {
+    /**
+     * Starts collecting metrics for the given locator and registers a
+     * {@link ServiceLocatorMetricsMXBean} for it.  The MBean is registered
+     * with the MBeanServer service of the locator if there is one, and
+     * with the platform MBeanServer otherwise.  The MBean is unregistered
+     * when the locator is shut down or when {@link #disableMetrics(ServiceLocator)}
+     * is called.  Calling this method more than once for the same locator
+     * has no further effect
+     * 
+     * @param locator The non-null locator to collect metrics for.  The
+     * metrics of a locator do not include the work done by its parents
+     * @return The name the MBean was registered under
+     */
+    public static ObjectName enableMetrics(ServiceLocator locator) {
+        if (getMetricsHandle(locator) == null) {
+            ServiceLocatorUtilities.addClasses(locator, true, ServiceLocatorMetrics.class);
+        }
+        
+        return ServiceLocatorMetrics.getObjectName(locator);
+    }
+    
+    /**
+     * Stops collecting metrics for the given locator and unregisters
+     * its {@link ServiceLocatorMetricsMXBean}.  Does nothing if metrics
+     * were not enabled for this locator
+     * 
+     * @param locator The non-null locator to stop collecting metrics for
+     */
+    public static void disableMetrics(ServiceLocator locator) {
+        ServiceHandle<?> handle = getMetricsHandle(locator);
+        if (handle == null) return;
+        
+        ActiveDescriptor<?> descriptor = handle.getActiveDescriptor();
+        
+        handle.destroy();
+        ServiceLocatorUtilities.removeOneDescriptor(locator, descriptor);
+    }
+    
+    private static ServiceHandle<?> getMetricsHandle(ServiceLocator locator) {
+        List<ServiceHandle<ServiceLocatorMetrics>> handles = locator.getAllServiceHandles(ServiceLocatorMetrics.class);
+        for (ServiceHandle<ServiceLocatorMetrics> handle : handles) {
+            if (handle.getActiveDescriptor().getLocatorId().longValue() == locator.getLocatorId()) {
+                return handle;
+            }
+        }
+        
+        return null;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.jmx.api;
+
+/**
+ * The JMX view of the internals of one ServiceLocator.  An instance
+ * is registered for every locator on which
+ * {@link HK2JmxUtilities#enableMetrics(org.glassfish.hk2.api.ServiceLocator)}
+ * has been called.  All times are in nanoseconds.  The histograms
+ * count events per bucket, where the upper bound of each bucket is
+ * given by {@link #getHistogramUpperBoundsNanos()}.  The percentiles
+ * are the 50th, 90th and 99th, each estimated as the upper bound of
+ * the bucket it falls into
+ * 
+ * @author jwells
+ *
+ */
+public interface ServiceLocatorMetricsMXBean {
+    /**
+     * @return The name of the locator being measured
+     */
+    public String getLocatorName();
+    
+    /**
+     * @return The id of the locator being measured
+     */
+    public long getLocatorId();
+    
+    /**
+     * @return The number of descriptors in the locator, not
+     * including the descriptors of the parents
+     */
+    public int getNumberOfDescriptors();
+    
+    /**
+     * @return The current number of values in the service cache
+     */
+    public int getServiceCacheSize();
+    
+    /**
+     * @return The maximum number of values in the service cache
+     */
+    public int getServiceCacheMaximumSize();
+    
+    /**
+     * @return The percentage of service cache lookups that were hits
+     */
+    public double getServiceCacheHitRate();
+    
+    /**
+     * @return The sizes of the T1, T2, B1 and B2 lists of the
+     * service cache, in that order
+     */
+    public int[] getServiceCacheListSizes();
+    
+    /**
+     * @return The number of times a configuration change has
+     * invalidated cached lookups
+     */
+    public long getCacheInvalidationCount();
+    
+    /**
+     * @return The number of services created, including failures
+     */
+    public long getServicesCreated();
+    
+    /**
+     * @return The number of service creations that failed
+     */
+    public long getServiceCreationFailures();
+    
+    /**
+     * @return The total time spent creating services.  The time of a
+     * service includes the time of the services injected into it
+     */
+    public long getTotalCreationTimeNanos();
+    
+    /**
+     * @return The histogram of service creation times
+     */
+    public long[] getCreationTimeHistogram();
+    
+    /**
+     * @return The percentiles of service creation times
+     */
+    public long[] getCreationTimePercentilesNanos();
+    
+    /**
+     * @return The number of descriptors reified
+     */
+    public long getDescriptorsReified();
+    
+    /**
+     * @return The total time spent reifying descriptors
+     */
+    public long getTotalReificationTimeNanos();
+    
+    /**
+     * @return The histogram of descriptor reification times
+     */
+    public long[] getReificationTimeHistogram();
+    
+    /**
+     * @return The percentiles of descriptor reification times
+     */
+    public long[] getReificationTimePercentilesNanos();
+    
+    /**
+     * @return The number of lookups and injection point resolutions
+     */
+    public long getLookups();
+    
+    /**
+     * @return The number of lookups that found no service
+     */
+    public long getLookupMisses();
+    
+    /**
+     * @return The total time spent finding the best descriptor of lookups
+     */
+    public long getTotalLookupTimeNanos();
+    
+    /**
+     * @return The histogram of lookup times
+     */
+    public long[] getLookupTimeHistogram();
+    
+    /**
+     * @return The percentiles of lookup times
+     */
+    public long[] getLookupTimePercentilesNanos();
+    
+    /**
+     * @return The upper bound of each bucket of the histograms.  The
+     * last bucket has no upper bound and is given as Long.MAX_VALUE
+     */
+    public long[] getHistogramUpperBoundsNanos();
+    
+    /**
+     * @return The services with the most total creation time, slowest
+     * first, each described as implementation, service id, number of
+     * creations and total creation time
+     */
+    public String[] getSlowestServices();
+    
+    /**
+     * Sets all the counters and histograms back to zero
+     */
+    public void reset();
+
+}
@@ -0,0 +1,165 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.jmx.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with exponentially growing
+ * buckets, from one microsecond up to about four seconds
+ * 
+ * @author jwells
+ *
+ */
+public class Histogram {
+    private final static long UPPER_BOUNDS[];
+    
+    static {
+        UPPER_BOUNDS = new long[13];
+        
+        long bound = 1000L;
+        for (int lcv = 0; lcv < UPPER_BOUNDS.length - 1; lcv++) {
+            UPPER_BOUNDS[lcv] = bound;
+            bound *= 4;
+        }
+        
+        UPPER_BOUNDS[UPPER_BOUNDS.length - 1] = Long.MAX_VALUE;
+    }
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(UPPER_BOUNDS.length);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    
+    /**
+     * Records one duration
+     * 
+     * @param nanos The duration to record
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (nanos > UPPER_BOUNDS[bucket]) {
+            bucket++;
+        }
+        
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+    }
+    
+    /**
+     * @return The number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return The sum of all durations recorded
+     */
+    public long getTotal() {
+        return total.get();
+    }
+    
+    /**
+     * @return A copy of the counts of each bucket
+     */
+    public long[] getBuckets() {
+        long retVal[] = new long[buckets.length()];
+        for (int lcv = 0; lcv < retVal.length; lcv++) {
+            retVal[lcv] = buckets.get(lcv);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Estimates a percentile of the recorded durations as the upper
+     * bound of the bucket that the percentile falls into
+     * 
+     * @param percentile The percentile wanted, from 0 to 100
+     * @return The upper bound of the bucket holding the percentile, or
+     * zero if no duration has been recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("The percentile " + percentile + " is not between 0 and 100");
+        }
+        
+        long counts[] = getBuckets();
+        
+        long recorded = 0L;
+        for (long bucketCount : counts) {
+            recorded += bucketCount;
+        }
+        if (recorded == 0L) return 0L;
+        
+        long rank = (long) Math.ceil((percentile / 100.0) * recorded);
+        if (rank < 1L) rank = 1L;
+        
+        long seen = 0L;
+        for (int lcv = 0; lcv < counts.length; lcv++) {
+            seen += counts[lcv];
+            if (seen >= rank) return UPPER_BOUNDS[lcv];
+        }
+        
+        return UPPER_BOUNDS[UPPER_BOUNDS.length - 1];
+    }
+    
+    /**
+     * Sets all counts back to zero
+     */
+    public void reset() {
+        for (int lcv = 0; lcv < buckets.length(); lcv++) {
+            buckets.set(lcv, 0L);
+        }
+        
+        count.set(0L);
+        total.set(0L);
+    }
+    
+    /**
+     * @return A copy of the upper bound of each bucket
+     */
+    public static long[] getUpperBounds() {
+        return UPPER_BOUNDS.clone();
+    }
+}
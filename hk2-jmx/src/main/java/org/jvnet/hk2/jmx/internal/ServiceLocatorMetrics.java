@@ -0,0 +1,483 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.jmx.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.DynamicConfigurationListener;
+import org.glassfish.hk2.api.IndexedFilter;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.reflection.Logger;
+import org.jvnet.hk2.annotations.Optional;
+import org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean;
+
+/**
+ * Collects the instrumentation events of one locator and publishes
+ * them as an MBean.  The MBean is registered with the MBeanServer
+ * service of the locator if there is one, and with the platform
+ * MBeanServer otherwise.  The statistics of a service are dropped
+ * when its descriptor is removed from the locator
+ * 
+ * @author jwells
+ *
+ */
+@Singleton
+@Visibility(DescriptorVisibility.LOCAL)
+public class ServiceLocatorMetrics implements ServiceLocatorInstrumentation, ServiceLocatorMetricsMXBean,
+        DynamicConfigurationListener {
+    private final static String DOMAIN = "org.glassfish.hk2";
+    private final static int NUM_SLOWEST = 10;
+    private final static double PERCENTILES[] = { 50.0, 90.0, 99.0 };
+    
+    private final ServiceLocator locator;
+    private final ServiceLocatorRuntimeBean runtime;
+    private final MBeanServer server;
+    private final ObjectName objectName;
+    
+    private final Histogram creations = new Histogram();
+    private final AtomicLong creationFailures = new AtomicLong();
+    private final Histogram reifications = new Histogram();
+    private final Histogram lookups = new Histogram();
+    private final AtomicLong lookupMisses = new AtomicLong();
+    private final ConcurrentHashMap<Long, ServiceStatistics> perService =
+            new ConcurrentHashMap<Long, ServiceStatistics>();
+    
+    @Inject
+    private ServiceLocatorMetrics(ServiceLocator locator,
+            ServiceLocatorRuntimeBean runtime,
+            @Optional MBeanServer server) {
+        this.locator = locator;
+        this.runtime = runtime;
+        this.server = (server == null) ? ManagementFactory.getPlatformMBeanServer() : server;
+        this.objectName = getObjectName(locator);
+    }
+    
+    /**
+     * Gets the name under which the metrics of the given locator are registered
+     * 
+     * @param locator The locator whose metrics are wanted
+     * @return The JMX name of the metrics of the locator
+     */
+    public static ObjectName getObjectName(ServiceLocator locator) {
+        try {
+            return new ObjectName(DOMAIN + ":type=ServiceLocator,name=" +
+                ObjectName.quote(locator.getName()) + ",id=" + locator.getLocatorId());
+        }
+        catch (MalformedObjectNameException e) {
+            throw new MultiException(e);
+        }
+    }
+    
+    @PostConstruct
+    private void register() {
+        try {
+            server.registerMBean(this, objectName);
+        }
+        catch (JMException e) {
+            throw new MultiException(e);
+        }
+    }
+    
+    @PreDestroy
+    private void unregister() {
+        try {
+            server.unregisterMBean(objectName);
+        }
+        catch (JMException e) {
+            Logger.getLogger().debug("ServiceLocatorMetrics", "unregister", e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation#serviceCreated(org.glassfish.hk2.api.ActiveDescriptor, long, boolean)
+     */
+    @Override
+    public void serviceCreated(ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded) {
+        creations.record(elapsedNanos);
+        if (!succeeded) creationFailures.incrementAndGet();
+        
+        Long serviceId = descriptor.getServiceId();
+        if (serviceId == null || descriptor.getLocatorId() == null) return;
+        
+        ServiceStatistics stats = perService.get(serviceId);
+        if (stats == null) {
+            stats = new ServiceStatistics(descriptor);
+            
+            ServiceStatistics existing = perService.putIfAbsent(serviceId, stats);
+            if (existing != null) stats = existing;
+        }
+        
+        stats.count.incrementAndGet();
+        stats.nanos.addAndGet(elapsedNanos);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation#descriptorReified(org.glassfish.hk2.api.ActiveDescriptor, long, boolean)
+     */
+    @Override
+    public void descriptorReified(ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded) {
+        reifications.record(elapsedNanos);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation#serviceLookedUp(java.lang.reflect.Type, long, boolean)
+     */
+    @Override
+    public void serviceLookedUp(Type contractOrImpl, long elapsedNanos, boolean found) {
+        lookups.record(elapsedNanos);
+        if (!found) lookupMisses.incrementAndGet();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation#cachesInvalidated(java.util.Set)
+     */
+    @Override
+    public void cachesInvalidated(Set<String> affectedContracts) {
+        // Counted by the runtime bean
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.DynamicConfigurationListener#configurationChanged()
+     */
+    @Override
+    public void configurationChanged() {
+        Iterator<ServiceStatistics> iterator = perService.values().iterator();
+        while (iterator.hasNext()) {
+            ServiceStatistics stats = iterator.next();
+            
+            if (locator.getBestDescriptor(stats.filter) == null) {
+                // Unbound, its id will never be used again
+                iterator.remove();
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLocatorName()
+     */
+    @Override
+    public String getLocatorName() {
+        return locator.getName();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLocatorId()
+     */
+    @Override
+    public long getLocatorId() {
+        return locator.getLocatorId();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getNumberOfDescriptors()
+     */
+    @Override
+    public int getNumberOfDescriptors() {
+        return runtime.getNumberOfDescriptors();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheSize()
+     */
+    @Override
+    public int getServiceCacheSize() {
+        return runtime.getServiceCacheSize();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheMaximumSize()
+     */
+    @Override
+    public int getServiceCacheMaximumSize() {
+        return runtime.getServiceCacheMaximumSize();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheHitRate()
+     */
+    @Override
+    public double getServiceCacheHitRate() {
+        return runtime.getServiceCacheHitRate();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheListSizes()
+     */
+    @Override
+    public int[] getServiceCacheListSizes() {
+        return new int[] {
+                runtime.getServiceCacheT1Size(),
+                runtime.getServiceCacheT2Size(),
+                runtime.getServiceCacheB1Size(),
+                runtime.getServiceCacheB2Size()
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCacheInvalidationCount()
+     */
+    @Override
+    public long getCacheInvalidationCount() {
+        return runtime.getCacheInvalidationCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServicesCreated()
+     */
+    @Override
+    public long getServicesCreated() {
+        return creations.getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCreationFailures()
+     */
+    @Override
+    public long getServiceCreationFailures() {
+        return creationFailures.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getTotalCreationTimeNanos()
+     */
+    @Override
+    public long getTotalCreationTimeNanos() {
+        return creations.getTotal();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCreationTimeHistogram()
+     */
+    @Override
+    public long[] getCreationTimeHistogram() {
+        return creations.getBuckets();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCreationTimePercentilesNanos()
+     */
+    @Override
+    public long[] getCreationTimePercentilesNanos() {
+        return getPercentiles(creations);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getDescriptorsReified()
+     */
+    @Override
+    public long getDescriptorsReified() {
+        return reifications.getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getTotalReificationTimeNanos()
+     */
+    @Override
+    public long getTotalReificationTimeNanos() {
+        return reifications.getTotal();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getReificationTimeHistogram()
+     */
+    @Override
+    public long[] getReificationTimeHistogram() {
+        return reifications.getBuckets();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getReificationTimePercentilesNanos()
+     */
+    @Override
+    public long[] getReificationTimePercentilesNanos() {
+        return getPercentiles(reifications);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookups()
+     */
+    @Override
+    public long getLookups() {
+        return lookups.getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupMisses()
+     */
+    @Override
+    public long getLookupMisses() {
+        return lookupMisses.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getTotalLookupTimeNanos()
+     */
+    @Override
+    public long getTotalLookupTimeNanos() {
+        return lookups.getTotal();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTimeHistogram()
+     */
+    @Override
+    public long[] getLookupTimeHistogram() {
+        return lookups.getBuckets();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTimePercentilesNanos()
+     */
+    @Override
+    public long[] getLookupTimePercentilesNanos() {
+        return getPercentiles(lookups);
+    }
+
+    private static long[] getPercentiles(Histogram histogram) {
+        long retVal[] = new long[PERCENTILES.length];
+        for (int lcv = 0; lcv < PERCENTILES.length; lcv++) {
+            retVal[lcv] = histogram.getPercentile(PERCENTILES[lcv]);
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getHistogramUpperBoundsNanos()
+     */
+    @Override
+    public long[] getHistogramUpperBoundsNanos() {
+        return Histogram.getUpperBounds();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getSlowestServices()
+     */
+    @Override
+    public String[] getSlowestServices() {
+        List<ServiceStatistics> all = new ArrayList<ServiceStatistics>(perService.values());
+        Collections.sort(all, new Comparator<ServiceStatistics>() {
+
+            @Override
+            public int compare(ServiceStatistics o1, ServiceStatistics o2) {
+                long n1 = o1.nanos.get();
+                long n2 = o2.nanos.get();
+                
+                if (n1 > n2) return -1;
+                if (n1 < n2) return 1;
+                return 0;
+            }
+            
+        });
+        
+        int size = Math.min(NUM_SLOWEST, all.size());
+        String retVal[] = new String[size];
+        for (int lcv = 0; lcv < size; lcv++) {
+            retVal[lcv] = all.get(lcv).toString();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#reset()
+     */
+    @Override
+    public void reset() {
+        creations.reset();
+        creationFailures.set(0L);
+        reifications.reset();
+        lookups.reset();
+        lookupMisses.set(0L);
+        perService.clear();
+    }
+    
+    @Override
+    public String toString() {
+        return "ServiceLocatorMetrics(" + objectName + "," + System.identityHashCode(this) + ")";
+    }
+    
+    private static class ServiceStatistics {
+        private final String implementation;
+        private final long serviceId;
+        private final IndexedFilter filter;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        
+        private ServiceStatistics(ActiveDescriptor<?> descriptor) {
+            this.implementation = descriptor.getImplementation();
+            this.serviceId = descriptor.getServiceId();
+            this.filter = BuilderHelper.createSpecificDescriptorFilter(descriptor);
+        }
+        
+        @Override
+        public String toString() {
+            return implementation + " (id=" + serviceId + "): " + count.get() + " creations, " +
+                nanos.get() + "ns";
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.jmx;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.jmx.internal.Histogram;
+
+/**
+ * @author jwells
+ *
+ */
+public class HistogramTest {
+    /**
+     * Every bucket holds the durations up to and including its upper
+     * bound, and the last bucket holds everything above
+     */
+    @Test
+    public void testBuckets() {
+        long bounds[] = Histogram.getUpperBounds();
+        Assert.assertEquals(13, bounds.length);
+        Assert.assertEquals(1000L, bounds[0]);
+        Assert.assertEquals(4000L, bounds[1]);
+        Assert.assertEquals(Long.MAX_VALUE, bounds[bounds.length - 1]);
+        
+        Histogram histogram = new Histogram();
+        histogram.record(0L);
+        histogram.record(1000L);
+        histogram.record(1001L);
+        histogram.record(bounds[bounds.length - 2] + 1);
+        
+        long buckets[] = histogram.getBuckets();
+        Assert.assertEquals(bounds.length, buckets.length);
+        Assert.assertEquals(2L, buckets[0]);
+        Assert.assertEquals(1L, buckets[1]);
+        Assert.assertEquals(1L, buckets[buckets.length - 1]);
+        
+        Assert.assertEquals(4L, histogram.getCount());
+        Assert.assertEquals(2001L + bounds[bounds.length - 2] + 1, histogram.getTotal());
+        
+        // A copy is returned
+        buckets[0] = 100L;
+        Assert.assertEquals(2L, histogram.getBuckets()[0]);
+        bounds[0] = 5L;
+        Assert.assertEquals(1000L, Histogram.getUpperBounds()[0]);
+    }
+    
+    /**
+     * Percentiles are the upper bound of the bucket they fall into
+     */
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0L, histogram.getPercentile(50.0));
+        
+        // 90 in the first bucket, 9 in the second and 1 in the third
+        for (int lcv = 0; lcv < 90; lcv++) {
+            histogram.record(500L);
+        }
+        for (int lcv = 0; lcv < 9; lcv++) {
+            histogram.record(2000L);
+        }
+        histogram.record(10000L);
+        
+        Assert.assertEquals(1000L, histogram.getPercentile(0.0));
+        Assert.assertEquals(1000L, histogram.getPercentile(50.0));
+        Assert.assertEquals(1000L, histogram.getPercentile(90.0));
+        Assert.assertEquals(4000L, histogram.getPercentile(90.5));
+        Assert.assertEquals(4000L, histogram.getPercentile(99.0));
+        Assert.assertEquals(16000L, histogram.getPercentile(100.0));
+    }
+    
+    /**
+     * Percentiles must be between 0 and 100
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadPercentile() {
+        new Histogram().getPercentile(100.5);
+    }
+    
+    /**
+     * Reset sets everything back to zero
+     */
+    @Test
+    public void testReset() {
+        Histogram histogram = new Histogram();
+        histogram.record(5L);
+        histogram.record(5000000L);
+        
+        histogram.reset();
+        
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getTotal());
+        for (long bucket : histogram.getBuckets()) {
+            Assert.assertEquals(0L, bucket);
+        }
+        Assert.assertEquals(0L, histogram.getPercentile(99.0));
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.jvnet.hk2.jmx.api.HK2JmxUtilities;
+import org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean;
+import org.jvnet.hk2.jmx.internal.Histogram;
+import org.jvnet.hk2.jmx.internal.ServiceLocatorMetrics;
+
+/**
+ * @author jwells
+ *
+ */
+public class MetricsTest {
+    private final static MBeanServer PLATFORM = ManagementFactory.getPlatformMBeanServer();
+    
+    private static ServiceLocator create() {
+        return ServiceLocatorFactory.getInstance().create(null);
+    }
+    
+    /**
+     * The MBean is registered once, and unregistered both when metrics
+     * are disabled and when the locator is shut down
+     */
+    @Test
+    public void testRegistrationAndUnregistration() {
+        ServiceLocator locator = create();
+        
+        ObjectName name = HK2JmxUtilities.enableMetrics(locator);
+        Assert.assertEquals(ServiceLocatorMetrics.getObjectName(locator), name);
+        Assert.assertTrue(PLATFORM.isRegistered(name));
+        
+        Assert.assertEquals(name, HK2JmxUtilities.enableMetrics(locator));
+        Assert.assertEquals(1, locator.getAllServiceHandles(ServiceLocatorMetrics.class).size());
+        
+        HK2JmxUtilities.disableMetrics(locator);
+        Assert.assertFalse(PLATFORM.isRegistered(name));
+        Assert.assertTrue(locator.getAllServiceHandles(ServiceLocatorMetrics.class).isEmpty());
+        
+        // Does nothing once disabled
+        HK2JmxUtilities.disableMetrics(locator);
+        
+        HK2JmxUtilities.enableMetrics(locator);
+        Assert.assertTrue(PLATFORM.isRegistered(name));
+        
+        locator.shutdown();
+        Assert.assertFalse(PLATFORM.isRegistered(name));
+    }
+    
+    /**
+     * An MBeanServer service of the locator is used
+     * rather than the platform MBeanServer
+     */
+    @Test
+    public void testMBeanServerServiceIsUsed() {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        
+        ServiceLocator locator = create();
+        ServiceLocatorUtilities.addOneConstant(locator, server, null, MBeanServer.class);
+        
+        ObjectName name = HK2JmxUtilities.enableMetrics(locator);
+        
+        Assert.assertTrue(server.isRegistered(name));
+        Assert.assertFalse(PLATFORM.isRegistered(name));
+        
+        locator.shutdown();
+        Assert.assertFalse(server.isRegistered(name));
+    }
+    
+    /**
+     * The counters, histograms and percentiles seen through JMX follow
+     * the services created and looked up, and are set back by reset
+     * 
+     * @throws Exception on failure
+     */
+    @Test
+    public void testCounters() throws Exception {
+        ServiceLocator locator = create();
+        ServiceLocatorUtilities.addClasses(locator, CountedService.class, FailingService.class);
+        
+        ObjectName name = HK2JmxUtilities.enableMetrics(locator);
+        try {
+            ServiceLocatorMetricsMXBean metrics = JMX.newMXBeanProxy(PLATFORM, name,
+                    ServiceLocatorMetricsMXBean.class);
+            
+            Assert.assertEquals(locator.getName(), metrics.getLocatorName());
+            Assert.assertEquals(locator.getLocatorId(), metrics.getLocatorId());
+            Assert.assertEquals(locator.getService(ServiceLocatorRuntimeBean.class).getNumberOfDescriptors(),
+                    metrics.getNumberOfDescriptors());
+            Assert.assertTrue(Arrays.equals(Histogram.getUpperBounds(), metrics.getHistogramUpperBoundsNanos()));
+            
+            metrics.reset();
+            Assert.assertEquals(0L, metrics.getServicesCreated());
+            Assert.assertEquals(0L, metrics.getLookups());
+            
+            for (int lcv = 0; lcv < 3; lcv++) {
+                Assert.assertNotNull(locator.getService(CountedService.class));
+            }
+            
+            try {
+                locator.getService(FailingService.class);
+                Assert.fail("FailingService should have failed");
+            }
+            catch (MultiException me) {
+                // Expected
+            }
+            
+            Assert.assertNull(locator.getService(MetricsTest.class));
+            
+            Assert.assertEquals(4L, metrics.getServicesCreated());
+            Assert.assertEquals(1L, metrics.getServiceCreationFailures());
+            Assert.assertEquals(4L, sum(metrics.getCreationTimeHistogram()));
+            Assert.assertTrue(metrics.getTotalCreationTimeNanos() > 0L);
+            assertPercentiles(metrics.getCreationTimePercentilesNanos());
+            
+            Assert.assertTrue(metrics.getLookups() >= 5L);
+            Assert.assertTrue(metrics.getLookupMisses() >= 1L);
+            Assert.assertEquals(metrics.getLookups(), sum(metrics.getLookupTimeHistogram()));
+            assertPercentiles(metrics.getLookupTimePercentilesNanos());
+            
+            Assert.assertEquals(metrics.getDescriptorsReified(), sum(metrics.getReificationTimeHistogram()));
+            
+            String slowest[] = metrics.getSlowestServices();
+            Assert.assertEquals(2, slowest.length);
+            Assert.assertTrue(contains(slowest, CountedService.class.getName() + " "));
+            Assert.assertTrue(contains(slowest, FailingService.class.getName() + " "));
+            
+            metrics.reset();
+            Assert.assertEquals(0L, metrics.getServicesCreated());
+            Assert.assertEquals(0L, metrics.getServiceCreationFailures());
+            Assert.assertEquals(0L, sum(metrics.getCreationTimeHistogram()));
+            Assert.assertEquals(0, metrics.getSlowestServices().length);
+        }
+        finally {
+            locator.shutdown();
+        }
+    }
+    
+    /**
+     * The statistics of a service are dropped when it is unbound
+     */
+    @Test
+    public void testUnboundServicesAreDropped() {
+        ServiceLocator locator = create();
+        ServiceLocatorUtilities.addClasses(locator, CountedService.class);
+        
+        HK2JmxUtilities.enableMetrics(locator);
+        try {
+            ServiceLocatorMetrics metrics = locator.getService(ServiceLocatorMetrics.class);
+            metrics.reset();
+            
+            locator.getService(CountedService.class);
+            Assert.assertTrue(contains(metrics.getSlowestServices(), CountedService.class.getName() + " "));
+            
+            ServiceLocatorUtilities.removeFilter(locator,
+                    BuilderHelper.createContractFilter(CountedService.class.getName()));
+            
+            Assert.assertFalse(contains(metrics.getSlowestServices(), CountedService.class.getName() + " "));
+            
+            // The creation itself is still counted
+            Assert.assertEquals(1L, metrics.getServicesCreated());
+        }
+        finally {
+            locator.shutdown();
+        }
+    }
+    
+    private static long sum(long buckets[]) {
+        long retVal = 0L;
+        for (long bucket : buckets) {
+            retVal += bucket;
+        }
+        
+        return retVal;
+    }
+    
+    private static void assertPercentiles(long percentiles[]) {
+        Assert.assertEquals(3, percentiles.length);
+        Assert.assertTrue(percentiles[0] > 0L);
+        Assert.assertTrue(percentiles[0] <= percentiles[1]);
+        Assert.assertTrue(percentiles[1] <= percentiles[2]);
+    }
+    
+    private static boolean contains(String descriptions[], String prefix) {
+        for (String description : descriptions) {
+            if (description.startsWith(prefix)) return true;
+        }
+        
+        return false;
+    }
+
+}
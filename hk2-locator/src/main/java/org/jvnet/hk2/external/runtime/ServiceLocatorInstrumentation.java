@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.external.runtime;
+
+import java.lang.reflect.Type;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Receives timing and cache events from the internals of a ServiceLocator.
+ * Instrumentation is off unless at least one service of this contract is
+ * bound into the locator, in which case every implementation of this
+ * contract in that locator (not in its parents) is told about every event.
+ * When no implementation is bound the locator does not even read the clock.
+ * <p>
+ * Like {@link ServiceLocatorRuntimeBean} this contract is specific to this
+ * implementation of the HK2 API, and the set of events may change in the
+ * next version of HK2.
+ * <p>
+ * Implementations are called on the thread doing the work, sometimes while
+ * internal locks are held, and so must be fast, thread safe, and must not
+ * look up or create services.  Exceptions thrown by implementations are
+ * ignored
+ * 
+ * @author jwells
+ *
+ */
+@Contract
+public interface ServiceLocatorInstrumentation {
+    /**
+     * Called after the create method of a descriptor has finished.  The
+     * elapsed time includes the creation of any services injected into
+     * the created service
+     * 
+     * @param descriptor The descriptor of the service that was created
+     * @param elapsedNanos The time spent creating the service
+     * @param succeeded false if the creation failed with an exception
+     */
+    public void serviceCreated(ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded);
+    
+    /**
+     * Called after a descriptor has been reified by the locator
+     * 
+     * @param descriptor The descriptor that was reified
+     * @param elapsedNanos The time spent analyzing the implementation class
+     * @param succeeded false if errors were found while reifying
+     */
+    public void descriptorReified(ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded);
+    
+    /**
+     * Called after the locator has found the best descriptor for a lookup
+     * or an injection point, but before the service itself is created
+     * 
+     * @param contractOrImpl The type that was looked up
+     * @param elapsedNanos The time spent finding the best descriptor
+     * @param found true if a descriptor was found
+     */
+    public void serviceLookedUp(Type contractOrImpl, long elapsedNanos, boolean found);
+    
+    /**
+     * Called when a configuration change in this locator has made the
+     * cached lookups of the given contracts stale
+     * 
+     * @param affectedContracts The names of the contracts whose cached
+     * lookups were invalidated.  Must not be modified
+     */
+    public void cachesInvalidated(Set<String> affectedContracts);
+
+}
@@ -39,6 +39,10 @@
  */
 package org.jvnet.hk2.external.runtime;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.jvnet.hk2.annotations.Contract;
 
 /**
@@ -106,6 +110,60 @@ public interface ServiceLocatorRuntimeBean {
      */
     public void clearServiceCache();
     
+    /**
+     * Returns the percentage of lookups in the HK2 service
+     * cache that were hits since the cache was last cleared
+     * 
+     * @return The hit rate of the HK2 service cache, between
+     * 0 and 100, or 0 if there have been no lookups
+     */
+    public double getServiceCacheHitRate();
+    
+    /**
+     * Returns the number of entries of the HK2 service
+     * cache that have been used once recently (the T1
+     * list of the CAR algorithm)
+     * 
+     * @return The size of the T1 list of the service cache
+     */
+    public int getServiceCacheT1Size();
+    
+    /**
+     * Returns the number of entries of the HK2 service
+     * cache that have been used more than once recently
+     * (the T2 list of the CAR algorithm)
+     * 
+     * @return The size of the T2 list of the service cache
+     */
+    public int getServiceCacheT2Size();
+    
+    /**
+     * Returns the number of keys recently evicted from the
+     * T1 list of the HK2 service cache (the B1 list of the
+     * CAR algorithm)
+     * 
+     * @return The size of the B1 list of the service cache
+     */
+    public int getServiceCacheB1Size();
+    
+    /**
+     * Returns the number of keys recently evicted from the
+     * T2 list of the HK2 service cache (the B2 list of the
+     * CAR algorithm)
+     * 
+     * @return The size of the B2 list of the service cache
+     */
+    public int getServiceCacheB2Size();
+    
+    /**
+     * Returns the number of times a configuration change
+     * has invalidated cached lookups in this ServiceLocator
+     * 
+     * @return The number of cache invalidations since this
+     * ServiceLocator was created
+     */
+    public long getCacheInvalidationCount();
+    
     /**
      * Returns the current size of the HK2 reflection
      * cache.  The reflection cache is used to minimize
@@ -125,5 +183,44 @@ public interface ServiceLocatorRuntimeBean {
      * until the cache can be built back up
      */
     public void clearReflectionCache();
+    
+    /**
+     * Writes the results of analyzing the classes of the reified
+     * services of this ServiceLocator (not including its parents)
+     * to the given stream.  The image can be given to
+     * {@link #loadAnalysisImage(InputStream)} of a ServiceLocator
+     * started later, which will then not need to analyze those
+     * classes again as long as they have not changed
+     * 
+     * @param os The stream to write the image to, which is not closed
+     * @return The number of services written to the image
+     * @throws IOException On a failure to write to the stream
+     */
+    public int writeAnalysisImage(OutputStream os) throws IOException;
+    
+    /**
+     * Reads an image written by {@link #writeAnalysisImage(OutputStream)}.
+     * Services of this ServiceLocator reified after this call use the
+     * analysis in the image for any class that has not changed since
+     * the image was written
+     * 
+     * @param is The stream to read the image from, which is not closed
+     * @return The number of services in the image
+     * @throws IOException If the stream could not be read or does not
+     * hold an image of a version this ServiceLocator can read
+     */
+    public int loadAnalysisImage(InputStream is) throws IOException;
+    
+    /**
+     * Returns the number of services of this ServiceLocator that were
+     * reified with the analysis in the image given to the last call
+     * of {@link #loadAnalysisImage(InputStream)}, rather than by
+     * analyzing their classes.  An entry of the image whose classes
+     * have changed since it was written is not counted
+     * 
+     * @return The number of services reified from the current
+     * analysis image, or zero if no image has been loaded
+     */
+    public int getAnalysisImageHits();
 
 }
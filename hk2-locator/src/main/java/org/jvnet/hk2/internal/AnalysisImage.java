@@ -0,0 +1,870 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.NamedImpl;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * The results of analyzing the classes of reified services, written from a
+ * running locator and read back on a later start so that reification need
+ * not analyze the classes again.  For each class descriptor the image records
+ * the constructor, initializer fields and methods, postConstruct and preDestroy
+ * methods, qualifiers, scope and contract closure that were chosen, and a digest
+ * of the bytes of the class and of all of its non-platform super types.
+ * <p>
+ * An entry is only used if the digest still matches the classes that are loaded,
+ * otherwise the class is analyzed as usual.  The members are found again by their
+ * recorded names, which is much cheaper than analyzing the whole hierarchy of the class
+ * <p>
+ * The layout of the file (all numbers are big-endian, all strings are modified UTF-8) is:
+ * <UL>
+ * <LI>magic, version, entry count</LI>
+ * <LI>for each entry its key, the digest and then the recorded analysis</LI>
+ * </UL>
+ * 
+ * @author jwells
+ *
+ */
+public class AnalysisImage {
+    /** The first four bytes of every analysis image ("HK2I") */
+    public final static int MAGIC = 0x484B3249;
+    
+    /** The version of the format written by this class */
+    public final static int VERSION = 1;
+    
+    private final static String DIGEST_ALGORITHM = "SHA-1";
+    private final static String DOT_CLASS = ".class";
+    private final static char KEY_SEPARATOR = '\n';
+    private final static int NOT_RECORDED = -1;
+    
+    private final Map<String, Entry> entries;
+    private final AtomicInteger hits = new AtomicInteger();
+    
+    /** Digests of single classes, shared between the entries of this image */
+    private final Map<Class<?>, byte[]> classDigests =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, byte[]>());
+    
+    private AnalysisImage(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+    
+    /**
+     * @return The number of entries in this image
+     */
+    public int getNumberOfEntries() {
+        return entries.size();
+    }
+    
+    /**
+     * @return The number of times an entry of this image still matched
+     * its class and was used in place of analyzing the class
+     */
+    /* package */ int getNumberOfHits() {
+        return hits.get();
+    }
+    
+    /**
+     * Writes the analysis of every reified class descriptor given
+     * 
+     * @param descriptors The descriptors to write, unreified ones are skipped
+     * @param recordMembers true if the members chosen by the default class analyzer
+     * with only the Inject annotation should be recorded
+     * @param os The stream to write to, which is not closed
+     * @return The number of entries written
+     * @throws IOException On a failure to write
+     */
+    /* package */ static int write(SystemDescriptor<?> descriptors[],
+            boolean recordMembers,
+            OutputStream os) throws IOException {
+        List<Entry> toWrite = new ArrayList<Entry>(descriptors.length);
+        HashSet<String> keys = new HashSet<String>();
+        Map<Class<?>, byte[]> digests = new HashMap<Class<?>, byte[]>();
+        
+        for (SystemDescriptor<?> descriptor : descriptors) {
+            Entry entry = Entry.create(descriptor, recordMembers, digests);
+            if (entry == null) continue;
+            
+            // Two descriptors of one class with the same key have the same analysis
+            if (!keys.add(entry.key)) continue;
+            
+            toWrite.add(entry);
+        }
+        
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(toWrite.size());
+        
+        for (Entry entry : toWrite) {
+            entry.write(out);
+        }
+        
+        out.flush();
+        
+        return toWrite.size();
+    }
+    
+    /**
+     * Reads an image written by {@link #write(SystemDescriptor[], boolean, OutputStream)}
+     * 
+     * @param is The stream to read from, which is not closed
+     * @return The image read
+     * @throws IOException If the stream does not hold an image of a known version
+     */
+    /* package */ static AnalysisImage read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        
+        if (in.readInt() != MAGIC) {
+            throw new IOException("The input is not an hk2 analysis image");
+        }
+        
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unknown hk2 analysis image version " + version +
+                    ", this version of hk2 can read version " + VERSION);
+        }
+        
+        int numEntries = in.readInt();
+        HashMap<String, Entry> entries = new HashMap<String, Entry>();
+        for (int lcv = 0; lcv < numEntries; lcv++) {
+            Entry entry = Entry.read(in);
+            
+            entries.put(entry.key, entry);
+        }
+        
+        return new AnalysisImage(entries);
+    }
+    
+    /**
+     * Gets the recorded analysis of the given descriptor
+     * 
+     * @param descriptor The descriptor being reified
+     * @param implClass The implementation class of the descriptor
+     * @param useMembers true if the recorded members may be used
+     * @return The analysis, or null if there is no entry or the classes have changed
+     */
+    /* package */ Analysis getAnalysis(SystemDescriptor<?> descriptor, Class<?> implClass, boolean useMembers) {
+        Entry entry = entries.get(getKey(descriptor));
+        if (entry == null) return null;
+        
+        byte digest[] = getDigest(implClass, classDigests);
+        if (digest == null || !Arrays.equals(digest, entry.digest)) {
+            Logger.getLogger().debug("The analysis image entry for " + implClass.getName() +
+                    " no longer matches the class, it will be analyzed again");
+            return null;
+        }
+        
+        Analysis retVal = entry.resolve(descriptor, implClass, useMembers);
+        hits.incrementAndGet();
+        
+        return retVal;
+    }
+    
+    private static String getKey(SystemDescriptor<?> descriptor) {
+        StringBuffer sb = new StringBuffer(descriptor.getImplementation());
+        sb.append(KEY_SEPARATOR);
+        if (descriptor.getName() != null) sb.append(descriptor.getName());
+        sb.append(KEY_SEPARATOR);
+        if (descriptor.getScope() != null) sb.append(descriptor.getScope());
+        
+        for (String contract : new TreeSet<String>(descriptor.getAdvertisedContracts())) {
+            sb.append(KEY_SEPARATOR);
+            sb.append(contract);
+        }
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Digests the bytes of the class and of all of its super classes and
+     * interfaces, other than those of the platform
+     * 
+     * @return The digest, or null if the bytes of some class cannot be read
+     */
+    private static byte[] getDigest(final Class<?> implClass, final Map<Class<?>, byte[]> classDigests) {
+        return AccessController.doPrivileged(new PrivilegedAction<byte[]>() {
+
+            @Override
+            public byte[] run() {
+                LinkedHashSet<Class<?>> hierarchy = new LinkedHashSet<Class<?>>();
+                addHierarchy(implClass, hierarchy);
+                
+                MessageDigest digest = getMessageDigest();
+                if (digest == null) return null;
+                
+                for (Class<?> clazz : hierarchy) {
+                    byte classDigest[] = classDigests.get(clazz);
+                    if (classDigest == null) {
+                        classDigest = getClassDigest(clazz);
+                        if (classDigest == null) return null;
+                        
+                        classDigests.put(clazz, classDigest);
+                    }
+                    
+                    digest.update(classDigest);
+                }
+                
+                return digest.digest();
+            }
+            
+        });
+    }
+    
+    private static void addHierarchy(Class<?> clazz, Set<Class<?>> hierarchy) {
+        // Classes of the platform cannot change without the locator starting afresh
+        if (clazz == null || clazz.getClassLoader() == null) return;
+        if (!hierarchy.add(clazz)) return;
+        
+        addHierarchy(clazz.getSuperclass(), hierarchy);
+        for (Class<?> iFace : clazz.getInterfaces()) {
+            addHierarchy(iFace, hierarchy);
+        }
+    }
+    
+    private static byte[] getClassDigest(Class<?> clazz) {
+        InputStream is = clazz.getClassLoader().getResourceAsStream(
+                clazz.getName().replace('.', '/') + DOT_CLASS);
+        if (is == null) return null;
+        
+        MessageDigest digest = getMessageDigest();
+        if (digest == null) return null;
+        
+        try {
+            byte buffer[] = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            
+            return digest.digest();
+        }
+        catch (IOException ioe) {
+            Logger.getLogger().debug("AnalysisImage", "getClassDigest", ioe);
+            return null;
+        }
+        finally {
+            try {
+                is.close();
+            }
+            catch (IOException ioe) {
+                // Ignore
+            }
+        }
+    }
+    
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            Logger.getLogger().debug("AnalysisImage", "getMessageDigest", nsae);
+            return null;
+        }
+    }
+    
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(NOT_RECORDED);
+            return;
+        }
+        
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+    
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == NOT_RECORDED) return null;
+        
+        List<String> retVal = new ArrayList<String>(size);
+        for (int lcv = 0; lcv < size; lcv++) {
+            retVal.add(in.readUTF());
+        }
+        
+        return retVal;
+    }
+    
+    private static void writeNullableString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) out.writeUTF(string);
+    }
+    
+    private static String readNullableString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        
+        return in.readUTF();
+    }
+    
+    private static List<String> getParameterNames(Class<?> parameterTypes[]) {
+        List<String> retVal = new ArrayList<String>(parameterTypes.length);
+        for (Class<?> parameterType : parameterTypes) {
+            retVal.add(parameterType.getName());
+        }
+        
+        return retVal;
+    }
+    
+    private static boolean parametersMatch(Class<?> parameterTypes[], List<String> names) {
+        if (parameterTypes.length != names.size()) return false;
+        
+        for (int lcv = 0; lcv < parameterTypes.length; lcv++) {
+            if (!parameterTypes[lcv].getName().equals(names.get(lcv))) return false;
+        }
+        
+        return true;
+    }
+    
+    private static Class<?> getDeclaringClass(Class<?> implClass, String declaringName) {
+        for (Class<?> current = implClass; current != null; current = current.getSuperclass()) {
+            if (current.getName().equals(declaringName)) return current;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Finds an annotation of the given type as the qualifier and scope analysis would,
+     * looking first at the class and its super classes and then at their interfaces
+     */
+    private static Annotation findAnnotation(Class<?> implClass, String annotationName) {
+        for (Class<?> current = implClass; current != null; current = current.getSuperclass()) {
+            for (Annotation annotation : current.getAnnotations()) {
+                if (annotation.annotationType().getName().equals(annotationName)) return annotation;
+            }
+        }
+        
+        for (Class<?> current = implClass; current != null; current = current.getSuperclass()) {
+            for (Class<?> iFace : current.getInterfaces()) {
+                for (Annotation annotation : iFace.getAnnotations()) {
+                    if (annotation.annotationType().getName().equals(annotationName)) return annotation;
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    private static void addTypeNames(Class<?> clazz, Map<String, Class<?>> addToMe) {
+        if (clazz == null) return;
+        if (addToMe.containsKey(clazz.getName())) return;
+        
+        addToMe.put(clazz.getName(), clazz);
+        
+        addTypeNames(clazz.getSuperclass(), addToMe);
+        for (Class<?> iFace : clazz.getInterfaces()) {
+            addTypeNames(iFace, addToMe);
+        }
+    }
+    
+    /**
+     * A reference to a method by its declaring class, name and parameter types
+     */
+    private static class MethodReference {
+        private final String declaringClass;
+        private final String name;
+        private final List<String> parameterTypes;
+        
+        private MethodReference(String declaringClass, String name, List<String> parameterTypes) {
+            this.declaringClass = declaringClass;
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+        
+        private static MethodReference create(Method method) {
+            if (method == null) return null;
+            
+            return new MethodReference(method.getDeclaringClass().getName(),
+                    method.getName(),
+                    getParameterNames(method.getParameterTypes()));
+        }
+        
+        private static void write(DataOutputStream out, MethodReference reference) throws IOException {
+            out.writeBoolean(reference != null);
+            if (reference == null) return;
+            
+            out.writeUTF(reference.declaringClass);
+            out.writeUTF(reference.name);
+            writeStrings(out, reference.parameterTypes);
+        }
+        
+        private static MethodReference read(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) return null;
+            
+            String declaringClass = in.readUTF();
+            String name = in.readUTF();
+            List<String> parameterTypes = readStrings(in);
+            
+            return new MethodReference(declaringClass, name, parameterTypes);
+        }
+        
+        private Method resolve(Class<?> implClass) {
+            Class<?> declarer = getDeclaringClass(implClass, declaringClass);
+            if (declarer == null) return null;
+            
+            for (Method method : declarer.getDeclaredMethods()) {
+                if (method.getName().equals(name) && parametersMatch(method.getParameterTypes(), parameterTypes)) {
+                    return method;
+                }
+            }
+            
+            return null;
+        }
+    }
+    
+    /**
+     * The recorded analysis of one class descriptor
+     */
+    private static class Entry {
+        private final String key;
+        private final byte digest[];
+        
+        /** The rest are null if they were not recorded */
+        private final List<String> constructorParameters;
+        private final List<String> fields;  // declaring class followed by name
+        private final List<MethodReference> initMethods;
+        private final MethodReference postConstruct;
+        private final MethodReference preDestroy;
+        private final List<String> qualifiers;
+        private final String scopeAnnotation;
+        private final String scope;
+        private final List<String> contracts;
+        
+        private Entry(String key,
+                byte digest[],
+                List<String> constructorParameters,
+                List<String> fields,
+                List<MethodReference> initMethods,
+                MethodReference postConstruct,
+                MethodReference preDestroy,
+                List<String> qualifiers,
+                String scopeAnnotation,
+                String scope,
+                List<String> contracts) {
+            this.key = key;
+            this.digest = digest;
+            this.constructorParameters = constructorParameters;
+            this.fields = fields;
+            this.initMethods = initMethods;
+            this.postConstruct = postConstruct;
+            this.preDestroy = preDestroy;
+            this.qualifiers = qualifiers;
+            this.scopeAnnotation = scopeAnnotation;
+            this.scope = scope;
+            this.contracts = contracts;
+        }
+        
+        private static Entry create(SystemDescriptor<?> descriptor,
+                boolean recordMembers,
+                Map<Class<?>, byte[]> digests) {
+            if (!descriptor.isReified()) return null;
+            if (!DescriptorType.CLASS.equals(descriptor.getDescriptorType())) return null;
+            
+            Class<?> implClass = descriptor.getImplementationClass();
+            byte digest[] = getDigest(implClass, digests);
+            if (digest == null) return null;
+            
+            List<String> constructorParameters = null;
+            List<String> fields = null;
+            List<MethodReference> initMethods = null;
+            MethodReference postConstruct = null;
+            MethodReference preDestroy = null;
+            
+            ClazzCreator<?> creator = descriptor.getClazzCreator();
+            if (recordMembers && creator != null && creator.isAnalyzedByDefault() &&
+                    creator.getConstructor() != null) {
+                constructorParameters = getParameterNames(creator.getConstructor().getParameterTypes());
+                
+                fields = new ArrayList<String>();
+                for (Field field : creator.getInitFields()) {
+                    fields.add(field.getDeclaringClass().getName());
+                    fields.add(field.getName());
+                }
+                
+                initMethods = new ArrayList<MethodReference>();
+                for (Method initMethod : creator.getInitMethods()) {
+                    initMethods.add(MethodReference.create(initMethod));
+                }
+                
+                postConstruct = MethodReference.create(creator.getPostConstructMethod());
+                preDestroy = MethodReference.create(creator.getPreDestroyMethod());
+            }
+            
+            List<String> qualifiers = new ArrayList<String>();
+            for (Annotation qualifier : descriptor.getQualifierAnnotations()) {
+                String qualifierName = qualifier.annotationType().getName();
+                if (qualifiers.contains(qualifierName)) {
+                    // Two of the same type cannot be told apart by name
+                    qualifiers = null;
+                    break;
+                }
+                
+                qualifiers.add(qualifierName);
+            }
+            
+            Annotation scopeAsAnnotation = descriptor.getScopeAsAnnotation();
+            String scopeAnnotation = (scopeAsAnnotation == null) ? null : scopeAsAnnotation.annotationType().getName();
+            String scope = descriptor.getScopeAnnotation().getName();
+            
+            List<String> contracts = new ArrayList<String>();
+            for (Type contract : descriptor.getContractTypes()) {
+                if (!(contract instanceof Class)) {
+                    // Only raw contracts can be found again by name
+                    contracts = null;
+                    break;
+                }
+                
+                contracts.add(((Class<?>) contract).getName());
+            }
+            
+            return new Entry(getKey(descriptor),
+                    digest,
+                    constructorParameters,
+                    fields,
+                    initMethods,
+                    postConstruct,
+                    preDestroy,
+                    qualifiers,
+                    scopeAnnotation,
+                    scope,
+                    contracts);
+        }
+        
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(key);
+            out.writeInt(digest.length);
+            out.write(digest);
+            
+            writeStrings(out, constructorParameters);
+            if (constructorParameters != null) {
+                writeStrings(out, fields);
+                
+                out.writeInt(initMethods.size());
+                for (MethodReference initMethod : initMethods) {
+                    MethodReference.write(out, initMethod);
+                }
+                
+                MethodReference.write(out, postConstruct);
+                MethodReference.write(out, preDestroy);
+            }
+            
+            writeStrings(out, qualifiers);
+            writeNullableString(out, scopeAnnotation);
+            out.writeUTF(scope);
+            writeStrings(out, contracts);
+        }
+        
+        private static Entry read(DataInputStream in) throws IOException {
+            String key = in.readUTF();
+            byte digest[] = new byte[in.readInt()];
+            in.readFully(digest);
+            
+            List<String> fields = null;
+            List<MethodReference> initMethods = null;
+            MethodReference postConstruct = null;
+            MethodReference preDestroy = null;
+            
+            List<String> constructorParameters = readStrings(in);
+            if (constructorParameters != null) {
+                fields = readStrings(in);
+                
+                int numInitMethods = in.readInt();
+                initMethods = new ArrayList<MethodReference>(numInitMethods);
+                for (int lcv = 0; lcv < numInitMethods; lcv++) {
+                    initMethods.add(MethodReference.read(in));
+                }
+                
+                postConstruct = MethodReference.read(in);
+                preDestroy = MethodReference.read(in);
+            }
+            
+            List<String> qualifiers = readStrings(in);
+            String scopeAnnotation = readNullableString(in);
+            String scope = in.readUTF();
+            List<String> contracts = readStrings(in);
+            
+            return new Entry(key,
+                    digest,
+                    constructorParameters,
+                    fields,
+                    initMethods,
+                    postConstruct,
+                    preDestroy,
+                    qualifiers,
+                    scopeAnnotation,
+                    scope,
+                    contracts);
+        }
+        
+        private Analysis resolve(final SystemDescriptor<?> descriptor, final Class<?> implClass, final boolean useMembers) {
+            return AccessController.doPrivileged(new PrivilegedAction<Analysis>() {
+
+                @Override
+                public Analysis run() {
+                    Analysis retVal = new Analysis();
+                    
+                    if (useMembers && constructorParameters != null) {
+                        resolveMembers(implClass, retVal);
+                    }
+                    
+                    if (qualifiers != null) {
+                        retVal.qualifiers = resolveQualifiers(descriptor, implClass);
+                    }
+                    
+                    resolveScope(implClass, retVal);
+                    
+                    if (contracts != null) {
+                        retVal.contracts = resolveContracts(implClass);
+                    }
+                    
+                    return retVal;
+                }
+                
+            });
+        }
+        
+        private void resolveMembers(Class<?> implClass, Analysis analysis) {
+            Constructor<?> constructor = null;
+            for (Constructor<?> candidate : implClass.getDeclaredConstructors()) {
+                if (parametersMatch(candidate.getParameterTypes(), constructorParameters)) {
+                    constructor = candidate;
+                    break;
+                }
+            }
+            if (constructor == null) return;
+            
+            List<Field> resolvedFields = new ArrayList<Field>(fields.size() / 2);
+            for (int lcv = 0; lcv < fields.size(); lcv += 2) {
+                Class<?> declarer = getDeclaringClass(implClass, fields.get(lcv));
+                if (declarer == null) return;
+                
+                try {
+                    resolvedFields.add(declarer.getDeclaredField(fields.get(lcv + 1)));
+                }
+                catch (NoSuchFieldException nsfe) {
+                    return;
+                }
+            }
+            
+            List<Method> resolvedMethods = new ArrayList<Method>(initMethods.size());
+            for (MethodReference initMethod : initMethods) {
+                Method method = initMethod.resolve(implClass);
+                if (method == null) return;
+                
+                resolvedMethods.add(method);
+            }
+            
+            Method resolvedPostConstruct = null;
+            if (postConstruct != null) {
+                resolvedPostConstruct = postConstruct.resolve(implClass);
+                if (resolvedPostConstruct == null) return;
+            }
+            
+            Method resolvedPreDestroy = null;
+            if (preDestroy != null) {
+                resolvedPreDestroy = preDestroy.resolve(implClass);
+                if (resolvedPreDestroy == null) return;
+            }
+            
+            analysis.constructor = constructor;
+            analysis.fields = resolvedFields;
+            analysis.initMethods = resolvedMethods;
+            analysis.postConstruct = resolvedPostConstruct;
+            analysis.preDestroy = resolvedPreDestroy;
+        }
+        
+        private Set<Annotation> resolveQualifiers(SystemDescriptor<?> descriptor, Class<?> implClass) {
+            LinkedHashSet<Annotation> retVal = new LinkedHashSet<Annotation>();
+            
+            for (String qualifier : qualifiers) {
+                Annotation annotation = findAnnotation(implClass, qualifier);
+                
+                if (Named.class.getName().equals(qualifier)) {
+                    if (annotation == null || ((Named) annotation).value().equals("")) {
+                        // The name given by the descriptor, which is part of the key
+                        if (descriptor.getName() == null) return null;
+                        
+                        annotation = new NamedImpl(descriptor.getName());
+                    }
+                }
+                
+                if (annotation == null) return null;
+                
+                retVal.add(annotation);
+            }
+            
+            return retVal;
+        }
+        
+        private void resolveScope(Class<?> implClass, Analysis analysis) {
+            // A scope that only comes from the descriptor is loaded as usual
+            if (scopeAnnotation == null) return;
+            
+            Annotation annotation = findAnnotation(implClass, scopeAnnotation);
+            if (annotation == null) {
+                if (Singleton.class.getName().equals(scopeAnnotation)) {
+                    annotation = ServiceLocatorUtilities.getSingletonAnnotation();
+                }
+                else if (PerLookup.class.getName().equals(scopeAnnotation)) {
+                    annotation = ServiceLocatorUtilities.getPerLookupAnnotation();
+                }
+                else {
+                    return;
+                }
+            }
+            
+            if (!annotation.annotationType().getName().equals(scope)) return;
+            
+            analysis.scopeAnnotation = annotation;
+            analysis.scope = annotation.annotationType();
+        }
+        
+        private Set<Type> resolveContracts(Class<?> implClass) {
+            Map<String, Class<?>> allTypes = new HashMap<String, Class<?>>();
+            addTypeNames(implClass, allTypes);
+            
+            HashSet<Type> retVal = new HashSet<Type>();
+            for (String contract : contracts) {
+                Class<?> contractClass = allTypes.get(contract);
+                if (contractClass == null) return null;
+                
+                retVal.add(contractClass);
+            }
+            
+            return retVal;
+        }
+    }
+    
+    /**
+     * The recorded analysis of a descriptor, resolved against the classes
+     * that are now loaded.  Any part that could not be resolved is null and
+     * must be analyzed as usual
+     */
+    /* package */ static class Analysis {
+        private Constructor<?> constructor;
+        private List<Field> fields;
+        private List<Method> initMethods;
+        private Method postConstruct;
+        private Method preDestroy;
+        private Set<Annotation> qualifiers;
+        private Annotation scopeAnnotation;
+        private Class<? extends Annotation> scope;
+        private Set<Type> contracts;
+        
+        /**
+         * @return true if the members of the class were resolved
+         */
+        /* package */ boolean hasMembers() {
+            return constructor != null;
+        }
+        
+        /* package */ Constructor<?> getConstructor() {
+            return constructor;
+        }
+        
+        /* package */ List<Field> getFields() {
+            return fields;
+        }
+        
+        /* package */ List<Method> getInitMethods() {
+            return initMethods;
+        }
+        
+        /* package */ Method getPostConstructMethod() {
+            return postConstruct;
+        }
+        
+        /* package */ Method getPreDestroyMethod() {
+            return preDestroy;
+        }
+        
+        /* package */ Set<Annotation> getQualifiers() {
+            return qualifiers;
+        }
+        
+        /* package */ Annotation getScopeAnnotation() {
+            return scopeAnnotation;
+        }
+        
+        /* package */ Class<? extends Annotation> getScope() {
+            return scope;
+        }
+        
+        /* package */ Set<Type> getContracts() {
+            return contracts;
+        }
+    }
+}
@@ -194,6 +194,16 @@ public class CacheKey {
         return removalName.equals(name);
     }
     
+    /**
+     * Returns the name of the contract this key is associated with
+     * 
+     * @return The name of the raw class of the lookup type, or null
+     * if the lookup type has no raw class
+     */
+    public String getRemovalName() {
+        return removalName;
+    }
+    
     public String toString() {
         return "CacheKey(" + Pretty.type(lookupType) + "," + name + "," +
             ((qualifiers == null) ? 0 : qualifiers.length) + "," +
@@ -45,6 +45,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -52,6 +54,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.aopalliance.intercept.ConstructorInterceptor;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -64,6 +67,8 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.api.PreDestroy;
 import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceInjector;
+import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 
 /**
@@ -72,6 +77,11 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
  *
  */
 public class ClazzCreator<T> implements Creator<T> {
+    private final static Object NO_ARGS[] = new Object[0];
+    
+    /** The number of creations after which an injector is generated for the service */
+    private final static int GENERATE_AFTER = 16;
+    
     private final ServiceLocatorImpl locator;
     private final Class<?> implClass;
     private final Set<ResolutionInfo> myInitializers = new LinkedHashSet<ResolutionInfo>();
@@ -80,6 +90,15 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private ResolutionInfo myConstructor;
     private List<SystemInjecteeImpl> allInjectees;
+    private volatile InjectionPlan injectionPlan;
+    
+    private ServiceInjector<T> serviceInjector;  // Only set if it replaced the class analysis
+    private Constructor<?> serviceConstructor;
+    private List<Method> serviceInitMethods;
+    private List<Field> serviceFields;
+    private boolean membersKnown;  // true if the class analysis was replaced
+    private AnalysisImage.Analysis imageAnalysis;  // Only used if there is no ServiceInjector
+    private boolean analyzedByDefault;
 
     private Method postConstructMethod;
     private Method preDestroyMethod;
@@ -115,10 +134,29 @@ public class ClazzCreator<T> implements Creator<T> {
             }
         }
 
-        ClassAnalyzer analyzer = Utilities.getClassAnalyzer(locator, analyzerName, collector);
-        if (analyzer == null) {
-            myConstructor = null;
-            return;
+        String usedAnalyzerName = (analyzerName == null) ? locator.getDefaultClassAnalyzerName() : analyzerName;
+        analyzedByDefault = ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(usedAnalyzerName) &&
+                locator.hasOnlyInjectAnnotation();
+
+        ClassAnalyzer analyzer = null;
+        if (!membersKnown) {
+            serviceInjector = getServiceInjector(analyzerName);
+            membersKnown = (serviceInjector != null);
+        }
+        if (!membersKnown && imageAnalysis != null) {
+            serviceConstructor = imageAnalysis.getConstructor();
+            serviceInitMethods = imageAnalysis.getInitMethods();
+            serviceFields = imageAnalysis.getFields();
+            postConstructMethod = imageAnalysis.getPostConstructMethod();
+            preDestroyMethod = imageAnalysis.getPreDestroyMethod();
+            membersKnown = true;
+        }
+        if (!membersKnown) {
+            analyzer = Utilities.getClassAnalyzer(locator, analyzerName, collector);
+            if (analyzer == null) {
+                myConstructor = null;
+                return;
+            }
         }
 
         List<SystemInjecteeImpl> baseAllInjectees = new LinkedList<SystemInjecteeImpl>();
@@ -126,7 +164,12 @@ public class ClazzCreator<T> implements Creator<T> {
         AnnotatedElement element;
         List<SystemInjecteeImpl> injectees;
 
-        element = Utilities.getConstructor(implClass, analyzer, collector);
+        if (membersKnown) {
+            element = serviceConstructor;
+        }
+        else {
+            element = Utilities.getConstructor(implClass, analyzer, collector);
+        }
         if (element == null) {
             myConstructor = null;
             return;
@@ -142,7 +185,13 @@ public class ClazzCreator<T> implements Creator<T> {
 
         myConstructor = new ResolutionInfo(element, injectees);
 
-        Set<Method> initMethods = Utilities.getInitMethods(implClass, analyzer, collector);
+        Collection<Method> initMethods;
+        if (membersKnown) {
+            initMethods = serviceInitMethods;
+        }
+        else {
+            initMethods = Utilities.getInitMethods(implClass, analyzer, collector);
+        }
         for (Method initMethod : initMethods) {
             element = initMethod;
 
@@ -154,7 +203,13 @@ public class ClazzCreator<T> implements Creator<T> {
             myInitializers.add(new ResolutionInfo(element, injectees));
         }
 
-        Set<Field> fields = Utilities.getInitFields(implClass, analyzer, collector);
+        Collection<Field> fields;
+        if (membersKnown) {
+            fields = serviceFields;
+        }
+        else {
+            fields = Utilities.getInitFields(implClass, analyzer, collector);
+        }
         for (Field field : fields) {
             element = field;
 
@@ -166,14 +221,55 @@ public class ClazzCreator<T> implements Creator<T> {
             myFields.add(new ResolutionInfo(element, injectees));
         }
 
-        postConstructMethod = Utilities.getPostConstruct(implClass, analyzer, collector);
-        preDestroyMethod = Utilities.getPreDestroy(implClass, analyzer, collector);
+        if (!membersKnown) {
+            postConstructMethod = Utilities.getPostConstruct(implClass, analyzer, collector);
+            preDestroyMethod = Utilities.getPreDestroy(implClass, analyzer, collector);
+        }
 
         allInjectees = Collections.unmodifiableList(baseAllInjectees);
 
         Utilities.validateSelfInjectees(selfDescriptor, allInjectees, collector);
     }
 
+    /**
+     * Gets the build-time generated injector for this class and the members it
+     * chose, so that the class need not be analyzed.  If the injector no longer
+     * matches the class the class will be analyzed as usual
+     * 
+     * @param analyzerName The name of the analyzer this descriptor asked for
+     * @return The injector to use, or null if the class must be analyzed
+     */
+    @SuppressWarnings("unchecked")
+    private ServiceInjector<T> getServiceInjector(String analyzerName) {
+        ServiceInjector<?> injector = Utilities.getServiceInjector(locator, selfDescriptor, implClass, analyzerName);
+        if (injector == null) return null;
+        
+        try {
+            serviceConstructor = injector.getConstructor();
+            serviceInitMethods = injector.getInitializerMethods();
+            serviceFields = injector.getFields();
+            postConstructMethod = injector.getPostConstructMethod();
+            preDestroyMethod = injector.getPreDestroyMethod();
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug("ClazzCreator", "getServiceInjector", th);
+            serviceConstructor = null;
+        }
+        
+        if (serviceConstructor == null ||
+                !implClass.equals(serviceConstructor.getDeclaringClass()) ||
+                !PreparedAccessors.prepare(serviceConstructor)) {
+            serviceConstructor = null;
+            serviceInitMethods = null;
+            serviceFields = null;
+            postConstructMethod = null;
+            preDestroyMethod = null;
+            return null;
+        }
+        
+        return (ServiceInjector<T>) injector;
+    }
+
     /* package */ void initialize(
             ActiveDescriptor<?> selfDescriptor,
             Collector collector) {
@@ -181,6 +277,68 @@ public class ClazzCreator<T> implements Creator<T> {
             selfDescriptor.getClassAnalysisName(), collector);
     }
 
+    /**
+     * Initializes this creator with the members recorded for this class in an
+     * analysis image, so that the class need not be analyzed.  A ServiceInjector
+     * generated for the class is still preferred over the image.  The caller must
+     * only use this if the recorded members were resolved
+     * 
+     * @param selfDescriptor The descriptor of this creator
+     * @param analysis The analysis read from an image, with resolved members
+     * @param collector An error collector for errors
+     */
+    /* package */ void initialize(
+            ActiveDescriptor<?> selfDescriptor,
+            AnalysisImage.Analysis analysis,
+            Collector collector) {
+        imageAnalysis = analysis;
+        
+        initialize(selfDescriptor, collector);
+    }
+    
+    /**
+     * Tells if the members of this creator are those the default analyzer
+     * finds when Inject is the only injection annotation, and can therefore
+     * be recorded in an analysis image
+     * 
+     * @return true if the members were chosen as the default analyzer would
+     */
+    /* package */ boolean isAnalyzedByDefault() {
+        return analyzedByDefault;
+    }
+    
+    /* package */ Constructor<?> getConstructor() {
+        if (myConstructor == null) return null;
+        
+        return (Constructor<?>) myConstructor.baseElement;
+    }
+    
+    /* package */ List<Method> getInitMethods() {
+        List<Method> retVal = new ArrayList<Method>(myInitializers.size());
+        for (ResolutionInfo info : myInitializers) {
+            retVal.add((Method) info.baseElement);
+        }
+        
+        return retVal;
+    }
+    
+    /* package */ List<Field> getInitFields() {
+        List<Field> retVal = new ArrayList<Field>(myFields.size());
+        for (ResolutionInfo info : myFields) {
+            retVal.add((Field) info.baseElement);
+        }
+        
+        return retVal;
+    }
+    
+    /* package */ Method getPostConstructMethod() {
+        return postConstructMethod;
+    }
+    
+    /* package */ Method getPreDestroyMethod() {
+        return preDestroyMethod;
+    }
+
     /**
      * This is done because sometimes when creating the creator we do not know
      * what the true system descriptor will be
@@ -189,6 +347,7 @@ public class ClazzCreator<T> implements Creator<T> {
      */
     /* package */ void resetSelfDescriptor(ActiveDescriptor<?> selfDescriptor) {
         this.selfDescriptor = selfDescriptor;
+        injectionPlan = null;
 
         for (Injectee injectee : allInjectees) {
             if (!(injectee instanceof SystemInjecteeImpl)) continue;
@@ -197,53 +356,47 @@ public class ClazzCreator<T> implements Creator<T> {
         }
     }
 
-    private void resolve(Map<SystemInjecteeImpl, Object> addToMe,
-                         InjectionResolver<?> resolver,
-                         SystemInjecteeImpl injectee,
-                         ServiceHandle<?> root,
-                         Collector errorCollection) {
-        if (injectee.isSelf()) {
-            addToMe.put(injectee, selfDescriptor);
-            return;
-        }
-
-        Object addIn = null;
-        try {
-            addIn = resolver.resolve(injectee, root);
-        } catch (Throwable th) {
-            errorCollection.addThrowable(th);
-        }
-
-        if (addIn != null) {
-            addToMe.put(injectee, addIn);
-        }
+    /**
+     * Gets the injection plan for this creator, computing a new one
+     * if there is no plan yet or if the resolvers or interception
+     * services of the locator have changed since it was computed
+     * 
+     * @return The current injection plan for this creator
+     */
+    private InjectionPlan getInjectionPlan() {
+        InjectionPlan retVal = injectionPlan;
+        int generation = locator.getInjectionPlanGeneration();
+        if (retVal != null && retVal.generation == generation) return retVal;
+        
+        retVal = new InjectionPlan(generation);
+        injectionPlan = retVal;
+        
+        return retVal;
     }
 
-    private Map<SystemInjecteeImpl, Object> resolveAllDependencies(final ServiceHandle<?> root) throws MultiException, IllegalStateException {
-        Collector errorCollector = new Collector();
+    private Object[] resolveAllDependencies(InjectionPlan plan, final ServiceHandle<?> root) throws MultiException, IllegalStateException {
+        Collector errorCollector = null;
 
-        final Map<SystemInjecteeImpl, Object> retVal = new LinkedHashMap<SystemInjecteeImpl, Object>();
-
-        for (SystemInjecteeImpl injectee : myConstructor.injectees) {
-            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-            resolve(retVal, resolver, injectee, root, errorCollector);
-        }
-
-        for (ResolutionInfo fieldRI : myFields) {
-            for (SystemInjecteeImpl injectee : fieldRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+        SystemInjecteeImpl slots[] = plan.slots;
+        final Object retVal[] = new Object[slots.length];
+        
+        for (int lcv = 0; lcv < slots.length; lcv++) {
+            SystemInjecteeImpl injectee = slots[lcv];
+            if (injectee.isSelf()) {
+                retVal[lcv] = selfDescriptor;
+                continue;
             }
-        }
-
-        for (ResolutionInfo methodRI : myInitializers) {
-            for (SystemInjecteeImpl injectee : methodRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+            
+            try {
+                retVal[lcv] = plan.resolvers[lcv].resolve(injectee, root);
+            } catch (Throwable th) {
+                if (errorCollector == null) errorCollector = new Collector();
+                
+                errorCollector.addThrowable(th);
             }
         }
 
-        if (errorCollector.hasErrors()) {
+        if (errorCollector != null) {
             errorCollector.addThrowable(new IllegalArgumentException("While attempting to resolve the dependencies of "
                     + implClass.getName() + " errors were found"));
 
@@ -252,22 +405,48 @@ public class ClazzCreator<T> implements Creator<T> {
 
         return retVal;
     }
+    
+    /**
+     * The injectees given to the instance lifecycle listeners only
+     * contain those that resolved to a non-null value
+     */
+    private Map<Injectee, Object> getKnownInjectees(InjectionPlan plan, Object resolved[]) {
+        Map<Injectee, Object> retVal = new LinkedHashMap<Injectee, Object>();
+        
+        for (int lcv = 0; lcv < resolved.length; lcv++) {
+            if (resolved[lcv] == null) continue;
+            
+            retVal.put(plan.slots[lcv], resolved[lcv]);
+        }
+        
+        return retVal;
+    }
 
-    private Object createMe(Map<SystemInjecteeImpl, Object> resolved) throws Throwable {
+    private Object createMe(InjectionPlan plan, Object resolved[]) throws Throwable {
         final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
-        List<SystemInjecteeImpl> injectees = myConstructor.injectees;
+        int constructorSlots[] = plan.constructorSlots;
 
-        final Object args[] = new Object[injectees.size()];
-        for (Injectee injectee : injectees) {
-            args[injectee.getPosition()] = resolved.get(injectee);
+        final Object args[] = new Object[constructorSlots.length];
+        for (int lcv = 0; lcv < constructorSlots.length; lcv++) {
+            args[lcv] = resolved[constructorSlots[lcv]];
         }
         
-        Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass, c);
-        final Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
-        List<ConstructorInterceptor> constructorInterceptors = interceptors.getConstructorInterceptors();
+        if (!plan.mayBeIntercepted) {
+            // No need for any kind of interception
+            DirectCalls direct = plan.getDirectCalls();
+            if (direct.construct) {
+                return PreparedAccessors.construct(direct.injector, args, locator.getNeutralContextClassLoader());
+            }
+            
+            if (plan.prepared) {
+                return PreparedAccessors.makeMe(c, args, locator.getNeutralContextClassLoader());
+            }
+            
+            return ReflectionHelper.makeMe(c, args, locator.getNeutralContextClassLoader());
+        }
         
-        if ((methodInterceptors == null || methodInterceptors.isEmpty()) &&
-            ((constructorInterceptors == null) || constructorInterceptors.isEmpty())) {
+        InterceptionChains chains = plan.getInterceptionChains();
+        if (chains.constructorAction == null && chains.constructorChain == null) {
             // No need for any kind of interception
             return ReflectionHelper.makeMe(c, args, locator.getNeutralContextClassLoader()); 
         }
@@ -278,49 +457,66 @@ public class ClazzCreator<T> implements Creator<T> {
         
         final boolean neutral = locator.getNeutralContextClassLoader();
         
-        if (methodInterceptors == null || methodInterceptors.isEmpty()) {
+        if (chains.constructorAction == null) {
             // No method interceptors means no need for proxy at all
-            return ConstructorInterceptorHandler.construct(c, args, neutral, constructorInterceptors);
+            if (plan.prepared) {
+                return ConstructorInterceptorHandler.constructPrepared(c, args, neutral, chains.constructorChain);
+            }
+            
+            return ConstructorInterceptorHandler.constructReflective(c, args, neutral, chains.constructorChain);
         }
         
         return ConstructorInterceptorHandler.construct(c,
                 args,
                 neutral,
-                constructorInterceptors,
-                new ConstructorActionImpl<T>(this, methodInterceptors));
+                chains.constructorChain,
+                chains.constructorAction);
     }
 
-    private void fieldMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
-        for (ResolutionInfo ri : myFields) {
-            Field field = (Field) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;  // Should be only one injectee, itself!
-
-            Injectee fieldInjectee = null;
-            for (Injectee candidate : injectees) {
-                fieldInjectee = candidate;
+    private void fieldMe(InjectionPlan plan, Object resolved[], T t) throws Throwable {
+        Field fields[] = plan.fields;
+        int fieldSlots[] = plan.fieldSlots;
+        DirectCalls direct = plan.getDirectCalls();
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            if (direct.fields[lcv]) {
+                direct.injector.inject(lcv, t, resolved[fieldSlots[lcv]]);
+            }
+            else if (plan.prepared) {
+                PreparedAccessors.setField(fields[lcv], t, resolved[fieldSlots[lcv]]);
+            }
+            else {
+                ReflectionHelper.setField(fields[lcv], t, resolved[fieldSlots[lcv]]);
             }
-
-            Object putMeIn = resolved.get(fieldInjectee);
-
-            ReflectionHelper.setField(field, t, putMeIn);
         }
     }
 
-    private void methodMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
-        for (ResolutionInfo ri : myInitializers) {
-            Method m = (Method) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;
+    private void methodMe(InjectionPlan plan, Object resolved[], T t) throws Throwable {
+        Method methods[] = plan.methods;
+        int methodSlots[][] = plan.methodSlots;
+        DirectCalls direct = plan.getDirectCalls();
+        
+        for (int lcv = 0; lcv < methods.length; lcv++) {
+            int argSlots[] = methodSlots[lcv];
 
-            Object args[] = new Object[injectees.size()];
-            for (Injectee injectee : injectees) {
-                args[injectee.getPosition()] = resolved.get(injectee);
+            Object args[] = new Object[argSlots.length];
+            for (int index = 0; index < argSlots.length; index++) {
+                args[index] = resolved[argSlots[index]];
             }
 
-            ReflectionHelper.invoke(t, m, args, locator.getNeutralContextClassLoader());
+            if (direct.methods[lcv]) {
+                PreparedAccessors.initialize(direct.injector, lcv, t, args, locator.getNeutralContextClassLoader());
+            }
+            else if (plan.prepared) {
+                PreparedAccessors.invoke(t, methods[lcv], args, locator.getNeutralContextClassLoader());
+            }
+            else {
+                ReflectionHelper.invoke(t, methods[lcv], args, locator.getNeutralContextClassLoader());
+            }
         }
     }
 
-    private void postConstructMe(T t) throws Throwable {
+    private void postConstructMe(InjectionPlan plan, T t) throws Throwable {
         if (t == null) return;
 
         if (t instanceof PostConstruct) {
@@ -330,6 +526,16 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (postConstructMethod == null) return;
 
+        if (plan.peekDirectCalls().postConstruct) {
+            PreparedAccessors.lifecycle(plan.peekDirectCalls().injector, t, true, locator.getNeutralContextClassLoader());
+            return;
+        }
+
+        if (plan.prepared) {
+            PreparedAccessors.invoke(t, postConstructMethod, NO_ARGS, locator.getNeutralContextClassLoader());
+            return;
+        }
+
         ReflectionHelper.invoke(t, postConstructMethod, new Object[0], locator.getNeutralContextClassLoader());
     }
 
@@ -343,6 +549,17 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (preDestroyMethod == null) return;
 
+        InjectionPlan plan = injectionPlan;
+        if (plan != null && plan.peekDirectCalls().preDestroy) {
+            PreparedAccessors.lifecycle(plan.peekDirectCalls().injector, t, false, locator.getNeutralContextClassLoader());
+            return;
+        }
+        
+        if (plan != null && plan.prepared) {
+            PreparedAccessors.invoke(t, preDestroyMethod, NO_ARGS, locator.getNeutralContextClassLoader());
+            return;
+        }
+
         ReflectionHelper.invoke(t, preDestroyMethod, new Object[0], locator.getNeutralContextClassLoader());
     }
 
@@ -355,28 +572,34 @@ public class ClazzCreator<T> implements Creator<T> {
         String failureLocation = "resolve";
         try {
 
-            final Map<SystemInjecteeImpl, Object> allResolved = resolveAllDependencies(root);
-
-            if (eventThrower != null) {
+            InjectionPlan plan = getInjectionPlan();
+            final Object allResolved[] = resolveAllDependencies(plan, root);
+            
+            Map<Injectee, Object> knownInjectees = null;
+            if (eventThrower != null && eventThrower.hasInstanceListeners()) {
+                knownInjectees = getKnownInjectees(plan, allResolved);
+                
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.PRE_PRODUCTION,
-                    null, ReflectionHelper.<Map<Injectee,Object>>cast(allResolved), eventThrower));
+                    null, knownInjectees, eventThrower));
             }
 
             failureLocation = "create";
-            T retVal = (T) createMe(allResolved);
+            T retVal = (T) createMe(plan, allResolved);
 
             failureLocation = "field inject";
-            fieldMe(allResolved, retVal);
+            fieldMe(plan, allResolved, retVal);
 
             failureLocation = "method inject";
-            methodMe(allResolved, retVal);
+            methodMe(plan, allResolved, retVal);
 
             failureLocation = "post construct";
-            postConstructMe(retVal);
+            postConstructMe(plan, retVal);
 
-            if (eventThrower != null) {
+            if (eventThrower != null && eventThrower.hasInstanceListeners()) {
+                if (knownInjectees == null) knownInjectees = getKnownInjectees(plan, allResolved);
+                
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.POST_PRODUCTION,
-                    retVal, ReflectionHelper.<Map<Injectee, Object>>cast(allResolved), eventThrower));
+                    retVal, knownInjectees, eventThrower));
             }
 
             return retVal;
@@ -437,6 +660,212 @@ public class ClazzCreator<T> implements Creator<T> {
         return "ClazzCreator(" + locator + "," + implClass.getName() + "," + System.identityHashCode(this) + ")";
     }
 
+    /**
+     * Everything about how to inject an instance of this class that does
+     * not change from one creation to the next.  Every injectee has a slot,
+     * and the constructor, fields and initializer methods refer to the values
+     * they need by slot number, so that creation does not need to do any
+     * hashing
+     * 
+     * @author jwells
+     *
+     */
+    private class InjectionPlan {
+        private final int generation;
+        private final SystemInjecteeImpl slots[];
+        private final InjectionResolver<?> resolvers[];
+        private final int constructorSlots[];  // indexed by parameter position
+        private final Field fields[];
+        private final int fieldSlots[];
+        private final Method methods[];
+        private final int methodSlots[][];  // indexed by method, then parameter position
+        private final boolean mayBeIntercepted;
+        private final boolean prepared;  // true if the members can be called without ReflectionHelper
+        private final AtomicInteger creations = new AtomicInteger();
+        private final DirectCalls reflectiveCalls;
+        private volatile DirectCalls directCalls;  // null until an injector is given or generated
+        
+        private InjectionPlan(int generation) {
+            this.generation = generation;
+            
+            List<SystemInjecteeImpl> allSlots = new ArrayList<SystemInjecteeImpl>();
+            
+            constructorSlots = addSlots(myConstructor.injectees, allSlots);
+            
+            fields = new Field[myFields.size()];
+            fieldSlots = new int[fields.length];
+            int index = 0;
+            for (ResolutionInfo fieldRI : myFields) {
+                fields[index] = (Field) fieldRI.baseElement;
+                
+                // Should be only one injectee, itself!
+                for (SystemInjecteeImpl injectee : fieldRI.injectees) {
+                    fieldSlots[index] = allSlots.size();
+                    allSlots.add(injectee);
+                }
+                
+                index++;
+            }
+            
+            methods = new Method[myInitializers.size()];
+            methodSlots = new int[methods.length][];
+            index = 0;
+            for (ResolutionInfo methodRI : myInitializers) {
+                methods[index] = (Method) methodRI.baseElement;
+                methodSlots[index] = addSlots(methodRI.injectees, allSlots);
+                
+                index++;
+            }
+            
+            slots = allSlots.toArray(new SystemInjecteeImpl[allSlots.size()]);
+            resolvers = new InjectionResolver<?>[slots.length];
+            for (int lcv = 0; lcv < slots.length; lcv++) {
+                if (slots[lcv].isSelf()) continue;
+                
+                resolvers[lcv] = locator.getInjectionResolverForInjectee(slots[lcv]);
+            }
+            
+            mayBeIntercepted = Utilities.mayBeIntercepted(locator, selfDescriptor, implClass);
+            
+            if (PreparedAccessors.isEnabled()) {
+                prepared = PreparedAccessors.prepare((Constructor<?>) myConstructor.baseElement, postConstructMethod, preDestroyMethod) &&
+                        PreparedAccessors.prepare(fields) &&
+                        PreparedAccessors.prepare(methods);
+            }
+            else {
+                prepared = false;
+            }
+            
+            reflectiveCalls = new DirectCalls(null, fields.length, methods.length);
+            if (serviceInjector != null) {
+                directCalls = new DirectCalls(serviceInjector, fields.length, methods.length);
+            }
+            else if (!PreparedAccessors.isEnabled()) {
+                directCalls = reflectiveCalls;
+            }
+        }
+        
+        /**
+         * Gets the interceptors of this service and compiles them for one
+         * creation.  The interception services are asked on every creation,
+         * since they may return different interceptors each time (for example
+         * when an interceptor is bound after the first creation, or when the
+         * interceptors are themselves PerLookup)
+         */
+        private InterceptionChains getInterceptionChains() {
+            Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass,
+                    (Constructor<?>) myConstructor.baseElement);
+            
+            return new InterceptionChains(ClazzCreator.this, interceptors, prepared);
+        }
+        
+        /**
+         * Gets the members that can be called without reflection.  An injector is
+         * only generated once a service has been created {@link #GENERATE_AFTER}
+         * times, so that singletons never pay for the generation
+         */
+        private DirectCalls getDirectCalls() {
+            DirectCalls retVal = directCalls;
+            if (retVal != null) return retVal;
+            
+            if (creations.incrementAndGet() <= GENERATE_AFTER) return reflectiveCalls;
+            
+            synchronized (this) {
+                if (directCalls != null) return directCalls;
+                
+                ServiceInjector<?> generated = InjectorGenerator.getInjector(implClass,
+                        (Constructor<?>) myConstructor.baseElement,
+                        fields,
+                        methods,
+                        postConstructMethod,
+                        preDestroyMethod);
+                
+                directCalls = (generated == null) ? reflectiveCalls :
+                    new DirectCalls(generated, fields.length, methods.length);
+                return directCalls;
+            }
+        }
+        
+        /**
+         * Gets the members that can be called without reflection, without
+         * counting as a creation.  Used for the lifecycle methods, which are
+         * called after {@link #getDirectCalls()} has been asked
+         */
+        private DirectCalls peekDirectCalls() {
+            DirectCalls retVal = directCalls;
+            
+            return (retVal == null) ? reflectiveCalls : retVal;
+        }
+        
+        private int[] addSlots(List<SystemInjecteeImpl> injectees, List<SystemInjecteeImpl> allSlots) {
+            int retVal[] = new int[injectees.size()];
+            
+            for (SystemInjecteeImpl injectee : injectees) {
+                retVal[injectee.getPosition()] = allSlots.size();
+                allSlots.add(injectee);
+            }
+            
+            return retVal;
+        }
+    }
+
+    /**
+     * The compiled interceptors of one creation of a service
+     * 
+     * @author jwells
+     *
+     */
+    private static class InterceptionChains {
+        private final ConstructorInterceptor constructorChain[];  // null if there are no constructor interceptors
+        private final ConstructorActionImpl<?> constructorAction;  // null if there are no method interceptors
+        
+        private <T> InterceptionChains(ClazzCreator<T> creator, Utilities.Interceptors interceptors, boolean prepared) {
+            List<ConstructorInterceptor> constructorInterceptors = interceptors.getConstructorInterceptors();
+            Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
+            
+            constructorChain = (constructorInterceptors == null || constructorInterceptors.isEmpty()) ? null :
+                ConstructorInterceptorHandler.compile(constructorInterceptors);
+            
+            constructorAction = (methodInterceptors == null || methodInterceptors.isEmpty()) ? null :
+                new ConstructorActionImpl<T>(creator, methodInterceptors, prepared);
+        }
+    }
+    
+    /**
+     * The members of a service that an injector can call directly
+     * 
+     * @author jwells
+     *
+     */
+    private static class DirectCalls {
+        @SuppressWarnings("rawtypes")
+        private final ServiceInjector injector;
+        private final boolean construct;
+        private final boolean fields[];
+        private final boolean methods[];
+        private final boolean postConstruct;
+        private final boolean preDestroy;
+        
+        private DirectCalls(ServiceInjector<?> injector, int numFields, int numMethods) {
+            this.injector = injector;
+            
+            construct = (injector != null) && injector.canConstruct();
+            postConstruct = (injector != null) && injector.canPostConstruct();
+            preDestroy = (injector != null) && injector.canPreDestroy();
+            fields = new boolean[numFields];
+            methods = new boolean[numMethods];
+            if (injector == null) return;
+            
+            for (int lcv = 0; lcv < numFields; lcv++) {
+                fields[lcv] = injector.canInject(lcv);
+            }
+            
+            for (int lcv = 0; lcv < numMethods; lcv++) {
+                methods[lcv] = injector.canInitialize(lcv);
+            }
+        }
+    }
+
     private static class ResolutionInfo {
         private final AnnotatedElement baseElement;
         private final List<SystemInjecteeImpl> injectees = new LinkedList<SystemInjecteeImpl>();
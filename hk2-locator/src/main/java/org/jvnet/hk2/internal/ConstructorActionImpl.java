@@ -78,28 +78,29 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
     private final ClazzCreator<T> clazzCreator;
     
     /**
-     * 
+     * The handler given to the proxy made by this action
      */
-    private final Map<Method, List<MethodInterceptor>> methodInterceptors;
+    private final MethodInterceptorHandler methodInterceptor;
 
     /**
-     * @param methodInterceptors
-     * @param clazzCreator TODO
+     * @param clazzCreator The creator of the service being proxied
+     * @param methodInterceptors The interceptors of the methods of the service
+     * @param prepared true if the members of the service were prepared
      */
     ConstructorActionImpl(
-            ClazzCreator<T> clazzCreator, Map<Method, List<MethodInterceptor>> methodInterceptors) {
+            ClazzCreator<T> clazzCreator, Map<Method, List<MethodInterceptor>> methodInterceptors,
+            boolean prepared) {
         this.clazzCreator = clazzCreator;
-        this.methodInterceptors = methodInterceptors;
+        this.methodInterceptor = new MethodInterceptorHandler(
+                clazzCreator.getServiceLocator(),
+                clazzCreator.getUnderlyingDescriptor(),
+                methodInterceptors,
+                prepared);
     }
 
     @Override
     public Object makeMe(final Constructor<?> c, final Object[] args, final boolean neutralCCL)
             throws Throwable {
-        final MethodInterceptorHandler methodInterceptor = new MethodInterceptorHandler(
-                clazzCreator.getServiceLocator(),
-                clazzCreator.getUnderlyingDescriptor(),
-                methodInterceptors);
-            
         final ProxyFactory proxyFactory = new ProxyFactory();
         proxyFactory.setSuperclass(clazzCreator.getImplClass());
         proxyFactory.setFilter(METHOD_FILTER);
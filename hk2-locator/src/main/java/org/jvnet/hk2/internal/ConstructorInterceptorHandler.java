@@ -42,10 +42,8 @@ package org.jvnet.hk2.internal;
 
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.RandomAccess;
 
 import org.aopalliance.intercept.ConstructorInterceptor;
 import org.aopalliance.intercept.ConstructorInvocation;
@@ -66,6 +64,15 @@ public class ConstructorInterceptorHandler {
         
     };
     
+    private static final ConstructorAction PREPARED_ACTION = new ConstructorAction() {
+
+        @Override
+        public Object makeMe(Constructor<?> c, Object[] args, boolean neutralCCL) throws Throwable {
+            return PreparedAccessors.makeMe(c, args, neutralCCL);
+        }
+        
+    };
+    
     /**
      * Call this to construct objects taking constructor interceptors into consideration
      * 
@@ -78,15 +85,27 @@ public class ConstructorInterceptorHandler {
      * @throws Throwable On error
      */
     public static Object construct(Constructor<?> c, Object args[], boolean neutralCCL, List<ConstructorInterceptor> interceptors, ConstructorAction action) throws Throwable {
-        if (interceptors == null || interceptors.isEmpty()) {
+        return construct(c, args, neutralCCL, compile(interceptors), action);
+    }
+    
+    /**
+     * Call this to construct objects with an interceptor chain that
+     * has already been compiled with {@link #compile(List)}
+     * 
+     * @param c The constructor to invoke
+     * @param args The arguments to give to the constructor (intially)
+     * @param neutralCCL Whether or not CCL should be neutral around calls to the constructor
+     * @param interceptors The compiled chain of interceptors (may be null)
+     * @param action The action to perform to construct the object
+     * @return The constructed object (as massaged by the interceptors)
+     * @throws Throwable On error
+     */
+    /* package */ static Object construct(Constructor<?> c, Object args[], boolean neutralCCL, ConstructorInterceptor interceptors[], ConstructorAction action) throws Throwable {
+        if (interceptors == null) {
             return action.makeMe(c, args, neutralCCL);
         }
         
-        if (!(interceptors instanceof RandomAccess)) {
-            interceptors = new ArrayList<ConstructorInterceptor>(interceptors);
-        }
-        
-        ConstructorInterceptor firstInterceptor = interceptors.get(0);
+        ConstructorInterceptor firstInterceptor = interceptors[0];
         
         Object retVal = firstInterceptor.construct(new ConstructorInvocationImpl(c,
                 args,
@@ -103,6 +122,48 @@ public class ConstructorInterceptorHandler {
         return retVal;
     }
     
+    /**
+     * Call this to construct objects taking constructor interceptors into consideration
+     * when the constructor has already been made accessible
+     * 
+     * @param c The constructor to invoke, which must have been prepared
+     * @param args The arguments to give to the constructor (intially)
+     * @param neutralCCL Whether or not CCL should be neutral around calls to the constructor
+     * @param interceptors The compiled chain of interceptors (may be null)
+     * @return The constructed object (as massaged by the interceptors)
+     * @throws Throwable On error
+     */
+    /* package */ static Object constructPrepared(Constructor<?> c, Object args[], boolean neutralCCL, ConstructorInterceptor interceptors[]) throws Throwable {
+        return construct(c, args, neutralCCL, interceptors, PREPARED_ACTION);
+    }
+    
+    /**
+     * Call this to construct objects taking constructor interceptors into consideration
+     * when the interceptors have already been compiled with {@link #compile(List)}
+     * 
+     * @param c The constructor to invoke
+     * @param args The arguments to give to the constructor (intially)
+     * @param neutralCCL Whether or not CCL should be neutral around calls to the constructor
+     * @param interceptors The compiled chain of interceptors (may be null)
+     * @return The constructed object (as massaged by the interceptors)
+     * @throws Throwable On error
+     */
+    /* package */ static Object constructReflective(Constructor<?> c, Object args[], boolean neutralCCL, ConstructorInterceptor interceptors[]) throws Throwable {
+        return construct(c, args, neutralCCL, interceptors, DEFAULT_ACTION);
+    }
+    
+    /**
+     * Turns a list of interceptors into the chain used when constructing
+     * 
+     * @param interceptors The possibly null or empty list of interceptors
+     * @return The chain, or null if there are no interceptors
+     */
+    /* package */ static ConstructorInterceptor[] compile(List<ConstructorInterceptor> interceptors) {
+        if (interceptors == null || interceptors.isEmpty()) return null;
+        
+        return interceptors.toArray(new ConstructorInterceptor[interceptors.size()]);
+    }
+    
     /**
      * Call this to construct objects taking constructor interceptors into consideration
      * 
@@ -124,7 +185,7 @@ public class ConstructorInterceptorHandler {
         private Object myThis = null;
         private final int index;
         private final ConstructorAction finalAction;
-        private final List<ConstructorInterceptor> interceptors;
+        private final ConstructorInterceptor interceptors[];
         private HashMap<String, Object> userData;
         
         private ConstructorInvocationImpl(Constructor<?> c,
@@ -132,7 +193,7 @@ public class ConstructorInterceptorHandler {
                 boolean neutralCCL,
                 ConstructorAction finalAction,
                 int index,
-                List<ConstructorInterceptor> interceptors,
+                ConstructorInterceptor interceptors[],
                 HashMap<String, Object> userData) {
             this.c = c;
             this.args = args;
@@ -162,13 +223,13 @@ public class ConstructorInterceptorHandler {
         @Override
         public Object proceed() throws Throwable {
             int newIndex = index + 1;
-            if (newIndex >= interceptors.size()) {
+            if (newIndex >= interceptors.length) {
                 myThis = finalAction.makeMe(c, args, neutralCCL);
                 return myThis;
             }
             
             // Invoke the next interceptor
-            ConstructorInterceptor nextInterceptor = interceptors.get(newIndex);
+            ConstructorInterceptor nextInterceptor = interceptors[newIndex];
             
             myThis = nextInterceptor.construct(new ConstructorInvocationImpl(c, args, neutralCCL,
                     finalAction, newIndex, interceptors, userData));
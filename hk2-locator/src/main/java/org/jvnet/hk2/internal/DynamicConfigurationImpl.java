@@ -51,6 +51,7 @@ import org.glassfish.hk2.api.FactoryDescriptors;
 import org.glassfish.hk2.api.Filter;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.TwoPhaseResource;
+import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.FactoryDescriptorsImpl;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 
@@ -298,6 +299,10 @@ public class DynamicConfigurationImpl implements DynamicConfiguration {
         if (d.getAdvertisedContracts() == null) throw new IllegalArgumentException();
         if (d.getDescriptorType() == null) throw new IllegalArgumentException();
         if (d.getDescriptorVisibility() == null) throw new IllegalArgumentException();
+        
+        // DescriptorImpl never returns null for these, and asking may read them from a binary file
+        if (d instanceof DescriptorImpl) return;
+        
         if (d.getMetadata() == null) throw new IllegalArgumentException();
         if (d.getQualifiers() == null) throw new IllegalArgumentException();
     }
@@ -40,97 +40,202 @@
 
 package org.jvnet.hk2.internal;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.ListIterator;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
- * This object contains a list of values.  The list is not always sorted, but will
- * always be returned sorted.
- * 
- * All of the methods on here must be called with lock held.
+ * This object contains a sorted index of descriptors.  Readers see an
+ * immutable, pre-sorted array snapshot which is published through a
+ * volatile field, so a lookup neither sorts nor copies the index.  Writers
+ * work on a pending copy which is sorted and published by {@link #publish()},
+ * normally once at the end of a configuration commit.
+ * <p>
+ * Readers still hold the locator read lock.  It keeps a lookup from
+ * seeing half of a commit, and it also guards the maps of indexes and
+ * the validators used by the lookup.  Only a lookup made by the
+ * committing thread can find pending changes, in which case
+ * {@link #getSnapshot()} takes the monitor of this object to publish them.
+ * <p>
+ * All of the mutating methods on here must be called with the
+ * locator write lock held.
  * 
  * @author jwells
  *
  */
 public class IndexedListData {
-    private final ArrayList<SystemDescriptor<?>> unsortedList = new ArrayList<SystemDescriptor<?>>();
-    private volatile boolean sorted = true;
+    private final static SystemDescriptor<?>[] EMPTY = new SystemDescriptor<?>[0];
+    
+    private volatile SystemDescriptor<?>[] snapshot = EMPTY;
+    
+    /** Changes not yet published, or null if the snapshot is current */
+    private ArrayList<SystemDescriptor<?>> pending;
+    private boolean pendingSorted;
+    private volatile boolean dirty;
+    
+    /**
+     * Returns the current sorted snapshot of this index.  The returned
+     * list is immutable and will not reflect further changes to this
+     * index
+     * 
+     * @return An immutable sorted view of the descriptors in this index
+     */
+    public List<SystemDescriptor<?>> getSortedList() {
+        return new SnapshotList(getSnapshot());
+    }
     
-    public Collection<SystemDescriptor<?>> getSortedList() {
-        if (sorted) return unsortedList;
+    /**
+     * Returns the current sorted snapshot of this index.  The caller
+     * must not modify the returned array
+     * 
+     * @return The sorted descriptors in this index, never null
+     */
+    /* package */ SystemDescriptor<?>[] getSnapshot() {
+        if (!dirty) return snapshot;
         
         synchronized (this) {
-            if (sorted) return unsortedList;
-        
-            if (unsortedList.size() <= 1) {
-                sorted = true;
-                return unsortedList;
-            }
-            
-            Collections.sort(unsortedList, ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
-        
-            sorted = true;
-            return unsortedList;
+            // Only happens when a lookup is done in the middle of a commit
+            publish();
+            return snapshot;
         }
     }
     
     public synchronized void addDescriptor(SystemDescriptor<?> descriptor) {
-        unsortedList.add(descriptor);
+        ArrayList<SystemDescriptor<?>> working = getPending();
         
-        if (unsortedList.size() > 1) {
-            sorted = false;
-        }
-        else {
-            sorted = true;
+        if (pendingSorted && !working.isEmpty()) {
+            SystemDescriptor<?> last = working.get(working.size() - 1);
+            
+            // Services with the same rank are usually added in id order
+            pendingSorted = (ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(last, descriptor) < 0);
         }
         
+        working.add(descriptor);
+        
         descriptor.addList(this);
     }
     
     public synchronized void removeDescriptor(SystemDescriptor<?> descriptor) {
-        ListIterator<SystemDescriptor<?>> iterator = unsortedList.listIterator();
-        while (iterator.hasNext()) {
-            SystemDescriptor<?> candidate = iterator.next();
-            if (ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(descriptor, candidate) == 0) {
-                iterator.remove();
-                break;
+        ArrayList<SystemDescriptor<?>> working = getPending();
+        
+        int index = indexOf(working, descriptor);
+        if (index >= 0) {
+            working.remove(index);
+        }
+        
+        descriptor.removeList(this);
+    }
+    
+    /**
+     * Finds the position of the descriptor.  The comparator orders by
+     * ranking, locator id and service id, so while the pending copy is
+     * sorted the position is found by binary search.  Once a ranking has
+     * changed the copy stays unsorted until it is published, and the
+     * position is found by scanning for the descriptor itself
+     */
+    private int indexOf(ArrayList<SystemDescriptor<?>> working, SystemDescriptor<?> descriptor) {
+        if (pendingSorted) {
+            int index = Collections.binarySearch(working, descriptor, ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
+            if (index >= 0 && working.get(index) == descriptor) return index;
+        }
+        
+        for (int lcv = 0; lcv < working.size(); lcv++) {
+            if (working.get(lcv) == descriptor) {
+                return lcv;
             }
         }
         
-        if (unsortedList.size() > 1) {
-            sorted = false;
+        return -1;
+    }
+    
+    private ArrayList<SystemDescriptor<?>> getPending() {
+        if (pending == null) {
+            SystemDescriptor<?>[] current = snapshot;
+            
+            pending = new ArrayList<SystemDescriptor<?>>(current.length + 1);
+            pending.addAll(Arrays.asList(current));
+            pendingSorted = true;
+            dirty = true;
         }
-        else {
-            sorted = true;
+        
+        return pending;
+    }
+    
+    /**
+     * Sorts any pending changes and publishes them as the new
+     * snapshot.  Does nothing if there are no pending changes
+     */
+    public synchronized void publish() {
+        if (pending == null) return;
+        
+        if (!pendingSorted) {
+            Collections.sort(pending, ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
         }
         
-        descriptor.removeList(this);
+        snapshot = pending.isEmpty() ? EMPTY : pending.toArray(new SystemDescriptor<?>[pending.size()]);
+        
+        pending = null;
+        dirty = false;
     }
     
     public synchronized boolean isEmpty() {
-        return unsortedList.isEmpty();
+        if (pending != null) return pending.isEmpty();
+        return snapshot.length == 0;
     }
     
     /**
      * Called by a SystemDescriptor when its ranking has changed
      */
     public synchronized void unSort() {
-        if (unsortedList.size() > 1) {
-            sorted = false;
+        ArrayList<SystemDescriptor<?>> working = getPending();
+        
+        if (working.size() > 1) {
+            pendingSorted = false;
         }
     }
     
     public synchronized void clear() {
-        for (SystemDescriptor<?> descriptor : unsortedList) {
+        for (SystemDescriptor<?> descriptor : getPending()) {
             descriptor.removeList(this);
         }
         
-        unsortedList.clear();
+        pending = null;
+        snapshot = EMPTY;
+        dirty = false;
     }
     
     public synchronized int size() {
-        return unsortedList.size();
+        if (pending != null) return pending.size();
+        return snapshot.length;
+    }
+    
+    /**
+     * A read-only view of a published snapshot
+     */
+    private static class SnapshotList extends AbstractList<SystemDescriptor<?>> implements RandomAccess {
+        private final SystemDescriptor<?>[] elements;
+        
+        private SnapshotList(SystemDescriptor<?>[] elements) {
+            this.elements = elements;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.AbstractList#get(int)
+         */
+        @Override
+        public SystemDescriptor<?> get(int index) {
+            return elements[index];
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.AbstractCollection#size()
+         */
+        @Override
+        public int size() {
+            return elements.length;
+        }
     }
 }
@@ -0,0 +1,442 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.ProtectionDomain;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.glassfish.hk2.api.ServiceInjector;
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * Generates a {@link ServiceInjector} for a service class at runtime with javassist.
+ * The generated injector calls the non-private constructor, fields, initializer
+ * methods and lifecycle methods of the service directly instead of through reflection.  It is defined in
+ * the class loader and package of the service so that it can also reach package
+ * private members.  Private members, and all members of a class whose injector
+ * could not be generated, are still called reflectively by the {@link ClazzCreator}
+ * 
+ * @author jwells
+ *
+ */
+class InjectorGenerator {
+    private final static String INJECTOR_SUFFIX = "$$Hk2Injector";
+    private final static AtomicLong INJECTOR_NUMBER = new AtomicLong();
+    
+    /** Used in the cache for classes whose injector could not be generated */
+    private final static Object NO_INJECTOR = new Object();
+    
+    /**
+     * The generated injectors, which are only weakly held so that they go away
+     * along with the creators that use them.  Protected by the class lock
+     */
+    private final static WeakHashMap<Class<?>, Map<String, WeakReference<Object>>> INJECTORS =
+            new WeakHashMap<Class<?>, Map<String, WeakReference<Object>>>();
+    
+    /**
+     * Gets an injector that can call the given members directly
+     * 
+     * @param implClass The class of the service
+     * @param constructor The constructor chosen for the service
+     * @param fields The fields chosen for the service, in injection order
+     * @param methods The initializer methods chosen for the service, in injection order
+     * @param postConstruct The postConstruct method of the service, may be null
+     * @param preDestroy The preDestroy method of the service, may be null
+     * @return An injector for the members, or null if none of the members can
+     * be called directly or if the injector could not be generated
+     */
+    /* package */ static ServiceInjector<?> getInjector(final Class<?> implClass,
+            final Constructor<?> constructor,
+            final Field fields[],
+            final Method methods[],
+            final Method postConstruct,
+            final Method preDestroy) {
+        if (!Utilities.proxiesAvailable()) return null;
+        if (implClass.getClassLoader() == null) return null;
+        
+        String key = getKey(constructor, fields, methods, postConstruct, preDestroy);
+        
+        synchronized (InjectorGenerator.class) {
+            Map<String, WeakReference<Object>> forClass = INJECTORS.get(implClass);
+            if (forClass != null) {
+                WeakReference<Object> ref = forClass.get(key);
+                Object injector = (ref == null) ? null : ref.get();
+                
+                if (injector == NO_INJECTOR) return null;
+                if (injector != null) return (ServiceInjector<?>) injector;
+            }
+        }
+        
+        ServiceInjector<?> injector = AccessController.doPrivileged(new PrivilegedAction<ServiceInjector<?>>() {
+
+            @Override
+            public ServiceInjector<?> run() {
+                return generate(implClass, constructor, fields, methods, postConstruct, preDestroy);
+            }
+            
+        });
+        
+        synchronized (InjectorGenerator.class) {
+            Map<String, WeakReference<Object>> forClass = INJECTORS.get(implClass);
+            if (forClass == null) {
+                forClass = new HashMap<String, WeakReference<Object>>();
+                INJECTORS.put(implClass, forClass);
+            }
+            
+            forClass.put(key, new WeakReference<Object>((injector == null) ? NO_INJECTOR : injector));
+        }
+        
+        return injector;
+    }
+    
+    private static String getKey(Constructor<?> constructor, Field fields[], Method methods[],
+            Method postConstruct, Method preDestroy) {
+        StringBuffer sb = new StringBuffer(constructor.toString());
+        for (Field field : fields) {
+            sb.append(';');
+            sb.append(field.toString());
+        }
+        for (Method method : methods) {
+            sb.append(';');
+            sb.append(method.toString());
+        }
+        sb.append(';');
+        sb.append(postConstruct);
+        sb.append(';');
+        sb.append(preDestroy);
+        
+        return sb.toString();
+    }
+    
+    private static ServiceInjector<?> generate(Class<?> implClass,
+            Constructor<?> constructor,
+            Field fields[],
+            Method methods[],
+            Method postConstruct,
+            Method preDestroy) {
+        boolean canConstruct = canConstruct(implClass, constructor);
+        boolean canPostConstruct = canCallLifecycle(implClass, postConstruct);
+        boolean canPreDestroy = canCallLifecycle(implClass, preDestroy);
+        boolean canInject[] = new boolean[fields.length];
+        boolean canInitialize[] = new boolean[methods.length];
+        
+        boolean any = canConstruct | canPostConstruct | canPreDestroy;
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            canInject[lcv] = canInject(implClass, fields[lcv]);
+            any |= canInject[lcv];
+        }
+        for (int lcv = 0; lcv < methods.length; lcv++) {
+            canInitialize[lcv] = canInitialize(implClass, methods[lcv]);
+            any |= canInitialize[lcv];
+        }
+        
+        // Everything is private, there is nothing to gain
+        if (!any) return null;
+        
+        String injectorName = implClass.getName() + INJECTOR_SUFFIX + INJECTOR_NUMBER.incrementAndGet();
+        ClassLoader loader = implClass.getClassLoader();
+        
+        try {
+            ClassPool pool = new ClassPool(true);
+            pool.insertClassPath(new LoaderClassPath(loader));
+            pool.appendClassPath(new ClassClassPath(ServiceInjector.class));
+            
+            CtClass injectorClass = pool.makeClass(injectorName);
+            injectorClass.addInterface(pool.get(ServiceInjector.class.getName()));
+            injectorClass.addConstructor(CtNewConstructor.defaultConstructor(injectorClass));
+            
+            injectorClass.addMethod(CtNewMethod.make(getConstructSource(implClass, constructor, canConstruct), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getInjectSource(fields, canInject), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getInitializeSource(methods, canInitialize), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getCanSource("canConstruct", null, canConstruct ? ALWAYS : NEVER), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getCanSource("canInject", "fieldIndex", canInject), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getCanSource("canInitialize", "methodIndex", canInitialize), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getLifecycleSource("postConstruct", postConstruct, canPostConstruct), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getLifecycleSource("preDestroy", preDestroy, canPreDestroy), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getCanSource("canPostConstruct", null, canPostConstruct ? ALWAYS : NEVER), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getCanSource("canPreDestroy", null, canPreDestroy ? ALWAYS : NEVER), injectorClass));
+            
+            // The creator already has the members, these are never called
+            injectorClass.addMethod(CtNewMethod.make(getUnsupportedSource("java.lang.reflect.Constructor getConstructor"), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getUnsupportedSource("java.util.List getFields"), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getUnsupportedSource("java.util.List getInitializerMethods"), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getUnsupportedSource("java.lang.reflect.Method getPostConstructMethod"), injectorClass));
+            injectorClass.addMethod(CtNewMethod.make(getUnsupportedSource("java.lang.reflect.Method getPreDestroyMethod"), injectorClass));
+            
+            ProtectionDomain domain = implClass.getProtectionDomain();
+            Class<?> generated = injectorClass.toClass(loader, domain);
+            injectorClass.detach();
+            
+            return (ServiceInjector<?>) generated.newInstance();
+        }
+        catch (Throwable th) {
+            // For example the class loader of the service cannot see hk2-api
+            Logger.getLogger().debug("InjectorGenerator", "generate", th);
+            return null;
+        }
+    }
+    
+    private final static boolean ALWAYS[] = new boolean[] { true };
+    private final static boolean NEVER[] = new boolean[] { false };
+    
+    private static String getConstructSource(Class<?> implClass, Constructor<?> constructor, boolean canConstruct) {
+        StringBuffer sb = new StringBuffer("public Object construct(Object[] args) throws Throwable {\n");
+        if (canConstruct) {
+            sb.append("return new " + implClass.getCanonicalName() + "(");
+            appendArguments(sb, constructor.getParameterTypes());
+            sb.append(");\n");
+        }
+        else {
+            sb.append("throw new UnsupportedOperationException();\n");
+        }
+        sb.append("}");
+        
+        return sb.toString();
+    }
+    
+    private static String getInjectSource(Field fields[], boolean canInject[]) {
+        StringBuffer sb = new StringBuffer("public void inject(int fieldIndex, Object instance, Object value) throws Throwable {\n");
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            if (!canInject[lcv]) continue;
+            
+            Field field = fields[lcv];
+            sb.append("if (fieldIndex == " + lcv + ") {\n");
+            sb.append("((" + field.getDeclaringClass().getCanonicalName() + ") instance)." + field.getName() + " = ");
+            appendArgument(sb, field.getType(), "value");
+            sb.append(";\nreturn;\n}\n");
+        }
+        sb.append("throw new UnsupportedOperationException();\n}");
+        
+        return sb.toString();
+    }
+    
+    private static String getInitializeSource(Method methods[], boolean canInitialize[]) {
+        StringBuffer sb = new StringBuffer("public void initialize(int methodIndex, Object instance, Object[] args) throws Throwable {\n");
+        for (int lcv = 0; lcv < methods.length; lcv++) {
+            if (!canInitialize[lcv]) continue;
+            
+            Method method = methods[lcv];
+            sb.append("if (methodIndex == " + lcv + ") {\n");
+            sb.append("((" + method.getDeclaringClass().getCanonicalName() + ") instance)." + method.getName() + "(");
+            appendArguments(sb, method.getParameterTypes());
+            sb.append(");\nreturn;\n}\n");
+        }
+        sb.append("throw new UnsupportedOperationException();\n}");
+        
+        return sb.toString();
+    }
+    
+    private static String getLifecycleSource(String methodName, Method method, boolean canCall) {
+        StringBuffer sb = new StringBuffer("public void " + methodName + "(Object instance) throws Throwable {\n");
+        if (canCall) {
+            sb.append("((" + method.getDeclaringClass().getCanonicalName() + ") instance)." + method.getName() + "();\n");
+        }
+        else {
+            sb.append("throw new UnsupportedOperationException();\n");
+        }
+        sb.append("}");
+        
+        return sb.toString();
+    }
+    
+    private static String getCanSource(String methodName, String indexName, boolean can[]) {
+        StringBuffer sb = new StringBuffer("public boolean " + methodName + "(");
+        if (indexName == null) {
+            sb.append(") {\nreturn " + can[0] + ";\n}");
+            return sb.toString();
+        }
+        
+        sb.append("int " + indexName + ") {\n");
+        for (int lcv = 0; lcv < can.length; lcv++) {
+            if (!can[lcv]) continue;
+            
+            sb.append("if (" + indexName + " == " + lcv + ") return true;\n");
+        }
+        sb.append("return false;\n}");
+        
+        return sb.toString();
+    }
+    
+    private static String getUnsupportedSource(String declaration) {
+        return "public " + declaration + "() {\nthrow new UnsupportedOperationException();\n}";
+    }
+    
+    private static void appendArguments(StringBuffer sb, Class<?> parameterTypes[]) {
+        for (int lcv = 0; lcv < parameterTypes.length; lcv++) {
+            if (lcv > 0) sb.append(", ");
+            
+            appendArgument(sb, parameterTypes[lcv], "args[" + lcv + "]");
+        }
+    }
+    
+    /**
+     * The javassist compiler does not unbox, so primitives are unwrapped by hand
+     */
+    private static void appendArgument(StringBuffer sb, Class<?> type, String value) {
+        if (!type.isPrimitive()) {
+            sb.append("(" + type.getCanonicalName() + ") " + value);
+            return;
+        }
+        
+        Class<?> wrapper;
+        if (boolean.class.equals(type)) wrapper = Boolean.class;
+        else if (char.class.equals(type)) wrapper = Character.class;
+        else if (byte.class.equals(type)) wrapper = Byte.class;
+        else if (short.class.equals(type)) wrapper = Short.class;
+        else if (int.class.equals(type)) wrapper = Integer.class;
+        else if (long.class.equals(type)) wrapper = Long.class;
+        else if (float.class.equals(type)) wrapper = Float.class;
+        else wrapper = Double.class;
+        
+        sb.append("((" + wrapper.getName() + ") " + value + ")." + type.getName() + "Value()");
+    }
+    
+    private static boolean canConstruct(Class<?> implClass, Constructor<?> constructor) {
+        if (Modifier.isAbstract(implClass.getModifiers())) return false;
+        
+        // The constructor of an inner class takes its outer instance
+        if (implClass.getEnclosingClass() != null && !Modifier.isStatic(implClass.getModifiers())) return false;
+        
+        if (!isAccessible(implClass, constructor)) return false;
+        
+        return areAccessible(implClass, constructor.getParameterTypes());
+    }
+    
+    private static boolean canInject(Class<?> implClass, Field field) {
+        // Final fields can only be set reflectively
+        if (Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) return false;
+        
+        if (!isAccessible(implClass, field)) return false;
+        
+        return isAccessible(implClass, field.getType());
+    }
+    
+    private static boolean canInitialize(Class<?> implClass, Method method) {
+        if (Modifier.isStatic(method.getModifiers())) return false;
+        
+        if (!isAccessible(implClass, method)) return false;
+        
+        return areAccessible(implClass, method.getParameterTypes());
+    }
+    
+    private static boolean canCallLifecycle(Class<?> implClass, Method method) {
+        if (method == null) return false;
+        if (Modifier.isStatic(method.getModifiers())) return false;
+        if (method.getParameterTypes().length != 0) return false;
+        
+        return isAccessible(implClass, method);
+    }
+    
+    /**
+     * A member is accessible from the generated injector if it is public, or if it
+     * is not private and its class is in the same runtime package as the injector
+     */
+    private static boolean isAccessible(Class<?> implClass, Member member) {
+        int modifiers = member.getModifiers();
+        if (Modifier.isPrivate(modifiers)) return false;
+        
+        Class<?> declaringClass = member.getDeclaringClass();
+        if (!isAccessible(implClass, declaringClass)) return false;
+        
+        if (Modifier.isPublic(modifiers)) return true;
+        
+        // Protected and package members of a super class in another package are not
+        return isSamePackage(implClass, declaringClass);
+    }
+    
+    private static boolean areAccessible(Class<?> implClass, Class<?> types[]) {
+        for (Class<?> type : types) {
+            if (!isAccessible(implClass, type)) return false;
+        }
+        
+        return true;
+    }
+    
+    private static boolean isAccessible(Class<?> implClass, Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) return true;
+        
+        // Local and anonymous classes cannot be named in source
+        if (type.getCanonicalName() == null) return false;
+        
+        for (Class<?> current = type; current != null; current = current.getDeclaringClass()) {
+            int modifiers = current.getModifiers();
+            if (Modifier.isPrivate(modifiers)) return false;
+            if (!Modifier.isPublic(modifiers) && !isSamePackage(implClass, current)) return false;
+        }
+        
+        return true;
+    }
+    
+    private static boolean isSamePackage(Class<?> one, Class<?> two) {
+        if (one.getClassLoader() != two.getClassLoader()) return false;
+        
+        return getPackageName(one).equals(getPackageName(two));
+    }
+    
+    private static String getPackageName(Class<?> clazz) {
+        String name = clazz.getName();
+        int index = name.lastIndexOf('.');
+        
+        return (index < 0) ? "" : name.substring(0, index);
+    }
+
+}
@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.api.IterableProvider;
@@ -68,9 +69,19 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
     private final ServiceLocatorImpl locator;
     private final Type requiredType;
     private final Set<Annotation> requiredQualifiers;
+    private final Annotation qualifierArray[];
     private final Unqualified unqualified;
     private final Injectee originalInjectee;
     private final boolean isIterable;
+    private final InjecteeImpl jitInjectee;
+    
+    /**
+     * The cache generation of the locator at the last time the
+     * just in time resolution found a service.  Until the generation
+     * changes the same service will be found, and the just in time
+     * resolvers would not be asked again
+     */
+    private volatile long resolvedGeneration = -1L;
     
     /* package */ IterableProviderImpl(
             ServiceLocatorImpl locator,
@@ -82,21 +93,35 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         this.locator = locator;
         this.requiredType = requiredType;
         this.requiredQualifiers = Collections.unmodifiableSet(requiredQualifiers);
+        this.qualifierArray = requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]);
         this.unqualified = unqualified;
         this.originalInjectee = originalInjectee;
         this.isIterable = isIterable;
+        
+        jitInjectee = new InjecteeImpl(originalInjectee);
+        jitInjectee.setRequiredType(requiredType);
+        jitInjectee.setRequiredQualifiers(this.requiredQualifiers);
+        if (unqualified != null) {
+            jitInjectee.setUnqualified(unqualified);
+        }
     }
     
     private void justInTime() {
-        InjecteeImpl injectee = new InjecteeImpl(originalInjectee);
-        injectee.setRequiredType(requiredType);
-        injectee.setRequiredQualifiers(requiredQualifiers);
-        if (unqualified != null) {
-            injectee.setUnqualified(unqualified);
-        }
+        long generation = locator.getCacheGeneration();
+        if (generation == resolvedGeneration) return;
         
         // This does nothing more than run the JIT resolvers
-        locator.getInjecteeDescriptor(injectee);
+        if (locator.getInjecteeDescriptor(jitInjectee) != null) {
+            // If the resolvers added anything the generation has moved on
+            // since it was read, and so they will be asked once more
+            resolvedGeneration = generation;
+        }
+    }
+    
+    private List<ActiveDescriptor<?>> getCandidates() {
+        justInTime();
+        
+        return locator.getAllUnqualifiedDescriptors(requiredType, unqualified, isIterable, qualifierArray);
     }
 
     /* (non-Javadoc)
@@ -109,7 +134,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         
         // Must do this in this way to ensure that the generated item is properly associated with the root
         return (T) locator.getUnqualifiedService(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifierArray);
     }
     
     /* (non-Javadoc)
@@ -121,7 +146,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         justInTime();
         
         return (ServiceHandle<T>) locator.getUnqualifiedServiceHandle(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifierArray);
     }
     
 
@@ -130,13 +155,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public Iterator<T> iterator() {
-        justInTime();
-        
-        List<ServiceHandle<T>> handles;
-        handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllUnqualifiedServiceHandles(requiredType,
-                    unqualified, isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
-        
-        return new MyIterator<T>(handles);
+        return new MyIterator<T>(locator, requiredType, getCandidates());
     }
 
     /* (non-Javadoc)
@@ -144,10 +163,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public int getSize() {
-        justInTime();
-        
-        return locator.getAllUnqualifiedServiceHandles(requiredType, unqualified, isIterable,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])).size();
+        return getCandidates().size();
     }
 
     /* (non-Javadoc)
@@ -187,16 +203,28 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         justInTime();
         
         List<ServiceHandle<T>> handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllServiceHandles(requiredType,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
+                qualifierArray));
         
         return new HandleIterable<T>(handles);
     }
     
+    /**
+     * Creates the handle and the service of each candidate only when
+     * the iterator reaches it, so callers that stop early never
+     * create the remaining services
+     * 
+     * @author jwells
+     *
+     */
     private static class MyIterator<U> implements Iterator<U> {
-        private final LinkedList<ServiceHandle<U>> handles;
+        private final ServiceLocatorImpl locator;
+        private final Type requiredType;
+        private final Iterator<ActiveDescriptor<?>> candidates;
         
-        private MyIterator(List<ServiceHandle<U>> handles) {
-            this.handles = new LinkedList<ServiceHandle<U>>(handles);
+        private MyIterator(ServiceLocatorImpl locator, Type requiredType, List<ActiveDescriptor<?>> candidates) {
+            this.locator = locator;
+            this.requiredType = requiredType;
+            this.candidates = candidates.iterator();
         }
 
         /* (non-Javadoc)
@@ -204,19 +232,20 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
          */
         @Override
         public boolean hasNext() {
-            return !handles.isEmpty();
+            return candidates.hasNext();
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
+        @SuppressWarnings("unchecked")
         @Override
         public U next() {
-            if (handles.isEmpty()) throw new NoSuchElementException();
+            if (!candidates.hasNext()) throw new NoSuchElementException();
             
-            ServiceHandle<U> nextHandle = handles.removeFirst();
+            ActiveDescriptor<U> candidate = (ActiveDescriptor<U>) candidates.next();
             
-            return nextHandle.getService();
+            return locator.getServiceHandleForLookup(candidate, requiredType).getService();
         }
 
         /* (non-Javadoc)
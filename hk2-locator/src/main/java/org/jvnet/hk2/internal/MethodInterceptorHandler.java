@@ -44,11 +44,9 @@ import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.RandomAccess;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -61,7 +59,12 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import javassist.util.proxy.MethodHandler;
 
 /**
- * This is the handler that runs the aopalliance method interception
+ * This is the handler that runs the aopalliance method interception.
+ * The interceptors of each method are compiled into an array when the
+ * handler is created.  If the service was prepared (see {@link PreparedAccessors})
+ * the javassist proceed method is made accessible the first time it
+ * is called and from then on is invoked without going through the
+ * {@link AccessController}
  * 
  * @author jwells
  *
@@ -77,15 +80,25 @@ public class MethodInterceptorHandler implements MethodHandler {
     });
     
     private final ServiceLocatorImpl locator;
-    private final Map<Method, List<MethodInterceptor>> interceptorLists;
+    private final HashMap<Method, MethodInterceptor[]> interceptorChains;
     private final ActiveDescriptor<?> underlyingDescriptor;
+    private final boolean prepared;
     
     /* package */ MethodInterceptorHandler(ServiceLocatorImpl locator,
             ActiveDescriptor<?> underlyingDescriptor,
-            Map<Method, List<MethodInterceptor>> interceptorLists) {
+            Map<Method, List<MethodInterceptor>> interceptorLists,
+            boolean prepared) {
         this.locator = locator;
-        this.interceptorLists = interceptorLists;
         this.underlyingDescriptor = underlyingDescriptor;
+        this.prepared = prepared;
+        
+        interceptorChains = new HashMap<Method, MethodInterceptor[]>();
+        for (Map.Entry<Method, List<MethodInterceptor>> entry : interceptorLists.entrySet()) {
+            List<MethodInterceptor> interceptors = entry.getValue();
+            if (interceptors == null || interceptors.isEmpty()) continue;
+            
+            interceptorChains.put(entry.getKey(), interceptors.toArray(new MethodInterceptor[interceptors.size()]));
+        }
     }
 
     /* (non-Javadoc)
@@ -98,23 +111,18 @@ public class MethodInterceptorHandler implements MethodHandler {
             return underlyingDescriptor;
         }
         
-        List<MethodInterceptor> interceptors = interceptorLists.get(thisMethod);
-        if (interceptors == null || interceptors.isEmpty()) {
-            return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
-        }
-        
-        if (!(interceptors instanceof RandomAccess)) {
-            // Make sure we are indexable
-            interceptors = new ArrayList<MethodInterceptor>(interceptors);
+        MethodInterceptor interceptors[] = interceptorChains.get(thisMethod);
+        if (interceptors == null) {
+            return callProceed(self, proceed, args);
         }
         
-        MethodInterceptor nextInterceptor = interceptors.get(0);
+        MethodInterceptor nextInterceptor = interceptors[0];
         
         long aggregateInterceptionTime = 0L;
         if (DEBUG_INTERCEPTION) {
             aggregateInterceptionTime = System.currentTimeMillis();
             Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                    " index 0 in stack of " + interceptors.size() + " of method " + thisMethod);
+                    " index 0 in stack of " + interceptors.length + " of method " + thisMethod);
         }
         
         try {
@@ -130,11 +138,28 @@ public class MethodInterceptorHandler implements MethodHandler {
         }
     }
     
+    /**
+     * Calls the method of the service underneath the proxy
+     * 
+     * @param self The proxy
+     * @param proceed The javassist generated method that calls the super method
+     * @param args The arguments to the method
+     * @return The return from the method
+     * @throws Throwable Whatever the method threw
+     */
+    private Object callProceed(Object self, Method proceed, Object args[]) throws Throwable {
+        if (prepared && (proceed.isAccessible() || PreparedAccessors.prepare(proceed))) {
+            return PreparedAccessors.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
+        }
+        
+        return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
+    }
+    
     private class MethodInvocationImpl implements MethodInvocation, HK2Invocation {
         private final Object[] arguments;  // Live!
         private final Method method;
         private final Object myself;
-        private final List<MethodInterceptor> interceptors;
+        private final MethodInterceptor interceptors[];
         private final int index;
         private final Method proceed;
         private HashMap<String, Object> userData;
@@ -142,7 +167,7 @@ public class MethodInterceptorHandler implements MethodHandler {
         private MethodInvocationImpl(Object[] arguments,
                 Method method,
                 Object myself,
-                List<MethodInterceptor> interceptors,
+                MethodInterceptor interceptors[],
                 int index,
                 Method proceed,
                 HashMap<String, Object> userData) {
@@ -178,14 +203,14 @@ public class MethodInterceptorHandler implements MethodHandler {
         @Override
         public Object proceed() throws Throwable {
             int newIndex = index + 1;
-            if (newIndex >= interceptors.size()) {
+            if (newIndex >= interceptors.length) {
                 long methodTime = 0L;
                 if (DEBUG_INTERCEPTION) {
                     methodTime = System.currentTimeMillis();
                 }
                 try {
                     // Call the actual method
-                    return ReflectionHelper.invoke(myself, proceed, arguments, locator.getNeutralContextClassLoader());
+                    return callProceed(myself, proceed, arguments);
                 }
                 finally {
                     if (DEBUG_INTERCEPTION) {
@@ -197,13 +222,13 @@ public class MethodInterceptorHandler implements MethodHandler {
             }
             
             // Invoke the next interceptor
-            MethodInterceptor nextInterceptor = interceptors.get(newIndex);
+            MethodInterceptor nextInterceptor = interceptors[newIndex];
             
             long aggregateInterceptionTime = 0L;
             if (DEBUG_INTERCEPTION) {
                 aggregateInterceptionTime = System.currentTimeMillis();
                 Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                        " index " + newIndex + " in stack of " + interceptors.size() +
+                        " index " + newIndex + " in stack of " + interceptors.length +
                         " of method " + method);
             }
             
@@ -40,12 +40,25 @@
 
 package org.jvnet.hk2.internal;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
@@ -56,6 +69,7 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
@@ -65,6 +79,26 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  * @author jwells
  */
 public class PopulatorImpl implements Populator {
+    /**
+     * The number of threads used to read descriptor files.  When greater than
+     * one the files are read and parsed in parallel, and are then post-processed
+     * and bound in the order given by the {@link DescriptorFileFinder}
+     */
+    private final static String THREADS_PROPERTY = "org.jvnet.hk2.properties.populator.threads";
+    
+    private final static ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread retVal = new Thread(r, "HK2 Populator-" + count.incrementAndGet());
+            retVal.setDaemon(true);
+            
+            return retVal;
+        }
+        
+    };
+    
     private final ServiceLocator serviceLocator;
     private final DynamicConfigurationService dcs;
     
@@ -114,62 +148,64 @@ public class PopulatorImpl implements Populator {
         Collector collector = new Collector();
 
         DynamicConfiguration config = dcs.createDynamicConfiguration();
-
-        int lcv = 0;
-        for (InputStream is : descriptorFileInputStreams) {
-            String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
-            lcv++;
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
+        
+        int threads = Math.min(getThreads(), descriptorFileInputStreams.size());
+        if (threads <= 1) {
+            int lcv = 0;
+            for (InputStream is : descriptorFileInputStreams) {
+                String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+                lcv++;
+                
+                bindAll(readDescriptors(is, identifier, collector), config, descriptors,
+                        postProcessors, identifier, collector);
+            }
+        }
+        else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, THREAD_FACTORY);
             try {
-                boolean readOne = false;
-
-                do {
-                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
+                List<Future<List<DescriptorImpl>>> futures = new ArrayList<Future<List<DescriptorImpl>>>(descriptorFileInputStreams.size());
+                List<Collector> fileCollectors = new ArrayList<Collector>(descriptorFileInputStreams.size());
+                
+                int lcv = 0;
+                for (InputStream is : descriptorFileInputStreams) {
+                    String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+                    lcv++;
+                    
+                    Collector fileCollector = new Collector();
+                    fileCollectors.add(fileCollector);
+                    futures.add(executor.submit(new DescriptorFileReader(is, identifier, fileCollector)));
+                }
+                
+                // Files are merged in the order given by the finder, as if read on this thread
+                for (lcv = 0; lcv < futures.size(); lcv++) {
+                    String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+                    
+                    List<DescriptorImpl> fileDescriptors;
                     try {
-                        readOne = descriptorImpl.readObject(br);
+                        fileDescriptors = futures.get(lcv).get();
                     }
-                    catch (IOException ioe) {
-                        if (identifier != null) {
-                            collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", ioe));
-                        }
-                        else {
-                            collector.addThrowable(ioe);
-                        }
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while reading descriptor files");
                     }
-
-                    if (readOne) {
-                            
-                        for (PopulatorPostProcessor pp : postProcessors) {
-                            try {
-                                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
-                            }
-                            catch (Throwable th) {
-                                if (identifier != null) {
-                                    collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
-                                }
-                                else {
-                                    collector.addThrowable(th);
-                                }
-                                descriptorImpl = null;
-                            }
-
-                            if (descriptorImpl == null) {
-                                break;
-                            }
-                        }
-                            
-                        if (descriptorImpl != null) {
-                            descriptors.add(config.bind(descriptorImpl, false));
-                        }
-
+                    catch (ExecutionException ee) {
+                        Throwable cause = ee.getCause();
+                        if (cause instanceof IOException) throw (IOException) cause;
+                        throw new MultiException(cause);
                     }
-                } while (readOne);
-
-            } finally {
-                br.close();
+                    
+                    try {
+                        fileCollectors.get(lcv).throwIfErrors();
+                    }
+                    catch (MultiException me) {
+                        collector.addMultiException(me);
+                    }
+                    
+                    bindAll(fileDescriptors, config, descriptors, postProcessors, identifier, collector);
+                }
+            }
+            finally {
+                executor.shutdown();
             }
         }
         
@@ -181,6 +217,165 @@ public class PopulatorImpl implements Populator {
         return descriptors;
     }
 
+    /**
+     * Reads all of the descriptors from one descriptor file, in either
+     * format, and closes the stream
+     * 
+     * @param is The stream of the descriptor file
+     * @param identifier The identifier of the file, may be null
+     * @param collector Where errors reading the descriptors are put
+     * @return All of the descriptors that could be read from the file
+     * @throws IOException If the format of the file could not be determined
+     */
+    private static List<DescriptorImpl> readDescriptors(InputStream is,
+            String identifier,
+            Collector collector) throws IOException {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>();
+        
+        if (!(is instanceof FileInputStream) && !is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        
+        boolean binary;
+        try {
+            binary = BinaryDescriptorFile.isBinaryDescriptorFile(is);
+        }
+        catch (IOException ioe) {
+            is.close();
+            throw ioe;
+        }
+        
+        if (binary) {
+            try {
+                retVal.addAll(BinaryDescriptorFile.read(is).getDescriptors());
+            }
+            catch (IOException ioe) {
+                addReadError(ioe, identifier, collector);
+            }
+            finally {
+                is.close();
+            }
+            
+            return retVal;
+        }
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+
+        try {
+            boolean readOne = false;
+
+            do {
+                DescriptorImpl descriptorImpl = new DescriptorImpl();
+
+                try {
+                    readOne = descriptorImpl.readObject(br);
+                }
+                catch (IOException ioe) {
+                    addReadError(ioe, identifier, collector);
+                }
+
+                if (readOne) {
+                    retVal.add(descriptorImpl);
+                }
+            } while (readOne);
+
+        } finally {
+            br.close();
+        }
+        
+        return retVal;
+    }
+    
+    private static void addReadError(Throwable th, String identifier, Collector collector) {
+        if (identifier != null) {
+            collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
+        }
+        else {
+            collector.addThrowable(th);
+        }
+    }
+    
+    private void bindAll(List<DescriptorImpl> fileDescriptors,
+            DynamicConfiguration config,
+            List<ActiveDescriptor<?>> descriptors,
+            PopulatorPostProcessor postProcessors[],
+            String identifier,
+            Collector collector) {
+        for (DescriptorImpl descriptorImpl : fileDescriptors) {
+            descriptorImpl = postProcess(descriptorImpl, postProcessors, identifier, collector);
+            
+            if (descriptorImpl != null) {
+                descriptors.add(config.bind(descriptorImpl, false));
+            }
+        }
+    }
+    
+    private DescriptorImpl postProcess(DescriptorImpl descriptorImpl,
+            PopulatorPostProcessor postProcessors[],
+            String identifier,
+            Collector collector) {
+        for (PopulatorPostProcessor pp : postProcessors) {
+            try {
+                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
+            }
+            catch (Throwable th) {
+                addReadError(th, identifier, collector);
+                descriptorImpl = null;
+            }
+
+            if (descriptorImpl == null) {
+                break;
+            }
+        }
+        
+        return descriptorImpl;
+    }
+
+    private static int getThreads() {
+        String threads = AccessController.doPrivileged(new PrivilegedAction<String>() {
+            @Override
+            public String run() {
+                return System.getProperty(THREADS_PROPERTY);
+            }
+            
+        });
+        if (threads == null) return 1;
+        
+        try {
+            return Integer.parseInt(threads.trim());
+        }
+        catch (NumberFormatException nfe) {
+            return 1;
+        }
+    }
+    
+    /**
+     * Reads one descriptor file on a thread of the populator
+     * 
+     * @author jwells
+     *
+     */
+    private static class DescriptorFileReader implements Callable<List<DescriptorImpl>> {
+        private final InputStream is;
+        private final String identifier;
+        private final Collector collector;
+        
+        private DescriptorFileReader(InputStream is, String identifier, Collector collector) {
+            this.is = is;
+            this.identifier = identifier;
+            this.collector = collector;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public List<DescriptorImpl> call() throws IOException {
+            return readDescriptors(is, identifier, collector);
+        }
+        
+    }
+    
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Populator#populate()
      */
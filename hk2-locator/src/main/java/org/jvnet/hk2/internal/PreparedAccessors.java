@@ -0,0 +1,321 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.glassfish.hk2.api.ServiceInjector;
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * Calls the constructors, fields and methods of services that were made
+ * accessible once, when the injection plan of the service was computed.
+ * Unlike the methods of {@link org.glassfish.hk2.utilities.reflection.ReflectionHelper}
+ * these do not check accessibility on every call, and only go through
+ * the {@link AccessController} to restore the context class loader if
+ * the service actually changed it
+ * 
+ * @author jwells
+ *
+ */
+class PreparedAccessors {
+    private final static String ACCESSORS_PROPERTY = "org.jvnet.hk2.properties.accessors";
+    private final static String REFLECTIVE = "reflective";
+    
+    /**
+     * Tells if the prepared accessors should be used for injection plans computed from
+     * now on.  Setting the system property org.jvnet.hk2.properties.accessors to
+     * reflective goes back to calling through ReflectionHelper every time
+     * 
+     * @return true if the prepared accessors should be used
+     */
+    /* package */ static boolean isEnabled() {
+        String value = AccessController.doPrivileged(new PrivilegedAction<String>() {
+            @Override
+            public String run() {
+                return System.getProperty(ACCESSORS_PROPERTY);
+            }
+        });
+        
+        return !REFLECTIVE.equalsIgnoreCase(value);
+    }
+    
+    /**
+     * Makes all the given members accessible
+     * 
+     * @param members The possibly null members to make accessible
+     * @return true if all the members are now accessible, false if
+     * the security manager stopped one of them from being made accessible
+     */
+    /* package */ static boolean prepare(final AccessibleObject... members) {
+        try {
+            AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                @Override
+                public Object run() {
+                    for (AccessibleObject member : members) {
+                        if (member == null || member.isAccessible()) continue;
+                        
+                        member.setAccessible(true);
+                    }
+                    
+                    return null;
+                }
+            });
+        }
+        catch (SecurityException se) {
+            Logger.getLogger().debug("PreparedAccessors", "prepare", se);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Calls a prepared constructor
+     * 
+     * @param c The constructor to call, which must have been prepared
+     * @param args The arguments to the constructor
+     * @param neutralCCL true if the context class loader should be the same after this call
+     * @return The new object
+     * @throws Throwable The unwrapped throwable thrown by the constructor
+     */
+    /* package */ static Object makeMe(Constructor<?> c, Object args[], boolean neutralCCL) throws Throwable {
+        ClassLoader currentCCL = null;
+        if (neutralCCL) {
+            currentCCL = getContextClassLoader();
+        }
+        
+        try {
+            return c.newInstance(args);
+        }
+        catch (InvocationTargetException ite) {
+            Throwable targetException = ite.getTargetException();
+            Logger.getLogger().debug(c.getDeclaringClass().getName(), c.getName(), targetException);
+            throw targetException;
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug(c.getDeclaringClass().getName(), c.getName(), th);
+            throw th;
+        }
+        finally {
+            if (neutralCCL) {
+                restoreContextClassLoader(currentCCL);
+            }
+        }
+    }
+    
+    /**
+     * Sets a prepared field
+     * 
+     * @param field The field to set, which must have been prepared
+     * @param instance The instance to set the field on
+     * @param value The value to set the field to
+     * @throws Throwable If the field could not be set
+     */
+    /* package */ static void setField(Field field, Object instance, Object value) throws Throwable {
+        try {
+            field.set(instance, value);
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug(field.getDeclaringClass().getName(), field.getName(), th);
+            throw th;
+        }
+    }
+    
+    /**
+     * Invokes a prepared method
+     * 
+     * @param o The object to invoke the method on
+     * @param m The method to invoke, which must have been prepared
+     * @param args The arguments to the method
+     * @param neutralCCL true if the context class loader should be the same after this call
+     * @return The return from the invocation
+     * @throws Throwable The unwrapped throwable thrown by the method
+     */
+    /* package */ static Object invoke(Object o, Method m, Object args[], boolean neutralCCL) throws Throwable {
+        ClassLoader currentCCL = null;
+        if (neutralCCL) {
+            currentCCL = getContextClassLoader();
+        }
+        
+        try {
+            return m.invoke(o, args);
+        }
+        catch (InvocationTargetException ite) {
+            Throwable targetException = ite.getTargetException();
+            Logger.getLogger().debug(m.getDeclaringClass().getName(), m.getName(), targetException);
+            throw targetException;
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug(m.getDeclaringClass().getName(), m.getName(), th);
+            throw th;
+        }
+        finally {
+            if (neutralCCL) {
+                restoreContextClassLoader(currentCCL);
+            }
+        }
+    }
+    
+    /**
+     * Constructs an instance with a build-time generated injector
+     * 
+     * @param injector The injector that can call the constructor directly
+     * @param args The arguments to the constructor
+     * @param neutralCCL true if the context class loader should be the same after this call
+     * @return The new object
+     * @throws Throwable Whatever the constructor throws
+     */
+    /* package */ static <T> T construct(ServiceInjector<T> injector, Object args[], boolean neutralCCL) throws Throwable {
+        ClassLoader currentCCL = null;
+        if (neutralCCL) {
+            currentCCL = getContextClassLoader();
+        }
+        
+        try {
+            return injector.construct(args);
+        }
+        finally {
+            if (neutralCCL) {
+                restoreContextClassLoader(currentCCL);
+            }
+        }
+    }
+    
+    /**
+     * Calls an initializer method with a build-time generated injector
+     * 
+     * @param injector The injector that can call the method directly
+     * @param methodIndex The index of the method in the injector
+     * @param instance The instance to call the method on
+     * @param args The arguments to the method
+     * @param neutralCCL true if the context class loader should be the same after this call
+     * @throws Throwable Whatever the method throws
+     */
+    /* package */ static <T> void initialize(ServiceInjector<T> injector, int methodIndex, T instance, Object args[], boolean neutralCCL) throws Throwable {
+        ClassLoader currentCCL = null;
+        if (neutralCCL) {
+            currentCCL = getContextClassLoader();
+        }
+        
+        try {
+            injector.initialize(methodIndex, instance, args);
+        }
+        finally {
+            if (neutralCCL) {
+                restoreContextClassLoader(currentCCL);
+            }
+        }
+    }
+    
+    /**
+     * Calls the postConstruct or preDestroy method with a generated injector
+     * 
+     * @param injector The injector that can call the method directly
+     * @param instance The instance to call the method on
+     * @param postConstruct true to call the postConstruct method, false to
+     * call the preDestroy method
+     * @param neutralCCL true if the context class loader should be the same after this call
+     * @throws Throwable Whatever the method throws
+     */
+    /* package */ static <T> void lifecycle(ServiceInjector<T> injector, T instance, boolean postConstruct, boolean neutralCCL) throws Throwable {
+        ClassLoader currentCCL = null;
+        if (neutralCCL) {
+            currentCCL = getContextClassLoader();
+        }
+        
+        try {
+            if (postConstruct) {
+                injector.postConstruct(instance);
+            }
+            else {
+                injector.preDestroy(instance);
+            }
+        }
+        finally {
+            if (neutralCCL) {
+                restoreContextClassLoader(currentCCL);
+            }
+        }
+    }
+    
+    private static ClassLoader getContextClassLoader() {
+        if (System.getSecurityManager() == null) {
+            return Thread.currentThread().getContextClassLoader();
+        }
+        
+        return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+            @Override
+            public ClassLoader run() {
+                return Thread.currentThread().getContextClassLoader();
+            }
+        });
+    }
+    
+    private static void restoreContextClassLoader(final ClassLoader original) {
+        if (System.getSecurityManager() == null) {
+            Thread current = Thread.currentThread();
+            if (current.getContextClassLoader() != original) {
+                current.setContextClassLoader(original);
+            }
+            
+            return;
+        }
+        
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                Thread current = Thread.currentThread();
+                if (current.getContextClassLoader() != original) {
+                    current.setContextClassLoader(original);
+                }
+                
+                return null;
+            }
+        });
+    }
+
+}
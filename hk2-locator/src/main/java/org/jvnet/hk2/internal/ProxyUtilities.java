@@ -44,7 +44,8 @@ import java.lang.reflect.Proxy;
 import java.security.AccessControlException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
@@ -63,8 +64,18 @@ import javassist.util.proxy.ProxyObject;
  *
  */
 public class ProxyUtilities {
-    private final static Object proxyCreationLock = new Object();
-    private final HashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new HashMap<ClassLoader, DelegatingClassLoader>();
+    /** Must be a power of two */
+    private final static int GENERATION_STRIPES = 16;
+    
+    private final ConcurrentHashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new ConcurrentHashMap<ClassLoader, DelegatingClassLoader>();
+    private final ConcurrentHashMap<ProxyKey, Class<?>> proxyClasses = new ConcurrentHashMap<ProxyKey, Class<?>>();
+    private final Object[] generationLocks = new Object[GENERATION_STRIPES];
+    
+    public ProxyUtilities() {
+        for (int lcv = 0; lcv < GENERATION_STRIPES; lcv++) {
+            generationLocks[lcv] = new Object();
+        }
+    }
     
     /**
      * We put the anchor as the value even though we don't use it in order to
@@ -113,23 +124,23 @@ public class ProxyUtilities {
             
         });
         
-        DelegatingClassLoader initDelegatingLoader;
-        synchronized (superClassToDelegator) {
-            initDelegatingLoader = superClassToDelegator.get(loader);
-            if (initDelegatingLoader == null) {
-                initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
-
-                    @Override
-                    public DelegatingClassLoader run() {
-                        return new DelegatingClassLoader(
-                                loader,
-                                ProxyFactory.class.getClassLoader(),
-                                ProxyCtl.class.getClassLoader());
-                    }
-                    
-                });
+        DelegatingClassLoader initDelegatingLoader = superClassToDelegator.get(loader);
+        if (initDelegatingLoader == null) {
+            initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
+
+                @Override
+                public DelegatingClassLoader run() {
+                    return new DelegatingClassLoader(
+                            loader,
+                            ProxyFactory.class.getClassLoader(),
+                            ProxyCtl.class.getClassLoader());
+                }
                 
-                superClassToDelegator.put(loader, initDelegatingLoader);
+            });
+            
+            DelegatingClassLoader existing = superClassToDelegator.putIfAbsent(loader, initDelegatingLoader);
+            if (existing != null) {
+                initDelegatingLoader = existing;
             }
         }
         
@@ -149,46 +160,81 @@ public class ProxyUtilities {
 
         }
 
+        final Class<?> proxyClass = getProxyClass(superclass, interfaces, delegatingLoader);
+
         return AccessController.doPrivileged(new PrivilegedAction<T>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public T run() {
-                synchronized (proxyCreationLock) {
-                    ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
-                    ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
+                try {
+                    T proxy = (T) proxyClass.newInstance();
+
+                    ((ProxyObject) proxy).setHandler(callback);
+
+                    return proxy;
+                } catch (Exception e1) {
+                    throw new RuntimeException(e1);
+                }
+            }
+
+        });
+
+    }
+    
+    /**
+     * Gets the javassist proxy class for the given superclass and interfaces,
+     * generating it in the given loader the first time it is asked for.  Classes
+     * are generated under one of several locks chosen by the key, so that
+     * generating the proxy for one type never holds up the generation
+     * of the proxy of an unrelated type, and once generated no
+     * lock is taken at all
+     * 
+     * @param superclass The class the proxy extends
+     * @param interfaces The interfaces the proxy implements
+     * @param delegatingLoader The loader the proxy is defined in
+     * @return The proxy class, never null
+     */
+    private Class<?> getProxyClass(final Class<?> superclass,
+            final Class<?>[] interfaces,
+            final DelegatingClassLoader delegatingLoader) {
+        ProxyKey key = new ProxyKey(superclass, interfaces, delegatingLoader);
+        
+        Class<?> retVal = proxyClasses.get(key);
+        if (retVal != null) return retVal;
+        
+        synchronized (generationLocks[key.hashCode() & (GENERATION_STRIPES - 1)]) {
+            retVal = proxyClasses.get(key);
+            if (retVal != null) return retVal;
+            
+            retVal = AccessController.doPrivileged(new PrivilegedAction<Class<?>>() {
+
+                @Override
+                public Class<?> run() {
+                    ProxyFactory proxyFactory = new ProxyFactory() {
                         
                         @Override
-                        public ClassLoader get(ProxyFactory arg0) {
+                        protected ClassLoader getClassLoader() {
                             return delegatingLoader;
                         }
+                        
                     };
                     
-                    try {
-                        ProxyFactory proxyFactory = new ProxyFactory();
-                        proxyFactory.setInterfaces(interfaces);
-                        proxyFactory.setSuperclass(superclass);
-
-                        Class<?> proxyClass = proxyFactory.createClass();
+                    // This cache is keyed by the delegating loader, so the
+                    // factory need not keep its own copy
+                    proxyFactory.setUseCache(false);
+                    proxyFactory.setInterfaces(interfaces);
+                    proxyFactory.setSuperclass(superclass);
 
-                        try {
-                            T proxy = (T) proxyClass.newInstance();
-
-                            ((ProxyObject) proxy).setHandler(callback);
-
-                            return proxy;
-                        } catch (Exception e1) {
-                            throw new RuntimeException(e1);
-                        }
-                    }
-                    finally {
-                        ProxyFactory.classLoaderProvider = originalProvider;
-                    }
+                    return proxyFactory.createClass();
                 }
-            }
-
-        });
-
+                
+            });
+            
+            proxyClasses.put(key, retVal);
+        }
+        
+        return retVal;
     }
     
     @SuppressWarnings("unchecked")
@@ -241,8 +287,44 @@ public class ProxyUtilities {
     }
     
     public void releaseCache() {
-        synchronized (superClassToDelegator) {
-            superClassToDelegator.clear();
+        proxyClasses.clear();
+        superClassToDelegator.clear();
+    }
+    
+    private static class ProxyKey {
+        private final Class<?> superclass;
+        private final Class<?>[] interfaces;
+        private final ClassLoader loader;
+        private final int hash;
+        
+        private ProxyKey(Class<?> superclass, Class<?>[] interfaces, ClassLoader loader) {
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+            this.loader = loader;
+            
+            int hash = superclass.hashCode();
+            hash = (31 * hash) + Arrays.hashCode(interfaces);
+            hash = (31 * hash) + System.identityHashCode(loader);
+            
+            this.hash = hash ^ (hash >>> 16);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof ProxyKey)) return false;
+            
+            ProxyKey other = (ProxyKey) o;
+            
+            return (hash == other.hash) &&
+                    (superclass == other.superclass) &&
+                    (loader == other.loader) &&
+                    Arrays.equals(interfaces, other.interfaces);
         }
     }
 }
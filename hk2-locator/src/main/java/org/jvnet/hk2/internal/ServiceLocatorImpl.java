@@ -42,6 +42,9 @@ package org.jvnet.hk2.internal;
 import org.glassfish.hk2.utilities.cache.Cache;
 import org.glassfish.hk2.utilities.cache.Computable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
@@ -49,6 +52,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -70,11 +74,13 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.CacheableValidator;
 import org.glassfish.hk2.api.ClassAnalyzer;
 import org.glassfish.hk2.api.Context;
 import org.glassfish.hk2.api.Descriptor;
@@ -102,6 +108,7 @@ import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
 import org.glassfish.hk2.api.ServiceLocatorState;
+import org.glassfish.hk2.api.ServiceLookup;
 import org.glassfish.hk2.api.TwoPhaseResource;
 import org.glassfish.hk2.api.TwoPhaseTransactionData;
 import org.glassfish.hk2.api.Unqualified;
@@ -110,8 +117,8 @@ import org.glassfish.hk2.api.ValidationService;
 import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.InjecteeImpl;
-import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
@@ -120,6 +127,7 @@ import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
+import org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation;
 
 /**
  * @author jwells
@@ -145,6 +153,153 @@ public class ServiceLocatorImpl implements ServiceLocator {
             
     });
 
+    /**
+     * The key of a lookup that the just in time resolvers could not help
+     * with.  Since the resolvers are given the injection point they may
+     * decide differently for different injection points, so the
+     * injection point is part of the key
+     */
+    private final static class MissKey {
+        private final CacheKey cacheKey;
+        private final AnnotatedElement parent;
+        private final int position;
+        private final Class<?> injecteeClass;
+        
+        private final int hashCode;
+        
+        private MissKey(CacheKey cacheKey, Injectee onBehalfOf) {
+            this.cacheKey = cacheKey;
+            
+            if (onBehalfOf == null) {
+                parent = null;
+                position = -1;
+                injecteeClass = null;
+            }
+            else {
+                parent = onBehalfOf.getParent();
+                position = onBehalfOf.getPosition();
+                injecteeClass = onBehalfOf.getInjecteeClass();
+            }
+            
+            int hash = 5;
+            hash = 41 * hash + cacheKey.hashCode();
+            hash = 41 * hash + ((parent == null) ? 0 : parent.hashCode());
+            hash = 41 * hash + position;
+            
+            this.hashCode = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof MissKey)) return false;
+            
+            MissKey other = (MissKey) obj;
+            if (hashCode != other.hashCode) return false;
+            if (position != other.position) return false;
+            if (injecteeClass != other.injecteeClass) return false;
+            if ((parent == null) ? (other.parent != null) : !parent.equals(other.parent)) return false;
+            
+            return cacheKey.equals(other.cacheKey);
+        }
+        
+        @Override
+        public String toString() {
+            return "MissKey(" + cacheKey + "," + parent + "," + position + "," +
+                injecteeClass + "," + System.identityHashCode(this) + ")";
+        }
+    }
+
+    /**
+     * The key of a remembered decision of a {@link CacheableValidator}.  The
+     * injection point is used for injections and the name of the calling class
+     * (or null if the validator does not care) for direct lookups
+     */
+    private final static class ValidationKey {
+        private final ValidationService validationService;
+        private final SystemDescriptor<?> candidate;
+        private final AnnotatedElement parent;
+        private final int position;
+        private final Class<?> injecteeClass;
+        private final String caller;
+        
+        private final int hashCode;
+        
+        private ValidationKey(ValidationService validationService,
+                SystemDescriptor<?> candidate,
+                Injectee onBehalfOf,
+                String caller) {
+            this.validationService = validationService;
+            this.candidate = candidate;
+            this.caller = caller;
+            
+            if (onBehalfOf == null) {
+                parent = null;
+                position = -1;
+                injecteeClass = null;
+            }
+            else {
+                parent = onBehalfOf.getParent();
+                position = onBehalfOf.getPosition();
+                injecteeClass = onBehalfOf.getInjecteeClass();
+            }
+            
+            int hash = 7;
+            hash = 31 * hash + System.identityHashCode(validationService);
+            hash = 31 * hash + System.identityHashCode(candidate);
+            hash = 31 * hash + ((parent == null) ? 0 : parent.hashCode());
+            hash = 31 * hash + position;
+            hash = 31 * hash + ((caller == null) ? 0 : caller.hashCode());
+            
+            this.hashCode = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof ValidationKey)) return false;
+            
+            ValidationKey other = (ValidationKey) obj;
+            if (hashCode != other.hashCode) return false;
+            if (validationService != other.validationService) return false;
+            if (candidate != other.candidate) return false;
+            if (position != other.position) return false;
+            if (injecteeClass != other.injecteeClass) return false;
+            if ((parent == null) ? (other.parent != null) : !parent.equals(other.parent)) return false;
+            
+            return (caller == null) ? (other.caller == null) : caller.equals(other.caller);
+        }
+        
+        @Override
+        public String toString() {
+            return "ValidationKey(" + validationService + "," + candidate + "," + parent + "," +
+                position + "," + injecteeClass + "," + caller + "," + System.identityHashCode(this) + ")";
+        }
+    }
+    
+    /**
+     * A remembered decision along with the cache generation it was made in
+     */
+    private final static class ValidationDecision {
+        private final long generation;
+        private final boolean valid;
+        
+        private ValidationDecision(long generation, boolean valid) {
+            this.generation = generation;
+            this.valid = valid;
+        }
+    }
+
     private final static int CACHE_SIZE = 20000;
     private final static Object sLock = new Object();
     private static long currentLocatorId = 0L;
@@ -156,6 +311,41 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
     private final AtomicLong nextServiceId = new AtomicLong();
+    
+    /** Changed every time cached lookup results may have become stale */
+    private volatile long cacheGeneration;
+    
+    /**
+     * The generation at which each contract last changed in this locator.
+     * The values only ever increase, and are read by child locators
+     * without any lock
+     */
+    private final ConcurrentHashMap<String, Long> contractGenerations =
+            new ConcurrentHashMap<String, Long>();
+    private volatile long cacheInvalidations;
+    
+    /**
+     * Lookups for which no just in time resolver modified anything, mapped to the
+     * cache generation at the time the resolvers were asked.  While the generation
+     * is unchanged no descriptor or resolver has been added, and so
+     * the resolvers need not be asked again
+     */
+    private final ConcurrentHashMap<MissKey, Long> knownMisses =
+            new ConcurrentHashMap<MissKey, Long>();
+    
+    /**
+     * Decisions of cacheable validators.  The whole map is dropped as soon as
+     * a lookup sees a new cache generation, since the candidates or the validators
+     * may have changed
+     */
+    private final ConcurrentHashMap<ValidationKey, ValidationDecision> validationDecisions =
+            new ConcurrentHashMap<ValidationKey, ValidationDecision>();
+    private volatile long validationDecisionsGeneration;
+    
+    private volatile AnalysisImage analysisImage;
+    
+    private final static ServiceLocatorInstrumentation NO_INSTRUMENTATION[] = new ServiceLocatorInstrumentation[0];
+    private volatile ServiceLocatorInstrumentation instrumentation[] = NO_INSTRUMENTATION;
     private final String locatorName;
     private final long id;
     private final ServiceLocatorImpl parent;
@@ -163,11 +353,15 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private final ClassReflectionHelper classReflectionHelper = new ClassReflectionHelperImpl();
     private final PerLocatorUtilities perLocatorUtilities = new PerLocatorUtilities(this);
 
+    private final static SystemDescriptor<?>[] EMPTY_DESCRIPTORS = new SystemDescriptor<?>[0];
+
     private final IndexedListData allDescriptors = new IndexedListData();
     private final HashMap<String, IndexedListData> descriptorsByAdvertisedContract =
             new HashMap<String, IndexedListData>();
     private final HashMap<String, IndexedListData> descriptorsByName =
             new HashMap<String, IndexedListData>();
+    private final HashSet<IndexedListData> unpublishedIndexes =
+            new HashSet<IndexedListData>();
     private final Context<Singleton> singletonContext = new SingletonContext(this);
     private final Context<PerLookup> perLookupContext = new PerLookupContext();
     private final LinkedHashSet<ValidationService> allValidators =
@@ -178,6 +372,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             new LinkedList<ServiceHandle<?>>();
     
     private volatile boolean hasInterceptionServices = false;
+    private volatile int injectionPlanGeneration = 0;
     private final LinkedList<InterceptionService> interceptionServices =
             new LinkedList<InterceptionService>();
 
@@ -288,17 +483,94 @@ public class ServiceLocatorImpl implements ServiceLocator {
      * @return true if every validator returned true
      */
     private boolean validate(SystemDescriptor<?> descriptor, Injectee onBehalfOf, Filter filter) {
+        ValidationInformationImpl vi = null;
+        long generation = -1L;
+        String caller = null;
+        boolean callerFound = false;
+        
         for (ValidationService vs : getAllValidators()) {
             if (!descriptor.isValidating(vs)) continue;
-
-            if (!callValidate(vs, new ValidationInformationImpl(
-                    Operation.LOOKUP, descriptor, onBehalfOf, filter))) {
-                return false;
+            
+            if (vi == null) {
+                vi = new ValidationInformationImpl(Operation.LOOKUP, descriptor, onBehalfOf, filter);
             }
+            
+            Validator validator = getValidator(vs);
+            if (!(validator instanceof CacheableValidator) ||
+                    (onBehalfOf != null && onBehalfOf.getParent() == null)) {
+                // Not cacheable, or an injectee with no injection point to key on
+                if (!callValidate(vs, vi)) return false;
+                
+                continue;
+            }
+            
+            String keyCaller = null;
+            if (onBehalfOf == null && ((CacheableValidator) validator).isCallerSensitive()) {
+                if (!callerFound) {
+                    StackTraceElement callerFrame = vi.getCaller();
+                    caller = (callerFrame == null) ? null : callerFrame.getClassName();
+                    callerFound = true;
+                }
+                
+                if (caller == null) {
+                    // Cannot tell callers apart, so nothing can be remembered
+                    if (!callValidate(vs, vi)) return false;
+                    
+                    continue;
+                }
+                
+                keyCaller = caller;
+            }
+            
+            if (generation < 0L) {
+                generation = getValidationDecisionsGeneration();
+            }
+            
+            ValidationKey key = new ValidationKey(vs, descriptor, onBehalfOf, keyCaller);
+            ValidationDecision decision = validationDecisions.get(key);
+            if (decision == null || decision.generation != generation) {
+                boolean valid = callValidate(vs, vi);
+                
+                if (validationDecisions.size() >= CACHE_SIZE) {
+                    validationDecisions.clear();
+                }
+                decision = new ValidationDecision(generation, valid);
+                validationDecisions.put(key, decision);
+            }
+            
+            if (!decision.valid) return false;
         }
 
         return true;
     }
+    
+    /**
+     * Returns the validator of the service, or null if it could not be gotten,
+     * in which case {@link #callValidate(ValidationService, ValidationInformation)}
+     * will report the failure
+     */
+    private static Validator getValidator(ValidationService vs) {
+        try {
+            return vs.getValidator();
+        }
+        catch (Throwable th) {
+            return null;
+        }
+    }
+    
+    /**
+     * Gets the current cache generation, dropping all remembered validation
+     * decisions if it is not the one they were made in
+     */
+    private long getValidationDecisionsGeneration() {
+        long generation = getCacheGeneration();
+        if (generation != validationDecisionsGeneration) {
+            validationDecisions.clear();
+            validationDecisionsGeneration = generation;
+        }
+        
+        return generation;
+    }
 
     private List<SystemDescriptor<?>> getDescriptors(Filter filter,
             Injectee onBehalfOf,
@@ -307,58 +579,44 @@ public class ServiceLocatorImpl implements ServiceLocator {
             boolean getLocals) {
         if (filter == null) throw new IllegalArgumentException("filter is null");
 
-        LinkedList<SystemDescriptor<?>> retVal;
+        ArrayList<SystemDescriptor<?>> retVal;
         rLock.lock();
         try {
-            Collection<SystemDescriptor<?>> sortMeOut;
+            SystemDescriptor<?>[] sortMeOut;
+            String contractToMatch = null;
             if (filter instanceof IndexedFilter) {
                 IndexedFilter df = (IndexedFilter) filter;
 
                 if (df.getName() != null) {
-                    Collection<SystemDescriptor<?>> scopedByName;
-
-                    String name = df.getName();
+                    IndexedListData ild = descriptorsByName.get(df.getName());
+                    sortMeOut = (ild == null) ? null : ild.getSnapshot();
 
-                    IndexedListData ild = descriptorsByName.get(name);
-                    scopedByName = (ild == null) ? null : ild.getSortedList();
-                    if (scopedByName == null) {
-                        scopedByName = Collections.emptyList();
-                    }
-
-                    if (df.getAdvertisedContract() != null) {
-                        sortMeOut = new LinkedList<SystemDescriptor<?>>();
-
-                        for (SystemDescriptor<?> candidate : scopedByName) {
-                            if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
-                                sortMeOut.add(candidate);
-                            }
-                        }
-                    }
-                    else {
-                        sortMeOut = scopedByName;
-                    }
+                    contractToMatch = df.getAdvertisedContract();
                 }
                 else if (df.getAdvertisedContract() != null) {
-                    String advertisedContract = df.getAdvertisedContract();
-
-                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                    sortMeOut = (ild == null) ? null : ild.getSortedList();
-                    if (sortMeOut == null) {
-                        sortMeOut = Collections.emptyList();
-
-                    }
+                    IndexedListData ild = descriptorsByAdvertisedContract.get(df.getAdvertisedContract());
+                    sortMeOut = (ild == null) ? null : ild.getSnapshot();
                 }
                 else {
-                    sortMeOut = allDescriptors.getSortedList();
+                    sortMeOut = allDescriptors.getSnapshot();
                 }
             }
             else {
-                sortMeOut = allDescriptors.getSortedList();
+                sortMeOut = allDescriptors.getSnapshot();
             }
 
-            retVal = new LinkedList<SystemDescriptor<?>>();
+            if (sortMeOut == null) sortMeOut = EMPTY_DESCRIPTORS;
+            retVal = new ArrayList<SystemDescriptor<?>>();
+
+            // The snapshot is immutable, so it is iterated directly.  The
+            // read lock is still needed for the index maps and validators
+            for (int lcv = 0; lcv < sortMeOut.length; lcv++) {
+                SystemDescriptor<?> candidate = sortMeOut[lcv];
+
+                if (contractToMatch != null && !candidate.getAdvertisedContracts().contains(contractToMatch)) {
+                    continue;
+                }
 
-            for (SystemDescriptor<?> candidate : sortMeOut) {
                 if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
                     continue;
                 }
@@ -478,7 +736,16 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return reifyDescriptor(descriptor, null);
     }
 
-    private ActiveDescriptor<?> secondChanceResolve(Injectee injectee) {
+    private ActiveDescriptor<?> secondChanceResolve(Injectee injectee, MissKey missKey) {
+        long generation = getCacheGeneration();
+        
+        Long missedAt = knownMisses.get(missKey);
+        if (missedAt != null) {
+            if (missedAt.longValue() == generation) return null;
+            
+            knownMisses.remove(missKey, missedAt);
+        }
+        
         // OK, lets do the second chance protocol
         Collector collector = new Collector();
 
@@ -489,6 +756,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         try {
             boolean modified = false;
             boolean aJITFailed = false;
+            boolean aJITUnavailable = false;
             for (ServiceHandle<JustInTimeInjectionResolver> handle : jitResolvers) {
                 if ((injectee.getInjecteeClass() != null) && (
                         injectee.getInjecteeClass().getName().equals(
@@ -504,6 +772,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 catch (MultiException me) {
                     // We just ignore this for now, it may be resolvable later
                     Logger.getLogger().debug(handle.toString(), "secondChanceResolver", me);
+                    aJITUnavailable = true;
                     continue;
                 }
 
@@ -524,6 +793,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             if (!modified) {
+                if (!aJITUnavailable) {
+                    if (knownMisses.size() >= CACHE_SIZE) {
+                        knownMisses.clear();
+                    }
+                    
+                    knownMisses.put(missKey, generation);
+                }
+                
                 return null;
             }
 
@@ -735,6 +1012,59 @@ public class ServiceLocatorImpl implements ServiceLocator {
             throws MultiException {
         return internalGetService(contractOrImpl, name, null, qualifiers);
     }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLocator#createLookup(java.lang.reflect.Type, java.lang.annotation.Annotation[])
+     */
+    @Override
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, Annotation... qualifiers) {
+        return createLookup(contractOrImpl, null, qualifiers);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLocator#createLookup(java.lang.reflect.Type, java.lang.String, java.lang.annotation.Annotation[])
+     */
+    @Override
+    public <T> ServiceLookup<T> createLookup(Type contractOrImpl, String name, Annotation... qualifiers) {
+        checkState();
+        if (contractOrImpl == null) throw new IllegalArgumentException();
+
+        return new ServiceLookupImpl<T>(this, contractOrImpl, name, qualifiers);
+    }
+
+    /**
+     * The descriptor getService would use for these parameters, without
+     * creating the service
+     */
+    /* package */ <T> ActiveDescriptor<T> getLookupDescriptor(Type contractOrImpl, String name, Annotation... qualifiers) {
+        checkState();
+
+        return internalGetDescriptor(null, contractOrImpl, name, null, false, qualifiers);
+    }
+
+    /**
+     * Returns the current cache generation of this locator and
+     * all of its parents.  Any lookup result computed before the
+     * generation changed may be stale
+     */
+    /* package */ long getCacheGeneration() {
+        long retVal = 0L;
+        for (ServiceLocatorImpl current = this; current != null; current = current.parent) {
+            retVal += current.cacheGeneration;
+        }
+        
+        return retVal;
+    }
+
+    /* package */ boolean hasValidationServices() {
+        rLock.lock();
+        try {
+            return !getAllValidators().isEmpty();
+        }
+        finally {
+            rLock.unlock();
+        }
+    }
     
     private <T> T internalGetService(Type contractOrImpl, String name, Unqualified unqualified, Annotation... qualifiers) {
         return internalGetService(contractOrImpl, name, unqualified, false, qualifiers);
@@ -934,6 +1264,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
             state = ServiceLocatorState.SHUTDOWN;
 
             allDescriptors.clear();
+            unpublishedIndexes.clear();
+            cacheGeneration++;
+            knownMisses.clear();
+            validationDecisions.clear();
+            analysisImage = null;
             descriptorsByAdvertisedContract.clear();
             descriptorsByName.clear();
             allResolvers.clear();
@@ -1166,11 +1501,45 @@ public class ServiceLocatorImpl implements ServiceLocator {
         final NarrowResults results;
         final ImmediateResults immediate;
         final AtomicInteger freshnessKeeper = new AtomicInteger(1);
+        final long contractGeneration;
 
-        public IgdValue(NarrowResults results, ImmediateResults immediate) {
+        public IgdValue(NarrowResults results, ImmediateResults immediate, long contractGeneration) {
             this.results = results;
             this.immediate = immediate;
+            this.contractGeneration = contractGeneration;
+        }
+    }
+    
+    /**
+     * Gets the cached value for the key, computing it again if any
+     * locator in the parent chain has changed the contract of the key
+     * since the value was computed
+     */
+    private IgdValue getCurrentValue(WeakCARCache<IgdCacheKey, IgdValue> cache, IgdCacheKey key) {
+        IgdValue value = cache.compute(key);
+        if (value.contractGeneration == getContractGeneration(key.cacheKey.getRemovalName())) {
+            return value;
         }
+        
+        cache.remove(key);
+        return cache.compute(key);
+    }
+    
+    /**
+     * Returns a stamp of the generation of the given contract in this locator
+     * and all of its parents.  Since the generation of a contract in any locator
+     * only ever increases the sum changes whenever any one of them changes
+     */
+    private long getContractGeneration(String contract) {
+        if (contract == null) return 0L;
+        
+        long retVal = 0L;
+        for (ServiceLocatorImpl current = this; current != null; current = current.parent) {
+            Long generation = current.contractGenerations.get(contract);
+            if (generation != null) retVal += generation.longValue();
+        }
+        
+        return retVal;
     }
 
     private final WeakCARCache<IgdCacheKey, IgdValue> igdCache = CacheUtilities.createWeakCARCache(
@@ -1179,9 +1548,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 public IgdValue compute(final IgdCacheKey key) {
                     return igdCacheCompute(key);
                 }
-            }, CACHE_SIZE, false);
+            }, CACHE_SIZE, false, true);
     
     private IgdValue igdCacheCompute(final IgdCacheKey key) {
+        // Must be read before the candidates, so a concurrent change is noticed later
+        final long contractGeneration = getContractGeneration(key.cacheKey.getRemovalName());
         final List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, key.onBehalfOf, true, false, true);
         final ImmediateResults immediate = narrow(ServiceLocatorImpl.this, // locator
                 candidates, // candidates
@@ -1197,10 +1568,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
         final NarrowResults results = immediate.getTimelessResults();
         if (!results.getErrors().isEmpty()) {
             Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-            throw new ComputationErrorException(new IgdValue(results, immediate));
+            throw new ComputationErrorException(new IgdValue(results, immediate, contractGeneration));
         }
         
-        return new IgdValue(results, immediate);
+        return new IgdValue(results, immediate, contractGeneration);
     }
     
     private Unqualified getEffectiveUnqualified(Unqualified givenUnqualified, boolean isIterable, Annotation qualifiers[]) {
@@ -1220,13 +1591,37 @@ public class ServiceLocatorImpl implements ServiceLocator {
       return internalGetDescriptor(onBehalfOf, contractOrImpl, name, unqualified, isIterable, false, qualifiers);
     }
   
-    @SuppressWarnings("unchecked")
     private <T> ActiveDescriptor<T> internalGetDescriptor(Injectee onBehalfOf, Type contractOrImpl,
             String name,
             Unqualified unqualified,
             boolean isIterable,
             boolean calledFromSecondChanceResolveMethod,
             Annotation... qualifiers) throws MultiException {
+        final ServiceLocatorInstrumentation metrics[] = instrumentation;
+        if (metrics.length == 0) {
+            return findBestDescriptor(onBehalfOf, contractOrImpl, name, unqualified,
+                    isIterable, calledFromSecondChanceResolveMethod, qualifiers);
+        }
+
+        final long start = System.nanoTime();
+        ActiveDescriptor<T> retVal = null;
+        try {
+            retVal = findBestDescriptor(onBehalfOf, contractOrImpl, name, unqualified,
+                    isIterable, calledFromSecondChanceResolveMethod, qualifiers);
+            return retVal;
+        }
+        finally {
+            Utilities.reportLookup(metrics, contractOrImpl, System.nanoTime() - start, retVal != null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ActiveDescriptor<T> findBestDescriptor(Injectee onBehalfOf, Type contractOrImpl,
+            String name,
+            Unqualified unqualified,
+            boolean isIterable,
+            boolean calledFromSecondChanceResolveMethod,
+            Annotation... qualifiers) throws MultiException {
         if (contractOrImpl == null) throw new IllegalArgumentException();
 
         Class<?> rawClass = ReflectionHelper.getRawClass(contractOrImpl);
@@ -1257,7 +1652,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         rLock.lock();
         try {
-            final IgdValue value = igdCache.compute(igdCacheKey);
+            final IgdValue value = getCurrentValue(igdCache, igdCacheKey);
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
                 immediate = narrow(this,  // locator
@@ -1311,7 +1706,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             } else {
                 injectee = onBehalfOf;
             }
-            postValidateResult = (ActiveDescriptor<T>)secondChanceResolve(injectee);
+            postValidateResult = (ActiveDescriptor<T>)secondChanceResolve(injectee, new MissKey(cacheKey, onBehalfOf));
         }
         
         return postValidateResult;
@@ -1390,6 +1785,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             CacheUtilities.createWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
         @Override
         public IgdValue compute(final IgdCacheKey key) {
+            long contractGeneration = getContractGeneration(key.cacheKey.getRemovalName());
 
             List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
             ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
@@ -1405,17 +1801,42 @@ public class ServiceLocatorImpl implements ServiceLocator {
             NarrowResults results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
                 Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                throw new ComputationErrorException(new IgdValue(results, immediate)) ;
+                throw new ComputationErrorException(new IgdValue(results, immediate, contractGeneration)) ;
             }
             
-            return new IgdValue(results, immediate);
+            return new IgdValue(results, immediate, contractGeneration);
         }
-    }, CACHE_SIZE, false);
+    }, CACHE_SIZE, false, true);
 
-    private List<?> internalGetAllServiceHandles(
+    /**
+     * Returns the reified descriptors of all the services that match, in the
+     * same order as {@link #getAllServiceHandles(Type, Annotation...)}, without
+     * creating any handles or services
+     * 
+     * @return The descriptors, which must not be modified
+     */
+    /* package */ List<ActiveDescriptor<?>> getAllUnqualifiedDescriptors(
+            Type contractOrImpl, Unqualified unqualified, boolean isIterable, Annotation... qualifiers)
+            throws MultiException {
+        return internalGetAllDescriptors(contractOrImpl, unqualified, isIterable, qualifiers);
+    }
+    
+    /**
+     * Gets a handle to the given reified descriptor as if it had been found
+     * by looking up the given type
+     * 
+     * @param activeDescriptor The descriptor, as returned from
+     * {@link #getAllUnqualifiedDescriptors(Type, Unqualified, boolean, Annotation...)}
+     * @param requestedType The type that was looked up
+     * @return The handle to the service
+     */
+    /* package */ <T> ServiceHandle<T> getServiceHandleForLookup(ActiveDescriptor<T> activeDescriptor, Type requestedType) {
+        return internalGetServiceHandle(activeDescriptor, requestedType, null);
+    }
+
+    private List<ActiveDescriptor<?>> internalGetAllDescriptors(
             Type contractOrImpl,
             Unqualified unqualified,
-            boolean getHandles,
             boolean isIterable,
             Annotation... qualifiers)
             throws MultiException {
@@ -1449,7 +1870,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         rLock.lock();
         try {
-            final IgdValue value = igashCache.compute(igdCacheKey);
+            final IgdValue value = getCurrentValue(igashCache, igdCacheKey);
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
                 immediate = narrow(this,
@@ -1482,8 +1903,25 @@ public class ServiceLocatorImpl implements ServiceLocator {
             Utilities.handleErrors(results, currentErrorHandlers);
         }
 
+        return immediate.getImmediateResults();
+    }
+
+    private List<?> internalGetAllServiceHandles(
+            Type contractOrImpl,
+            Unqualified unqualified,
+            boolean getHandles,
+            boolean isIterable,
+            Annotation... qualifiers)
+            throws MultiException {
+        List<ActiveDescriptor<?>> candidates = internalGetAllDescriptors(contractOrImpl, unqualified, isIterable, qualifiers);
+        
+        Class<?> rawClass = null;
+        if (!getHandles) {
+            rawClass = ReflectionHelper.getRawClass(contractOrImpl);
+        }
+
         LinkedList<Object> retVal = new LinkedList<Object>();
-        for (ActiveDescriptor<?> candidate : immediate.getImmediateResults()) {
+        for (ActiveDescriptor<?> candidate : candidates) {
             if (getHandles) {
                 retVal.add(internalGetServiceHandle(candidate, contractOrImpl, null));
             }
@@ -1813,12 +2251,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             allDescriptors.removeDescriptor(unbind);
+            unpublishedIndexes.add(allDescriptors);
 
             for (String advertisedContract : getAllContracts(unbind)) {
                 IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
                 if (ild == null) continue;
 
                 ild.removeDescriptor(unbind);
+                unpublishedIndexes.add(ild);
                 if (ild.isEmpty()) descriptorsByAdvertisedContract.remove(advertisedContract);
             }
 
@@ -1827,6 +2267,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 IndexedListData ild = descriptorsByName.get(unbindName);
                 if (ild != null) {
                     ild.removeDescriptor(unbind);
+                    unpublishedIndexes.add(ild);
                     if (ild.isEmpty()) {
                         descriptorsByName.remove(unbindName);
                     }
@@ -1900,6 +2341,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
             thingsAdded.add(sd);
             allDescriptors.addDescriptor(sd);
+            unpublishedIndexes.add(allDescriptors);
 
             List<String> allContracts = getAllContracts(sd);
 
@@ -1911,6 +2353,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
 
                 ild.addDescriptor(sd);
+                unpublishedIndexes.add(ild);
             }
 
             if (sd.getName() != null) {
@@ -1922,6 +2365,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
 
                 ild.addDescriptor(sd);
+                unpublishedIndexes.add(ild);
             }
 
             if (sd.getAdvertisedContracts().contains(ValidationService.class.getName())) {
@@ -1959,6 +2403,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             allResolvers.putAll(newResolvers);
         }
         injecteeToResolverCache.clear();
+        injectionPlanGeneration++;
     }
     
     private void reupInterceptionServices() {
@@ -1968,6 +2413,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         interceptionServices.addAll(allInterceptionServices);
         
         hasInterceptionServices = !interceptionServices.isEmpty();
+        injectionPlanGeneration++;
     }
 
     private void reupErrorHandlers() {
@@ -1977,6 +2423,25 @@ public class ServiceLocatorImpl implements ServiceLocator {
         errorHandlers.addAll(allErrorServices);
     }
     
+    private void reupInstrumentation() {
+        List<ServiceHandle<?>> allHandles = protectedGetAllServiceHandles(ServiceLocatorInstrumentation.class);
+        
+        List<ServiceLocatorInstrumentation> mine = new LinkedList<ServiceLocatorInstrumentation>();
+        for (ServiceHandle<?> handle : allHandles) {
+            // Instrumentation of the parent is not called for the child
+            if (handle.getActiveDescriptor().getLocatorId().longValue() != id) continue;
+            
+            ServiceLocatorInstrumentation created = (ServiceLocatorInstrumentation) handle.getService();
+            if (created != null) mine.add(created);
+        }
+        
+        instrumentation = mine.toArray(new ServiceLocatorInstrumentation[mine.size()]);
+    }
+    
+    /* package */ ServiceLocatorInstrumentation[] getInstrumentation() {
+        return instrumentation;
+    }
+
     private void reupConfigListeners() {
         List<ServiceHandle<?>> allConfigListeners = protectedGetAllServiceHandles(DynamicConfigurationListener.class);
 
@@ -2012,24 +2477,30 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
 
+    /**
+     * Moves each affected contract to a new generation.  Nothing is removed
+     * from the caches here, and the children are not visited.  Every cached
+     * lookup remembers the generation of its contract summed over its locator
+     * and all of that locator's parents (see getContractGeneration), and
+     * getCurrentValue computes it again when that sum has changed, so only the
+     * lookups of the affected contracts are redone, lazily, in this locator
+     * and in its children.  The cache generation also moves on, so lookups
+     * remembered as not needing the just in time resolvers ask them again
+     * (see getCacheGeneration).  Must be called with the write lock held
+     */
     private void reupCache(HashSet<String> affectedContracts) {
-        // This lock must be acquired as reupCache is called on children
-        wLock.lock();
-        try {
-            for (String affectedContract : affectedContracts) {
-                final String fAffectedContract = affectedContract;
-                final CacheKeyFilter<IgdCacheKey> cacheKeyFilter = new CacheKeyFilter<IgdCacheKey>() {
-                    @Override
-                    public boolean matches(IgdCacheKey key) {
-                        return key.cacheKey.matchesRemovalName(fAffectedContract);
-                    }
-                };
-
-                igdCache.releaseMatching(cacheKeyFilter);
-                igashCache.releaseMatching(cacheKeyFilter);
-            }
-        } finally {
-            wLock.unlock();
+        long generation = cacheGeneration + 1;
+        
+        for (String affectedContract : affectedContracts) {
+            contractGenerations.put(affectedContract, generation);
+        }
+        
+        cacheGeneration = generation;
+        cacheInvalidations++;
+        
+        ServiceLocatorInstrumentation metrics[] = instrumentation;
+        if (metrics.length != 0) {
+            Utilities.reportInvalidation(metrics, affectedContracts);
         }
     }
 
@@ -2045,6 +2516,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
         // This MUST come before the other re-ups, in case the other re-ups look for
         // items that may have previously been cached
         reupCache(affectedContracts);
+        
+        if (affectedContracts.contains(ServiceLocatorInstrumentation.class.getName())) {
+            reupInstrumentation();
+        }
 
         if (injectionResolversModified) {
             reupInjectionResolvers();
@@ -2078,19 +2553,6 @@ public class ServiceLocatorImpl implements ServiceLocator {
         contextCache.clear();
     }
 
-    private void getAllChildren(LinkedList<ServiceLocatorImpl> allMyChildren) {
-        LinkedList<ServiceLocatorImpl> addMe;
-        synchronized (children) {
-            addMe = new LinkedList<ServiceLocatorImpl>(children.keySet());
-        }
-
-        allMyChildren.addAll(addMe);
-
-        for (ServiceLocatorImpl sli : addMe) {
-            sli.getAllChildren(allMyChildren);
-        }
-    }
-    
     private void callAllConfigurationListeners(List<ServiceHandle<?>> allListeners) {
         if (allListeners == null) return;
         
@@ -2121,6 +2583,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
             List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci);
 
+            publishIndexes();
+
             reup(thingsAdded,
                     checkData.getInstanceLifecycleModificationsMade(),
                     checkData.getInjectionResolverModificationMade(),
@@ -2140,6 +2604,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 errorServices = new LinkedList<ErrorService>(errorHandlers);
             }
             
+            // A failed commit may have left partially changed indexes
+            publishIndexes();
+            
             wLock.unlock();
             
             if (errorServices != null && !errorServices.isEmpty()) {
@@ -2159,13 +2626,6 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
         }
 
-        LinkedList<ServiceLocatorImpl> allMyChildren = new LinkedList<ServiceLocatorImpl>();
-        getAllChildren(allMyChildren);
-
-        for (ServiceLocatorImpl sli : allMyChildren) {
-            sli.reupCache(checkData.getAffectedContracts());
-        }
-        
         callAllConfigurationListeners(allConfigurationListeners);
         
         LinkedList<TwoPhaseResource> resources = dci.getResources();
@@ -2196,6 +2656,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return resolver.isMethodParameterIndicator();
     }
 
+    /**
+     * Tells if the only annotation that marks an injection point in this
+     * locator is {@link Inject}, in which case build-time analysis of a
+     * class matches what the default analyzer would find
+     * 
+     * @return true if Inject is the only injection annotation
+     */
+    /* package */ boolean hasOnlyInjectAnnotation() {
+        return allResolvers.size() == 1 && allResolvers.containsKey(Inject.class);
+    }
+
     /* package */ InjectionResolver<?> getInjectionResolver(Class<? extends Annotation> annoType) {
         return allResolvers.get(annoType);
     }
@@ -2306,6 +2777,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             if (doReify) {
+                if (!ContractSignatures.mayBeTypeSafe(requiredType, candidate) ||
+                        !ContractSignatures.mayHaveQualifiers(requiredAnnotations, candidate)) {
+                    // The build-time metadata already rules this one out, no need to load it
+                    continue;
+                }
+
                 try {
                     candidate = locator.reifyDescriptor(candidate, injectee);
                 }
@@ -2441,6 +2918,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         wLock.lock();
         try {
             defaultUnqualified = unqualified;
+            cacheGeneration++;
         }
         finally {
             wLock.unlock();
@@ -2625,6 +3103,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return injecteeToResolverCache.compute(injectee);  
     }
     
+    /**
+     * Changes whenever the injection resolvers or the interception
+     * services of this locator change, which makes any injection plan
+     * computed by a {@link ClazzCreator} before the change stale
+     * 
+     * @return The current generation of the injection plans
+     */
+    /* package */ int getInjectionPlanGeneration() {
+        return injectionPlanGeneration;
+    }
+    
     /* package */ ClassReflectionHelper getClassReflectionHelper() {
         return classReflectionHelper;
     }
@@ -2665,9 +3154,19 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return igdCache.getMaxSize();
     }
 
+    /* package */ WeakCARCache<?, ?> getServiceCache() {
+        return igdCache;
+    }
+
+    /* package */ long getCacheInvalidations() {
+        return cacheInvalidations;
+    }
+
     /* package */ void clearServiceCache() {
         igdCache.clear();
-        
+        knownMisses.clear();
+        validationDecisions.clear();
+        cacheGeneration++;
     }
 
     /* package */ int getReflectionCacheSize() {
@@ -2684,6 +3183,86 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
     
+    /**
+     * Writes the analysis of every reified class service of this
+     * locator (not including its parents) to the given stream
+     * 
+     * @param os The stream to write to, which is not closed
+     * @return The number of services written
+     * @throws IOException On a failure to write
+     */
+    /* package */ int writeAnalysisImage(OutputStream os) throws IOException {
+        SystemDescriptor<?> snapshot[];
+        
+        rLock.lock();
+        try {
+            snapshot = allDescriptors.getSnapshot();
+        }
+        finally {
+            rLock.unlock();
+        }
+        
+        return AnalysisImage.write(snapshot, hasOnlyInjectAnnotation(), os);
+    }
+    
+    /**
+     * Reads an analysis image which is used when the class services of
+     * this locator are reified from now on
+     * 
+     * @param is The stream to read from, which is not closed
+     * @return The number of services in the image
+     * @throws IOException If the image could not be read
+     */
+    /* package */ int loadAnalysisImage(InputStream is) throws IOException {
+        AnalysisImage image = AnalysisImage.read(is);
+        analysisImage = image;
+        
+        return image.getNumberOfEntries();
+    }
+    
+    /**
+     * @return The number of services reified with the analysis of the
+     * loaded analysis image, or zero if no image has been loaded
+     */
+    /* package */ int getAnalysisImageHits() {
+        AnalysisImage image = analysisImage;
+        if (image == null) return 0;
+        
+        return image.getNumberOfHits();
+    }
+    
+    /**
+     * Gets the analysis of the given class descriptor from the loaded
+     * analysis image
+     * 
+     * @param descriptor The descriptor being reified
+     * @param implClass The implementation class of the descriptor
+     * @return The analysis, or null if the class must be analyzed
+     */
+    /* package */ AnalysisImage.Analysis getImageAnalysis(SystemDescriptor<?> descriptor, Class<?> implClass) {
+        AnalysisImage image = analysisImage;
+        if (image == null) return null;
+        
+        String analyzerName = descriptor.getClassAnalysisName();
+        if (analyzerName == null) analyzerName = getDefaultClassAnalyzerName();
+        boolean useMembers = ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(analyzerName) &&
+                hasOnlyInjectAnnotation();
+        
+        return image.getAnalysis(descriptor, implClass, useMembers);
+    }
+    
+    /**
+     * Publishes the sorted snapshots of every index changed
+     * by the current commit.  Must be called with the write lock held
+     */
+    private void publishIndexes() {
+        for (IndexedListData ild : unpublishedIndexes) {
+            ild.publish();
+        }
+
+        unpublishedIndexes.clear();
+    }
+
     /* package */ int unsortIndexes(int newRank, SystemDescriptor<?> desc, Set<IndexedListData> myLists) {
         wLock.lock();
         try {
@@ -2691,8 +3270,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
             
             for (IndexedListData myList : myLists) {
                 myList.unSort();
+                myList.publish();
             }
             
+            // The best service for any of these contracts may now be different
+            reupCache(new HashSet<String>(getAllContracts(desc)));
+            
             return retVal;
         }
         finally {
@@ -39,6 +39,10 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -102,6 +106,54 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheHitRate()
+     */
+    @Override
+    public double getServiceCacheHitRate() {
+        return locator.getServiceCache().getHitRate();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheT1Size()
+     */
+    @Override
+    public int getServiceCacheT1Size() {
+        return locator.getServiceCache().getT1Size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheT2Size()
+     */
+    @Override
+    public int getServiceCacheT2Size() {
+        return locator.getServiceCache().getT2Size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheB1Size()
+     */
+    @Override
+    public int getServiceCacheB1Size() {
+        return locator.getServiceCache().getB1Size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheB2Size()
+     */
+    @Override
+    public int getServiceCacheB2Size() {
+        return locator.getServiceCache().getB2Size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getCacheInvalidationCount()
+     */
+    @Override
+    public long getCacheInvalidationCount() {
+        return locator.getCacheInvalidations();
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getReflectionCacheSize()
      */
@@ -119,4 +171,28 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#writeAnalysisImage(java.io.OutputStream)
+     */
+    @Override
+    public int writeAnalysisImage(OutputStream os) throws IOException {
+        return locator.writeAnalysisImage(os);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#loadAnalysisImage(java.io.InputStream)
+     */
+    @Override
+    public int loadAnalysisImage(InputStream is) throws IOException {
+        return locator.loadAnalysisImage(is);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getAnalysisImageHits()
+     */
+    @Override
+    public int getAnalysisImageHits() {
+        return locator.getAnalysisImageHits();
+    }
+
 }
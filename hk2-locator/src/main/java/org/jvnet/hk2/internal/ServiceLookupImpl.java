@@ -0,0 +1,214 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.inject.Provider;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Context;
+import org.glassfish.hk2.api.IterableProvider;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLookup;
+import org.glassfish.hk2.utilities.InjecteeImpl;
+import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+
+/**
+ * A lookup that remembers the best descriptor and its context
+ * between calls.  The remembered values are thrown away whenever
+ * the cache generation of the locator changes, which happens on
+ * every configuration change of the locator or of its parents
+ * 
+ * @author jwells
+ * @param <T> The type of service returned
+ */
+public class ServiceLookupImpl<T> implements ServiceLookup<T> {
+    private final ServiceLocatorImpl locator;
+    private final Type contractOrImpl;
+    private final String name;
+    private final Annotation qualifiers[];
+    private final Class<?> rawClass;
+    private final boolean cacheable;
+    
+    private volatile Resolution<T> resolution;
+    
+    /* package */ ServiceLookupImpl(ServiceLocatorImpl locator,
+            Type contractOrImpl,
+            String name,
+            Annotation qualifiers[]) {
+        this.locator = locator;
+        this.contractOrImpl = contractOrImpl;
+        this.name = name;
+        this.qualifiers = (qualifiers == null) ? new Annotation[0] : qualifiers.clone();
+        
+        rawClass = ReflectionHelper.getRawClass(contractOrImpl);
+        
+        // Providers are created fresh on every call by the locator
+        cacheable = rawClass != null &&
+                !Provider.class.equals(rawClass) &&
+                !IterableProvider.class.equals(rawClass);
+    }
+    
+    /**
+     * Returns the current resolution of this lookup, resolving again
+     * if the locator has changed since the last resolution
+     */
+    @SuppressWarnings("unchecked")
+    private Resolution<T> getResolution() {
+        // Read the generation first, so that a change that happens
+        // while resolving will cause another resolution next time
+        long generation = locator.getCacheGeneration();
+        
+        Resolution<T> current = resolution;
+        if (current != null && current.generation == generation) return current;
+        
+        ActiveDescriptor<T> descriptor = locator.getLookupDescriptor(contractOrImpl, name, qualifiers);
+        Context<?> context = null;
+        
+        // Validation services may decide differently on each lookup
+        if (descriptor != null && locator.hasValidationServices()) {
+            descriptor = null;
+        }
+        
+        if (descriptor != null) {
+            if (!descriptor.isReified()) {
+                descriptor = (ActiveDescriptor<T>) locator.reifyDescriptor(descriptor);
+            }
+            
+            if (!Utilities.isProxiable(descriptor, null)) {
+                try {
+                    context = locator.resolveContext(descriptor.getScopeAnnotation());
+                }
+                catch (Throwable th) {
+                    // getService will report the error with full information
+                    context = null;
+                }
+            }
+        }
+        
+        current = new Resolution<T>(generation, descriptor, context);
+        resolution = current;
+        
+        return current;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLookup#getService()
+     */
+    @Override
+    public T getService() throws MultiException {
+        if (!cacheable) return locator.getService(contractOrImpl, name, qualifiers);
+        
+        Resolution<T> current = getResolution();
+        if (current.descriptor == null) {
+            // Nothing to remember, or the locator must see every lookup
+            return locator.getService(contractOrImpl, name, qualifiers);
+        }
+        
+        Context<?> context = current.context;
+        if (context != null && context.isActive()) {
+            return Utilities.findOrCreate(context, current.descriptor, null);
+        }
+        
+        return Utilities.createService(current.descriptor, null, locator, null, rawClass);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLookup#getServiceHandle()
+     */
+    @Override
+    public ServiceHandle<T> getServiceHandle() throws MultiException {
+        if (!cacheable) return locator.getServiceHandle(contractOrImpl, name, qualifiers);
+        
+        Resolution<T> current = getResolution();
+        if (current.descriptor == null) {
+            return locator.getServiceHandle(contractOrImpl, name, qualifiers);
+        }
+        
+        return locator.getServiceHandle(current.descriptor, new InjecteeImpl(contractOrImpl));
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLookup#getActiveDescriptor()
+     */
+    @Override
+    public ActiveDescriptor<T> getActiveDescriptor() throws MultiException {
+        if (cacheable) {
+            Resolution<T> current = getResolution();
+            if (current.descriptor != null) return current.descriptor;
+        }
+        
+        return locator.getLookupDescriptor(contractOrImpl, name, qualifiers);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ServiceLookup#getServiceLocator()
+     */
+    @Override
+    public ServiceLocator getServiceLocator() {
+        return locator;
+    }
+    
+    @Override
+    public String toString() {
+        return "ServiceLookupImpl(" + contractOrImpl + "," + name + "," + locator + "," + System.identityHashCode(this) + ")";
+    }
+    
+    /**
+     * An immutable snapshot of a resolution, published as a unit
+     */
+    private static class Resolution<T> {
+        private final long generation;
+        private final ActiveDescriptor<T> descriptor;
+        private final Context<?> context;
+        
+        private Resolution(long generation, ActiveDescriptor<T> descriptor, Context<?> context) {
+            this.generation = generation;
+            this.descriptor = descriptor;
+            this.context = context;
+        }
+    }
+
+}
@@ -80,11 +80,12 @@ public class SingletonContext implements Context<Singleton> {
                 return cachedVal;
             }
 
+            // Only descriptors that are not SystemDescriptors get here, such as an
+            // ActiveDescriptor implementation given directly to getService(ActiveDescriptor, ...)
+            // or to this context without having been added to a locator.  Every
+            // SystemDescriptor, of this locator or of any other, uses createSingleton
             final Object createdVal = activeDescriptor.create(a.getRoot());
             activeDescriptor.setCache(createdVal);
-            if (activeDescriptor instanceof SystemDescriptor) {
-                ((SystemDescriptor<?>) activeDescriptor).setSingletonGeneration(generationNumber++);
-            }
 
             return createdVal;
         }
@@ -117,8 +118,17 @@ public class SingletonContext implements Context<Singleton> {
     @Override
     public <T> T findOrCreate(ActiveDescriptor<T> activeDescriptor,
             ServiceHandle<?> root) {
+        if (activeDescriptor instanceof SystemDescriptor) {
+            // The hit path, which allocates nothing
+            T cachedVal = activeDescriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+        }
 
         try {
+            if (activeDescriptor instanceof SystemDescriptor) {
+                return createSingleton((SystemDescriptor<T>) activeDescriptor, root);
+            }
+            
             return (T)valueCache.compute(new ContextualInput<Object>((ActiveDescriptor<Object>) activeDescriptor, root));
         } catch (Throwable th) {
             if (th instanceof MultiException) {
@@ -128,12 +138,48 @@ public class SingletonContext implements Context<Singleton> {
         }
     }
 
+    /**
+     * Creates the singleton of a descriptor of this locator.  Creation is
+     * coordinated by the lock of the descriptor, so that other threads
+     * wait for the creating thread, and the creating thread asking for
+     * the same singleton again is a circular dependency
+     */
+    private <T> T createSingleton(SystemDescriptor<T> activeDescriptor, ServiceHandle<?> root) {
+        synchronized (activeDescriptor.getSingletonLock()) {
+            T cachedVal = activeDescriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+            
+            if (activeDescriptor.getSingletonCreator() == Thread.currentThread()) {
+                throw new MultiException(new IllegalStateException(
+                        "A circular dependency involving Singleton service " + activeDescriptor.getImplementation() +
+                        " was found.  Full descriptor is " + activeDescriptor));
+            }
+            
+            activeDescriptor.setSingletonCreator(Thread.currentThread());
+            try {
+                T createdVal = activeDescriptor.create(root);
+                activeDescriptor.setCache(createdVal);
+                
+                synchronized (this) {
+                    activeDescriptor.setSingletonGeneration(generationNumber++);
+                }
+                
+                return createdVal;
+            }
+            finally {
+                activeDescriptor.setSingletonCreator(null);
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#find(org.glassfish.hk2.api.Descriptor)
      */
     @SuppressWarnings("unchecked")
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
+        if (descriptor instanceof SystemDescriptor && descriptor.getCache() != null) return true;
+        
         return valueCache.containsKey(new ContextualInput<Object>((ActiveDescriptor<Object>) descriptor, null));
     }
 
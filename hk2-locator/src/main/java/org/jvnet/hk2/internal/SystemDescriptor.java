@@ -79,6 +79,7 @@ import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.ScopeInfo;
+import org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation;
 
 /**
  * @author jwells
@@ -96,8 +97,12 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     private volatile boolean closed = false;
 
     private final Object cacheLock = new Object();
-    private boolean cacheSet = false;
-    private T cachedValue;
+    private volatile boolean cacheSet = false;
+    private volatile T cachedValue;
+    
+    /** Held while the singleton of this descriptor is being created */
+    private final Object singletonLock = new Object();
+    private Thread singletonCreator;  // Guarded by singletonLock
 
     // These are used when we are doing the reifying ourselves
     private Class<?> implClass;
@@ -455,6 +460,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         this.factoryServiceId = factoryServiceId;
     }
 
+    /* package */ boolean hasInstanceListeners() {
+        return !instanceListeners.isEmpty();
+    }
+
     /* package */ void invokeInstanceListeners(InstanceLifecycleEvent event) {
         for (InstanceLifecycleListener listener : instanceListeners) {
             listener.lifecycleEvent(event);
@@ -468,6 +477,9 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     public T create(ServiceHandle<?> root) {
         checkState();
 
+        final ServiceLocatorInstrumentation metrics[] = sdLocator.getInstrumentation();
+        final long start = (metrics.length == 0) ? 0L : System.nanoTime();
+        boolean succeeded = false;
         try {
             T retVal;
             if (activeDescriptor != null) {
@@ -487,6 +499,7 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
                 retVal = creator.create(root, this);
             }
 
+            succeeded = true;
             return retVal;
         }
         catch (Throwable re) {
@@ -517,6 +530,11 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
             
             throw (RuntimeException) re;
         }
+        finally {
+            if (metrics.length != 0) {
+                Utilities.reportCreation(metrics, this, System.nanoTime() - start, succeeded);
+            }
+        }
     }
 
     /* (non-Javadoc)
@@ -686,6 +704,8 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
             reifying = true;
         }
 
+        final ServiceLocatorInstrumentation metrics[] = sdLocator.getInstrumentation();
+        final long start = (metrics.length == 0) ? 0L : System.nanoTime();
         try {
             // This call can NOT hold the SystemDescriptor lock
             // because this method could be called with the ServiceLocatorImpl
@@ -705,6 +725,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
                     collector.addThrowable(new IllegalArgumentException("Errors were discovered while reifying " + this));
                 }
             }
+            
+            if (metrics.length != 0) {
+                Utilities.reportReification(metrics, this, System.nanoTime() - start, !collector.hasErrors());
+            }
         }
 
     }
@@ -729,24 +753,48 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         }
 
         if (getDescriptorType().equals(DescriptorType.CLASS)) {
+            AnalysisImage.Analysis analysis = null;
             if (!preAnalyzed) {
-               qualifiers = Collections.unmodifiableSet(
-                    Utilities.getAllQualifiers(implClass,
-                            baseDescriptor.getName(),
-                            collector));
+                analysis = sdLocator.getImageAnalysis(this, implClass);
+                
+                if (analysis != null && analysis.getQualifiers() != null) {
+                    qualifiers = Collections.unmodifiableSet(analysis.getQualifiers());
+                }
+                else {
+                    qualifiers = Collections.unmodifiableSet(
+                        Utilities.getAllQualifiers(implClass,
+                                baseDescriptor.getName(),
+                                collector));
+                }
             }
 
             ClazzCreator<T> myClazzCreator = new ClazzCreator<T>(sdLocator, implClass);
-            myClazzCreator.initialize(this, collector);
+            if (analysis != null && analysis.hasMembers()) {
+                myClazzCreator.initialize(this, analysis, collector);
+            }
+            else {
+                myClazzCreator.initialize(this, collector);
+            }
             creator = myClazzCreator;
 
             if (!preAnalyzed) {
-                ScopeInfo si = Utilities.getScopeAnnotationType(implClass, baseDescriptor, collector);
-                scopeAnnotation = si.getScope();
-                scope = si.getAnnoType();
+                if (analysis != null && analysis.getScope() != null) {
+                    scopeAnnotation = analysis.getScopeAnnotation();
+                    scope = analysis.getScope();
+                }
+                else {
+                    ScopeInfo si = Utilities.getScopeAnnotationType(implClass, baseDescriptor, collector);
+                    scopeAnnotation = si.getScope();
+                    scope = si.getAnnoType();
+                }
                 
-                contracts = Collections.unmodifiableSet(ReflectionHelper.getTypeClosure(implClass,
-                    baseDescriptor.getAdvertisedContracts()));
+                if (analysis != null && analysis.getContracts() != null) {
+                    contracts = Collections.unmodifiableSet(analysis.getContracts());
+                }
+                else {
+                    contracts = Collections.unmodifiableSet(ReflectionHelper.getTypeClosure(implClass,
+                        baseDescriptor.getAdvertisedContracts()));
+                }
             }
         }
         else {
@@ -905,6 +953,16 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         return implClass;
     }
 
+    /**
+     * @return The creator of a reified class descriptor, or null
+     * if this descriptor does not have one
+     */
+    /* package */ ClazzCreator<?> getClazzCreator() {
+        if (creator instanceof ClazzCreator) return (ClazzCreator<?>) creator;
+        
+        return null;
+    }
+
     /* package */ int getSingletonGeneration() {
         return singletonGeneration;
     }
@@ -913,6 +971,18 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         singletonGeneration = gen;
     }
     
+    /* package */ Object getSingletonLock() {
+        return singletonLock;
+    }
+    
+    /* package */ Thread getSingletonCreator() {
+        return singletonCreator;
+    }
+    
+    /* package */ void setSingletonCreator(Thread creator) {
+        singletonCreator = creator;
+    }
+    
     @Override
     public int hashCode() {
         int low32 = id.intValue();
@@ -57,6 +57,7 @@ import java.lang.reflect.Type;
 import java.lang.reflect.WildcardType;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -101,6 +102,7 @@ import org.glassfish.hk2.api.ProxyForSameScope;
 import org.glassfish.hk2.api.Rank;
 import org.glassfish.hk2.api.Self;
 import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceInjector;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Unproxiable;
 import org.glassfish.hk2.api.Unqualified;
@@ -113,6 +115,7 @@ import org.glassfish.hk2.utilities.NamedImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.Constants;
+import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.MethodWrapper;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
@@ -123,6 +126,7 @@ import org.jvnet.hk2.annotations.Contract;
 import org.jvnet.hk2.annotations.ContractsProvided;
 import org.jvnet.hk2.annotations.Optional;
 import org.jvnet.hk2.annotations.Service;
+import org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation;
 
 /**
  * This class contains a set of static utilities useful
@@ -206,6 +210,55 @@ public class Utilities {
         return element;
     }
 
+    /**
+     * Gets the build-time generated {@link ServiceInjector} named in the metadata
+     * of the descriptor.  The injector is only returned if it can stand in for
+     * the analysis of the class, which is when the descriptor uses the default
+     * class analyzer and Inject is the only injection annotation
+     *
+     * @param locator The locator the service is created in
+     * @param descriptor The possibly null descriptor of the service
+     * @param implClass The implementation class of the service
+     * @param analyzerName The possibly null name of the analyzer the descriptor asked for
+     * @return The injector, or null if the class should be analyzed
+     */
+    public static ServiceInjector<?> getServiceInjector(ServiceLocatorImpl locator,
+            ActiveDescriptor<?> descriptor,
+            final Class<?> implClass,
+            String analyzerName) {
+        if (descriptor == null) return null;
+        
+        List<String> injectorNames = descriptor.getMetadata().get(ServiceInjector.INJECTOR_METADATA_KEY);
+        if (injectorNames == null || injectorNames.isEmpty()) return null;
+        
+        if (analyzerName == null) analyzerName = locator.getDefaultClassAnalyzerName();
+        if (!ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(analyzerName)) return null;
+        if (!locator.hasOnlyInjectAnnotation()) return null;
+        
+        final String injectorName = injectorNames.get(0);
+        try {
+            Class<?> injectorClass = AccessController.doPrivileged(new PrivilegedExceptionAction<Class<?>>() {
+
+                @Override
+                public Class<?> run() throws Exception {
+                    ClassLoader loader = implClass.getClassLoader();
+                    if (loader == null) return Class.forName(injectorName);
+                    
+                    return loader.loadClass(injectorName);
+                }
+                
+            });
+            
+            if (!ServiceInjector.class.isAssignableFrom(injectorClass)) return null;
+            
+            return (ServiceInjector<?>) injectorClass.newInstance();
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug("Utilities", "getServiceInjector", th);
+            return null;
+        }
+    }
+
     /**
      * Gets the initializer methods from the given class and analyzer.  Checks service output
      *
@@ -357,6 +410,86 @@ public class Utilities {
         return translation;
     }
 
+    /**
+     * Tells the instrumentation services that a service was created
+     *
+     * @param metrics The non-empty instrumentation of the locator
+     * @param descriptor The descriptor of the created service
+     * @param elapsedNanos The time spent creating the service
+     * @param succeeded Whether or not the creation succeeded
+     */
+    /* package */ static void reportCreation(ServiceLocatorInstrumentation metrics[],
+            ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded) {
+        for (int lcv = 0; lcv < metrics.length; lcv++) {
+            try {
+                metrics[lcv].serviceCreated(descriptor, elapsedNanos, succeeded);
+            }
+            catch (Throwable th) {
+                // ignored
+            }
+        }
+    }
+
+    /**
+     * Tells the instrumentation services that a descriptor was reified
+     *
+     * @param metrics The non-empty instrumentation of the locator
+     * @param descriptor The reified descriptor
+     * @param elapsedNanos The time spent reifying
+     * @param succeeded Whether or not the reification succeeded
+     */
+    /* package */ static void reportReification(ServiceLocatorInstrumentation metrics[],
+            ActiveDescriptor<?> descriptor, long elapsedNanos, boolean succeeded) {
+        for (int lcv = 0; lcv < metrics.length; lcv++) {
+            try {
+                metrics[lcv].descriptorReified(descriptor, elapsedNanos, succeeded);
+            }
+            catch (Throwable th) {
+                // ignored
+            }
+        }
+    }
+
+    /**
+     * Tells the instrumentation services that a lookup was done
+     *
+     * @param metrics The non-empty instrumentation of the locator
+     * @param contractOrImpl The type looked up
+     * @param elapsedNanos The time spent finding the best descriptor
+     * @param found Whether or not a descriptor was found
+     */
+    /* package */ static void reportLookup(ServiceLocatorInstrumentation metrics[],
+            Type contractOrImpl, long elapsedNanos, boolean found) {
+        for (int lcv = 0; lcv < metrics.length; lcv++) {
+            try {
+                metrics[lcv].serviceLookedUp(contractOrImpl, elapsedNanos, found);
+            }
+            catch (Throwable th) {
+                // ignored
+            }
+        }
+    }
+
+    /**
+     * Tells the instrumentation services that cached lookups were invalidated
+     *
+     * @param metrics The non-empty instrumentation of the locator
+     * @param affectedContracts The contracts that were invalidated
+     */
+    /* package */ static void reportInvalidation(ServiceLocatorInstrumentation metrics[],
+            Set<String> affectedContracts) {
+        Set<String> readOnly = Collections.unmodifiableSet(affectedContracts);
+        
+        for (int lcv = 0; lcv < metrics.length; lcv++) {
+            try {
+                metrics[lcv].cachesInvalidated(readOnly);
+            }
+            catch (Throwable th) {
+                // ignored
+            }
+        }
+    }
+
     /**
      * Calls the list of error services for the list of errors
      *
@@ -1136,7 +1269,7 @@ public class Utilities {
      * or null if not known
      * @return true if this descriptor must be proxied, false otherwise
      */
-    private static boolean isProxiable(ActiveDescriptor<?> desc, Injectee injectee) {
+    /* package */ static boolean isProxiable(ActiveDescriptor<?> desc, Injectee injectee) {
         Boolean directed = desc.isProxiable();
 
         if (directed != null) {
@@ -2084,8 +2217,6 @@ public class Utilities {
             Class<?> requestedClass) {
         if (root == null) throw new IllegalArgumentException();
 
-        T service = null;
-
         if (!root.isReified()) {
             root = (ActiveDescriptor<T>) locator.reifyDescriptor(root, injectee);
         }
@@ -2122,6 +2253,21 @@ public class Utilities {
             throw me;
         }
 
+        return findOrCreate(context, root, handle);
+    }
+
+    /**
+     * Creates the service from the given, already resolved, context
+     *
+     * @param context The context of the scope of the service
+     * @param root A reified descriptor that does not require a proxy
+     * @param handle The ServiceHandle (or null if there is none)
+     * @return The created service
+     */
+    /* package */ static <T> T findOrCreate(Context<?> context,
+            ActiveDescriptor<T> root,
+            ServiceHandle<T> handle) {
+        T service;
         try {
             service = context.findOrCreate(root, handle);
         }
@@ -2172,22 +2318,44 @@ public class Utilities {
         
     };
     
+    /**
+     * Determines if there is any chance that {@link #getAllInterceptors(ServiceLocatorImpl, ActiveDescriptor, Class, Constructor)}
+     * will return interceptors for this service.  The answer only changes
+     * when the set of interception services in the locator changes
+     * 
+     * @param impl The locator the service is created in
+     * @param descriptor The descriptor of the service
+     * @param clazz The implementation class of the service
+     * @return false if the service can never be intercepted
+     */
+    /* package */ static boolean mayBeIntercepted(
+            ServiceLocatorImpl impl,
+            ActiveDescriptor<?> descriptor,
+            Class<?> clazz) {
+        if (descriptor == null || clazz == null || isFinal(clazz)) return false;
+        
+        List<InterceptionService> interceptionServices = impl.getInterceptionServices();
+        if (interceptionServices == null || interceptionServices.isEmpty()) return false;
+        
+        // Make sure it is not one of the special services
+        for (String contract : descriptor.getAdvertisedContracts()) {
+            if (NOT_INTERCEPTED.contains(contract)) return false;
+        }
+        
+        return true;
+    }
+    
     /* package */ static Interceptors getAllInterceptors(
             ServiceLocatorImpl impl,
             ActiveDescriptor<?> descriptor,
             Class<?> clazz,
             Constructor<?> c) {
-        if (descriptor == null || clazz == null || isFinal(clazz)) return EMTPY_INTERCEPTORS;
+        if (!mayBeIntercepted(impl, descriptor, clazz)) return EMTPY_INTERCEPTORS;
         ClassReflectionHelper crh = impl.getClassReflectionHelper();
         
         List<InterceptionService> interceptionServices = impl.getInterceptionServices();
         if (interceptionServices == null || interceptionServices.isEmpty()) return EMTPY_INTERCEPTORS;
         
-        // Make sure it is not one of the special services
-        for (String contract : descriptor.getAdvertisedContracts()) {
-            if (NOT_INTERCEPTED.contains(contract)) return EMTPY_INTERCEPTORS;
-        }
-        
         final LinkedHashMap<Method, List<MethodInterceptor>> retVal =
                 new LinkedHashMap<Method, List<MethodInterceptor>>();
         final ArrayList<ConstructorInterceptor> cRetVal = new ArrayList<ConstructorInterceptor>();
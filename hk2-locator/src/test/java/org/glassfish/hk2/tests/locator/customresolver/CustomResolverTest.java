@@ -40,8 +40,12 @@
 
 package org.glassfish.hk2.tests.locator.customresolver;
 
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.InjectionResolver;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
@@ -151,4 +155,26 @@ public class CustomResolverTest {
         Assert.assertTrue(cwci1.isValid());
     }
 
+    /**
+     * Tests that a resolver added after a per lookup service has
+     * already been created is used the next time that service is created
+     */
+    @Test
+    public void testResolverAddedAfterCreationIsUsed() {
+        ServiceLocator perTest = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(perTest, OptionalPathService.class);
+        
+        OptionalPathService before = perTest.getService(OptionalPathService.class);
+        Assert.assertNull(before.getPath());
+        
+        // Setting it to rank 1 makes it supercede the system injection resolver
+        ServiceLocatorUtilities.addOneDescriptor(perTest, BuilderHelper.link(CustomInjectResolver.class).
+                to(InjectionResolver.class).
+                in(Singleton.class.getName()).
+                ofRank(1).build());
+        
+        OptionalPathService after = perTest.getService(OptionalPathService.class);
+        Assert.assertEquals(OptionalPathService.PATH, after.getPath());
+    }
+
 }
@@ -45,6 +45,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -56,6 +57,7 @@ import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.DuplicatePostProcessor;
@@ -83,6 +85,8 @@ public class DynamicPopulateTest {
     private final static String DUMMY_IMPL_9 = "com.acme.dummy.Dummy9";
     private final static String DUMMY_IMPL_10 = "com.acme.dummy.Dummy10";
     private final static String DUMMY_IMPL_11 = "com.acme.dummy.Dummy11";
+    private final static String DUMMY_IMPL_12 = "com.acme.dummy.Dummy12";
+    private final static String DUMMY_IMPL_13 = "com.acme.dummy.Dummy13";
     
     private final static String KEY = "key";
     private final static String VALUE = "value";
@@ -528,6 +532,47 @@ public class DynamicPopulateTest {
         Assert.assertEquals(1, lucky11list.size());
     }
     
+    /**
+     * Tests population from a binary descriptor file, with post-processing
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryPopulation() throws IOException {
+        DescriptorImpl di_12 = new DescriptorImpl();
+        di_12.setImplementation(DUMMY_IMPL_12);
+        di_12.addAdvertisedContract(DUMMY_IMPL_12);
+        di_12.addMetadata(KEY, VALUE2);
+        
+        DescriptorImpl di_13 = new DescriptorImpl();
+        di_13.setImplementation(DUMMY_IMPL_13);
+        di_13.addAdvertisedContract(DUMMY_IMPL_13);
+        di_13.setName(DUMMY_IMPL_13);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(Arrays.asList(di_12, di_13), baos);
+        baos.close();
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Populator populator = dcs.getPopulator();
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        List<ActiveDescriptor<?>> added = populator.populate(new MyDescriptorFinder(bais), new MetadataPostProcessor(locator));
+        Assert.assertEquals(2, added.size());
+        
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL_12));
+        Assert.assertNotNull(ad);
+        
+        List<String> values = ad.getMetadata().get(KEY);
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(VALUE2, values.get(0));
+        Assert.assertEquals(VALUE, values.get(1));
+        
+        ad = locator.getBestDescriptor(BuilderHelper.createNameFilter(DUMMY_IMPL_13));
+        Assert.assertNotNull(ad);
+        Assert.assertEquals(DUMMY_IMPL_13, ad.getImplementation());
+    }
+    
     private static class MyDescriptorFinder implements DescriptorFileFinder {
         private final ByteArrayInputStream bais;
         
@@ -0,0 +1,303 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.dynamicpopulate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DuplicatePostProcessor;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares populating from hundreds of jars on one thread
+ * and on many threads.  The timing run only happens when the
+ * hk2.benchmarks system property is true, a few jars check
+ * the results otherwise
+ * 
+ * @author jwells
+ *
+ */
+public class ParallelPopulateBenchmarkTest {
+    private final static String BENCHMARKS_PROPERTY = "hk2.benchmarks";
+    private final static String THREADS_PROPERTY = "org.jvnet.hk2.properties.populator.threads";
+    private final static String LOCATOR_FILE = "META-INF/hk2-locator/default";
+    private final static String BAD_LOCATOR_FILE = "META-INF/hk2-locator/bad";
+    
+    private final static int NUM_JARS = 300;
+    private final static int NUM_SMALL_JARS = 12;
+    private final static int DESCRIPTORS_PER_JAR = 20;
+    private final static int PARALLEL_THREADS = 8;
+    private final static int RUNS = 5;
+    
+    private static File jarDirectory;
+    private static ClassLoader jarLoader;
+    
+    /**
+     * Writes the few jars used by every test
+     * 
+     * @throws IOException
+     */
+    @BeforeClass
+    public static void writeSmallJars() throws IOException {
+        jarDirectory = createJarDirectory();
+        jarLoader = writeJars(jarDirectory, NUM_SMALL_JARS);
+    }
+    
+    /**
+     * Removes the jars
+     */
+    @AfterClass
+    public static void removeSmallJars() {
+        removeJars(jarDirectory);
+    }
+    
+    private static File createJarDirectory() throws IOException {
+        File retVal = File.createTempFile("ParallelPopulateBenchmarkTest", "");
+        Assert.assertTrue(retVal.delete());
+        Assert.assertTrue(retVal.mkdirs());
+        
+        return retVal;
+    }
+    
+    /**
+     * Writes the jars, each with its own descriptors and one descriptor
+     * duplicated in every jar.  The jar in the middle also has a bad file
+     * 
+     * @param directory The directory to write the jars into
+     * @param numJars The number of jars to write
+     * @return A class loader for all of the jars
+     * @throws IOException
+     */
+    private static ClassLoader writeJars(File directory, int numJars) throws IOException {
+        URL urls[] = new URL[numJars];
+        for (int jar = 0; jar < numJars; jar++) {
+            File jarFile = new File(directory, "jar" + jar + ".jar");
+            urls[jar] = jarFile.toURI().toURL();
+            
+            JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile));
+            try {
+                jos.putNextEntry(new ZipEntry(LOCATOR_FILE));
+                
+                PrintWriter pw = new PrintWriter(jos);
+                for (int lcv = 0; lcv < DESCRIPTORS_PER_JAR; lcv++) {
+                    createDescriptor("com.acme.jar" + jar + ".Service" + lcv).writeObject(pw);
+                }
+                createDescriptor("com.acme.Shared").writeObject(pw);
+                pw.flush();
+                
+                jos.closeEntry();
+                
+                if (jar == (numJars / 2)) {
+                    jos.putNextEntry(new ZipEntry(BAD_LOCATOR_FILE));
+                    
+                    // The binary magic number with an unknown version
+                    jos.write(new byte[] { 'H', 'K', '2', 'B', 0, 0, 0, 99 });
+                    jos.closeEntry();
+                }
+            }
+            finally {
+                jos.close();
+            }
+        }
+        
+        return new URLClassLoader(urls, null);
+    }
+    
+    private static void removeJars(File directory) {
+        File jars[] = directory.listFiles();
+        if (jars != null) {
+            for (File jar : jars) {
+                jar.delete();
+            }
+        }
+        
+        directory.delete();
+    }
+    
+    private static DescriptorImpl createDescriptor(String implementation) {
+        DescriptorImpl retVal = new DescriptorImpl();
+        retVal.setImplementation(implementation);
+        retVal.addAdvertisedContract(implementation);
+        retVal.addMetadata("jar", implementation);
+        
+        return retVal;
+    }
+    
+    /**
+     * Both modes must add the same descriptors in the same order
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulationMatchesSequential() throws IOException {
+        List<String> sequential = populate(jarLoader, 1);
+        List<String> parallel = populate(jarLoader, PARALLEL_THREADS);
+        
+        // The shared descriptor is only added from the first jar
+        Assert.assertEquals((NUM_SMALL_JARS * DESCRIPTORS_PER_JAR) + 1, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+    }
+    
+    /**
+     * The time of each mode on hundreds of jars is printed for
+     * comparison.  Run with -Dhk2.benchmarks=true
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulationTimes() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        
+        File directory = createJarDirectory();
+        try {
+            ClassLoader loader = writeJars(directory, NUM_JARS);
+            
+            List<String> sequential = null;
+            List<String> parallel = null;
+            long sequentialTime = Long.MAX_VALUE;
+            long parallelTime = Long.MAX_VALUE;
+            
+            for (int lcv = 0; lcv < RUNS; lcv++) {
+                long elapsed = System.nanoTime();
+                sequential = populate(loader, 1);
+                sequentialTime = Math.min(sequentialTime, System.nanoTime() - elapsed);
+                
+                elapsed = System.nanoTime();
+                parallel = populate(loader, PARALLEL_THREADS);
+                parallelTime = Math.min(parallelTime, System.nanoTime() - elapsed);
+            }
+            
+            Assert.assertEquals((NUM_JARS * DESCRIPTORS_PER_JAR) + 1, sequential.size());
+            Assert.assertEquals(sequential, parallel);
+            
+            System.out.println("Populated " + NUM_JARS + " jars sequential=" + (sequentialTime / 1000000L) +
+                    "ms parallel(" + PARALLEL_THREADS + " threads)=" + (parallelTime / 1000000L) + "ms");
+        }
+        finally {
+            removeJars(directory);
+        }
+    }
+    
+    /**
+     * Errors reading a file on a populator thread are reported
+     * with the identifier of the file
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelErrorsHaveIdentifiers() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        String original = System.getProperty(THREADS_PROPERTY);
+        try {
+            System.setProperty(THREADS_PROPERTY, Integer.toString(PARALLEL_THREADS));
+            
+            locator.getService(DynamicConfigurationService.class).getPopulator().populate(
+                    new ClasspathDescriptorFileFinder(jarLoader, "default", "bad"));
+            Assert.fail("The bad file should have caused a failure");
+        }
+        catch (MultiException me) {
+            Assert.assertEquals(1, me.getErrors().size());
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains("jar" + (NUM_SMALL_JARS / 2) + ".jar"));
+            
+            // Nothing is committed on failure
+            Assert.assertNull(locator.getBestDescriptor(BuilderHelper.createContractFilter("com.acme.Shared")));
+        }
+        finally {
+            restoreProperty(original);
+            
+            locator.shutdown();
+        }
+    }
+    
+    private static List<String> populate(ClassLoader loader, int threads) throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        String original = System.getProperty(THREADS_PROPERTY);
+        try {
+            System.setProperty(THREADS_PROPERTY, Integer.toString(threads));
+            
+            List<ActiveDescriptor<?>> added = locator.getService(DynamicConfigurationService.class).getPopulator().populate(
+                    new ClasspathDescriptorFileFinder(loader), new DuplicatePostProcessor());
+            
+            List<String> retVal = new ArrayList<String>(added.size());
+            for (ActiveDescriptor<?> descriptor : added) {
+                retVal.add(descriptor.getImplementation());
+            }
+            
+            return retVal;
+        }
+        finally {
+            restoreProperty(original);
+            
+            locator.shutdown();
+        }
+    }
+    
+    private static void restoreProperty(String original) {
+        if (original == null) {
+            System.clearProperty(THREADS_PROPERTY);
+        }
+        else {
+            System.setProperty(THREADS_PROPERTY, original);
+        }
+    }
+
+}
@@ -42,9 +42,11 @@ package org.glassfish.hk2.tests.locator.interception2;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.aopalliance.intercept.ConstructorInterceptor;
@@ -55,6 +57,7 @@ import org.glassfish.hk2.api.InterceptionService;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -104,6 +107,47 @@ public class ConstructorInterceptorTest {
         Assert.assertEquals(1, i3.wasCalled());
     }
     
+    /**
+     * Ensures that the interception service is asked for the chain
+     * on every creation of a PerLookup service
+     */
+    @Test
+    public void testChainIsAskedForOnEveryCreation() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(SimpleService.class,
+                CountingInterceptionService.class);
+        
+        CountingInterceptionService cis = locator.getService(CountingInterceptionService.class);
+        
+        for (int lcv = 0; lcv < 5; lcv++) {
+            locator.getService(SimpleService.class);
+        }
+        
+        Assert.assertEquals(5, cis.getAsked());
+        Assert.assertEquals(5, cis.getInterceptor().wasCalled());
+    }
+    
+    /**
+     * Ensures that an interceptor bound after the first lookup of a
+     * PerLookup service is used on the next creation, even though the
+     * interception services themselves did not change
+     */
+    @Test
+    public void testInterceptorBoundAfterFirstLookup() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(SimpleService.class,
+                LookupInterceptionService.class);
+        
+        locator.getService(SimpleService.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, CountingInterceptor.class);
+        
+        CountingInterceptor interceptor = locator.getService(CountingInterceptor.class);
+        Assert.assertEquals(0, interceptor.wasCalled());
+        
+        locator.getService(SimpleService.class);
+        
+        Assert.assertEquals(1, interceptor.wasCalled());
+    }
+    
     private static class InterceptorOne implements ConstructorInterceptor {
         private int called;
 
@@ -171,4 +215,75 @@ public class ConstructorInterceptorTest {
         }
         
     }
+    
+    @Singleton
+    private static class CountingInterceptionService implements InterceptionService {
+        private final InterceptorOne interceptor = new InterceptorOne();
+        private int asked;
+
+        @Override
+        public Filter getDescriptorFilter() {
+            return BuilderHelper.createContractFilter(SimpleService.class.getName());
+        }
+
+        @Override
+        public List<MethodInterceptor> getMethodInterceptors(Method method) {
+            return null;
+        }
+
+        @Override
+        public List<ConstructorInterceptor> getConstructorInterceptors(
+                Constructor<?> constructor) {
+            asked++;
+            return Collections.singletonList((ConstructorInterceptor) interceptor);
+        }
+        
+        private int getAsked() { return asked; }
+        
+        private InterceptorOne getInterceptor() { return interceptor; }
+        
+    }
+    
+    @Singleton
+    private static class CountingInterceptor implements ConstructorInterceptor {
+        private int called;
+
+        @Override
+        public Object construct(ConstructorInvocation invocation) throws Throwable {
+            called++;
+            return invocation.proceed();
+        }
+        
+        private int wasCalled() { return called; }
+        
+    }
+    
+    /**
+     * Looks up the interceptors every time it is asked, as the
+     * DefaultInterceptionService of hk2-extras does
+     */
+    @Singleton
+    private static class LookupInterceptionService implements InterceptionService {
+        @Inject
+        private ServiceLocator locator;
+
+        @Override
+        public Filter getDescriptorFilter() {
+            return BuilderHelper.createContractFilter(SimpleService.class.getName());
+        }
+
+        @Override
+        public List<MethodInterceptor> getMethodInterceptors(Method method) {
+            return null;
+        }
+
+        @Override
+        public List<ConstructorInterceptor> getConstructorInterceptors(
+                Constructor<?> constructor) {
+            List<ConstructorInterceptor> retVal = new LinkedList<ConstructorInterceptor>();
+            retVal.addAll(locator.getAllServices(CountingInterceptor.class));
+            return retVal;
+        }
+        
+    }
 }
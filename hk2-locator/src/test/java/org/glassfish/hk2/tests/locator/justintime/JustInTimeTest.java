@@ -236,4 +236,30 @@ public class JustInTimeTest {
         return locator;
     }
 
+    
+    /**
+     * Tests that the resolvers are only asked about a lookup that
+     * they could not help with again once something has been added
+     */
+    @Test
+    public void testRepeatedMissesAreRemembered() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(MissCountingJITResolver.class);
+        MissCountingJITResolver resolver = locator.getService(MissCountingJITResolver.class);
+        
+        for (int lcv = 0; lcv < 3; lcv++) {
+            Assert.assertNull(locator.getService(MissingContract.class));
+        }
+        Assert.assertEquals(1, resolver.getNumTimesCalled());
+        
+        // A different lookup is a different miss
+        Assert.assertNull(locator.getService(MissingContract.class, "Alice"));
+        Assert.assertNull(locator.getService(MissingContract.class, "Alice"));
+        Assert.assertEquals(2, resolver.getNumTimesCalled());
+        
+        // Anything added may have changed the outcome
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        Assert.assertNull(locator.getService(MissingContract.class));
+        Assert.assertEquals(3, resolver.getNumTimesCalled());
+    }
 }
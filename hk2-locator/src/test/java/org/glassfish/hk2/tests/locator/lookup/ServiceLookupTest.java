@@ -0,0 +1,186 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.lookup;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLookup;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ServiceLookup}
+ * 
+ * @author jwells
+ *
+ */
+public class ServiceLookupTest {
+    /**
+     * A lookup returns the same singleton as getService
+     */
+    @Test
+    public void testLookupReturnsSameSingleton() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(EnglishGreeter.class);
+        
+        ServiceLookup<Greeter> lookup = locator.createLookup(Greeter.class);
+        
+        Greeter greeter = lookup.getService();
+        Assert.assertNotNull(greeter);
+        Assert.assertEquals("Hello", greeter.greet());
+        
+        Assert.assertSame(greeter, lookup.getService());
+        Assert.assertSame(greeter, locator.getService(Greeter.class));
+        Assert.assertSame(locator, lookup.getServiceLocator());
+    }
+    
+    /**
+     * A lookup notices a better service being added and
+     * the best service being removed
+     */
+    @Test
+    public void testLookupFollowsConfigurationChanges() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(EnglishGreeter.class);
+        
+        ServiceLookup<Greeter> lookup = locator.createLookup(Greeter.class);
+        Assert.assertEquals("Hello", lookup.getService().greet());
+        
+        List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator, FrenchGreeter.class);
+        Assert.assertEquals("Bonjour", lookup.getService().greet());
+        Assert.assertEquals(FrenchGreeter.class.getName(), lookup.getActiveDescriptor().getImplementation());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        Assert.assertEquals("Hello", lookup.getService().greet());
+    }
+    
+    /**
+     * A lookup of a missing service returns null, and
+     * finds the service once it has been added
+     */
+    @Test
+    public void testLookupOfMissingService() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLookup<Greeter> lookup = locator.createLookup(Greeter.class);
+        Assert.assertNull(lookup.getService());
+        Assert.assertNull(lookup.getServiceHandle());
+        Assert.assertNull(lookup.getActiveDescriptor());
+        
+        ServiceLocatorUtilities.addClasses(locator, EnglishGreeter.class);
+        Assert.assertEquals("Hello", lookup.getService().greet());
+    }
+    
+    /**
+     * Named lookups and per lookup services
+     */
+    @Test
+    public void testNamedPerLookupService() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(EnglishGreeter.class,
+                FrenchGreeter.class,
+                PerLookupGreeter.class);
+        
+        ServiceLookup<Greeter> english = locator.createLookup(Greeter.class, "English");
+        Assert.assertEquals("Hello", english.getService().greet());
+        
+        ServiceLookup<Greeter> perLookup = locator.createLookup(Greeter.class, "PerLookup");
+        Greeter first = perLookup.getService();
+        Greeter second = perLookup.getService();
+        
+        Assert.assertEquals("Hi", first.greet());
+        Assert.assertNotSame(first, second);
+        
+        ServiceHandle<Greeter> handle = perLookup.getServiceHandle();
+        Assert.assertEquals("Hi", handle.getService().greet());
+        handle.destroy();
+    }
+    
+    /**
+     * A lookup in a child locator notices changes made to the parent
+     */
+    @Test
+    public void testChildLookupFollowsParent() {
+        ServiceLocator parent = LocatorHelper.getServiceLocator(EnglishGreeter.class);
+        ServiceLocator child = LocatorHelper.create(parent);
+        
+        ServiceLookup<Greeter> lookup = child.createLookup(Greeter.class);
+        Assert.assertEquals("Hello", lookup.getService().greet());
+        
+        ServiceLocatorUtilities.addClasses(parent, FrenchGreeter.class);
+        Assert.assertEquals("Bonjour", lookup.getService().greet());
+    }
+    
+    /**
+     * A lookup notices ranking changes
+     */
+    @Test
+    public void testLookupFollowsRankingChanges() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(EnglishGreeter.class,
+                FrenchGreeter.class);
+        
+        ServiceLookup<Greeter> lookup = locator.createLookup(Greeter.class);
+        Assert.assertEquals("Bonjour", lookup.getService().greet());
+        
+        ActiveDescriptor<?> english = locator.getBestDescriptor(BuilderHelper.createNameFilter("English"));
+        english.setRanking(20);
+        
+        Assert.assertEquals("Hello", lookup.getService().greet());
+    }
+    
+    /**
+     * A lookup may not be used after the locator is shut down
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testLookupAfterShutdown() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(EnglishGreeter.class);
+        
+        ServiceLookup<Greeter> lookup = locator.createLookup(Greeter.class);
+        Assert.assertEquals("Hello", lookup.getService().greet());
+        
+        locator.shutdown();
+        
+        lookup.getService();
+    }
+}
@@ -100,6 +100,10 @@ public class ParentedTest {
     private final static String PARENT9 = "Parent9";
     private final static String CHILD9 = "Child9";
     
+    private final static String PARENT10 = "Parent10";
+    private final static String CHILD10 = "Child10-";
+    private final static int NUM_CHILDREN = 100;
+    
     /**
      * Tests three generations of locators
      */
@@ -327,4 +331,40 @@ public class ParentedTest {
         Assert.assertEquals(1, child.getAllServices(ServiceLocatorRuntimeBean.class).size());
         Assert.assertEquals(1, child.getAllServices(threeThirtyLiteral.getType(), new NamedImpl(InjectionResolver.SYSTEM_RESOLVER_NAME)).size());
     }
+    
+    /**
+     * Tests that adding and removing a service in the parent is seen by
+     * many children that have already cached the lookup
+     */
+    @Test
+    public void testParentChangesSeenByManyChildren() {
+        ServiceLocator parent = factory.create(PARENT10);
+        
+        ServiceLocator children[] = new ServiceLocator[NUM_CHILDREN];
+        for (int lcv = 0; lcv < NUM_CHILDREN; lcv++) {
+            children[lcv] = factory.create(CHILD10 + lcv, parent);
+            
+            Assert.assertNull(children[lcv].getService(SimpleService.class));
+            Assert.assertTrue(children[lcv].getAllServices(SimpleService.class).isEmpty());
+        }
+        
+        Descriptor added = ServiceLocatorUtilities.addOneDescriptor(parent,
+                BuilderHelper.link(SimpleService.class).build());
+        
+        for (int lcv = 0; lcv < NUM_CHILDREN; lcv++) {
+            Assert.assertNotNull(children[lcv].getService(SimpleService.class));
+            Assert.assertEquals(1, children[lcv].getAllServices(SimpleService.class).size());
+        }
+        
+        ServiceLocatorUtilities.removeOneDescriptor(parent, added);
+        
+        for (int lcv = 0; lcv < NUM_CHILDREN; lcv++) {
+            Assert.assertNull(children[lcv].getService(SimpleService.class));
+            Assert.assertTrue(children[lcv].getAllServices(SimpleService.class).isEmpty());
+            
+            factory.destroy(children[lcv]);
+        }
+        
+        factory.destroy(parent);
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.perlookup;
+
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Compares the throughput of creating PerLookup services with
+ * the prepared accessors and with the reflective accessors.  The
+ * timing run only happens when the hk2.benchmarks system property
+ * is true
+ * 
+ * @author jwells
+ *
+ */
+public class PerLookupCreationBenchmarkTest {
+    private final static String BENCHMARKS_PROPERTY = "hk2.benchmarks";
+    private final static String ACCESSORS_PROPERTY = "org.jvnet.hk2.properties.accessors";
+    private final static int WARM_UP = 20000;
+    private final static int CREATIONS = 200000;
+    private final static int FEW_CREATIONS = 50;
+    
+    /**
+     * Both strategies must fully inject the service, including
+     * once an injector has been generated for it
+     */
+    @Test
+    public void testPreparedAndReflectiveCreation() {
+        measure("reflective", 0, FEW_CREATIONS);
+        measure(null, 0, FEW_CREATIONS);
+    }
+    
+    /**
+     * The throughput of each strategy is printed for comparison.
+     * Run with -Dhk2.benchmarks=true
+     */
+    @Test
+    public void testPreparedVersusReflectiveCreation() {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        
+        long reflective = measure("reflective", WARM_UP, CREATIONS);
+        long prepared = measure(null, WARM_UP, CREATIONS);
+        
+        System.out.println("PerLookup creations=" + CREATIONS +
+                " reflective=" + reflective + " creations/s" +
+                " prepared=" + prepared + " creations/s");
+    }
+    
+    private static long measure(String accessors, int warmUp, int creations) {
+        String original = System.getProperty(ACCESSORS_PROPERTY);
+        
+        ServiceLocator locator;
+        try {
+            if (accessors == null) {
+                System.clearProperty(ACCESSORS_PROPERTY);
+            }
+            else {
+                System.setProperty(ACCESSORS_PROPERTY, accessors);
+            }
+            
+            locator = LocatorHelper.create();
+            ServiceLocatorUtilities.addClasses(locator, ThriceInjectedService.class, SimpleService.class);
+            
+            // The accessors are chosen when the first service is created
+            checkService(locator.getService(ThriceInjectedService.class));
+        }
+        finally {
+            if (original == null) {
+                System.clearProperty(ACCESSORS_PROPERTY);
+            }
+            else {
+                System.setProperty(ACCESSORS_PROPERTY, original);
+            }
+        }
+        
+        try {
+            for (int lcv = 0; lcv < warmUp; lcv++) {
+                checkService(locator.getService(ThriceInjectedService.class));
+            }
+            
+            long elapsed = System.nanoTime();
+            for (int lcv = 0; lcv < creations; lcv++) {
+                checkService(locator.getService(ThriceInjectedService.class));
+            }
+            elapsed = System.nanoTime() - elapsed;
+            if (elapsed <= 0) elapsed = 1;
+            
+            return (creations * TimeUnit.SECONDS.toNanos(1)) / elapsed;
+        }
+        finally {
+            locator.shutdown();
+        }
+    }
+    
+    private static void checkService(ThriceInjectedService service) {
+        Assert.assertNotNull(service.getByConstructor());
+        Assert.assertNotNull(service.getByField());
+        Assert.assertNotNull(service.getByMethod());
+    }
+
+}
@@ -59,6 +59,7 @@ public class PerLookupModule implements TestModule {
     public void configure(DynamicConfiguration configurator) {
         configurator.bind(BuilderHelper.link(SimpleService.class).build());
         configurator.bind(BuilderHelper.link(ThriceInjectedService.class).build());
+        configurator.bind(BuilderHelper.link(PackageInjectedService.class).build());
         
         configurator.bind(BuilderHelper.link(NullInjectedPerLookupService.class).build());
         configurator.bind(BuilderHelper.link(NullInterfaceFactory.class).
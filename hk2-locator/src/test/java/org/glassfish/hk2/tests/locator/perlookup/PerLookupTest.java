@@ -102,4 +102,29 @@ public class PerLookupTest {
         Assert.assertTrue(nif.getDisposeCalled());
     }
 
+    /**
+     * Once a service has been created often enough its package members, including
+     * its postConstruct, are called by a generated injector, while private members
+     * still get injected
+     */
+    @Test
+    public void testGeneratedInjectorIsUsed() {
+        PackageInjectedService first = locator.getService(PackageInjectedService.class);
+        Assert.assertFalse(first.getConstructedBy(), first.getConstructedBy().contains("$$Hk2Injector"));
+        
+        PackageInjectedService last = null;
+        for (int lcv = 0; lcv < 100; lcv++) {
+            last = locator.getService(PackageInjectedService.class);
+            
+            Assert.assertNotNull(last.getByConstructor());
+            Assert.assertNotNull(last.byField);
+            Assert.assertNotNull(last.getByPrivateField());
+            Assert.assertNotNull(last.getByMethod());
+            Assert.assertEquals(1, last.getMethodCalls());
+        }
+        
+        Assert.assertTrue(last.getConstructedBy(), last.getConstructedBy().contains("$$Hk2Injector"));
+        Assert.assertTrue(last.getPostConstructedBy(), last.getPostConstructedBy().contains("$$Hk2Injector"));
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.perthread;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the throughput of PerThread service lookups
+ * when many threads are looking up services at once
+ * 
+ * @author jwells
+ *
+ */
+public class PerThreadContentionTest {
+    private final static int NUM_THREADS = 64;
+    private final static int LOOKUPS_PER_THREAD = 20000;
+    
+    /**
+     * Every thread must always get its own instance, and
+     * no two threads may share an instance
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    public void testManyThreadsLookingUpPerThreadServices() throws InterruptedException {
+        final ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.enablePerThreadScope(locator);
+        ServiceLocatorUtilities.addClasses(locator, Pants.class);
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(NUM_THREADS);
+        final Pants results[] = new Pants[NUM_THREADS];
+        final Throwable errors[] = new Throwable[NUM_THREADS];
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            final int index = lcv;
+            
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        Pants mine = locator.getService(Pants.class);
+                        for (int i = 1; i < LOOKUPS_PER_THREAD; i++) {
+                            if (mine != locator.getService(Pants.class)) {
+                                throw new AssertionError("Got a different PerThread instance on lookup " + i);
+                            }
+                        }
+                        
+                        results[index] = mine;
+                    }
+                    catch (Throwable th) {
+                        errors[index] = th;
+                    }
+                    finally {
+                        finish.countDown();
+                    }
+                }
+                
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        long elapsed = System.nanoTime();
+        start.countDown();
+        Assert.assertTrue(finish.await(5, TimeUnit.MINUTES));
+        elapsed = System.nanoTime() - elapsed;
+        
+        IdentityHashMap<Pants, Pants> unique = new IdentityHashMap<Pants, Pants>();
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            if (errors[lcv] != null) {
+                throw new AssertionError(errors[lcv]);
+            }
+            
+            Assert.assertNotNull(results[lcv]);
+            unique.put(results[lcv], results[lcv]);
+        }
+        
+        Assert.assertEquals(NUM_THREADS, unique.size());
+        
+        long totalLookups = ((long) NUM_THREADS) * LOOKUPS_PER_THREAD;
+        if (elapsed <= 0) elapsed = 1;
+        System.out.println("PerThread lookups threads=" + NUM_THREADS + " lookups=" + totalLookups +
+                " throughput=" + ((totalLookups * TimeUnit.SECONDS.toNanos(1)) / elapsed) + " lookups/s");
+    }
+
+}
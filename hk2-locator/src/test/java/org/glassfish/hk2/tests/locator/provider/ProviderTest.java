@@ -40,6 +40,8 @@
 
 package org.glassfish.hk2.tests.locator.provider;
 
+import java.util.Iterator;
+
 import javax.inject.Provider;
 
 import junit.framework.Assert;
@@ -52,6 +54,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Test;
 
 /**
@@ -220,4 +223,40 @@ public class ProviderTest {
         Assert.assertTrue(foundEli);
         Assert.assertTrue(foundShady);
     }
+    
+    /**
+     * Tests that counting the services of an IterableProvider creates
+     * none of them, that iterating only creates the services reached,
+     * and that services added later are seen
+     */
+    @Test
+    public void testIterableProviderIsLazy() {
+        ServiceLocator pluginLocator = LocatorHelper.getServiceLocator(PluginCounter.class,
+                PluginOne.class, PluginTwo.class);
+        PluginCounter counter = pluginLocator.getService(PluginCounter.class);
+        
+        IterableProvider<Plugin> plugins = pluginLocator.getService((new TypeLiteral<IterableProvider<Plugin>>() {}).getType());
+        
+        Assert.assertEquals(2, plugins.getSize());
+        Assert.assertEquals(2, plugins.getSize());
+        Assert.assertEquals(0, counter.getCreated());
+        
+        Iterator<Plugin> iterator = plugins.iterator();
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertTrue(iterator.next() instanceof PluginOne);
+        Assert.assertEquals(1, counter.getCreated());
+        
+        ServiceLocatorUtilities.addClasses(pluginLocator, PluginThree.class);
+        
+        Assert.assertEquals(3, plugins.getSize());
+        
+        int found = 0;
+        for (Plugin plugin : plugins) {
+            Assert.assertNotNull(plugin);
+            found++;
+        }
+        
+        Assert.assertEquals(3, found);
+        Assert.assertEquals(4, counter.getCreated());
+    }
 }
@@ -125,4 +125,19 @@ public class ProxiableTest {
     	// If this doesn't bomb, this test works
     	sh.check();
     }
+    
+    /**
+     * Tests that the proxy class is generated once and then
+     * shared by all the proxies of the service
+     */
+    @Test
+    public void testProxyClassIsReused() {
+        PostConstructedProxiedService first = locator.getService(PostConstructedProxiedService.class);
+        PostConstructedProxiedService second = locator.getService(PostConstructedProxiedService.class);
+        
+        Assert.assertTrue(first instanceof ProxyCtl);
+        Assert.assertTrue(second instanceof ProxyCtl);
+        
+        Assert.assertSame(first.getClass(), second.getClass());
+    }
 }
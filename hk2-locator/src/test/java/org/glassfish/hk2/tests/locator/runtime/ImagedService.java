@@ -0,0 +1,103 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.runtime;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * A service with every kind of member that is recorded
+ * in an analysis image
+ * 
+ * @author jwells
+ *
+ */
+@Singleton @Named(ImagedService.NAME)
+public class ImagedService {
+    public final static String NAME = "Imaged";
+    
+    private final SimpleService byConstructor;
+    
+    @Inject
+    private SimpleService byField;
+    
+    private SimpleService byMethod;
+    
+    private boolean postConstructCalled;
+    private boolean preDestroyCalled;
+    
+    @Inject
+    private ImagedService(SimpleService byConstructor) {
+        this.byConstructor = byConstructor;
+    }
+    
+    @Inject
+    private void setByMethod(SimpleService byMethod) {
+        this.byMethod = byMethod;
+    }
+    
+    @PostConstruct
+    private void postConstruct() {
+        postConstructCalled = true;
+    }
+    
+    @PreDestroy
+    private void preDestroy() {
+        preDestroyCalled = true;
+    }
+    
+    /**
+     * @return true if every injection point was filled and postConstruct called
+     */
+    public boolean isFullyInitialized() {
+        return byConstructor != null && byField != null && byMethod != null && postConstructCalled;
+    }
+    
+    /**
+     * @return true if preDestroy was called
+     */
+    public boolean isPreDestroyCalled() {
+        return preDestroyCalled;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.runtime;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.ServiceInjector;
+
+/**
+ * An injector for {@link ImagedService} as the metadata generator would
+ * write it.  Every member of the service is private, so everything is
+ * left to reflection
+ * 
+ * @author jwells
+ *
+ */
+public class ImagedServiceInjector implements ServiceInjector<ImagedService> {
+    private final static AtomicInteger USED = new AtomicInteger();
+    
+    /**
+     * @return The number of times the members of this injector were asked for
+     */
+    public static int getTimesUsed() {
+        return USED.get();
+    }
+
+    @Override
+    public Constructor<ImagedService> getConstructor() throws NoSuchMethodException {
+        USED.incrementAndGet();
+        
+        return ImagedService.class.getDeclaredConstructor(SimpleService.class);
+    }
+
+    @Override
+    public List<Field> getFields() throws NoSuchFieldException {
+        return Collections.singletonList(ImagedService.class.getDeclaredField("byField"));
+    }
+
+    @Override
+    public List<Method> getInitializerMethods() throws NoSuchMethodException {
+        return Collections.singletonList(ImagedService.class.getDeclaredMethod("setByMethod", SimpleService.class));
+    }
+
+    @Override
+    public Method getPostConstructMethod() throws NoSuchMethodException {
+        return ImagedService.class.getDeclaredMethod("postConstruct");
+    }
+
+    @Override
+    public Method getPreDestroyMethod() throws NoSuchMethodException {
+        return ImagedService.class.getDeclaredMethod("preDestroy");
+    }
+
+    @Override
+    public boolean canConstruct() {
+        return false;
+    }
+
+    @Override
+    public ImagedService construct(Object[] args) throws Throwable {
+        throw new AssertionError("The constructor of ImagedService is private");
+    }
+
+    @Override
+    public boolean canInject(int fieldIndex) {
+        return false;
+    }
+
+    @Override
+    public void inject(int fieldIndex, ImagedService instance, Object value) throws Throwable {
+        throw new AssertionError("The fields of ImagedService are private");
+    }
+
+    @Override
+    public boolean canInitialize(int methodIndex) {
+        return false;
+    }
+
+    @Override
+    public void initialize(int methodIndex, ImagedService instance, Object[] args) throws Throwable {
+        throw new AssertionError("The methods of ImagedService are private");
+    }
+
+    @Override
+    public boolean canPostConstruct() {
+        return false;
+    }
+
+    @Override
+    public void postConstruct(ImagedService instance) throws Throwable {
+        throw new AssertionError("The postConstruct of ImagedService is private");
+    }
+
+    @Override
+    public boolean canPreDestroy() {
+        return false;
+    }
+
+    @Override
+    public void preDestroy(ImagedService instance) throws Throwable {
+        throw new AssertionError("The preDestroy of ImagedService is private");
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.runtime;
+
+import java.lang.reflect.Type;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.jvnet.hk2.external.runtime.ServiceLocatorInstrumentation;
+
+/**
+ * Records the implementation names of the events it is told about
+ * 
+ * @author jwells
+ *
+ */
+@Singleton
+public class RecordingInstrumentation implements ServiceLocatorInstrumentation {
+    private final List<String> created = new LinkedList<String>();
+    private final List<Type> lookedUp = new LinkedList<Type>();
+    private final List<Set<String>> invalidated = new LinkedList<Set<String>>();
+
+    @Override
+    public synchronized void serviceCreated(ActiveDescriptor<?> descriptor,
+            long elapsedNanos, boolean succeeded) {
+        created.add(descriptor.getImplementation());
+    }
+
+    @Override
+    public void descriptorReified(ActiveDescriptor<?> descriptor,
+            long elapsedNanos, boolean succeeded) {
+    }
+
+    @Override
+    public synchronized void serviceLookedUp(Type contractOrImpl, long elapsedNanos,
+            boolean found) {
+        lookedUp.add(contractOrImpl);
+    }
+
+    @Override
+    public synchronized void cachesInvalidated(Set<String> affectedContracts) {
+        invalidated.add(affectedContracts);
+    }
+    
+    public synchronized List<String> getCreated() {
+        return new LinkedList<String>(created);
+    }
+    
+    public synchronized List<Type> getLookedUp() {
+        return new LinkedList<Type>(lookedUp);
+    }
+    
+    public synchronized List<Set<String>> getInvalidated() {
+        return new LinkedList<Set<String>>(invalidated);
+    }
+
+}
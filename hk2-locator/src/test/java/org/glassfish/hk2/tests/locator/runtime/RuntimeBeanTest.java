@@ -39,11 +39,22 @@
  */
 package org.glassfish.hk2.tests.locator.runtime;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.List;
+import java.util.Set;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceInjector;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
@@ -182,5 +193,242 @@ public class RuntimeBeanTest {
         
         Assert.assertTrue(bean.getReflectionCacheSize() > 0);
     }
+    
+    /**
+     * Tests that bound instrumentation is told about
+     * creations, lookups and cache invalidations
+     */
+    @Test // @org.junit.Ignore
+    public void testInstrumentationSeesEvents() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLocatorUtilities.addClasses(locator, RecordingInstrumentation.class);
+        RecordingInstrumentation recorder = locator.getService(RecordingInstrumentation.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        
+        Assert.assertTrue(recorder.getCreated().contains(SimpleService.class.getName()));
+        Assert.assertTrue(recorder.getLookedUp().contains(SimpleService.class));
+        
+        boolean found = false;
+        for (Set<String> invalidated : recorder.getInvalidated()) {
+            if (invalidated.contains(SimpleService.class.getName())) {
+                found = true;
+                break;
+            }
+        }
+        Assert.assertTrue(found);
+        
+        Assert.assertTrue(bean(locator).getCacheInvalidationCount() > 0L);
+    }
+    
+    /**
+     * Tests the hit rate and list sizes of the service cache
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCacheStatistics() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorRuntimeBean bean = bean(locator);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        bean.clearServiceCache();
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertNotNull(locator.getService(SimpleService.class));
+        }
+        
+        double hitRate = bean.getServiceCacheHitRate();
+        Assert.assertTrue("hitRate=" + hitRate, hitRate > 0.0 && hitRate <= 100.0);
+        
+        Assert.assertEquals(bean.getServiceCacheSize(),
+                bean.getServiceCacheT1Size() + bean.getServiceCacheT2Size());
+        Assert.assertTrue(bean.getServiceCacheB1Size() >= 0);
+        Assert.assertTrue(bean.getServiceCacheB2Size() >= 0);
+    }
+    
+    /**
+     * Tests that an analysis image written by one locator
+     * can be used by another to reify the same services
+     */
+    @Test // @org.junit.Ignore
+    public void testAnalysisImageRoundTrip() throws IOException {
+        ServiceLocator writer = LocatorHelper.create();
+        addImagedServices(writer);
+        
+        Assert.assertTrue(writer.getService(ImagedService.class).isFullyInitialized());
+        
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        int numWritten = bean(writer).writeAnalysisImage(image);
+        
+        // Both services are reified, along with some of the locator's own
+        Assert.assertTrue("numWritten=" + numWritten, numWritten >= 2);
+        
+        ServiceLocator reader = LocatorHelper.create();
+        Assert.assertEquals(numWritten, bean(reader).loadAnalysisImage(
+                new ByteArrayInputStream(image.toByteArray())));
+        
+        addImagedServices(reader);
+        
+        int hits = bean(reader).getAnalysisImageHits();
+        
+        ActiveDescriptor<?> descriptor = reader.getBestDescriptor(BuilderHelper.createContractFilter(
+                ImagedService.class.getName()));
+        descriptor = reader.reifyDescriptor(descriptor);
+        
+        // The entry of ImagedService was used rather than analyzing the class
+        Assert.assertEquals(hits + 1, bean(reader).getAnalysisImageHits());
+        
+        Assert.assertEquals(Singleton.class, descriptor.getScopeAnnotation());
+        Assert.assertEquals(1, descriptor.getQualifierAnnotations().size());
+        Assert.assertEquals(ImagedService.NAME,
+                ((Named) descriptor.getQualifierAnnotations().iterator().next()).value());
+        Assert.assertTrue(descriptor.getContractTypes().contains(ImagedService.class));
+        Assert.assertEquals(3, descriptor.getInjectees().size());
+        
+        ServiceHandle<ImagedService> handle = reader.getServiceHandle(ImagedService.class, ImagedService.NAME);
+        ImagedService service = handle.getService();
+        Assert.assertTrue(service.isFullyInitialized());
+        
+        handle.destroy();
+        
+        Assert.assertTrue(service.isPreDestroyCalled());
+    }
+    
+    /**
+     * Tests that an entry whose digest no longer matches its class
+     * is not used, while the other entries of the image still are
+     */
+    @Test // @org.junit.Ignore
+    public void testChangedAnalysisImageEntryFallsBack() throws IOException {
+        ServiceLocator writer = LocatorHelper.create();
+        addImagedServices(writer);
+        
+        Assert.assertTrue(writer.getService(ImagedService.class).isFullyInitialized());
+        
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        bean(writer).writeAnalysisImage(image);
+        
+        byte tampered[] = image.toByteArray();
+        tamperDigest(tampered, ImagedService.class.getName());
+        
+        ServiceLocator reader = LocatorHelper.create();
+        bean(reader).loadAnalysisImage(new ByteArrayInputStream(tampered));
+        
+        addImagedServices(reader);
+        
+        int hits = bean(reader).getAnalysisImageHits();
+        
+        ActiveDescriptor<?> simple = reader.reifyDescriptor(reader.getBestDescriptor(
+                BuilderHelper.createContractFilter(SimpleService.class.getName())));
+        Assert.assertEquals(hits + 1, bean(reader).getAnalysisImageHits());
+        Assert.assertTrue(simple.isReified());
+        
+        ActiveDescriptor<?> descriptor = reader.reifyDescriptor(reader.getBestDescriptor(
+                BuilderHelper.createContractFilter(ImagedService.class.getName())));
+        
+        // Analyzed as usual, with the same results
+        Assert.assertEquals(hits + 1, bean(reader).getAnalysisImageHits());
+        Assert.assertEquals(Singleton.class, descriptor.getScopeAnnotation());
+        Assert.assertEquals(3, descriptor.getInjectees().size());
+        
+        ServiceHandle<ImagedService> handle = reader.getServiceHandle(ImagedService.class, ImagedService.NAME);
+        ImagedService service = handle.getService();
+        Assert.assertTrue(service.isFullyInitialized());
+        
+        handle.destroy();
+        
+        Assert.assertTrue(service.isPreDestroyCalled());
+    }
+    
+    /**
+     * Tests that a generated ServiceInjector for a class is
+     * used even when the analysis image has an entry for it
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceInjectorPreferredOverAnalysisImage() throws IOException {
+        ServiceLocator writer = LocatorHelper.create();
+        addImagedServices(writer);
+        
+        Assert.assertTrue(writer.getService(ImagedService.class).isFullyInitialized());
+        
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        bean(writer).writeAnalysisImage(image);
+        
+        ServiceLocator reader = LocatorHelper.create();
+        bean(reader).loadAnalysisImage(new ByteArrayInputStream(image.toByteArray()));
+        
+        ServiceLocatorUtilities.addOneDescriptor(reader,
+                BuilderHelper.link(SimpleService.class).build());
+        ServiceLocatorUtilities.addOneDescriptor(reader,
+                BuilderHelper.link(ImagedService.class).named(ImagedService.NAME).
+                has(ServiceInjector.INJECTOR_METADATA_KEY, ImagedServiceInjector.class.getName()).build());
+        
+        int used = ImagedServiceInjector.getTimesUsed();
+        int hits = bean(reader).getAnalysisImageHits();
+        
+        ImagedService service = reader.getService(ImagedService.class, ImagedService.NAME);
+        Assert.assertTrue(service.isFullyInitialized());
+        
+        // The image still supplied the rest of the analysis, but not the members
+        Assert.assertTrue(bean(reader).getAnalysisImageHits() > hits);
+        Assert.assertEquals(used + 1, ImagedServiceInjector.getTimesUsed());
+    }
+    
+    /**
+     * Changes one byte of the digest of the entry of the given class.  Each
+     * entry starts with its key, written by writeUTF and starting with the
+     * name of the class and a new line, followed by the length of the digest
+     * and the digest
+     */
+    private static void tamperDigest(byte image[], String implementation) throws UnsupportedEncodingException {
+        byte prefix[] = (implementation + "\n").getBytes("UTF-8");
+        
+        for (int lcv = 2; lcv + prefix.length <= image.length; lcv++) {
+            boolean found = true;
+            for (int inner = 0; inner < prefix.length; inner++) {
+                if (image[lcv + inner] != prefix[inner]) {
+                    found = false;
+                    break;
+                }
+            }
+            if (!found) continue;
+            
+            int keyLength = ((image[lcv - 2] & 0xff) << 8) | (image[lcv - 1] & 0xff);
+            int digest = lcv + keyLength + 4;
+            
+            image[digest] = (byte) ~image[digest];
+            return;
+        }
+        
+        Assert.fail("No entry for " + implementation + " in the image");
+    }
+    
+    /**
+     * Tests that a stream that does not hold an analysis
+     * image is rejected
+     */
+    @Test(expected=IOException.class) // @org.junit.Ignore
+    public void testBadAnalysisImageRejected() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        bean(locator).loadAnalysisImage(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 0, 0, 0, 1 }));
+    }
+    
+    /**
+     * Adds the services as unreified descriptors, as they
+     * would be read from an inhabitants file
+     */
+    private static void addImagedServices(ServiceLocator locator) {
+        ServiceLocatorUtilities.addOneDescriptor(locator,
+                BuilderHelper.link(SimpleService.class).build());
+        ServiceLocatorUtilities.addOneDescriptor(locator,
+                BuilderHelper.link(ImagedService.class).named(ImagedService.NAME).build());
+    }
+    
+    private static ServiceLocatorRuntimeBean bean(ServiceLocator locator) {
+        return locator.getService(ServiceLocatorRuntimeBean.class);
+    }
 
 }
@@ -0,0 +1,172 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.signatures;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ContractSignatures;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the contract signatures and qualifier values recorded in the
+ * descriptor metadata keep the locator from loading classes that cannot match
+ * 
+ * @author jwells
+ */
+public class SignaturesTest {
+    /* package */ final static String RED = "red";
+    /* package */ final static String BLUE = "blue";
+    
+    private static DescriptorImpl createDescriptor(Class<?> implClass, String typeArgument, String color, RecordingLoader loader) {
+        return BuilderHelper.link(implClass.getName()).
+            to(Repository.class.getName()).
+            in(Singleton.class.getName()).
+            qualifiedBy(Colored.class.getName()).
+            has(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, Repository.class.getName() + "<" + typeArgument + ">").
+            has(ContractSignatures.QUALIFIER_VALUE_METADATA_KEY,
+                ContractSignatures.encodeQualifierValue(Colored.class.getName(), "value", color)).
+            andLoadWith(loader).
+            build();
+    }
+    
+    private static ServiceLocator createLocator(RecordingLoader loader) {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        // Added first so that it is the first candidate for every lookup
+        ServiceLocatorUtilities.addOneDescriptor(locator,
+                createDescriptor(IntegerRepository.class, Integer.class.getName(), BLUE, loader));
+        ServiceLocatorUtilities.addOneDescriptor(locator,
+                createDescriptor(StringRepository.class, String.class.getName(), RED, loader));
+        
+        return locator;
+    }
+    
+    /**
+     * Looking up Repository&lt;String&gt; must not load the Repository&lt;Integer&gt;
+     * implementation
+     */
+    @Test
+    public void testParameterizedLookupOnlyLoadsMatchingImplementation() {
+        RecordingLoader loader = new RecordingLoader();
+        ServiceLocator locator = createLocator(loader);
+        
+        Repository<String> stringRepository = locator.getService(new TypeLiteral<Repository<String>>() {}.getType());
+        Assert.assertNotNull(stringRepository);
+        Assert.assertEquals(RED, stringRepository.get());
+        
+        Assert.assertTrue(loader.wasClassLoaded(StringRepository.class.getName()));
+        Assert.assertFalse(loader.wasClassLoaded(IntegerRepository.class.getName()));
+        
+        Repository<Integer> integerRepository = locator.getService(new TypeLiteral<Repository<Integer>>() {}.getType());
+        Assert.assertNotNull(integerRepository);
+        Assert.assertEquals(BLUE.length(), integerRepository.get().intValue());
+        
+        Assert.assertTrue(loader.wasClassLoaded(IntegerRepository.class.getName()));
+        
+        // A type that no descriptor can provide does not load anything either
+        Assert.assertNull(locator.getService(new TypeLiteral<Repository<Double>>() {}.getType()));
+    }
+    
+    /**
+     * Looking up a qualifier with a value must not load implementations
+     * whose qualifier has a different value
+     */
+    @Test
+    public void testQualifierValueLookupOnlyLoadsMatchingImplementation() {
+        RecordingLoader loader = new RecordingLoader();
+        ServiceLocator locator = createLocator(loader);
+        
+        Repository<?> redRepository = locator.getService(Repository.class, new ColoredImpl(RED));
+        Assert.assertNotNull(redRepository);
+        Assert.assertEquals(RED, redRepository.get());
+        
+        Assert.assertTrue(loader.wasClassLoaded(StringRepository.class.getName()));
+        Assert.assertFalse(loader.wasClassLoaded(IntegerRepository.class.getName()));
+    }
+    
+    /**
+     * Parameterized lookups whose arguments are super types of the recorded
+     * arguments, wildcards or type variables are still resolved
+     */
+    @Test
+    public void testAssignableArgumentsAreNotRejected() {
+        RecordingLoader loader = new RecordingLoader();
+        ServiceLocator locator = createLocator(loader);
+        
+        Assert.assertNotNull(locator.getService(new TypeLiteral<Repository<CharSequence>>() {}.getType()));
+        Assert.assertTrue(loader.wasClassLoaded(StringRepository.class.getName()));
+        Assert.assertFalse(loader.wasClassLoaded(IntegerRepository.class.getName()));
+        
+        Assert.assertEquals(2, locator.getAllServices(new TypeLiteral<Repository<?>>() {}.getType()).size());
+    }
+    
+    /**
+     * The signature recorded for one contract says nothing about the
+     * other contracts of the service
+     */
+    @Test
+    public void testSignatureOfOtherContractIsIgnored() {
+        RecordingLoader loader = new RecordingLoader();
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLocatorUtilities.addOneDescriptor(locator, BuilderHelper.link(HandlingRepository.class.getName()).
+            to(Repository.class.getName()).
+            to(Handler.class.getName()).
+            in(Singleton.class.getName()).
+            has(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, Repository.class.getName() + "<" + String.class.getName() + ">").
+            andLoadWith(loader).
+            build());
+        
+        Handler<Integer> handler = locator.getService(new TypeLiteral<Handler<Integer>>() {}.getType());
+        Assert.assertNotNull(handler);
+        Assert.assertEquals("13", handler.handle(13));
+        
+        // The recorded signature still rejects the wrong arguments for its own contract
+        Assert.assertNull(locator.getService(new TypeLiteral<Repository<Integer>>() {}.getType()));
+    }
+}
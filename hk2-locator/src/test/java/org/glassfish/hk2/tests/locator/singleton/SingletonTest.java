@@ -46,6 +46,7 @@ import java.util.List;
 import junit.framework.Assert;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
@@ -120,6 +121,25 @@ public class SingletonTest {
         Assert.assertTrue(triple.getWasPreDestroyed());
     }
     
+    /**
+     * Tests that a cycle between singletons is detected rather
+     * than deadlocking, and that a later lookup fails the same way
+     */
+    @Test
+    public void testSingletonCycleDetected() {
+        ServiceLocator cycleLocator = LocatorHelper.getServiceLocator(CycleA.class, CycleB.class);
+        
+        for (int lcv = 0; lcv < 2; lcv++) {
+            try {
+                cycleLocator.getService(CycleA.class);
+                Assert.fail("Should have found the circular dependency");
+            }
+            catch (MultiException me) {
+                Assert.assertTrue(me.getMessage(), me.getMessage().contains("circular dependency"));
+            }
+        }
+    }
+    
     private class MyWorker implements Runnable {
         private final ServiceHandle<?> handle;
         
@@ -0,0 +1,217 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.sortedindex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the per-contract and per-name indexes stay sorted
+ * through adds, removals and ranking changes
+ * 
+ * @author jwells
+ *
+ */
+public class SortedIndexTest {
+    private final static int NUM_PROVIDERS = 200;
+    private final static String NAME = "Provider";
+    
+    private final static Filter CONTRACT_FILTER = BuilderHelper.createContractFilter(Provider.class.getName());
+    private final static Filter NAME_FILTER = BuilderHelper.createNameFilter(NAME);
+    
+    private static List<ActiveDescriptor<?>> addProviders(ServiceLocator locator, int number, long seed) {
+        Random random = new Random(seed);
+        
+        DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        
+        List<ActiveDescriptor<?>> retVal = new ArrayList<ActiveDescriptor<?>>(number);
+        for (int lcv = 0; lcv < number; lcv++) {
+            retVal.add(config.bind(BuilderHelper.link(ProviderImpl.class).
+                to(Provider.class).
+                named(NAME).
+                ofRank(random.nextInt(10)).build()));
+        }
+        
+        config.commit();
+        
+        return retVal;
+    }
+    
+    private static void checkSorted(List<ActiveDescriptor<?>> descriptors) {
+        for (int lcv = 1; lcv < descriptors.size(); lcv++) {
+            ActiveDescriptor<?> previous = descriptors.get(lcv - 1);
+            ActiveDescriptor<?> current = descriptors.get(lcv);
+            
+            if (previous.getRanking() == current.getRanking()) {
+                Assert.assertTrue("Service ids out of order at " + lcv,
+                        previous.getServiceId() < current.getServiceId());
+            }
+            else {
+                Assert.assertTrue("Rankings out of order at " + lcv,
+                        previous.getRanking() > current.getRanking());
+            }
+        }
+    }
+    
+    /**
+     * Many providers of one contract added in a single
+     * commit come back sorted from both indexes
+     */
+    @Test
+    public void testManyProvidersAreSorted() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        addProviders(locator, NUM_PROVIDERS, 1L);
+        
+        List<ActiveDescriptor<?>> byContract = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(NUM_PROVIDERS, byContract.size());
+        checkSorted(byContract);
+        
+        List<ActiveDescriptor<?>> byName = locator.getDescriptors(NAME_FILTER);
+        Assert.assertEquals(byContract, byName);
+    }
+    
+    /**
+     * Changing the ranking of a service re-sorts every
+     * index it is in
+     */
+    @Test
+    public void testRankingChangeResorts() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        addProviders(locator, NUM_PROVIDERS, 2L);
+        
+        ActiveDescriptor<?> last = locator.getDescriptors(CONTRACT_FILTER).get(NUM_PROVIDERS - 1);
+        last.setRanking(100);
+        
+        List<ActiveDescriptor<?>> byContract = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(last, byContract.get(0));
+        checkSorted(byContract);
+        
+        List<ActiveDescriptor<?>> byName = locator.getDescriptors(NAME_FILTER);
+        Assert.assertEquals(last, byName.get(0));
+        
+        // The service must still be removable after its ranking changed
+        ServiceLocatorUtilities.removeOneDescriptor(locator, last);
+        Assert.assertEquals(NUM_PROVIDERS - 1, locator.getDescriptors(CONTRACT_FILTER).size());
+        Assert.assertFalse(locator.getDescriptors(NAME_FILTER).contains(last));
+    }
+    
+    /**
+     * Removing services leaves the remaining ones in order
+     */
+    @Test
+    public void testRemovalKeepsOrder() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<ActiveDescriptor<?>> added = addProviders(locator, NUM_PROVIDERS, 3L);
+        
+        DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        for (int lcv = 0; lcv < added.size(); lcv += 2) {
+            config.addUnbindFilter(BuilderHelper.createSpecificDescriptorFilter(added.get(lcv)));
+        }
+        config.commit();
+        
+        List<ActiveDescriptor<?>> byContract = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(NUM_PROVIDERS / 2, byContract.size());
+        checkSorted(byContract);
+        
+        for (int lcv = 1; lcv < added.size(); lcv += 2) {
+            Assert.assertTrue(byContract.contains(added.get(lcv)));
+        }
+        
+        Assert.assertEquals(byContract, locator.getDescriptors(NAME_FILTER));
+    }
+    
+    /**
+     * Readers always see a complete, sorted snapshot while
+     * another thread adds and removes providers
+     */
+    @Test
+    public void testReadersDuringCommits() throws Throwable {
+        final ServiceLocator locator = LocatorHelper.create();
+        
+        addProviders(locator, NUM_PROVIDERS, 4L);
+        
+        final Throwable errors[] = new Throwable[1];
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int lcv = 0; lcv < 500; lcv++) {
+                        List<ActiveDescriptor<?>> byContract = locator.getDescriptors(CONTRACT_FILTER);
+                        
+                        Assert.assertTrue(byContract.size() >= NUM_PROVIDERS);
+                        checkSorted(byContract);
+                    }
+                }
+                catch (Throwable th) {
+                    errors[0] = th;
+                }
+            }
+        };
+        reader.start();
+        
+        for (int lcv = 0; lcv < 50; lcv++) {
+            List<ActiveDescriptor<?>> extra = addProviders(locator, 5, lcv);
+            for (ActiveDescriptor<?> remove : extra) {
+                ServiceLocatorUtilities.removeOneDescriptor(locator, remove);
+            }
+        }
+        
+        reader.join();
+        if (errors[0] != null) throw errors[0];
+        
+        Assert.assertEquals(NUM_PROVIDERS, locator.getDescriptors(CONTRACT_FILTER).size());
+    }
+}
@@ -234,6 +234,95 @@ public class ValidatingTest {
         Assert.assertEquals(2, d2.getImplNumber());
     }
 
+    private static ServiceLocator generateCountingLocator(String testName) {
+        ServiceLocator retVal = LocatorHelper.create(TEST_NAME + "." + testName, null);
+
+        ServiceLocatorUtilities.bind(retVal, new Binder() {
+
+            @Override
+            public void bind(DynamicConfiguration config) {
+                config.bind(BuilderHelper.link(DynamicServiceImpl1.class.getName()).
+                        to(DynamicService.class.getName()).
+                        in(Singleton.class.getName()).
+                        build());
+                config.bind(BuilderHelper.link(DynamicServiceImpl2.class.getName()).
+                        to(DynamicService.class.getName()).
+                        in(Singleton.class.getName()).
+                        build());
+                config.bind(BuilderHelper.link(CountingValidationService.class.getName()).
+                        to(ValidationService.class.getName()).
+                        to(CountingValidationService.class.getName()).
+                        in(Singleton.class.getName()).
+                        build());
+
+            }
+
+        });
+
+        return retVal;
+    }
+
+    /**
+     * Tests that the decisions of a cacheable validator are remembered
+     * until the locator changes
+     */
+    @Test
+    public void testCacheableValidatorDecisionsAreRemembered() {
+        ServiceLocator testLocator = generateCountingLocator("testCacheableValidatorDecisionsAreRemembered");
+
+        CountingValidationService cvs = testLocator.getService(CountingValidationService.class);
+        Assert.assertNotNull(cvs);
+
+        Assert.assertEquals(1, testLocator.getAllServices(DynamicService.class).size());
+
+        List<String> validated = cvs.getValidated();
+        Assert.assertEquals(2, validated.size());
+
+        Assert.assertEquals(1, testLocator.getService(DynamicService.class).getImplNumber());
+        Assert.assertEquals(1, testLocator.getAllServices(DynamicService.class).size());
+        Assert.assertEquals(2, validated.size());
+
+        // Any change to the locator forgets the decisions
+        ServiceLocatorUtilities.addOneConstant(testLocator, TEST_NAME);
+
+        Assert.assertEquals(1, testLocator.getAllServices(DynamicService.class).size());
+        Assert.assertEquals(4, validated.size());
+    }
+
+    /**
+     * Tests that a caller sensitive cacheable validator is asked again
+     * for each new calling class
+     */
+    @Test
+    public void testCallerSensitiveCacheableValidator() {
+        ServiceLocator testLocator = generateCountingLocator("testCallerSensitiveCacheableValidator");
+
+        CountingValidationService cvs = testLocator.getService(CountingValidationService.class);
+        Assert.assertNotNull(cvs);
+        cvs.setCallerSensitive(true);
+
+        Assert.assertEquals(1, testLocator.getService(DynamicService.class).getImplNumber());
+
+        List<String> validated = cvs.getValidated();
+        int numValidated = validated.size();
+        Assert.assertTrue(numValidated > 0);
+
+        Assert.assertEquals(1, testLocator.getService(DynamicService.class).getImplNumber());
+        Assert.assertEquals(numValidated, validated.size());
+
+        Assert.assertEquals(1, OtherCaller.lookup(testLocator).getImplNumber());
+        Assert.assertEquals(2 * numValidated, validated.size());
+
+        Assert.assertEquals(1, OtherCaller.lookup(testLocator).getImplNumber());
+        Assert.assertEquals(2 * numValidated, validated.size());
+    }
+
+    private static class OtherCaller {
+        private static DynamicService lookup(ServiceLocator locator) {
+            return locator.getService(DynamicService.class);
+        }
+    }
+
     private static ServiceLocator generateGetCallerLocators(String testName) {
         ServiceLocator retVal = LocatorHelper.create(TEST_NAME + "." + testName, null);
 
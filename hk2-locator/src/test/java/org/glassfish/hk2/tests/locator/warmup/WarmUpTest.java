@@ -0,0 +1,187 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.warmup;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class WarmUpTest {
+    /**
+     * Left and Right can only be created at the same time, so this
+     * only passes if independent services are created in parallel
+     * and in dependency order
+     */
+    @Test // @org.junit.Ignore
+    public void testIndependentServicesCreatedInParallel() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CreationRecorder.class,
+                BaseService.class, LeftService.class, RightService.class, RootService.class);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ServiceLocatorUtilities.warmUp(locator, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+        
+        CreationRecorder recorder = locator.getService(CreationRecorder.class);
+        Assert.assertTrue(recorder.getFailed().isEmpty());
+        
+        List<String> created = recorder.getCreated();
+        Assert.assertEquals(created.toString(), 4, created.size());
+        Assert.assertEquals(BaseService.class.getSimpleName(), created.get(0));
+        Assert.assertEquals(RootService.class.getSimpleName(), created.get(3));
+    }
+    
+    /**
+     * Tests that failures are given to the ImmediateErrorHandlers
+     * and do not stop the other services from being created
+     */
+    @Test // @org.junit.Ignore
+    public void testFailuresGoToErrorHandlers() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CreationRecorder.class,
+                BaseService.class, FailingService.class);
+        
+        ServiceLocatorUtilities.warmUp(locator, null);
+        
+        CreationRecorder recorder = locator.getService(CreationRecorder.class);
+        
+        List<ActiveDescriptor<?>> failed = recorder.getFailed();
+        Assert.assertEquals(1, failed.size());
+        Assert.assertEquals(FailingService.class.getName(), failed.get(0).getImplementation());
+        
+        Assert.assertEquals(1, recorder.getCreated().size());
+    }
+    
+    /**
+     * Tests that only services matching the filter are created
+     */
+    @Test // @org.junit.Ignore
+    public void testFilterLimitsWarmUp() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CreationRecorder.class,
+                BaseService.class, FailingService.class);
+        
+        ServiceLocatorUtilities.warmUp(locator, new Filter() {
+
+            @Override
+            public boolean matches(Descriptor d) {
+                return !FailingService.class.getName().equals(d.getImplementation());
+            }
+            
+        }, null);
+        
+        CreationRecorder recorder = locator.getService(CreationRecorder.class);
+        
+        Assert.assertTrue(recorder.getFailed().isEmpty());
+        Assert.assertEquals(1, recorder.getCreated().size());
+    }
+    
+    /**
+     * Immediate services are only created when the Immediate
+     * scope has been enabled, and are not failures otherwise
+     */
+    @Test // @org.junit.Ignore
+    public void testImmediateOnlyCreatedWhenImmediateIsActive() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CreationRecorder.class,
+                BaseService.class, ImmediateWarmService.class);
+        
+        ServiceLocatorUtilities.warmUp(locator, null);
+        
+        CreationRecorder recorder = locator.getService(CreationRecorder.class);
+        
+        Assert.assertTrue(recorder.getFailed().isEmpty());
+        Assert.assertEquals(1, recorder.getCreated().size());
+        Assert.assertEquals(BaseService.class.getSimpleName(), recorder.getCreated().get(0));
+        
+        ServiceLocatorUtilities.enableImmediateScope(locator);
+        ServiceLocatorUtilities.warmUp(locator, null);
+        
+        Assert.assertTrue(recorder.getFailed().isEmpty());
+        Assert.assertTrue(recorder.getCreated().contains(ImmediateWarmService.class.getSimpleName()));
+    }
+    
+    /**
+     * An interrupted warm up throws, and leaves the
+     * interrupt flag of the thread set
+     */
+    @Test // @org.junit.Ignore
+    public void testInterruptIsKept() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CreationRecorder.class,
+                FailingService.class);
+        
+        Thread.currentThread().interrupt();
+        try {
+            ServiceLocatorUtilities.warmUp(locator, new Executor() {
+
+                @Override
+                public void execute(Runnable command) {
+                    // Never runs anything, so only the interrupt ends the wait
+                }
+                
+            });
+            
+            Assert.fail("The interrupted warm up should have thrown");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getErrors().get(0) instanceof InterruptedException);
+        }
+        finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+}
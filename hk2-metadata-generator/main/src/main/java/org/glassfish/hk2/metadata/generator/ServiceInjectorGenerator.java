@@ -0,0 +1,604 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.metadata.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+import org.glassfish.hk2.api.ServiceInjector;
+
+/**
+ * Writes a {@link ServiceInjector} for a service class.  The injector records
+ * the constructor, fields, initializer methods and lifecycle methods that the
+ * default ClassAnalyzer would find at runtime, and calls the ones it can
+ * reach from the package of the service directly.  Private members
+ * are left to be called reflectively by HK2.
+ * <p>
+ * Only classes with {@link javax.inject.Inject} as their injection annotation
+ * can be analyzed at build time.  If a class is not one that can be analyzed
+ * (or has errors HK2 would report at runtime) no injector is written and the
+ * class is analyzed at runtime as before
+ * 
+ * @author jwells
+ *
+ */
+public class ServiceInjectorGenerator {
+    private final static String INJECTOR_EXTENSION = "_Hk2Injector";
+    
+    private final static String INJECT = "javax.inject.Inject";
+    private final static String POST_CONSTRUCT = "javax.annotation.PostConstruct";
+    private final static String PRE_DESTROY = "javax.annotation.PreDestroy";
+    private final static String SUBSCRIBE_TO = "org.glassfish.hk2.api.messaging.SubscribeTo";
+    private final static String CONVENTION_POST_CONSTRUCT = "postConstruct";
+    private final static String CONVENTION_PRE_DESTROY = "preDestroy";
+    
+    private final ProcessingEnvironment processingEnv;
+    private final Elements elements;
+    private final Types types;
+    
+    private TypeElement clazz;
+    private String packageName;
+    private ExecutableElement constructor;
+    private final List<Member> fields = new ArrayList<Member>();
+    private final List<Member> methods = new ArrayList<Member>();
+    private Member postConstruct;
+    private Member preDestroy;
+    
+    public ServiceInjectorGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+    }
+    
+    /**
+     * Analyzes the given service class and writes its injector
+     * 
+     * @param clazz The concrete service class
+     * @return The fully qualified name of the injector, or null if no
+     * injector could be written for this class
+     * @throws IOException If there was a problem writing the injector
+     */
+    public String generate(TypeElement clazz) throws IOException {
+        this.clazz = clazz;
+        
+        PackageElement packageElement = elements.getPackageOf(clazz);
+        packageName = (packageElement.isUnnamed()) ? "" :
+            ServiceUtilities.nameToString(packageElement.getQualifiedName());
+        
+        fields.clear();
+        methods.clear();
+        postConstruct = null;
+        preDestroy = null;
+        
+        if (!isNameable(clazz)) return null;
+        
+        // Inner classes can not be created without their outer instance
+        if (NestingKind.MEMBER.equals(clazz.getNestingKind()) &&
+                !clazz.getModifiers().contains(Modifier.STATIC)) return null;
+        
+        if (!analyzeConstructor()) return null;
+        if (!analyzeMembers()) return null;
+        
+        String binaryName = ServiceUtilities.nameToString(elements.getBinaryName(clazz));
+        String injectorName = binaryName + INJECTOR_EXTENSION;
+        
+        writeInjector(injectorName);
+        
+        return injectorName;
+    }
+    
+    private boolean analyzeConstructor() {
+        ExecutableElement zeroArgConstructor = null;
+        ExecutableElement injectConstructor = null;
+        
+        for (Element enclosed : clazz.getEnclosedElements()) {
+            if (!ElementKind.CONSTRUCTOR.equals(enclosed.getKind())) continue;
+            
+            ExecutableElement candidate = (ExecutableElement) enclosed;
+            if (candidate.getParameters().isEmpty()) {
+                zeroArgConstructor = candidate;
+            }
+            
+            if (hasAnnotation(candidate, INJECT)) {
+                // More than one will be reported by the runtime analysis
+                if (injectConstructor != null) return false;
+                
+                injectConstructor = candidate;
+            }
+            
+            if (!hasProperParameters(candidate)) return false;
+        }
+        
+        constructor = (injectConstructor != null) ? injectConstructor : zeroArgConstructor;
+        return (constructor != null);
+    }
+    
+    /**
+     * Follows the rules of the runtime analysis: all fields of all classes
+     * are candidates, as are all methods that are not hidden by a non-private
+     * method with the same signature in a subclass
+     */
+    private boolean analyzeMembers() {
+        List<ExecutableElement> visibleMethods = new ArrayList<ExecutableElement>();
+        
+        int depth = 0;
+        TypeElement current = clazz;
+        while (current != null && !Object.class.getName().equals(ServiceUtilities.nameToString(current.getQualifiedName()))) {
+            for (Element enclosed : current.getEnclosedElements()) {
+                Set<Modifier> modifiers = enclosed.getModifiers();
+                
+                if (ElementKind.FIELD.equals(enclosed.getKind())) {
+                    if (!hasAnnotation(enclosed, INJECT)) continue;
+                    
+                    // Bad fields will be reported by the runtime analysis
+                    if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) return false;
+                    if (isAnnotationType(enclosed.asType())) return false;
+                    
+                    fields.add(new Member(current, depth, enclosed));
+                    continue;
+                }
+                
+                if (!ElementKind.METHOD.equals(enclosed.getKind())) continue;
+                
+                ExecutableElement method = (ExecutableElement) enclosed;
+                if (isHidden(method, visibleMethods)) continue;
+                visibleMethods.add(method);
+                
+                boolean noParameters = method.getParameters().isEmpty();
+                String methodName = ServiceUtilities.nameToString(method.getSimpleName());
+                
+                if (postConstruct == null) {
+                    if (hasAnnotation(method, POST_CONSTRUCT)) {
+                        if (!noParameters) return false;
+                        
+                        postConstruct = new Member(current, depth, method);
+                    }
+                    else if (noParameters && CONVENTION_POST_CONSTRUCT.equals(methodName)) {
+                        postConstruct = new Member(current, depth, method);
+                    }
+                }
+                
+                if (preDestroy == null) {
+                    if (hasAnnotation(method, PRE_DESTROY)) {
+                        if (!noParameters) return false;
+                        
+                        preDestroy = new Member(current, depth, method);
+                    }
+                    else if (noParameters && CONVENTION_PRE_DESTROY.equals(methodName)) {
+                        preDestroy = new Member(current, depth, method);
+                    }
+                }
+                
+                if (!hasAnnotation(method, INJECT)) continue;
+                if (hasSubscribeTo(method)) continue;
+                
+                // Bad initializer methods will be reported by the runtime analysis
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.ABSTRACT)) return false;
+                if (!hasProperParameters(method)) return false;
+                
+                methods.add(new Member(current, depth, method));
+            }
+            
+            current = (TypeElement) types.asElement(current.getSuperclass());
+            depth++;
+        }
+        
+        return true;
+    }
+    
+    private boolean isHidden(ExecutableElement method, List<ExecutableElement> visibleMethods) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) return false;
+        
+        for (ExecutableElement visible : visibleMethods) {
+            if (visible.getModifiers().contains(Modifier.PRIVATE)) continue;
+            if (!visible.getSimpleName().equals(method.getSimpleName())) continue;
+            if (!types.isSameType(types.erasure(visible.getReturnType()), types.erasure(method.getReturnType()))) continue;
+            
+            List<? extends VariableElement> visibleParams = visible.getParameters();
+            List<? extends VariableElement> methodParams = method.getParameters();
+            if (visibleParams.size() != methodParams.size()) continue;
+            
+            boolean same = true;
+            for (int lcv = 0; lcv < visibleParams.size(); lcv++) {
+                if (!types.isSameType(types.erasure(visibleParams.get(lcv).asType()),
+                        types.erasure(methodParams.get(lcv).asType()))) {
+                    same = false;
+                    break;
+                }
+            }
+            
+            if (same) return true;
+        }
+        
+        return false;
+    }
+    
+    private boolean hasProperParameters(ExecutableElement executable) {
+        for (VariableElement param : executable.getParameters()) {
+            if (isAnnotationType(param.asType())) return false;
+            
+            // Parameter types are needed to look up the member
+            if (!isNameable(param.asType())) return false;
+        }
+        
+        return true;
+    }
+    
+    private boolean hasSubscribeTo(ExecutableElement method) {
+        for (VariableElement param : method.getParameters()) {
+            if (hasAnnotation(param, SUBSCRIBE_TO)) return true;
+        }
+        
+        return false;
+    }
+    
+    private boolean isAnnotationType(TypeMirror type) {
+        if (!TypeKind.DECLARED.equals(type.getKind())) return false;
+        
+        return ElementKind.ANNOTATION_TYPE.equals(((DeclaredType) type).asElement().getKind());
+    }
+    
+    private boolean hasAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            
+            if (annotationName.equals(ServiceUtilities.nameToString(annotationType.getQualifiedName()))) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Tells if the erasure of the type can be written in the source of the injector
+     */
+    private boolean isNameable(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        
+        switch (erased.getKind()) {
+        case ARRAY:
+            return isNameable(((ArrayType) erased).getComponentType());
+        case DECLARED:
+            return isNameable((TypeElement) ((DeclaredType) erased).asElement());
+        default:
+            return erased.getKind().isPrimitive();
+        }
+    }
+    
+    private boolean isNameable(TypeElement type) {
+        Element current = type;
+        while (current instanceof TypeElement) {
+            TypeElement currentType = (TypeElement) current;
+            Set<Modifier> modifiers = currentType.getModifiers();
+            
+            if (modifiers.contains(Modifier.PRIVATE)) return false;
+            if (NestingKind.LOCAL.equals(currentType.getNestingKind()) ||
+                    NestingKind.ANONYMOUS.equals(currentType.getNestingKind())) return false;
+            if (!modifiers.contains(Modifier.PUBLIC) && !isInMyPackage(currentType)) return false;
+            
+            current = currentType.getEnclosingElement();
+        }
+        
+        return true;
+    }
+    
+    private boolean isInMyPackage(Element element) {
+        PackageElement elementPackage = elements.getPackageOf(element);
+        String elementPackageName = (elementPackage.isUnnamed()) ? "" :
+            ServiceUtilities.nameToString(elementPackage.getQualifiedName());
+        
+        return packageName.equals(elementPackageName);
+    }
+    
+    /**
+     * Tells if the injector can use the member directly, rather
+     * than leaving it to be called reflectively
+     */
+    private boolean isDirect(TypeElement declaringClass, Element member) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        if (!isNameable(declaringClass)) return false;
+        
+        if (!modifiers.contains(Modifier.PUBLIC) && !isInMyPackage(declaringClass)) return false;
+        
+        if (member instanceof ExecutableElement) {
+            for (VariableElement param : ((ExecutableElement) member).getParameters()) {
+                if (!isNameable(param.asType())) return false;
+            }
+        }
+        else if (!isNameable(member.asType())) {
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private String typeName(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+    
+    private String castTo(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        if (erased.getKind().isPrimitive()) {
+            return ServiceUtilities.nameToString(types.boxedClass((PrimitiveType) erased).getQualifiedName());
+        }
+        
+        return erased.toString();
+    }
+    
+    private String parameterClasses(ExecutableElement executable) {
+        StringBuffer sb = new StringBuffer("new Class<?>[] {");
+        
+        boolean first = true;
+        for (VariableElement param : executable.getParameters()) {
+            if (first) {
+                first = false;
+            }
+            else {
+                sb.append(", ");
+            }
+            
+            sb.append(typeName(param.asType()) + ".class");
+        }
+        
+        sb.append("}");
+        return sb.toString();
+    }
+    
+    private String arguments(ExecutableElement executable) {
+        StringBuffer sb = new StringBuffer();
+        
+        int lcv = 0;
+        for (VariableElement param : executable.getParameters()) {
+            if (lcv > 0) {
+                sb.append(", ");
+            }
+            
+            sb.append("(" + castTo(param.asType()) + ") args[" + lcv + "]");
+            lcv++;
+        }
+        
+        return sb.toString();
+    }
+    
+    private String lookupMethod(Member member) {
+        if (member == null) return "null";
+        
+        return "getDeclaringClass(" + member.depth + ").getDeclaredMethod(\"" +
+            member.element.getSimpleName() + "\", " + parameterClasses((ExecutableElement) member.element) + ")";
+    }
+    
+    private void writeInjector(String injectorName) throws IOException {
+        String clazzName = typeName(clazz.asType());
+        String injectorSimpleName = (packageName.length() == 0) ? injectorName :
+            injectorName.substring(packageName.length() + 1);
+        
+        JavaFileObject jfo = processingEnv.getFiler().createSourceFile(injectorName, clazz);
+        
+        Writer writer = jfo.openWriter();
+        try {
+            if (packageName.length() > 0) {
+                writer.append("package " + packageName + ";\n\n");
+            }
+            
+            writer.append("import java.lang.reflect.Constructor;\n");
+            writer.append("import java.lang.reflect.Field;\n");
+            writer.append("import java.lang.reflect.Method;\n");
+            writer.append("import java.util.ArrayList;\n");
+            writer.append("import java.util.List;\n\n");
+            writer.append("import javax.annotation.Generated;\n\n");
+            writer.append("import org.glassfish.hk2.api.ServiceInjector;\n\n");
+            
+            writer.append("@Generated(\"org.glassfish.hk2.metadata.generator.ServiceProcessor\")\n");
+            writer.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+            writer.append("public class " + injectorSimpleName + " implements ServiceInjector<" + clazzName + "> {\n");
+            
+            writer.append("    private static Class<?> getDeclaringClass(int depth) {\n");
+            writer.append("        Class<?> retVal = " + clazzName + ".class;\n");
+            writer.append("        for (int lcv = 0; lcv < depth; lcv++) {\n");
+            writer.append("            retVal = retVal.getSuperclass();\n");
+            writer.append("        }\n");
+            writer.append("        return retVal;\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public Constructor<" + clazzName + "> getConstructor() throws NoSuchMethodException {\n");
+            writer.append("        return " + clazzName + ".class.getDeclaredConstructor(" + parameterClasses(constructor) + ");\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public List<Field> getFields() throws NoSuchFieldException {\n");
+            writer.append("        List<Field> retVal = new ArrayList<Field>(" + fields.size() + ");\n");
+            for (Member field : fields) {
+                writer.append("        retVal.add(getDeclaringClass(" + field.depth + ").getDeclaredField(\"" +
+                    field.element.getSimpleName() + "\"));\n");
+            }
+            writer.append("        return retVal;\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public List<Method> getInitializerMethods() throws NoSuchMethodException {\n");
+            writer.append("        List<Method> retVal = new ArrayList<Method>(" + methods.size() + ");\n");
+            for (Member method : methods) {
+                writer.append("        retVal.add(" + lookupMethod(method) + ");\n");
+            }
+            writer.append("        return retVal;\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public Method getPostConstructMethod() throws NoSuchMethodException {\n");
+            writer.append("        return " + lookupMethod(postConstruct) + ";\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public Method getPreDestroyMethod() throws NoSuchMethodException {\n");
+            writer.append("        return " + lookupMethod(preDestroy) + ";\n");
+            writer.append("    }\n\n");
+            
+            boolean directConstructor = isDirect(clazz, constructor);
+            writer.append("    public boolean canConstruct() {\n");
+            writer.append("        return " + directConstructor + ";\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public " + clazzName + " construct(Object args[]) throws Throwable {\n");
+            if (directConstructor) {
+                writer.append("        return new " + clazzName + "(" + arguments(constructor) + ");\n");
+            }
+            else {
+                writer.append("        throw new UnsupportedOperationException();\n");
+            }
+            writer.append("    }\n\n");
+            
+            writer.append("    public boolean canInject(int fieldIndex) {\n");
+            writer.append("        switch (fieldIndex) {\n");
+            for (int lcv = 0; lcv < fields.size(); lcv++) {
+                Member field = fields.get(lcv);
+                writer.append("        case " + lcv + ": return " + isDirect(field.declaringClass, field.element) + ";\n");
+            }
+            writer.append("        default: return false;\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public void inject(int fieldIndex, " + clazzName + " instance, Object value) throws Throwable {\n");
+            writer.append("        switch (fieldIndex) {\n");
+            for (int lcv = 0; lcv < fields.size(); lcv++) {
+                Member field = fields.get(lcv);
+                if (!isDirect(field.declaringClass, field.element)) continue;
+                
+                writer.append("        case " + lcv + ":\n");
+                writer.append("            ((" + typeName(field.declaringClass.asType()) + ") instance)." + field.element.getSimpleName() +
+                        " = (" + castTo(field.element.asType()) + ") value;\n");
+                writer.append("            return;\n");
+            }
+            writer.append("        default:\n");
+            writer.append("            throw new UnsupportedOperationException();\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public boolean canInitialize(int methodIndex) {\n");
+            writer.append("        switch (methodIndex) {\n");
+            for (int lcv = 0; lcv < methods.size(); lcv++) {
+                Member method = methods.get(lcv);
+                writer.append("        case " + lcv + ": return " + isDirect(method.declaringClass, method.element) + ";\n");
+            }
+            writer.append("        default: return false;\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            
+            writer.append("    public void initialize(int methodIndex, " + clazzName + " instance, Object args[]) throws Throwable {\n");
+            writer.append("        switch (methodIndex) {\n");
+            for (int lcv = 0; lcv < methods.size(); lcv++) {
+                Member method = methods.get(lcv);
+                if (!isDirect(method.declaringClass, method.element)) continue;
+                
+                writer.append("        case " + lcv + ":\n");
+                writer.append("            ((" + typeName(method.declaringClass.asType()) + ") instance)." + method.element.getSimpleName() +
+                        "(" + arguments((ExecutableElement) method.element) + ");\n");
+                writer.append("            return;\n");
+            }
+            writer.append("        default:\n");
+            writer.append("            throw new UnsupportedOperationException();\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            
+            writeLifecycle(writer, "postConstruct", "canPostConstruct", clazzName, postConstruct);
+            writeLifecycle(writer, "preDestroy", "canPreDestroy", clazzName, preDestroy);
+            
+            writer.append("}\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+    
+    private void writeLifecycle(Writer writer, String methodName, String canName, String clazzName, Member method) throws IOException {
+        boolean direct = (method != null) &&
+                !method.element.getModifiers().contains(Modifier.STATIC) &&
+                isDirect(method.declaringClass, method.element);
+        
+        writer.append("    public boolean " + canName + "() {\n");
+        writer.append("        return " + direct + ";\n");
+        writer.append("    }\n\n");
+        
+        writer.append("    public void " + methodName + "(" + clazzName + " instance) throws Throwable {\n");
+        if (direct) {
+            writer.append("        ((" + typeName(method.declaringClass.asType()) + ") instance)." + method.element.getSimpleName() + "();\n");
+        }
+        else {
+            writer.append("        throw new UnsupportedOperationException();\n");
+        }
+        writer.append("    }\n\n");
+    }
+    
+    /**
+     * A field or method along with the class that declares
+     * it, and how far that class is above the service class
+     * 
+     * @author jwells
+     *
+     */
+    private static class Member {
+        private final TypeElement declaringClass;
+        private final int depth;
+        private final Element element;
+        
+        private Member(TypeElement declaringClass, int depth, Element element) {
+            this.declaringClass = declaringClass;
+            this.depth = depth;
+            this.element = element;
+        }
+    }
+}
@@ -40,6 +40,7 @@
 package org.glassfish.hk2.metadata.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -60,7 +61,10 @@ import javax.tools.Diagnostic.Kind;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 
+import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceInjector;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
 /**
@@ -70,10 +74,14 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  *
  */
 @SupportedAnnotationTypes("org.jvnet.hk2.annotations.Service")
-@SupportedOptions("org.glassfish.hk2.metadata.location")
+@SupportedOptions({ "org.glassfish.hk2.metadata.location",
+    "org.glassfish.hk2.metadata.generateInjectors",
+    "org.glassfish.hk2.metadata.binary" })
 public class ServiceProcessor extends AbstractProcessor {
     private static final String LOCATION_OPTION = "org.glassfish.hk2.metadata.location";
     private static final String LOCATION_DEFAULT = "META-INF/hk2-locator/default";
+    private static final String GENERATE_INJECTORS_OPTION = "org.glassfish.hk2.metadata.generateInjectors";
+    private static final String BINARY_OPTION = "org.glassfish.hk2.metadata.binary";
     
     private final TreeSet<DescriptorImpl> allDescriptors = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
     private final ArrayList<Element> originators = new ArrayList<Element>();
@@ -96,6 +104,10 @@ public class ServiceProcessor extends AbstractProcessor {
                 List<DescriptorImpl> descriptors;
                 try {
                     descriptors = ServiceUtilities.getDescriptorsFromClass(clazz, processingEnv);
+                    
+                    if (generateInjectors()) {
+                        addInjector(clazz, descriptors);
+                    }
                 }
                 catch (Throwable th) {
                     if (collectedExceptions == null) {
@@ -142,6 +154,33 @@ public class ServiceProcessor extends AbstractProcessor {
         return SourceVersion.latest();
     }
     
+    private boolean generateInjectors() {
+        return Boolean.parseBoolean(processingEnv.getOptions().get(GENERATE_INJECTORS_OPTION));
+    }
+    
+    /**
+     * Writes the {@link ServiceInjector} for the class and records it in
+     * the descriptor of the class itself (not in descriptors of any provide methods)
+     */
+    private void addInjector(TypeElement clazz, List<DescriptorImpl> descriptors) throws IOException {
+        String implementation = ServiceUtilities.nameToString(processingEnv.getElementUtils().getBinaryName(clazz));
+        
+        for (DescriptorImpl descriptor : descriptors) {
+            if (!DescriptorType.CLASS.equals(descriptor.getDescriptorType())) continue;
+            if (!implementation.equals(descriptor.getImplementation())) continue;
+            
+            // Only the default analyzer can be done at build time
+            if (descriptor.getClassAnalysisName() != null) return;
+            
+            String injector = new ServiceInjectorGenerator(processingEnv).generate(clazz);
+            if (injector != null) {
+                descriptor.addMetadata(ServiceInjector.INJECTOR_METADATA_KEY, injector);
+            }
+            
+            return;
+        }
+    }
+    
     private void createFile() throws IOException {
         String location = processingEnv.getOptions().get(LOCATION_OPTION);
         if (location == null) location = LOCATION_DEFAULT;
@@ -157,6 +196,18 @@ public class ServiceProcessor extends AbstractProcessor {
                 "", location, 
                 originators.toArray(new Element[originators.size()]));
         
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(BINARY_OPTION))) {
+            OutputStream outputStream = fileObject.openOutputStream();
+            try {
+                BinaryDescriptorFile.write(allDescriptors, outputStream);
+            }
+            finally {
+                outputStream.close();
+            }
+            
+            return;
+        }
+        
         Writer fileWriter = fileObject.openWriter();
         PrintWriter printWriter = null;
         try {
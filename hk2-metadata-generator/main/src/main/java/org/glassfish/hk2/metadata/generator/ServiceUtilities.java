@@ -41,6 +41,7 @@ package org.glassfish.hk2.metadata.generator;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -64,6 +65,7 @@ import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 
@@ -77,6 +79,7 @@ import org.glassfish.hk2.api.ProxyForSameScope;
 import org.glassfish.hk2.api.Rank;
 import org.glassfish.hk2.api.UseProxy;
 import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.jvnet.hk2.annotations.Contract;
@@ -308,6 +311,8 @@ public class ServiceUtilities {
         }
         
         getServiceMetadata(clazz, metadata, processingEnvironment);
+        getContractSignatures(clazz, contracts, metadata, processingEnvironment);
+        getQualifierValues(clazz, metadata, processingEnvironment);
         
         retVal.setMetadata(metadata);
     }
@@ -485,6 +490,168 @@ public class ServiceUtilities {
         ReflectionHelper.parseServiceMetadataString(retVal, metadata);
     }
     
+    /**
+     * Records the generic signature of every occurrence of an advertised contract in
+     * the hierarchy of the service.  Super types are recorded as declared, so type
+     * variables of the declaring class become unknown arguments.  Nothing is recorded
+     * unless at least one of the contracts has type arguments
+     */
+    private static void getContractSignatures(Element clazz, Set<String> contracts, Map<String, List<String>> metadata, ProcessingEnvironment processingEnv) {
+        TypeMirror serviceType;
+        if (clazz instanceof ExecutableElement) {
+            serviceType = ((ExecutableElement) clazz).getReturnType();
+        }
+        else {
+            serviceType = clazz.asType();
+        }
+        
+        if (!TypeKind.DECLARED.equals(serviceType.getKind())) return;
+        
+        LinkedHashSet<String> signatures = new LinkedHashSet<String>();
+        addContractSignatures((DeclaredType) serviceType, contracts, signatures, new HashSet<String>(), processingEnv);
+        
+        boolean anyGeneric = false;
+        for (String signature : signatures) {
+            if (signature.indexOf('<') >= 0) {
+                anyGeneric = true;
+                break;
+            }
+        }
+        if (!anyGeneric) return;
+        
+        for (String signature : signatures) {
+            addToMetadataMap(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, signature, metadata);
+        }
+    }
+    
+    private static void addContractSignatures(DeclaredType type,
+            Set<String> contracts,
+            Set<String> signatures,
+            Set<String> cycleDetector,
+            ProcessingEnvironment processingEnv) {
+        TypeElement element = (TypeElement) type.asElement();
+        String name = nameToString(processingEnv.getElementUtils().getBinaryName(element));
+        
+        if (contracts.contains(name)) {
+            List<List<String>> arguments = new ArrayList<List<String>>();
+            for (TypeMirror argument : type.getTypeArguments()) {
+                arguments.add(getArgumentClosure(argument, processingEnv));
+            }
+            
+            // A raw usage, at runtime the type variables of the class stand in for the arguments
+            if (arguments.isEmpty()) {
+                for (int lcv = 0; lcv < element.getTypeParameters().size(); lcv++) {
+                    arguments.add(null);
+                }
+            }
+            
+            signatures.add(ContractSignatures.encodeSignature(name, arguments));
+        }
+        
+        // Each class only needs to be walked once, its super types are always recorded as declared
+        if (!cycleDetector.add(name)) return;
+        
+        List<TypeMirror> superTypes = new ArrayList<TypeMirror>(element.getInterfaces());
+        superTypes.add(element.getSuperclass());
+        
+        for (TypeMirror superType : superTypes) {
+            if (!TypeKind.DECLARED.equals(superType.getKind())) continue;
+            
+            addContractSignatures((DeclaredType) superType, contracts, signatures, cycleDetector, processingEnv);
+        }
+    }
+    
+    /**
+     * Returns the name of the argument class followed by the names of all
+     * of its super types up to the first platform class, or null if the argument
+     * is not a class
+     */
+    private static List<String> getArgumentClosure(TypeMirror argument, ProcessingEnvironment processingEnv) {
+        if (!TypeKind.DECLARED.equals(argument.getKind())) return null;
+        
+        TypeElement argumentElement = (TypeElement) ((DeclaredType) argument).asElement();
+        String argumentName = nameToString(processingEnv.getElementUtils().getBinaryName(argumentElement));
+        if (Object.class.getName().equals(argumentName)) {
+            return Collections.singletonList(argumentName);
+        }
+        
+        LinkedHashSet<String> closure = new LinkedHashSet<String>();
+        addSuperTypeNames(argumentElement, closure, processingEnv);
+        
+        return new ArrayList<String>(closure);
+    }
+    
+    private static void addSuperTypeNames(TypeElement element, Set<String> closure, ProcessingEnvironment processingEnv) {
+        String name = nameToString(processingEnv.getElementUtils().getBinaryName(element));
+        if (Object.class.getName().equals(name)) return;
+        if (!closure.add(name)) return;
+        
+        // The hierarchy of platform classes depends on the JDK used at runtime, the locator expands those itself
+        if (name.startsWith(ContractSignatures.PLATFORM_PACKAGE_PREFIX)) return;
+        
+        List<TypeMirror> superTypes = new ArrayList<TypeMirror>(element.getInterfaces());
+        superTypes.add(element.getSuperclass());
+        
+        for (TypeMirror superType : superTypes) {
+            if (!TypeKind.DECLARED.equals(superType.getKind())) continue;
+            
+            addSuperTypeNames((TypeElement) ((DeclaredType) superType).asElement(), closure, processingEnv);
+        }
+    }
+    
+    /**
+     * Records the values of the members of the qualifiers of the service
+     * that can be compared without loading any class.  Named is left
+     * out since the name of the descriptor already carries its value
+     */
+    private static void getQualifierValues(Element clazz, Map<String, List<String>> metadata, ProcessingEnvironment processingEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        
+        for (AnnotationMirror annoMirror : elements.getAllAnnotationMirrors(clazz)) {
+            TypeElement dtElement = (TypeElement) annoMirror.getAnnotationType().asElement();
+            if (dtElement.getAnnotation(Qualifier.class) == null) continue;
+            
+            String qualifierName = nameToString(elements.getBinaryName(dtElement));
+            if (Named.class.getName().equals(qualifierName)) continue;
+            
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements.getElementValuesWithDefaults(annoMirror);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                String value = getComparableValue(entry.getValue().getValue(), processingEnv);
+                if (value == null) continue;
+                
+                addToMetadataMap(ContractSignatures.QUALIFIER_VALUE_METADATA_KEY,
+                        ContractSignatures.encodeQualifierValue(qualifierName,
+                                nameToString(entry.getKey().getSimpleName()),
+                                value),
+                        metadata);
+            }
+        }
+    }
+    
+    private static String getComparableValue(Object value, ProcessingEnvironment processingEnv) {
+        if (value instanceof String || value instanceof Number ||
+                value instanceof Boolean || value instanceof Character) {
+            return value.toString();
+        }
+        
+        if (value instanceof VariableElement) {
+            // An enum constant
+            return nameToString(((VariableElement) value).getSimpleName());
+        }
+        
+        if (value instanceof TypeMirror) {
+            TypeMirror mirror = (TypeMirror) value;
+            if (mirror.getKind().isPrimitive()) return mirror.toString();
+            if (!TypeKind.DECLARED.equals(mirror.getKind())) return null;
+            
+            return nameToString(processingEnv.getElementUtils().getBinaryName(
+                    (TypeElement) ((DeclaredType) mirror).asElement()));
+        }
+        
+        // Arrays and annotations are left to the full comparison
+        return null;
+    }
+    
     @SuppressWarnings("unchecked")
     private static Set<String> getAllContracts(TypeElement clazz, ProcessingEnvironment processingEnvironment) {
         if (clazz == null) return Collections.emptySet();
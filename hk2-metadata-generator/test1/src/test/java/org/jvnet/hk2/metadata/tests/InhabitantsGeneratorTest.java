@@ -60,6 +60,7 @@ import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.junit.Test;
 
@@ -122,6 +123,8 @@ public class InhabitantsGeneratorTest {
             di.setName("ComplexFactory");
             di.setScope(Singleton.class.getName());
             di.addQualifier(Named.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.ComplexFactory");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<org.jvnet.hk2.metadata.tests.ComplexImpl|org.jvnet.hk2.metadata.tests.ComplexA|org.jvnet.hk2.metadata.tests.ComplexB|org.jvnet.hk2.metadata.tests.ComplexC|org.jvnet.hk2.metadata.tests.ComplexEImpl|org.jvnet.hk2.metadata.tests.ComplexE|org.jvnet.hk2.metadata.tests.ComplexDImpl|org.jvnet.hk2.metadata.tests.ComplexD>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -186,6 +189,8 @@ public class InhabitantsGeneratorTest {
             envFactory.addAdvertisedContract(Factory.class.getName());
             envFactory.setScope(Singleton.class.getName());
             envFactory.setRanking(Constants.RANK);
+            envFactory.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithRanks");
+            envFactory.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<org.jvnet.hk2.metadata.tests.SimpleInterface>");
         
             EXPECTED_DESCRIPTORS.put(envFactory, Constants.RANK);
         }
@@ -218,6 +223,10 @@ public class InhabitantsGeneratorTest {
             envItself.addMetadata(Constants.KEY6, new Long(Constants.VALUE6_1).toString());
             envItself.addMetadata(Constants.KEY6, new Long(Constants.VALUE6_2).toString());
             envItself.addMetadata(Constants.KEY6, new Long(Constants.VALUE6_3).toString());
+            envItself.addMetadata(ContractSignatures.QUALIFIER_VALUE_METADATA_KEY,
+                    ContractSignatures.encodeQualifierValue(QualifierWithMetadata.class.getName(), "value2", Constants.VALUE2));
+            envItself.addMetadata(ContractSignatures.QUALIFIER_VALUE_METADATA_KEY,
+                    ContractSignatures.encodeQualifierValue(QualifierWithMetadata.class.getName(), "value4", Constants.VALUE4));
         
             EXPECTED_DESCRIPTORS.put(envItself, 0);
         }
@@ -262,6 +271,8 @@ public class InhabitantsGeneratorTest {
             envItself.addAdvertisedContract(FactoryWithDefaultProxy.class.getName());
             envItself.addAdvertisedContract(Factory.class.getName());
             envItself.setScope(Singleton.class.getName());
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithDefaultProxy");
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<java.lang.Object>");
             
             EXPECTED_DESCRIPTORS.put(envItself, 0);
         }
@@ -285,6 +296,8 @@ public class InhabitantsGeneratorTest {
             envItself.addAdvertisedContract(FactoryWithFalseProxy.class.getName());
             envItself.addAdvertisedContract(Factory.class.getName());
             envItself.setScope(Singleton.class.getName());
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithFalseProxy");
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<java.lang.Object>");
             
             EXPECTED_DESCRIPTORS.put(envItself, 0);
         }
@@ -329,6 +342,8 @@ public class InhabitantsGeneratorTest {
             envItself.addAdvertisedContract(FactoryWithVisibility.class.getName());
             envItself.addAdvertisedContract(Factory.class.getName());
             envItself.setDescriptorVisibility(DescriptorVisibility.LOCAL);
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithVisibility");
+            envItself.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<java.lang.String>");
             
             EXPECTED_DESCRIPTORS.put(envItself, 0);
         }
@@ -374,6 +389,8 @@ public class InhabitantsGeneratorTest {
             di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.ConcreteFactory");
             di.addAdvertisedContract(Factory.class.getName());
             di.setScope(Singleton.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.ConcreteFactory<*>");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<*>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -397,6 +414,9 @@ public class InhabitantsGeneratorTest {
             di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.complextypefactory.InterfaceWithTwoTypes");
             di.addAdvertisedContract("org.glassfish.hk2.api.Factory");
             di.setScope(Singleton.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.complextypefactory.ConcreteComplexFactory<*;*>");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.complextypefactory.InterfaceWithTwoTypes<*;*>");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<*>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -460,6 +480,8 @@ public class InhabitantsGeneratorTest {
             di.addAdvertisedContract(FactoryWithDefaultProxyForSameScope.class.getName());
             di.addAdvertisedContract(Factory.class.getName());
             di.setScope(Singleton.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithDefaultProxyForSameScope");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<java.util.List>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -472,6 +494,7 @@ public class InhabitantsGeneratorTest {
             di.setScope(ProxiableScope.class.getName());
             di.setDescriptorType(DescriptorType.PROVIDE_METHOD);
             di.setProxyForSameScope(Boolean.TRUE);
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "java.util.List<java.lang.String>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -483,6 +506,8 @@ public class InhabitantsGeneratorTest {
             di.addAdvertisedContract(FactoryWithFalseProxyForSameScope.class.getName());
             di.addAdvertisedContract(Factory.class.getName());
             di.setScope(Singleton.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.FactoryWithFalseProxyForSameScope");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.glassfish.hk2.api.Factory<java.util.Map>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -495,6 +520,7 @@ public class InhabitantsGeneratorTest {
             di.setScope(ProxiableScope.class.getName());
             di.setDescriptorType(DescriptorType.PROVIDE_METHOD);
             di.setProxyForSameScope(Boolean.FALSE);
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "java.util.Map<java.lang.String;java.util.List>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -589,6 +615,8 @@ public class InhabitantsGeneratorTest {
             di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.faux.stub.AbstractPartiallyTypedStub_hk2Stub");
             di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.faux.stub.InterfaceWithTypes");
             di.setScope(Singleton.class.getName());
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.faux.stub.AbstractPartiallyTypedStub_hk2Stub");
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, "org.jvnet.hk2.metadata.tests.faux.stub.InterfaceWithTypes<java.lang.Integer;*>");
         
             EXPECTED_DESCRIPTORS.put(di, 0);
         }
@@ -0,0 +1,152 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.metadata.tests.injectors;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceInjector;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the generated service injectors
+ * 
+ * @author jwells
+ */
+public class InjectorGeneratorTest {
+    private static String getInjectorName(ActiveDescriptor<?> descriptor) {
+        List<String> values = descriptor.getMetadata().get(ServiceInjector.INJECTOR_METADATA_KEY);
+        if (values == null || values.isEmpty()) return null;
+        
+        return values.get(0);
+    }
+    
+    /**
+     * Tests that the injector is recorded in the metadata and that
+     * all injection points are filled in, whether directly or reflectively
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGeneratedInjectorInjectsService() throws Exception {
+        ServiceLocator locator = ServiceLocatorUtilities.createAndPopulateServiceLocator();
+        
+        ActiveDescriptor<?> descriptor = locator.getBestDescriptor(
+                BuilderHelper.createContractFilter(InjectedService.class.getName()));
+        Assert.assertNotNull(descriptor);
+        Assert.assertEquals(InjectedService.class.getName() + "_Hk2Injector", getInjectorName(descriptor));
+        
+        InjectedService service = locator.getService(InjectedService.class);
+        Assert.assertNotNull(service);
+        
+        Assert.assertNotNull(service.getConstructorDependency());
+        Assert.assertNotNull(service.publicField);
+        Assert.assertNotNull(service.packageField);
+        Assert.assertNotNull(service.getMethodDependency());
+        Assert.assertNotNull(service.getPrivateField());
+        Assert.assertNotNull(service.getPrivateMethodDependency());
+        Assert.assertTrue(service.isPostConstructCalled());
+        
+        locator.getServiceHandle(descriptor).destroy();
+        Assert.assertTrue(service.isPreDestroyCalled());
+    }
+    
+    /**
+     * Tests the generated injector itself
+     * 
+     * @throws Throwable
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGeneratedInjectorMembers() throws Throwable {
+        Class<?> injectorClass = Class.forName(InjectedService.class.getName() + "_Hk2Injector");
+        ServiceInjector<InjectedService> injector = (ServiceInjector<InjectedService>) injectorClass.newInstance();
+        
+        Assert.assertEquals(InjectedService.class, injector.getConstructor().getDeclaringClass());
+        Assert.assertTrue(injector.canConstruct());
+        
+        // publicField, packageField and then privateField from the superclass
+        Assert.assertEquals(3, injector.getFields().size());
+        Assert.assertTrue(injector.canInject(0));
+        Assert.assertTrue(injector.canInject(1));
+        Assert.assertFalse(injector.canInject(2));
+        
+        Assert.assertEquals(2, injector.getInitializerMethods().size());
+        Assert.assertTrue(injector.canInitialize(0));
+        Assert.assertFalse(injector.canInitialize(1));
+        
+        // The postConstruct is private in the superclass, the preDestroy is not
+        Assert.assertEquals("postConstruct", injector.getPostConstructMethod().getName());
+        Assert.assertFalse(injector.canPostConstruct());
+        Assert.assertEquals("preDestroy", injector.getPreDestroyMethod().getName());
+        Assert.assertTrue(injector.canPreDestroy());
+        
+        SimpleDependency dependency = new SimpleDependency();
+        InjectedService service = injector.construct(new Object[] { dependency });
+        Assert.assertSame(dependency, service.getConstructorDependency());
+        
+        injector.inject(0, service, dependency);
+        Assert.assertSame(dependency, service.publicField);
+        
+        injector.initialize(0, service, new Object[] { dependency });
+        Assert.assertSame(dependency, service.getMethodDependency());
+        
+        injector.preDestroy(service);
+        Assert.assertTrue(service.isPreDestroyCalled());
+    }
+    
+    /**
+     * Services with a non-default analyzer are analyzed at runtime
+     */
+    @Test
+    public void testNoInjectorWithCustomAnalyzer() {
+        ServiceLocator locator = ServiceLocatorUtilities.createAndPopulateServiceLocator();
+        
+        ActiveDescriptor<?> descriptor = locator.getBestDescriptor(
+                BuilderHelper.createContractFilter(AnalyzedService.class.getName()));
+        Assert.assertNotNull(descriptor);
+        Assert.assertNull(getInjectorName(descriptor));
+    }
+
+}
@@ -168,6 +168,33 @@ public interface RunLevelController {
      */
     public ThreadingPolicy getThreadingPolicy();
     
+    /**
+     * Sets the policy used to decide in which order the services
+     * of a level are started and stopped when the threading policy is
+     * FULLY_THREADED.  The values can be:<OL>
+     * <LI>RETRY_ON_WOULD_BLOCK: Start services in sorted order, putting
+     * a service back in the queue if it needs a service being started
+     * by another thread.  Stop services one at a time in the reverse
+     * order of their creation</LI>
+     * <LI>DEPENDENCY_ORDERED: Start a service only once the services
+     * of the same level it injects have been started.  Stop services
+     * in parallel, stopping a service only once the services of the
+     * same level that inject it have been stopped</LI>
+     * </OL>
+     * The default value is RETRY_ON_WOULD_BLOCK.  The new value
+     * will be used starting with the next job
+     * 
+     * @param policy The non-null policy that should be used by this controller
+     */
+    public void setSchedulingPolicy(SchedulingPolicy policy);
+    
+    /**
+     * Returns the scheduling policy currently being used by
+     * this controller
+     * @return The scheduling policy currently in use with this controller
+     */
+    public SchedulingPolicy getSchedulingPolicy();
+    
     /**
      * Sets the executor to use for the next job.
      * This value will be used even if the policy
@@ -269,4 +296,39 @@ public interface RunLevelController {
          */
         USE_NO_THREADS
     }
+    
+    /**
+     * These are the policies for the order in which the RunLevelController
+     * will start and stop the services of a level when using threads
+     * @author jwells
+     */
+    public enum SchedulingPolicy {
+        /**
+         * The services of a level are started in the order given
+         * by the {@link Sorter} services.  If a service needs
+         * a service that another thread is in the middle of starting
+         * it is put back in the queue and tried again later.  When
+         * going down the services of a level are stopped on a single
+         * thread, most recently created first
+         */
+        RETRY_ON_WOULD_BLOCK,
+        
+        /**
+         * Before a level is started the services of that level
+         * are analyzed to find which of them inject which others.  A
+         * service is only handed to a thread once all of the services
+         * of the same level that it injects have been started, and the
+         * order given by the {@link Sorter} services is used to choose
+         * among the services that are ready.  Services that are part of a
+         * dependency cycle are started last.
+         * <p>
+         * When going down up to MaximumUseableThreads services of
+         * a level are stopped at the same time.  A service is only stopped
+         * once every service of the same level that injects it has been
+         * stopped, and among those the most recently created is stopped
+         * first.  The cancel timeout and the {@link ErrorInformation}
+         * actions apply as they do when stopping on a single thread
+         */
+        DEPENDENCY_ORDERED
+    }
 }
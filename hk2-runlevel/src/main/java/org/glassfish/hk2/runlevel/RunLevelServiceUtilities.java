@@ -45,6 +45,7 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.runlevel.internal.AsyncRunLevelContext;
 import org.glassfish.hk2.runlevel.internal.RunLevelControllerImpl;
+import org.glassfish.hk2.runlevel.internal.RunLevelTimelineImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 
 /**
@@ -81,6 +82,27 @@ public class RunLevelServiceUtilities {
         }
     }
     
+    /**
+     * Enables the recording of the start and stop times of the
+     * {@link RunLevel} services of the given {@link ServiceLocator}.
+     * If a timeline is already enabled in the locator it is returned.
+     * The RunLevelService must already be enabled in the locator
+     * 
+     * @param locator the non-null service locator whose run level
+     * services should be timed
+     * @return The timeline that records the services of this locator
+     */
+    public static RunLevelTimeline enableTimeline(ServiceLocator locator) {
+        try {
+            ServiceLocatorUtilities.addClasses(locator, true, RunLevelTimelineImpl.class);
+        }
+        catch (MultiException me) {
+            if (!isDupException(me)) throw me;
+        }
+        
+        return locator.getService(RunLevelTimeline.class);
+    }
+    
     private static boolean isDupException(MultiException me) {
         boolean atLeastOne = false;
         
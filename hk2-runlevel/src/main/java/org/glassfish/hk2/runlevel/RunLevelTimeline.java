@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Records when every {@link RunLevel} service was started and stopped,
+ * on which thread, and how long it spent waiting for services being
+ * started by other threads.  This can be used to find out why reaching
+ * a level takes as long as it does.  A timeline is enabled with
+ * {@link RunLevelServiceUtilities#enableTimeline(org.glassfish.hk2.api.ServiceLocator)}
+ * and records until the locator is shut down
+ * 
+ * @author jwells
+ *
+ */
+@Contract
+public interface RunLevelTimeline {
+    /**
+     * Returns the timings recorded since the timeline was
+     * enabled or last cleared, in the order the services finished
+     * 
+     * @return A copy of the recorded timings.  Will not return null
+     */
+    public List<ServiceTiming> getTimings();
+    
+    /**
+     * Returns the chain of services that determined how long
+     * the last services to be started took.  The chain starts with the
+     * service that finished starting last, and each service in the chain
+     * is followed by the service it injects that finished starting last,
+     * which is the service it had to wait for the longest.  Only the most
+     * recent start of each service is considered
+     * 
+     * @return The critical path, the service started first is first
+     * and the service started last is last.  Will not return null
+     */
+    public List<ServiceTiming> getCriticalPath();
+    
+    /**
+     * Writes the recorded timings in the Chrome trace event format
+     * (one complete event per timing, with times in microseconds since
+     * the timeline was enabled or last cleared).  The services on the
+     * critical path are also listed, in order, in the criticalPath field
+     * of the top level object.  The output can be loaded by chrome://tracing
+     * and similar tools
+     * 
+     * @param writer The non-null writer to write the JSON document to.
+     * The writer is not closed
+     * @throws IOException if the writer throws an exception
+     */
+    public void writeChromeTrace(Writer writer) throws IOException;
+    
+    /**
+     * Forgets all recorded timings and restarts the clock
+     */
+    public void clear();
+
+}
@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+
+/**
+ * The time spent starting or stopping one {@link RunLevel} service,
+ * as recorded by the {@link RunLevelTimeline}.  All times are in
+ * nanoseconds, and start and end times are relative to when the
+ * timeline was enabled or last cleared
+ * 
+ * @author jwells
+ *
+ */
+public interface ServiceTiming {
+    /**
+     * @return The descriptor of the service
+     */
+    public ActiveDescriptor<?> getDescriptor();
+    
+    /**
+     * @return The run level of the service
+     */
+    public int getRunLevel();
+    
+    /**
+     * @return true if this is the time spent stopping the service
+     * (its preDestroy), false if this is the time spent starting it
+     */
+    public boolean isStop();
+    
+    /**
+     * @return true if starting or stopping the service failed
+     */
+    public boolean isFailed();
+    
+    /**
+     * @return The name of the thread that started or stopped the service
+     */
+    public String getThreadName();
+    
+    /**
+     * @return The id of the thread that started or stopped the service
+     */
+    public long getThreadId();
+    
+    /**
+     * @return When the service began to be started or stopped
+     */
+    public long getStartNanos();
+    
+    /**
+     * @return When the service had been started or stopped
+     */
+    public long getEndNanos();
+    
+    /**
+     * @return The total time spent starting or stopping the service,
+     * including the time spent starting the services it injects
+     */
+    public long getDurationNanos();
+    
+    /**
+     * @return The time spent starting the service less the time spent
+     * starting other {@link RunLevel} services on the same thread
+     * on its behalf
+     */
+    public long getSelfNanos();
+    
+    /**
+     * @return The time spent blocked waiting for services that other
+     * threads were starting, plus the time lost on earlier attempts to
+     * start this service that were abandoned because they would have blocked
+     */
+    public long getWaitNanos();
+    
+    /**
+     * @return The number of times starting this service was put off
+     * because it would have blocked on a service another thread was starting
+     */
+    public int getWouldBlockCount();
+
+}
@@ -134,8 +134,10 @@ public class AsyncRunLevelContext {
     private final ServiceLocator locator;
     private int maxThreads = Integer.MAX_VALUE;
     private RunLevelController.ThreadingPolicy policy = RunLevelController.ThreadingPolicy.FULLY_THREADED;
+    private RunLevelController.SchedulingPolicy schedulingPolicy = RunLevelController.SchedulingPolicy.RETRY_ON_WOULD_BLOCK;
     private long cancelTimeout = 5 * 1000;
     private Integer modeOverride = null;
+    private volatile RunLevelTimelineImpl timeline = null;
     
     /**
      * Constructor for the guy who does the work
@@ -236,12 +238,19 @@ public class AsyncRunLevelContext {
                     throw new MultiException(new WouldBlockException(activeDescriptor), false);
                 }
                 
+                long waitStart = System.nanoTime();
                 try {
                     this.wait();
                 }
                 catch (InterruptedException ie) {
                     throw new MultiException(ie);
                 }
+                finally {
+                    RunLevelTimelineImpl localTimeline = timeline;
+                    if (localTimeline != null) {
+                        localTimeline.waited(System.nanoTime() - waitStart);
+                    }
+                }
             }
             if (DEBUG_CONTEXT) {
                 hk2Logger.debug("AsyncRunLevelController finished creating wait for " + oneLineDescriptor);
@@ -292,6 +301,9 @@ public class AsyncRunLevelContext {
         }
         
         Throwable error = null;
+        RunLevelTimelineImpl localTimeline = timeline;
+        RunLevelTimelineImpl.ServiceTimingImpl timing = (localTimeline == null) ? null :
+            localTimeline.creationStarted(activeDescriptor);
         try {
             int mode = Utilities.getRunLevelMode(locator, activeDescriptor, localModeOverride);
 
@@ -332,6 +344,10 @@ public class AsyncRunLevelContext {
             throw new RuntimeException(th);
         }
         finally {
+            if (timing != null) {
+                localTimeline.finished(timing, (error != null), (retVal == null && error == null));
+            }
+            
             synchronized (this) {
                 boolean hardCancelled = hardCancelledDescriptors.remove(activeDescriptor);
                 
@@ -411,6 +427,25 @@ public class AsyncRunLevelContext {
         }
     }
     
+    /**
+     * Sets the timeline that is told about the services started and
+     * stopped by this context
+     * 
+     * @param timeline The timeline to record to, or null if nothing
+     * should be recorded
+     */
+    /* package */ void setTimeline(RunLevelTimelineImpl timeline) {
+        this.timeline = timeline;
+    }
+    
+    /**
+     * @return The timeline services started and stopped are recorded
+     * to, or null if there is none
+     */
+    /* package */ RunLevelTimelineImpl getTimeline() {
+        return timeline;
+    }
+    
     /**
      * The {@link Context} API.  Removes a descriptor from the set
      * 
@@ -423,8 +458,22 @@ public class AsyncRunLevelContext {
             retVal = backingMap.remove(descriptor);
             if (retVal == null) return;
         }
-            
-        ((ActiveDescriptor<Object>) descriptor).dispose(retVal);
+        
+        RunLevelTimelineImpl localTimeline = timeline;
+        if (localTimeline == null) {
+            ((ActiveDescriptor<Object>) descriptor).dispose(retVal);
+            return;
+        }
+        
+        RunLevelTimelineImpl.ServiceTimingImpl timing = localTimeline.destructionStarted(descriptor);
+        boolean failed = true;
+        try {
+            ((ActiveDescriptor<Object>) descriptor).dispose(retVal);
+            failed = false;
+        }
+        finally {
+            localTimeline.finished(timing, failed, false);
+        }
     }
     
     /**
@@ -466,6 +515,14 @@ public class AsyncRunLevelContext {
         this.policy = policy;
     }
     
+    /* package */ synchronized void setSchedulingPolicy(RunLevelController.SchedulingPolicy schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+    }
+    
+    /* package */ synchronized RunLevelController.SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+    
     /* package */ synchronized void setExecutor(Executor executor) {
         if (executor == null) {
             this.executor = DEFAULT_EXECUTOR;
@@ -524,6 +581,7 @@ public class AsyncRunLevelContext {
                     level,
                     maxThreads,
                     fullyThreaded,
+                    schedulingPolicy,
                     cancelTimeout,
                     timer));
             
@@ -40,9 +40,17 @@
 
 package org.glassfish.hk2.runlevel.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ExecutionException;
@@ -61,6 +69,7 @@ import org.glassfish.hk2.runlevel.ChangeableRunLevelFuture;
 import org.glassfish.hk2.runlevel.ErrorInformation;
 import org.glassfish.hk2.runlevel.ProgressStartedListener;
 import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelListener;
 import org.glassfish.hk2.runlevel.Sorter;
 import org.glassfish.hk2.runlevel.utilities.Utilities;
@@ -80,6 +89,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
     private final ServiceLocator locator;
     private int proposedLevel;
     private final boolean useThreads;
+    private final RunLevelController.SchedulingPolicy schedulingPolicy;
     private final List<ServiceHandle<RunLevelListener>> allListenerHandles;
     private final List<ServiceHandle<ProgressStartedListener>> allProgressStartedHandles;
     private final List<ServiceHandle<Sorter>> allSorterHandles;
@@ -100,6 +110,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             int proposedLevel,
             int maxThreads,
             boolean useThreads,
+            RunLevelController.SchedulingPolicy schedulingPolicy,
             long cancelTimeout,
             Timer timer) {
         this.asyncContext = asyncContext;
@@ -107,6 +118,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         this.locator = locator;
         this.proposedLevel = proposedLevel;
         this.useThreads = useThreads;
+        this.schedulingPolicy = schedulingPolicy;
         this.maxThreads = maxThreads;
         this.cancelTimeout = cancelTimeout;
         this.timer = timer;
@@ -776,6 +788,18 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             int runnersToCreate = ((numJobs < maxThreads) ? numJobs : maxThreads) - 1;
             if (!useThreads) runnersToCreate = 0;
             
+            if (runnersToCreate > 0 &&
+                    RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED.equals(schedulingPolicy)) {
+                DependencyRunner dependencyRunner = new DependencyRunner(locator, asyncContext, queueLock, jobs, this, lock);
+                
+                for (int lcv = 0; lcv < runnersToCreate; lcv++) {
+                    executor.execute(dependencyRunner);
+                }
+                
+                dependencyRunner.run();
+                return;
+            }
+            
             for (int lcv = 0; lcv < runnersToCreate; lcv++) {
                 QueueRunner runner = new QueueRunner(locator, asyncContext, jobsLock, jobs, this, lock, maxThreads);
                 
@@ -919,6 +943,9 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
 
         @Override
         public void run() {
+            boolean parallel = useThreads && (maxThreads > 1) &&
+                    RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED.equals(schedulingPolicy);
+            
             while (workingOn > getGoingTo()) {
                 boolean runOnCancelled;
                 boolean localCancelled;
@@ -962,8 +989,14 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 ErrorInformation errorInfo = null;
                 synchronized (queue) {
                     for (;;) {
-                        DownQueueRunner currentRunner = new DownQueueRunner(queue, queue, this, locator);
-                        executor.execute(currentRunner);
+                        DownRunner currentRunner;
+                        if (parallel) {
+                            currentRunner = new ParallelDownRunner(queue, this, locator, maxThreads);
+                        }
+                        else {
+                            currentRunner = new DownQueueRunner(queue, queue, this, locator);
+                        }
+                        currentRunner.start(executor);
                     
                         lastError = null;
                         for (;;) {
@@ -977,7 +1010,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                             }
                             
                             if (downHardCancelled) {
-                                currentRunner.caput = true;
+                                currentRunner.hardCancel();
                             }
                         
                             if ((lastError != null) && (future != null)) {
@@ -985,6 +1018,10 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                             }
                             lastError = null;
                             lastErrorDescriptor = null;
+                            
+                            // A parallel runner may be waiting to report its error
+                            currentRunner.errorReported();
+                            queue.notifyAll();
                         
                             if (queue.isEmpty() || downHardCancelled) {
                                 downHardCancelled = false;
@@ -1079,7 +1116,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 
                 if (currentSize == lastQueueSize) {
                     parent.downHardCancelled = true;
-                    queue.notify();
+                    queue.notifyAll();
                 }
                 else {
                     lastQueueSize = currentSize;
@@ -1255,16 +1292,358 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 if (completed) {
                     parent.jobComplete();
                 }
+                else {
+                    RunLevelTimelineImpl timeline = asyncContext.getTimeline();
+                    if (timeline != null) {
+                        timeline.wouldBlock(fService.getActiveDescriptor());
+                    }
+                }
             }
         }
     }
     
-    private static class DownQueueRunner implements Runnable {
+    /**
+     * Hands the services of a level to the threads in dependency order.  A
+     * service is only handed out once the services of the same level it
+     * injects have been started.  Dependencies that are not injected directly
+     * (for example those looked up with a Provider) are not known ahead of
+     * time, so services are started with the would-block optimization.  Those
+     * that would have blocked are tried again once another service of the level
+     * has been started.  Only when nothing else of the level is running is one
+     * of them started waiting for whatever is in its way, so that two threads
+     * never wait for each other.  The same instance is run by every thread
+     * working on the level
+     * 
+     * @author jwells
+     *
+     */
+    private static class DependencyRunner implements Runnable {
+        private final AsyncRunLevelContext asyncContext;
+        private final Object queueLock;
+        private final UpOneLevel parent;
+        private final Object parentLock;
+        private final List<DependencyNode> nodes;
+        private final PriorityQueue<DependencyNode> ready = new PriorityQueue<DependencyNode>();
+        private final LinkedList<DependencyNode> wouldHaveBlocked = new LinkedList<DependencyNode>();
+        private int unscheduled;
+        private InterruptedException interruptedBy;
+        
+        private DependencyRunner(ServiceLocator locator,
+                AsyncRunLevelContext asyncContext,
+                Object queueLock,
+                List<ServiceHandle<?>> jobs,
+                UpOneLevel parent,
+                Object parentLock) {
+            this.asyncContext = asyncContext;
+            this.queueLock = queueLock;
+            this.parent = parent;
+            this.parentLock = parentLock;
+            
+            nodes = new ArrayList<DependencyNode>(jobs.size());
+            HashMap<ActiveDescriptor<?>, DependencyNode> byDescriptor =
+                    new HashMap<ActiveDescriptor<?>, DependencyNode>();
+            for (ServiceHandle<?> job : jobs) {
+                DependencyNode node = new DependencyNode(job, nodes.size());
+                
+                nodes.add(node);
+                byDescriptor.put(job.getActiveDescriptor(), node);
+            }
+            
+            for (DependencyNode node : nodes) {
+                ActiveDescriptor<?> descriptor = node.descriptor;
+                
+                try {
+                    if (!descriptor.isReified()) {
+                        descriptor = locator.reifyDescriptor(descriptor);
+                    }
+                }
+                catch (MultiException me) {
+                    // Will be reported when the service is started
+                    continue;
+                }
+                
+                for (Injectee ip : descriptor.getInjectees()) {
+                    ActiveDescriptor<?> childService;
+                    try {
+                        childService = locator.getInjecteeDescriptor(ip);
+                    }
+                    catch (MultiException me) {
+                        continue;
+                    }
+                    
+                    if (childService == null) continue;
+                    
+                    DependencyNode child = byDescriptor.get(childService);
+                    if (child == null || child == node) continue;
+                    
+                    if (child.dependents.add(node)) {
+                        node.remainingDependencies++;
+                    }
+                }
+            }
+            
+            for (DependencyNode node : nodes) {
+                if (node.remainingDependencies == 0) {
+                    node.queued = true;
+                    ready.add(node);
+                }
+            }
+            
+            unscheduled = nodes.size();
+        }
+
+        @Override
+        public void run() {
+            DependencyNode finished = null;
+            boolean completed = false;
+            for (;;) {
+                DependencyNode job;
+                synchronized (queueLock) {
+                    if (finished != null) {
+                        parent.jobFinished(finished.handle);
+                        
+                        if (completed) {
+                            release(finished);
+                        }
+                        else {
+                            // Tried again once the services in its way are further along
+                            wouldHaveBlocked.add(finished);
+                            unscheduled++;
+                            
+                            queueLock.notifyAll();
+                        }
+                    }
+                    
+                    job = next();
+                    if (job == null) return;
+                    
+                    parent.jobRunning(job.handle);
+                }
+                
+                completed = oneJob(job);
+                finished = job;
+            }
+        }
+        
+        /**
+         * Must hold queueLock
+         * 
+         * @param finished The node that was just started (or that failed)
+         */
+        private void release(DependencyNode finished) {
+            for (DependencyNode dependent : finished.dependents) {
+                dependent.remainingDependencies--;
+                if (dependent.remainingDependencies == 0 && !dependent.queued) {
+                    dependent.queued = true;
+                    ready.add(dependent);
+                }
+            }
+            
+            // Whatever was in their way may be done now
+            ready.addAll(wouldHaveBlocked);
+            wouldHaveBlocked.clear();
+            
+            queueLock.notifyAll();
+        }
+        
+        /**
+         * Must hold queueLock
+         * 
+         * @return The next node to start, or null if there
+         * are no more nodes for this thread to start
+         */
+        private DependencyNode next() {
+            for (;;) {
+                DependencyNode retVal = ready.poll();
+                if (retVal != null) {
+                    unscheduled--;
+                    retVal.block = false;
+                    return retVal;
+                }
+                
+                if (unscheduled <= 0) return null;
+                
+                if (interruptedBy != null) {
+                    // Once interrupted the rest of the level is failed rather than waited for
+                    retVal = wouldHaveBlocked.isEmpty() ? takeUnqueued() : wouldHaveBlocked.removeFirst();
+                    if (retVal == null) return null;
+                    
+                    unscheduled--;
+                    retVal.interruptedBy = interruptedBy;
+                    return retVal;
+                }
+                
+                if (parent.getJobsRunning() <= 0) {
+                    if (!wouldHaveBlocked.isEmpty()) {
+                        // Nothing else of this level is running, so waiting is safe
+                        retVal = wouldHaveBlocked.removeFirst();
+                        
+                        unscheduled--;
+                        retVal.block = true;
+                        return retVal;
+                    }
+                    
+                    // Nothing that is running can make more nodes ready,
+                    // so the rest are in a cycle.  Start them in sorted
+                    // order and let the context find the cycle
+                    ready.add(takeUnqueued());
+                    
+                    continue;
+                }
+                
+                try {
+                    queueLock.wait();
+                }
+                catch (InterruptedException ie) {
+                    // Keep the interrupt, and finish the level rather than leave its jobs unfinished
+                    Thread.currentThread().interrupt();
+                    interruptedBy = ie;
+                }
+            }
+        }
+        
+        /**
+         * Must hold queueLock
+         * 
+         * @return The first node in sorted order that has not been queued yet, or
+         * null if every node has been queued
+         */
+        private DependencyNode takeUnqueued() {
+            for (DependencyNode node : nodes) {
+                if (!node.queued) {
+                    node.queued = true;
+                    
+                    return node;
+                }
+            }
+            
+            return null;
+        }
+        
+        /**
+         * Starts one service
+         * 
+         * @param job The node of the service to start
+         * @return false if the service would have blocked and must be tried again
+         */
+        private boolean oneJob(DependencyNode job) {
+            ServiceHandle<?> fService = job.handle;
+            boolean block = job.block;
+            
+            fService.setServiceData(!block);
+            boolean completed = true;
+            try {
+                if (job.interruptedBy != null) {
+                    parent.fail(job.interruptedBy, fService.getActiveDescriptor());
+                    return true;
+                }
+                
+                boolean ok;
+                synchronized (parentLock) {
+                    ok = (!parent.cancelled && (parent.accumulatedExceptions == null));
+                }
+                
+                if (ok) {
+                    fService.getService();
+                }
+            }
+            catch (MultiException me) {
+                if (!block && isWouldBlock(me)) {
+                    completed = false;
+                }
+                else if (!isWasCancelled(me)) {
+                    parent.fail(me, fService.getActiveDescriptor());
+                }
+            }
+            catch (Throwable th) {
+                parent.fail(th, fService.getActiveDescriptor());
+            }
+            finally {
+                fService.setServiceData(null);
+                if (completed) {
+                    parent.jobComplete();
+                }
+                else {
+                    RunLevelTimelineImpl timeline = asyncContext.getTimeline();
+                    if (timeline != null) {
+                        timeline.wouldBlock(fService.getActiveDescriptor());
+                    }
+                }
+            }
+            
+            return completed;
+        }
+    }
+    
+    private static class DependencyNode implements Comparable<DependencyNode> {
+        private final ServiceHandle<?> handle;
+        private final ActiveDescriptor<?> descriptor;
+        private final int sortedPosition;
+        private final LinkedHashSet<DependencyNode> dependents = new LinkedHashSet<DependencyNode>();
+        private int remainingDependencies;
+        private boolean queued;
+        private boolean block;  // The rest are set under the queueLock when the node is handed out
+        private InterruptedException interruptedBy;
+        
+        private DependencyNode(ServiceHandle<?> handle, int sortedPosition) {
+            this.handle = handle;
+            this.descriptor = handle.getActiveDescriptor();
+            this.sortedPosition = sortedPosition;
+        }
+        
+        private DependencyNode(ActiveDescriptor<?> descriptor, int sortedPosition) {
+            this.handle = null;
+            this.descriptor = descriptor;
+            this.sortedPosition = sortedPosition;
+        }
+
+        @Override
+        public int compareTo(DependencyNode o) {
+            return sortedPosition - o.sortedPosition;
+        }
+    }
+    
+    /**
+     * Destroys the services in the queue of a level.  The thread going
+     * down waits on the queue until the queue is empty, an error is
+     * reported or the runner is found to be hung
+     * 
+     * @author jwells
+     *
+     */
+    private static abstract class DownRunner implements Runnable {
+        /** Set when this runner has been abandoned, must hold the queue lock */
+        protected boolean caput;
+        
+        /**
+         * Starts this runner
+         * 
+         * @param executor The executor to start the runner on
+         */
+        protected abstract void start(Executor executor);
+        
+        /**
+         * Abandons this runner and any destruction it is in the middle
+         * of.  Called with the queue lock held
+         */
+        protected void hardCancel() {
+            caput = true;
+        }
+        
+        /**
+         * Called with the queue lock held once the parent has handed the
+         * last error to the error handlers.  A runner that could not report
+         * an error at the time it happened may report it now
+         */
+        protected void errorReported() {
+        }
+    }
+    
+    private static class DownQueueRunner extends DownRunner {
         private final Object queueLock;
         private final List<ActiveDescriptor<?>> queue;
         private final DownAllTheWay parent;
         private final ServiceLocator locator;
-        private boolean caput;
         
         private DownQueueRunner(Object queueLock,
                 List<ActiveDescriptor<?>> queue,
@@ -1275,6 +1654,11 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             this.parent = parent;
             this.locator = locator;
         }
+        
+        @Override
+        protected void start(Executor executor) {
+            executor.execute(this);
+        }
 
         @Override
         public void run() {
@@ -1306,6 +1690,237 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         
     }
     
+    /**
+     * Destroys the services of a level on many threads at once.  A service
+     * is only destroyed once every service of the same level that injects it
+     * has been destroyed, and among those services the most recently created
+     * is destroyed first.  Services stay in the queue until they have been
+     * destroyed so that the hard cancel timer can see whether any progress is
+     * being made.  The same instance is run by every thread
+     * 
+     * @author jwells
+     *
+     */
+    private static class ParallelDownRunner extends DownRunner {
+        private final List<ActiveDescriptor<?>> queue;
+        private final DownAllTheWay parent;
+        private final ServiceLocator locator;
+        private final int maxThreads;
+        private final List<DependencyNode> nodes;
+        private final HashMap<ActiveDescriptor<?>, DependencyNode> byDescriptor =
+                new HashMap<ActiveDescriptor<?>, DependencyNode>();
+        private final PriorityQueue<DependencyNode> ready = new PriorityQueue<DependencyNode>();
+        private final HashSet<ActiveDescriptor<?>> running = new HashSet<ActiveDescriptor<?>>();
+        private final LinkedHashMap<ActiveDescriptor<?>, Throwable> unreported =
+                new LinkedHashMap<ActiveDescriptor<?>, Throwable>();  // Stay in the queue until reported
+        private int unstarted;
+        
+        /**
+         * Must be called with the queue lock held
+         */
+        private ParallelDownRunner(List<ActiveDescriptor<?>> queue,
+                DownAllTheWay parent,
+                ServiceLocator locator,
+                int maxThreads) {
+            this.queue = queue;
+            this.parent = parent;
+            this.locator = locator;
+            this.maxThreads = maxThreads;
+            
+            nodes = new ArrayList<DependencyNode>(queue.size());
+            for (ActiveDescriptor<?> descriptor : queue) {
+                DependencyNode node = new DependencyNode(descriptor, nodes.size());
+                
+                nodes.add(node);
+                byDescriptor.put(descriptor, node);
+            }
+            
+            // Here the dependents are the services each service injects, since
+            // those can only be destroyed after this one
+            for (DependencyNode node : nodes) {
+                for (Injectee ip : node.descriptor.getInjectees()) {
+                    ActiveDescriptor<?> childService;
+                    try {
+                        childService = locator.getInjecteeDescriptor(ip);
+                    }
+                    catch (Throwable th) {
+                        continue;
+                    }
+                    
+                    if (childService == null) continue;
+                    
+                    DependencyNode child = byDescriptor.get(childService);
+                    if (child == null || child == node) continue;
+                    
+                    if (node.dependents.add(child)) {
+                        child.remainingDependencies++;
+                    }
+                }
+            }
+            
+            for (DependencyNode node : nodes) {
+                if (node.remainingDependencies == 0) {
+                    node.queued = true;
+                    ready.add(node);
+                }
+            }
+            
+            unstarted = nodes.size();
+        }
+        
+        @Override
+        protected void start(Executor executor) {
+            int numThreads = (nodes.size() < maxThreads) ? nodes.size() : maxThreads;
+            if (numThreads < 1) numThreads = 1;
+            
+            for (int lcv = 0; lcv < numThreads; lcv++) {
+                executor.execute(this);
+            }
+        }
+        
+        @Override
+        protected void hardCancel() {
+            super.hardCancel();
+            
+            // The services being destroyed are orphaned, and their errors are dropped
+            queue.removeAll(running);
+            running.clear();
+            queue.removeAll(unreported.keySet());
+            unreported.clear();
+            
+            queue.notifyAll();
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                DependencyNode job;
+                synchronized (queue) {
+                    job = next();
+                    if (job == null) {
+                        if (queue.isEmpty()) queue.notifyAll();
+                        return;
+                    }
+                    
+                    running.add(job.descriptor);
+                }
+                
+                Throwable error = null;
+                try {
+                    locator.getServiceHandle(job.descriptor).destroy();
+                }
+                catch (Throwable th) {
+                    error = th;
+                }
+                
+                synchronized (queue) {
+                    if (caput) return;
+                    
+                    boolean reported = true;
+                    if (error != null) {
+                        boolean interrupted = false;
+                        while (!caput && !interrupted && (parent.lastError != null)) {
+                            try {
+                                queue.wait();
+                            }
+                            catch (InterruptedException ie) {
+                                // Keep the interrupt, and leave the error for the parent to pick up
+                                Thread.currentThread().interrupt();
+                                interrupted = true;
+                            }
+                        }
+                        
+                        if (caput) return;
+                        
+                        if (parent.lastError == null) {
+                            parent.lastError = error;
+                            parent.lastErrorDescriptor = job.descriptor;
+                        }
+                        else {
+                            unreported.put(job.descriptor, error);
+                            reported = false;
+                        }
+                    }
+                    
+                    running.remove(job.descriptor);
+                    if (reported) {
+                        queue.remove(job.descriptor);
+                    }
+                    
+                    for (DependencyNode dependent : job.dependents) {
+                        dependent.remainingDependencies--;
+                        if (dependent.remainingDependencies == 0 && !dependent.queued) {
+                            dependent.queued = true;
+                            ready.add(dependent);
+                        }
+                    }
+                    
+                    queue.notifyAll();
+                }
+            }
+        }
+        
+        /**
+         * Must hold the queue lock
+         * 
+         * @return The next service to destroy, or null if this
+         * thread has no more work
+         */
+        private DependencyNode next() {
+            for (;;) {
+                if (caput) return null;
+                
+                DependencyNode retVal = ready.poll();
+                if (retVal != null) {
+                    unstarted--;
+                    return retVal;
+                }
+                
+                if (unstarted <= 0) return null;
+                
+                if (running.isEmpty()) {
+                    // The rest are in a cycle, destroy them in order
+                    for (DependencyNode node : nodes) {
+                        if (!node.queued) {
+                            node.queued = true;
+                            ready.add(node);
+                            break;
+                        }
+                    }
+                    
+                    continue;
+                }
+                
+                try {
+                    queue.wait();
+                }
+                catch (InterruptedException ie) {
+                    // Keep the interrupt.  If some other thread is still destroying a
+                    // service it will go on to destroy the rest of the level
+                    Thread.currentThread().interrupt();
+                    if (!running.isEmpty()) return null;
+                }
+            }
+        }
+        
+        /* (non-Javadoc)
+         * @see org.glassfish.hk2.runlevel.internal.CurrentTaskFuture.DownRunner#errorReported()
+         */
+        @Override
+        protected void errorReported() {
+            if (unreported.isEmpty() || (parent.lastError != null)) return;
+            
+            Iterator<Map.Entry<ActiveDescriptor<?>, Throwable>> iterator = unreported.entrySet().iterator();
+            Map.Entry<ActiveDescriptor<?>, Throwable> entry = iterator.next();
+            iterator.remove();
+            
+            parent.lastError = entry.getValue();
+            parent.lastErrorDescriptor = entry.getKey();
+            
+            queue.remove(entry.getKey());
+        }
+    }
+    
     /* package */ final static boolean isWouldBlock(Throwable th) {
         return isACertainException(th, WouldBlockException.class);
     }
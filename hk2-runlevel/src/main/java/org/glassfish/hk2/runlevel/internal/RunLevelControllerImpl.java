@@ -154,6 +154,23 @@ public class RunLevelControllerImpl implements RunLevelController {
         return context.getPolicy();
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelController#setSchedulingPolicy(org.glassfish.hk2.runlevel.RunLevelController.SchedulingPolicy)
+     */
+    @Override
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        if (policy == null) throw new IllegalArgumentException();
+        context.setSchedulingPolicy(policy);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelController#getSchedulingPolicy()
+     */
+    @Override
+    public SchedulingPolicy getSchedulingPolicy() {
+        return context.getSchedulingPolicy();
+    }
+
     @Override
     public void setExecutor(Executor executor) {
         context.setExecutor(executor);
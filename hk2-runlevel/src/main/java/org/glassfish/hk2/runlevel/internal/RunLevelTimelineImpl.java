@@ -0,0 +1,517 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.runlevel.RunLevelTimeline;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+import org.glassfish.hk2.runlevel.utilities.Utilities;
+
+/**
+ * The implementation of the {@link RunLevelTimeline}.  This should NOT be
+ * added automatically, and hence is not annotated with
+ * {@link org.jvnet.hk2.annotations.Service}.  While this service exists the
+ * {@link AsyncRunLevelContext} tells it when RunLevel services begin and
+ * finish starting and stopping.  Starts that are nested inside other starts
+ * on the same thread are tracked with a per-thread stack so that the self
+ * time of each service can be computed
+ * 
+ * @author jwells
+ *
+ */
+@Singleton @Visibility(DescriptorVisibility.LOCAL)
+public class RunLevelTimelineImpl implements RunLevelTimeline {
+    private final ServiceLocator locator;
+    private final AsyncRunLevelContext context;
+    
+    private final ThreadLocal<LinkedList<ServiceTimingImpl>> inProgress = new ThreadLocal<LinkedList<ServiceTimingImpl>>() {
+        @Override
+        protected LinkedList<ServiceTimingImpl> initialValue() {
+            return new LinkedList<ServiceTimingImpl>();
+        }
+    };
+    
+    private final Object lock = new Object();
+    private long origin = System.nanoTime();
+    private final List<ServiceTimingImpl> timings = new ArrayList<ServiceTimingImpl>();
+    private final HashMap<ActiveDescriptor<?>, Postponed> postponed = new HashMap<ActiveDescriptor<?>, Postponed>();
+    
+    @Inject
+    private RunLevelTimelineImpl(ServiceLocator locator, AsyncRunLevelContext context) {
+        this.locator = locator;
+        this.context = context;
+    }
+    
+    @PostConstruct
+    private void start() {
+        context.setTimeline(this);
+    }
+    
+    @PreDestroy
+    private void stop() {
+        context.setTimeline(null);
+    }
+    
+    /**
+     * Called just before a RunLevel service is created
+     * 
+     * @param descriptor The service being created
+     * @return The timing to give to {@link #finished(ServiceTimingImpl, boolean, boolean)}
+     */
+    /* package */ ServiceTimingImpl creationStarted(ActiveDescriptor<?> descriptor) {
+        return started(descriptor, false);
+    }
+    
+    /**
+     * Called just before a RunLevel service is destroyed
+     * 
+     * @param descriptor The service being destroyed
+     * @return The timing to give to {@link #finished(ServiceTimingImpl, boolean, boolean)}
+     */
+    /* package */ ServiceTimingImpl destructionStarted(ActiveDescriptor<?> descriptor) {
+        return started(descriptor, true);
+    }
+    
+    private ServiceTimingImpl started(ActiveDescriptor<?> descriptor, boolean stop) {
+        Thread current = Thread.currentThread();
+        
+        ServiceTimingImpl timing = new ServiceTimingImpl(descriptor,
+                Utilities.getRunLevelValue(locator, descriptor),
+                stop,
+                current.getName(),
+                current.getId(),
+                System.nanoTime());
+        
+        inProgress.get().addFirst(timing);
+        
+        return timing;
+    }
+    
+    /**
+     * Called when the creation or destruction of a service is over
+     * 
+     * @param timing The timing returned when the work started
+     * @param failed true if the work failed
+     * @param wouldBlock true if the creation was abandoned because it
+     * would have blocked, in which case it will be tried again
+     */
+    /* package */ void finished(ServiceTimingImpl timing, boolean failed, boolean wouldBlock) {
+        long end = System.nanoTime();
+        
+        LinkedList<ServiceTimingImpl> stack = inProgress.get();
+        stack.remove(timing);
+        
+        long duration = end - timing.start;
+        if (!stack.isEmpty()) {
+            stack.getFirst().nestedNanos += duration;
+        }
+        
+        synchronized (lock) {
+            if (wouldBlock) {
+                getPostponed(timing.descriptor).lostNanos += duration;
+                return;
+            }
+            
+            if (!timing.stop) {
+                Postponed previous = postponed.remove(timing.descriptor);
+                if (previous != null) {
+                    timing.waitNanos += previous.lostNanos;
+                    timing.wouldBlockCount = previous.count;
+                }
+            }
+            
+            timing.end = end;
+            timing.failed = failed;
+            timing.origin = origin;
+            
+            timings.add(timing);
+        }
+    }
+    
+    /**
+     * Called when the current thread had to wait for another
+     * thread to finish creating a service
+     * 
+     * @param nanos The time spent waiting
+     */
+    /* package */ void waited(long nanos) {
+        LinkedList<ServiceTimingImpl> stack = inProgress.get();
+        if (stack.isEmpty()) return;
+        
+        stack.getFirst().waitNanos += nanos;
+    }
+    
+    /**
+     * Called when the creation of a service has been put off
+     * because it would have blocked
+     * 
+     * @param descriptor The service that will be tried again later
+     */
+    /* package */ void wouldBlock(ActiveDescriptor<?> descriptor) {
+        synchronized (lock) {
+            getPostponed(descriptor).count++;
+        }
+    }
+    
+    private Postponed getPostponed(ActiveDescriptor<?> descriptor) {
+        Postponed retVal = postponed.get(descriptor);
+        if (retVal == null) {
+            retVal = new Postponed();
+            postponed.put(descriptor, retVal);
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelTimeline#getTimings()
+     */
+    @Override
+    public List<ServiceTiming> getTimings() {
+        synchronized (lock) {
+            return new ArrayList<ServiceTiming>(timings);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelTimeline#getCriticalPath()
+     */
+    @Override
+    public List<ServiceTiming> getCriticalPath() {
+        LinkedHashMap<ActiveDescriptor<?>, ServiceTiming> latest = new LinkedHashMap<ActiveDescriptor<?>, ServiceTiming>();
+        for (ServiceTiming timing : getTimings()) {
+            if (timing.isStop() || timing.isFailed()) continue;
+            
+            latest.put(timing.getDescriptor(), timing);
+        }
+        
+        ServiceTiming current = null;
+        for (ServiceTiming timing : latest.values()) {
+            if (current == null || timing.getEndNanos() > current.getEndNanos()) {
+                current = timing;
+            }
+        }
+        
+        LinkedList<ServiceTiming> retVal = new LinkedList<ServiceTiming>();
+        HashSet<ActiveDescriptor<?>> cycleChecker = new HashSet<ActiveDescriptor<?>>();
+        while (current != null && cycleChecker.add(current.getDescriptor())) {
+            retVal.addFirst(current);
+            
+            ServiceTiming gating = null;
+            for (Injectee injectee : current.getDescriptor().getInjectees()) {
+                ActiveDescriptor<?> dependency;
+                try {
+                    dependency = locator.getInjecteeDescriptor(injectee);
+                }
+                catch (Throwable th) {
+                    continue;
+                }
+                
+                if (dependency == null) continue;
+                
+                ServiceTiming candidate = latest.get(dependency);
+                if (candidate == null || candidate.getEndNanos() > current.getEndNanos()) continue;
+                
+                if (gating == null || candidate.getEndNanos() > gating.getEndNanos()) {
+                    gating = candidate;
+                }
+            }
+            
+            current = gating;
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelTimeline#writeChromeTrace(java.io.Writer)
+     */
+    @Override
+    public void writeChromeTrace(Writer writer) throws IOException {
+        List<ServiceTiming> all = getTimings();
+        List<ServiceTiming> criticalPath = getCriticalPath();
+        
+        HashSet<ServiceTiming> critical = new HashSet<ServiceTiming>(criticalPath);
+        Map<Long, String> threads = new LinkedHashMap<Long, String>();
+        
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        
+        boolean first = true;
+        for (ServiceTiming timing : all) {
+            threads.put(timing.getThreadId(), timing.getThreadName());
+            
+            if (!first) writer.write(',');
+            first = false;
+            
+            writer.write("\n{\"name\":");
+            writeString(writer, getName(timing.getDescriptor()));
+            writer.write(",\"cat\":");
+            writeString(writer, timing.isStop() ? "stop" : "start");
+            writer.write(",\"ph\":\"X\",\"pid\":" + locator.getLocatorId() +
+                    ",\"tid\":" + timing.getThreadId() +
+                    ",\"ts\":" + micros(timing.getStartNanos()) +
+                    ",\"dur\":" + micros(timing.getDurationNanos()) +
+                    ",\"args\":{\"runLevel\":" + timing.getRunLevel() +
+                    ",\"selfMicros\":" + micros(timing.getSelfNanos()) +
+                    ",\"waitMicros\":" + micros(timing.getWaitNanos()) +
+                    ",\"wouldBlockCount\":" + timing.getWouldBlockCount() +
+                    ",\"failed\":" + timing.isFailed() +
+                    ",\"critical\":" + critical.contains(timing) + "}}");
+        }
+        
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            if (!first) writer.write(',');
+            first = false;
+            
+            writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + locator.getLocatorId() +
+                    ",\"tid\":" + thread.getKey() + ",\"args\":{\"name\":");
+            writeString(writer, thread.getValue());
+            writer.write("}}");
+        }
+        
+        writer.write("\n],\"criticalPath\":[");
+        
+        first = true;
+        for (ServiceTiming timing : criticalPath) {
+            if (!first) writer.write(',');
+            first = false;
+            
+            writeString(writer, getName(timing.getDescriptor()));
+        }
+        
+        writer.write("]}\n");
+        writer.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelTimeline#clear()
+     */
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            timings.clear();
+            postponed.clear();
+            origin = System.nanoTime();
+        }
+    }
+    
+    private static String getName(ActiveDescriptor<?> descriptor) {
+        String name = descriptor.getName();
+        if (name == null) return descriptor.getImplementation();
+        
+        return descriptor.getImplementation() + "/" + name;
+    }
+    
+    private static long micros(long nanos) {
+        return nanos / 1000L;
+    }
+    
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        
+        for (int lcv = 0; lcv < value.length(); lcv++) {
+            char c = value.charAt(lcv);
+            
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    String hex = Integer.toHexString(c);
+                    writer.write("\\u");
+                    for (int pad = hex.length(); pad < 4; pad++) {
+                        writer.write('0');
+                    }
+                    writer.write(hex);
+                }
+                else {
+                    writer.write(c);
+                }
+            }
+        }
+        
+        writer.write('"');
+    }
+    
+    @Override
+    public String toString() {
+        return "RunLevelTimelineImpl(" + locator.getName() + "," + System.identityHashCode(this) + ")";
+    }
+    
+    private static class Postponed {
+        private int count;
+        private long lostNanos;
+    }
+    
+    /* package */ static class ServiceTimingImpl implements ServiceTiming {
+        private final ActiveDescriptor<?> descriptor;
+        private final int runLevel;
+        private final boolean stop;
+        private final String threadName;
+        private final long threadId;
+        private final long start;
+        
+        /** Only modified by the thread doing the work */
+        private long nestedNanos;
+        private long waitNanos;
+        
+        /** Set under the timeline lock before the timing is published */
+        private long end;
+        private long origin;
+        private boolean failed;
+        private int wouldBlockCount;
+        
+        private ServiceTimingImpl(ActiveDescriptor<?> descriptor,
+                int runLevel,
+                boolean stop,
+                String threadName,
+                long threadId,
+                long start) {
+            this.descriptor = descriptor;
+            this.runLevel = runLevel;
+            this.stop = stop;
+            this.threadName = threadName;
+            this.threadId = threadId;
+            this.start = start;
+        }
+
+        @Override
+        public ActiveDescriptor<?> getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public int getRunLevel() {
+            return runLevel;
+        }
+
+        @Override
+        public boolean isStop() {
+            return stop;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return failed;
+        }
+
+        @Override
+        public String getThreadName() {
+            return threadName;
+        }
+
+        @Override
+        public long getThreadId() {
+            return threadId;
+        }
+
+        @Override
+        public long getStartNanos() {
+            return start - origin;
+        }
+
+        @Override
+        public long getEndNanos() {
+            return end - origin;
+        }
+
+        @Override
+        public long getDurationNanos() {
+            return end - start;
+        }
+
+        @Override
+        public long getSelfNanos() {
+            return end - start - nestedNanos;
+        }
+
+        @Override
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public int getWouldBlockCount() {
+            return wouldBlockCount;
+        }
+        
+        @Override
+        public String toString() {
+            return "ServiceTimingImpl(" + getName(descriptor) + "," + runLevel + "," +
+                (stop ? "stop" : "start") + "," + threadName + "," + getStartNanos() + "," +
+                getDurationNanos() + "," + System.identityHashCode(this) + ")";
+        }
+    }
+
+}
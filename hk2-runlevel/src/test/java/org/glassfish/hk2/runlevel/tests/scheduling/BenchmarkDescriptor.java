@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.utilities.AbstractActiveDescriptor;
+import org.glassfish.hk2.utilities.InjecteeImpl;
+import org.glassfish.hk2.utilities.NamedImpl;
+
+/**
+ * A RunLevel service that injects other named BenchmarkServices and then
+ * works for a while.  Used to make large run levels without needing
+ * thousands of classes
+ * 
+ * @author jwells
+ *
+ */
+public class BenchmarkDescriptor extends AbstractActiveDescriptor<BenchmarkService> {
+    private static final long serialVersionUID = -4020372549262637085L;
+    
+    private final transient ServiceLocator locator;
+    private final transient AtomicInteger creations;
+    private final long workMillis;
+    private final List<Injectee> injectees = new ArrayList<Injectee>();
+    
+    /* package */ BenchmarkDescriptor(ServiceLocator locator,
+            String name,
+            int level,
+            long workMillis,
+            AtomicInteger creations) {
+        super(Collections.<Type>singleton(BenchmarkService.class),
+                RunLevel.class,
+                name,
+                Collections.<Annotation>singleton(new NamedImpl(name)),
+                DescriptorType.CLASS,
+                DescriptorVisibility.NORMAL,
+                0,
+                null,
+                null,
+                null,
+                null);
+        
+        this.locator = locator;
+        this.creations = creations;
+        this.workMillis = workMillis;
+        
+        addMetadata(RunLevel.RUNLEVEL_VAL_META_TAG, Integer.toString(level));
+        addMetadata(RunLevel.RUNLEVEL_MODE_META_TAG, Integer.toString(RunLevel.RUNLEVEL_MODE_NON_VALIDATING));
+    }
+    
+    /**
+     * Makes this service inject the service with the given name
+     * 
+     * @param name The name of the BenchmarkService to inject
+     */
+    /* package */ void addDependency(String name) {
+        Set<Annotation> qualifiers = new HashSet<Annotation>();
+        qualifiers.add(new NamedImpl(name));
+        
+        InjecteeImpl injectee = new InjecteeImpl(BenchmarkService.class);
+        injectee.setRequiredQualifiers(qualifiers);
+        injectee.setPosition(injectees.size());
+        
+        injectees.add(injectee);
+    }
+
+    @Override
+    public Class<?> getImplementationClass() {
+        return BenchmarkService.class;
+    }
+
+    @Override
+    public Type getImplementationType() {
+        return BenchmarkService.class;
+    }
+    
+    @Override
+    public String getImplementation() {
+        return BenchmarkService.class.getName();
+    }
+    
+    @Override
+    public List<Injectee> getInjectees() {
+        return injectees;
+    }
+
+    @Override
+    public BenchmarkService create(ServiceHandle<?> root) {
+        creations.incrementAndGet();
+        
+        for (Injectee injectee : injectees) {
+            locator.getService(locator.getInjecteeDescriptor(injectee), root, injectee);
+        }
+        
+        try {
+            Thread.sleep(workMillis);
+        }
+        catch (InterruptedException e) {
+            throw new MultiException(e);
+        }
+        
+        return new BenchmarkService(getName());
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.RunLevelServiceUtilities;
+import org.glassfish.hk2.runlevel.RunLevelTimeline;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class DependencyOrderedTest {
+    /**
+     * TopService is sorted first but needs MiddleService, which
+     * needs BottomService.  With the dependency ordered policy every
+     * service must be started by its own job, after what it needs
+     */
+    @Test
+    public void testServicesStartedAfterTheirDependencies() {
+        ServiceLocator locator = Utilities.getServiceLocator(NestingRecorder.class,
+                TopService.class, MiddleService.class, BottomService.class);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        Assert.assertEquals(RunLevelController.SchedulingPolicy.RETRY_ON_WOULD_BLOCK,
+                controller.getSchedulingPolicy());
+        
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED);
+        controller.setMaximumUseableThreads(4);
+        
+        controller.proceedTo(1);
+        
+        NestingRecorder recorder = locator.getService(NestingRecorder.class);
+        
+        List<String> started = recorder.getStarted();
+        Assert.assertEquals(3, started.size());
+        Assert.assertEquals(BottomService.class.getSimpleName(), started.get(0));
+        Assert.assertEquals(MiddleService.class.getSimpleName(), started.get(1));
+        Assert.assertEquals(TopService.class.getSimpleName(), started.get(2));
+        
+        Assert.assertEquals(0, recorder.getNested());
+        
+        controller.proceedTo(0);
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+    }
+    
+    /**
+     * HiddenTopService needs SlowBottomService through a singleton, which
+     * the dependency order does not see.  While another thread is starting
+     * SlowBottomService the job for HiddenTopService must be put off as
+     * would-block rather than waiting, and then be retried
+     * 
+     * @throws Exception on failure
+     */
+    @Test
+    public void testHiddenDependencyIsPutOffWhenItWouldBlock() throws Exception {
+        SlowBottomService.reset();
+        
+        ServiceLocator locator = Utilities.getServiceLocator(SlowBottomService.class,
+                HiddenTopService.class, HiddenSingleton.class);
+        RunLevelTimeline timeline = RunLevelServiceUtilities.enableTimeline(locator);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED);
+        controller.setMaximumUseableThreads(2);
+        controller.setExecutor(new OrderedExecutor(3));
+        
+        RunLevelFuture future = controller.proceedToAsync(1);
+        
+        SlowBottomService.awaitStarted();
+        Thread.sleep(250);
+        SlowBottomService.release();
+        
+        future.get(20, TimeUnit.SECONDS);
+        Assert.assertEquals(1, controller.getCurrentRunLevel());
+        
+        ServiceTiming hiddenTop = null;
+        for (ServiceTiming timing : timeline.getTimings()) {
+            if (HiddenTopService.class.getName().equals(timing.getDescriptor().getImplementation())) {
+                hiddenTop = timing;
+            }
+        }
+        
+        Assert.assertNotNull(hiddenTop);
+        Assert.assertFalse(hiddenTop.isFailed());
+        Assert.assertTrue(hiddenTop.getWouldBlockCount() > 0);
+        
+        controller.proceedTo(0);
+    }
+    
+    /**
+     * The thread running the level is interrupted while it waits for
+     * SlowBottomService to be started by another thread.  The level must
+     * still finish, with the interrupt as its error, and the thread must
+     * keep its interrupt flag
+     * 
+     * @throws Exception on failure
+     */
+    @Test
+    public void testInterruptFinishesTheLevel() throws Exception {
+        SlowBottomService.reset();
+        
+        ServiceLocator locator = Utilities.getServiceLocator(SlowBottomService.class,
+                BottomDependentService.class);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED);
+        controller.setMaximumUseableThreads(2);
+        
+        OrderedExecutor executor = new OrderedExecutor(3);
+        controller.setExecutor(executor);
+        
+        RunLevelFuture future = controller.proceedToAsync(1);
+        
+        SlowBottomService.awaitStarted();
+        Thread.sleep(100);
+        executor.getLevelThread().interrupt();
+        Thread.sleep(100);
+        SlowBottomService.release();
+        
+        try {
+            future.get(20, TimeUnit.SECONDS);
+            Assert.fail("The interrupted level should have failed");
+        }
+        catch (ExecutionException ee) {
+            MultiException me = (MultiException) ee.getCause();
+            
+            boolean found = false;
+            for (Throwable th : me.getErrors()) {
+                if (th instanceof InterruptedException) {
+                    found = true;
+                }
+            }
+            
+            Assert.assertTrue(me.toString(), found);
+        }
+        
+        Assert.assertTrue(executor.waitForLevelThread());
+    }
+    
+    /**
+     * The scheduling policy may not be null
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullSchedulingPolicy() {
+        ServiceLocator locator = Utilities.getServiceLocator();
+        
+        locator.getService(RunLevelController.class).setSchedulingPolicy(null);
+    }
+
+}
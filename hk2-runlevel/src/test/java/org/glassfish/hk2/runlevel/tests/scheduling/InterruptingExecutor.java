@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs every task in a new thread, and can interrupt the
+ * threads that are waiting to destroy services
+ * 
+ * @author jwells
+ *
+ */
+public class InterruptingExecutor implements Executor {
+    private final static String DOWN_RUNNER = "ParallelDownRunner";
+    
+    private final List<Thread> downThreads = new LinkedList<Thread>();
+    private final List<Boolean> interruptedAfterRun = new LinkedList<Boolean>();
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(final Runnable command) {
+        final boolean down = DOWN_RUNNER.equals(command.getClass().getSimpleName());
+        
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                }
+                finally {
+                    if (down) {
+                        synchronized (InterruptingExecutor.this) {
+                            interruptedAfterRun.add(Thread.currentThread().isInterrupted());
+                            InterruptingExecutor.this.notifyAll();
+                        }
+                    }
+                }
+            }
+            
+        });
+        
+        if (down) {
+            synchronized (this) {
+                downThreads.add(thread);
+            }
+        }
+        
+        thread.start();
+    }
+    
+    /**
+     * Interrupts the threads destroying services that are
+     * waiting for other services to be destroyed
+     * 
+     * @return The number of threads interrupted
+     */
+    public synchronized int interruptWaitingThreads() {
+        int retVal = 0;
+        for (Thread thread : downThreads) {
+            if (Thread.State.WAITING.equals(thread.getState())) {
+                thread.interrupt();
+                retVal++;
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Waits for every thread destroying services to finish
+     * 
+     * @return The number of those threads whose interrupt flag
+     * was set when they finished
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized int waitForDownThreads() throws InterruptedException {
+        long end = System.currentTimeMillis() + (20 * 1000);
+        while (interruptedAfterRun.size() < downThreads.size()) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) throw new AssertionError("The down threads never finished");
+            
+            wait(remaining);
+        }
+        
+        int retVal = 0;
+        for (Boolean interrupted : interruptedAfterRun) {
+            if (interrupted) retVal++;
+        }
+        
+        return retVal;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Compares the two scheduling policies on a level of two thousand
+ * services where most services inject services that are sorted
+ * after them.  The timing run only happens when the hk2.benchmarks
+ * system property is true, a small level checks the results otherwise
+ * 
+ * @author jwells
+ *
+ */
+public class LargeLevelBenchmarkTest {
+    private final static String BENCHMARKS_PROPERTY = "hk2.benchmarks";
+    
+    private final static int NUM_SERVICES = 2000;
+    private final static int NUM_SMALL_SERVICES = 50;
+    private final static int MAX_DEPENDENCIES = 3;
+    private final static int NUM_THREADS = 16;
+    private final static long WORK_MILLIS = 1L;
+    private final static long SEED = 2000L;
+    
+    /**
+     * Both policies must start every service of a small level, and the
+     * dependency ordered policy must start each service exactly once
+     */
+    @Test
+    public void testSchedulingPoliciesOnSmallLevel() {
+        Result retry = measure(RunLevelController.SchedulingPolicy.RETRY_ON_WOULD_BLOCK, NUM_SMALL_SERVICES, 0L);
+        Result ordered = measure(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED, NUM_SMALL_SERVICES, 0L);
+        
+        Assert.assertTrue(retry.creations >= NUM_SMALL_SERVICES);
+        Assert.assertEquals(NUM_SMALL_SERVICES, ordered.creations);
+    }
+    
+    /**
+     * Times both policies on the large level.  Run with -Dhk2.benchmarks=true
+     */
+    @Test
+    public void testSchedulingPoliciesOnLargeLevel() {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        
+        Result retry = measure(RunLevelController.SchedulingPolicy.RETRY_ON_WOULD_BLOCK, NUM_SERVICES, WORK_MILLIS);
+        Result ordered = measure(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED, NUM_SERVICES, WORK_MILLIS);
+        
+        Assert.assertEquals(NUM_SERVICES, ordered.creations);
+        
+        System.out.println("RunLevel services=" + NUM_SERVICES + " threads=" + NUM_THREADS +
+                " retryOnWouldBlock=" + retry.millis + "ms/" + retry.creations + " creation attempts" +
+                " dependencyOrdered=" + ordered.millis + "ms/" + ordered.creations + " creation attempts");
+    }
+    
+    private static Result measure(RunLevelController.SchedulingPolicy policy, int numServices, long workMillis) {
+        ServiceLocator locator = Utilities.getServiceLocator();
+        AtomicInteger creations = new AtomicInteger();
+        
+        try {
+            DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+            
+            Random random = new Random(SEED);
+            for (int lcv = 0; lcv < numServices; lcv++) {
+                BenchmarkDescriptor descriptor = new BenchmarkDescriptor(locator, getName(lcv), 1, workMillis, creations);
+                
+                // Services are sorted in the order they are added, so depending
+                // on services with a higher number depends on later services
+                int remaining = numServices - lcv - 1;
+                int numDependencies = Math.min(remaining, random.nextInt(MAX_DEPENDENCIES + 1));
+                for (int dep = 0; dep < numDependencies; dep++) {
+                    descriptor.addDependency(getName(lcv + 1 + random.nextInt(remaining)));
+                }
+                
+                config.addActiveDescriptor(descriptor);
+            }
+            
+            config.commit();
+            
+            RunLevelController controller = locator.getService(RunLevelController.class);
+            controller.setSchedulingPolicy(policy);
+            controller.setMaximumUseableThreads(NUM_THREADS);
+            
+            long elapsed = System.nanoTime();
+            controller.proceedTo(1);
+            elapsed = System.nanoTime() - elapsed;
+            
+            Assert.assertEquals(1, controller.getCurrentRunLevel());
+            Assert.assertEquals(numServices, locator.getAllServices(BenchmarkService.class).size());
+            
+            return new Result(TimeUnit.NANOSECONDS.toMillis(elapsed), creations.get());
+        }
+        finally {
+            locator.shutdown();
+        }
+    }
+    
+    private static String getName(int index) {
+        return "service-" + index;
+    }
+    
+    private static class Result {
+        private final long millis;
+        private final int creations;
+        
+        private Result(long millis, int creations) {
+            this.millis = millis;
+            this.creations = creations;
+        }
+    }
+
+}
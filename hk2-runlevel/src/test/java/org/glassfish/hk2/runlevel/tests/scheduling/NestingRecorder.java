@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.InstanceLifecycleEvent;
+import org.glassfish.hk2.api.InstanceLifecycleEventType;
+import org.glassfish.hk2.api.InstanceLifecycleListener;
+import org.glassfish.hk2.runlevel.RunLevel;
+
+/**
+ * Records the order in which RunLevel services are started, and
+ * counts the services that were started while another service
+ * was being started on the same thread
+ * 
+ * @author jwells
+ *
+ */
+@Singleton
+public class NestingRecorder implements InstanceLifecycleListener {
+    private static final Filter FILTER = new Filter() {
+
+        @Override
+        public boolean matches(Descriptor d) {
+            return RunLevel.class.getName().equals(d.getScope());
+        }
+        
+    };
+    
+    private final ThreadLocal<Integer> depth = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return 0;
+        }
+    };
+    
+    private final List<String> started = new LinkedList<String>();
+    private int nested;
+
+    @Override
+    public Filter getFilter() {
+        return FILTER;
+    }
+
+    @Override
+    public void lifecycleEvent(InstanceLifecycleEvent lifecycleEvent) {
+        if (InstanceLifecycleEventType.PRE_PRODUCTION.equals(lifecycleEvent.getEventType())) {
+            int current = depth.get();
+            if (current > 0) {
+                synchronized (this) {
+                    nested++;
+                }
+            }
+            
+            depth.set(current + 1);
+        }
+        else if (InstanceLifecycleEventType.POST_PRODUCTION.equals(lifecycleEvent.getEventType())) {
+            depth.set(depth.get() - 1);
+            
+            synchronized (this) {
+                started.add(lifecycleEvent.getActiveDescriptor().getImplementationClass().getSimpleName());
+            }
+        }
+    }
+    
+    public synchronized List<String> getStarted() {
+        return new LinkedList<String>(started);
+    }
+    
+    public synchronized int getNested() {
+        return nested;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.glassfish.hk2.runlevel.RunLevel;
+
+/**
+ * Runs every task in a new thread.  Every task after the ones that
+ * run the levels is only handed to its thread once {@link SlowBottomService}
+ * has been started by that thread, so that the thread running the last
+ * level never gets to start it
+ * 
+ * @author jwells
+ *
+ */
+public class OrderedExecutor implements Executor {
+    private final int levels;
+    private final List<Thread> threads = new LinkedList<Thread>();
+    private final List<Boolean> interruptedAfterRun = new LinkedList<Boolean>();
+
+    /**
+     * @param levels The number of levels that will be run, starting
+     * with {@link RunLevel#RUNLEVEL_VAL_IMMEDIATE}
+     */
+    public OrderedExecutor(int levels) {
+        this.levels = levels;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(final Runnable command) {
+        final int index;
+        synchronized (this) {
+            index = threads.size();
+            interruptedAfterRun.add(null);
+        }
+        
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                }
+                finally {
+                    synchronized (OrderedExecutor.this) {
+                        interruptedAfterRun.set(index, Thread.currentThread().isInterrupted());
+                        OrderedExecutor.this.notifyAll();
+                    }
+                }
+            }
+            
+        }, "OrderedExecutor-" + index);
+        
+        synchronized (this) {
+            threads.add(thread);
+        }
+        
+        thread.start();
+        
+        if (index < levels) return;
+        
+        try {
+            SlowBottomService.awaitStarted();
+        }
+        catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * @return The thread that runs the last level
+     */
+    public synchronized Thread getLevelThread() {
+        return threads.get(levels - 1);
+    }
+    
+    /**
+     * Waits for the task running the last level to finish
+     * 
+     * @return true if the interrupt flag of the thread was
+     * set when that task returned
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized boolean waitForLevelThread() throws InterruptedException {
+        long end = System.currentTimeMillis() + (20 * 1000);
+        while (interruptedAfterRun.get(levels - 1) == null) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) throw new AssertionError("The level thread never finished");
+            
+            wait(remaining);
+        }
+        
+        return interruptedAfterRun.get(levels - 1);
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.scheduling;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.ErrorInformation;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class ParallelStopTest {
+    private static RunLevelController getController(ServiceLocator locator) {
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_ORDERED);
+        controller.setMaximumUseableThreads(4);
+        
+        return controller;
+    }
+    
+    /**
+     * The three slow services must be stopped at the same time, and
+     * StopFirstService must be stopped before SlowStopOneService, which
+     * it injects
+     */
+    @Test
+    public void testSlowServicesStoppedInParallel() {
+        ServiceLocator locator = Utilities.getServiceLocator(StopRecorder.class,
+                SlowStopOneService.class, SlowStopTwoService.class, SlowStopThreeService.class,
+                StopFirstService.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.proceedTo(1);
+        
+        long elapsed = System.currentTimeMillis();
+        controller.proceedTo(0);
+        elapsed = System.currentTimeMillis() - elapsed;
+        
+        Assert.assertTrue("Stopping took " + elapsed + "ms",
+                elapsed < (2 * SlowStopOneService.STOP_TIME) + (SlowStopOneService.STOP_TIME / 2));
+        
+        StopRecorder recorder = locator.getService(StopRecorder.class);
+        
+        List<String> stopped = recorder.getStopped();
+        Assert.assertEquals(stopped.toString(), 4, stopped.size());
+        Assert.assertTrue(stopped.toString(), stopped.indexOf(StopFirstService.class.getSimpleName()) <
+                stopped.indexOf(SlowStopOneService.class.getSimpleName()));
+        
+        Assert.assertTrue(recorder.getErrors().isEmpty());
+    }
+    
+    /**
+     * A failing service is reported to the listeners, and the
+     * default action lets the other services be stopped
+     */
+    @Test
+    public void testErrorIgnoredByDefault() {
+        ServiceLocator locator = Utilities.getServiceLocator(StopRecorder.class,
+                SlowStopOneService.class, SlowStopTwoService.class, FailingStopService.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.proceedTo(2);
+        controller.proceedTo(0);
+        
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+        
+        StopRecorder recorder = locator.getService(StopRecorder.class);
+        
+        List<ErrorInformation> errors = recorder.getErrors();
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(FailingStopService.class.getName(), errors.get(0).getFailedDescriptor().getImplementation());
+        
+        Assert.assertEquals(2, recorder.getStopped().size());
+    }
+    
+    /**
+     * A listener may tell the controller to stop going down
+     * after the level with the error
+     */
+    @Test
+    public void testErrorStopsAtNextLowerLevel() {
+        ServiceLocator locator = Utilities.getServiceLocator(StopRecorder.class,
+                SlowStopOneService.class, SlowStopTwoService.class, FailingStopService.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.proceedTo(2);
+        
+        StopRecorder recorder = locator.getService(StopRecorder.class);
+        recorder.setErrorAction(ErrorInformation.ErrorAction.GO_TO_NEXT_LOWER_LEVEL_AND_STOP);
+        
+        controller.proceedTo(0);
+        
+        Assert.assertEquals(1, controller.getCurrentRunLevel());
+        Assert.assertEquals(1, recorder.getErrors().size());
+        Assert.assertTrue(recorder.getStopped().isEmpty());
+    }
+    
+    /**
+     * A service hung in its preDestroy is orphaned by the hard
+     * cancel timer once the job has been cancelled
+     */
+    @Test
+    public void testHungStopIsHardCancelled() throws Exception {
+        ServiceLocator locator = Utilities.getServiceLocator(StopRecorder.class,
+                HangingStopService.class, SlowStopOneService.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.setCancelTimeoutMilliseconds(SlowStopOneService.STOP_TIME);
+        controller.proceedTo(1);
+        
+        long elapsed = System.currentTimeMillis();
+        
+        RunLevelFuture future = controller.proceedToAsync(0);
+        
+        // Let both services start stopping
+        Thread.sleep(SlowStopOneService.STOP_TIME / 5);
+        
+        future.cancel(false);
+        future.get();
+        
+        elapsed = System.currentTimeMillis() - elapsed;
+        
+        Assert.assertTrue("Cancelling took " + elapsed + "ms", elapsed < HangingStopService.HANG_TIME);
+        Assert.assertNull(controller.getCurrentProceeding());
+        
+        List<String> stopped = locator.getService(StopRecorder.class).getStopped();
+        Assert.assertEquals(1, stopped.size());
+        Assert.assertEquals(SlowStopOneService.class.getSimpleName(), stopped.get(0));
+    }
+    
+    /**
+     * The thread waiting for SlowStopFirstService to be stopped is
+     * interrupted.  The other thread must still stop the whole level in
+     * order, and the interrupted thread must keep its interrupt flag
+     * 
+     * @throws Exception on failure
+     */
+    @Test
+    public void testInterruptedThreadLeavesTheLevelToTheOthers() throws Exception {
+        ServiceLocator locator = Utilities.getServiceLocator(StopRecorder.class,
+                SlowStopFirstService.class, SlowStopTwoService.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.proceedTo(1);
+        
+        InterruptingExecutor executor = new InterruptingExecutor();
+        controller.setExecutor(executor);
+        
+        RunLevelFuture future = controller.proceedToAsync(0);
+        
+        Thread.sleep(SlowStopOneService.STOP_TIME / 2);
+        Assert.assertEquals(1, executor.interruptWaitingThreads());
+        
+        future.get(20, TimeUnit.SECONDS);
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+        
+        StopRecorder recorder = locator.getService(StopRecorder.class);
+        
+        List<String> stopped = recorder.getStopped();
+        Assert.assertEquals(2, stopped.size());
+        Assert.assertEquals(SlowStopFirstService.class.getSimpleName(), stopped.get(0));
+        Assert.assertEquals(SlowStopTwoService.class.getSimpleName(), stopped.get(1));
+        Assert.assertTrue(recorder.getErrors().isEmpty());
+        
+        Assert.assertEquals(1, executor.waitForDownThreads());
+    }
+
+}
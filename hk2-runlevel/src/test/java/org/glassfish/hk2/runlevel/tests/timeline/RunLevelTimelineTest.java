@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.timeline;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelServiceUtilities;
+import org.glassfish.hk2.runlevel.RunLevelTimeline;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class RunLevelTimelineTest {
+    private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(LeafService.SLEEP_TIME);
+    
+    private static ServiceLocator getLocator() {
+        return Utilities.getServiceLocator(EarlyService.class, LeafService.class,
+                MiddleService.class, RootService.class);
+    }
+    
+    private static HashMap<String, ServiceTiming> byName(List<ServiceTiming> timings, boolean stop) {
+        HashMap<String, ServiceTiming> retVal = new HashMap<String, ServiceTiming>();
+        for (ServiceTiming timing : timings) {
+            if (timing.isStop() != stop) continue;
+            
+            Assert.assertNull("Found " + timing + " twice", retVal.put(timing.getDescriptor().getImplementation(), timing));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Every start and stop is recorded, and the critical path
+     * goes from the leaf to the root of the longest chain
+     */
+    @Test
+    public void testStartsAndStopsRecorded() {
+        ServiceLocator locator = getLocator();
+        
+        RunLevelTimeline timeline = RunLevelServiceUtilities.enableTimeline(locator);
+        Assert.assertSame(timeline, RunLevelServiceUtilities.enableTimeline(locator));
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setThreadingPolicy(RunLevelController.ThreadingPolicy.USE_NO_THREADS);
+        
+        controller.proceedTo(2);
+        
+        HashMap<String, ServiceTiming> started = byName(timeline.getTimings(), false);
+        Assert.assertEquals(started.toString(), 4, started.size());
+        
+        ServiceTiming early = started.get(EarlyService.class.getName());
+        ServiceTiming leaf = started.get(LeafService.class.getName());
+        ServiceTiming middle = started.get(MiddleService.class.getName());
+        ServiceTiming root = started.get(RootService.class.getName());
+        
+        Assert.assertEquals(1, early.getRunLevel());
+        Assert.assertEquals(2, root.getRunLevel());
+        Assert.assertTrue(early.getEndNanos() <= leaf.getStartNanos());
+        
+        Assert.assertTrue(leaf.getDurationNanos() >= SLEEP_NANOS);
+        Assert.assertTrue(leaf.getEndNanos() <= middle.getEndNanos());
+        Assert.assertTrue(middle.getEndNanos() <= root.getEndNanos());
+        
+        for (ServiceTiming timing : started.values()) {
+            Assert.assertFalse(timing.isFailed());
+            Assert.assertTrue(timing.getSelfNanos() <= timing.getDurationNanos());
+            Assert.assertEquals(timing.getEndNanos() - timing.getStartNanos(), timing.getDurationNanos());
+            Assert.assertEquals(Thread.currentThread().getId(), timing.getThreadId());
+        }
+        
+        List<ServiceTiming> criticalPath = timeline.getCriticalPath();
+        Assert.assertEquals(criticalPath.toString(), 3, criticalPath.size());
+        Assert.assertSame(leaf, criticalPath.get(0));
+        Assert.assertSame(middle, criticalPath.get(1));
+        Assert.assertSame(root, criticalPath.get(2));
+        
+        controller.proceedTo(0);
+        
+        HashMap<String, ServiceTiming> stopped = byName(timeline.getTimings(), true);
+        Assert.assertEquals(stopped.toString(), 4, stopped.size());
+        
+        ServiceTiming leafStop = stopped.get(LeafService.class.getName());
+        Assert.assertTrue(leafStop.getDurationNanos() >= SLEEP_NANOS);
+        Assert.assertTrue(stopped.get(RootService.class.getName()).getEndNanos() <= leafStop.getStartNanos());
+        
+        // Stopping does not change the critical path of the start
+        Assert.assertEquals(criticalPath, timeline.getCriticalPath());
+    }
+    
+    /**
+     * The trace can be loaded by chrome://tracing, and
+     * clear forgets everything recorded
+     */
+    @Test
+    public void testChromeTraceAndClear() throws IOException {
+        ServiceLocator locator = getLocator();
+        
+        RunLevelTimeline timeline = RunLevelServiceUtilities.enableTimeline(locator);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.proceedTo(2);
+        
+        StringWriter writer = new StringWriter();
+        timeline.writeChromeTrace(writer);
+        
+        String trace = writer.toString();
+        Assert.assertTrue(trace, trace.startsWith("{"));
+        Assert.assertTrue(trace, trace.trim().endsWith("}"));
+        Assert.assertTrue(trace, trace.contains("\"traceEvents\":["));
+        Assert.assertTrue(trace, trace.contains("\"ph\":\"X\""));
+        Assert.assertTrue(trace, trace.contains("\"thread_name\""));
+        Assert.assertTrue(trace, trace.contains("\"criticalPath\":[\"" + LeafService.class.getName() + "\""));
+        Assert.assertTrue(trace, trace.contains("\"" + RootService.class.getName() + "\"]"));
+        
+        timeline.clear();
+        Assert.assertTrue(timeline.getTimings().isEmpty());
+        Assert.assertTrue(timeline.getCriticalPath().isEmpty());
+        
+        controller.proceedTo(0);
+        
+        List<ServiceTiming> timings = timeline.getTimings();
+        Assert.assertEquals(timings.toString(), 4, timings.size());
+        for (ServiceTiming timing : timings) {
+            Assert.assertTrue(timing.isStop());
+            Assert.assertTrue(timing.getStartNanos() >= 0);
+        }
+    }
+
+}
@@ -64,5 +64,25 @@ public class CacheUtilities {
     public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak) {
         return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak);
     }
+    
+    /**
+     * Returns a WEAKCarCache with the given computable and the given maximum value size of the cache.
+     * If isConcurrent is true the computable will be called without holding the lock that protects
+     * the internal lists of the cache, so that a slow computation of one key does not block the
+     * computation of other keys.  Concurrent requests for the same missing key will wait for a
+     * single computation of that key
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the cache
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param isConcurrent if true misses on different keys will be computed in parallel,
+     * if false all misses are computed while holding a single lock
+     * @return A WeakCARCache that is empty
+     */
+    public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak, boolean isConcurrent) {
+        return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak, isConcurrent);
+    }
 
 }
@@ -39,6 +39,8 @@
  */
 package org.glassfish.hk2.utilities.cache.internal;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -54,6 +56,15 @@ import org.glassfish.hk2.utilities.general.WeakHashLRU;
  * Implements the CAR algorithm as found here:
  * 
  * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.105.6057
+ * <p>
+ * When created in concurrent mode the computable is called outside of
+ * the lock protecting the four lists.  Each key being computed has its own
+ * in-flight record so that concurrent misses on the same key wait for
+ * a single computation while misses on different keys run in parallel.
+ * A thread that would wait for a computation whose owner is (directly or
+ * through other waiting threads) waiting for this thread computes the
+ * value itself instead, so that computations that need each other's keys
+ * cannot deadlock
  * 
  * @author jwells
  *
@@ -67,6 +78,12 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     private final WeakHashLRU<K> b1;
     private final WeakHashLRU<K> b2;
     
+    private final boolean isConcurrent;
+    
+    // Only used in concurrent mode, protected by this
+    private final HashMap<K, InFlight<V>> inFlight;
+    private final HashMap<Thread, InFlight<V>> waiters;
+    
     // The target size of t1, adaptive
     private int p = 0;
     
@@ -74,13 +91,21 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     private final AtomicLong tries = new AtomicLong(0L);
     
     public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak) {
+        this(computable, maxSize, isWeak, false);
+    }
+    
+    public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak, boolean isConcurrent) {
         this.computable = computable;
         this.maxSize = maxSize;
+        this.isConcurrent = isConcurrent;
         
         t1 = GeneralUtilities.getWeakHashClock(isWeak);
         t2 = GeneralUtilities.getWeakHashClock(isWeak);
         b1 = GeneralUtilities.getWeakHashLRU(isWeak);
         b2 = GeneralUtilities.getWeakHashLRU(isWeak);
+        
+        inFlight = (isConcurrent) ? new HashMap<K, InFlight<V>>() : null;
+        waiters = (isConcurrent) ? new HashMap<Thread, InFlight<V>>() : null;
     }
     
     private V getValueFromT(K key) {
@@ -115,6 +140,10 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
             return value;
         }
         
+        if (isConcurrent) {
+            return concurrentCompute(key);
+        }
+        
         synchronized (this) {
             value = getValueFromT(key);
             if (value != null) {
@@ -132,62 +161,233 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 return (V) cee.getComputation();
             }
             
-            int cacheSize = getValueSize();
-            if (cacheSize >= maxSize) {
-                replace();
-            
-                boolean inB1 = b1.contains(key);
-                boolean inB2 = b2.contains(key);
-                if (!inB1 && !inB2) {
-                    if ((t1.size() + b1.size()) >= maxSize) {
-                        b1.remove();
-                    }
-                    else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
-                        b2.remove();
-                    }
-                }
-            }
+            addValue(key, value);
+        }
         
-            boolean inB1 = b1.contains(key);
-            boolean inB2 = b2.contains(key);
+        return value;
+    }
+    
+    /**
+     * The miss path of the concurrent mode.  The computable is called
+     * with no lock held, only the in-flight bookkeeping and the addition
+     * of the new value to the lists are done while holding this
+     * 
+     * @param key The key that was not found in either T1 or T2
+     * @return The computed value
+     */
+    @SuppressWarnings("unchecked")
+    private V concurrentCompute(K key) {
+        Thread current = Thread.currentThread();
         
-            if (!inB1 && !inB2) {
-                t1.put(key, new CarValue<V>(value));
+        for (;;) {
+            InFlight<V> mine = null;
+            InFlight<V> theirs;
+            boolean wouldDeadlock = false;
+            
+            synchronized (this) {
+                V value = getValueFromT(key);
+                if (value != null) {
+                    hits.getAndIncrement();
+                    return value;
+                }
+                
+                theirs = inFlight.get(key);
+                if (theirs == null) {
+                    mine = new InFlight<V>();
+                    inFlight.put(key, mine);
+                }
+                else if (isWaitingFor(theirs.owner, current)) {
+                    wouldDeadlock = true;
+                }
+                else {
+                    waiters.put(current, theirs);
+                }
             }
-            else if (inB1) {
-                int b1size = b1.size();
-                if (b1size == 0) b1size = 1;  // Can happen in a weak situation, we fake the one
             
-                int b2size = b2.size();
+            if (wouldDeadlock) {
+                // The owner of the computation is waiting for this thread, so
+                // compute the value without waiting (and without caching it)
+                try {
+                    return computable.compute(key);
+                }
+                catch (ComputationErrorException cee) {
+                    return (V) cee.getComputation();
+                }
+            }
             
-                int ratio = b2size / b1size;  // integer division
-                if (ratio <= 0) ratio = 1;
+            if (theirs != null) {
+                V value;
+                try {
+                    value = theirs.waitForValue();
+                }
+                finally {
+                    synchronized (this) {
+                        waiters.remove(current);
+                    }
+                }
+                
+                if (value != null) return value;
+                
+                // The other computation was not cached, so compute again
+                continue;
+            }
             
-                p = p + ratio;
-                if (p > maxSize) p = maxSize;
+            V value;
+            boolean cacheable = true;
+            try {
+                value = computable.compute(key);
+            }
+            catch (ComputationErrorException cee) {
+                // In this case the value should not be kept in the cache
+                value = (V) cee.getComputation();
+                cacheable = false;
+            }
+            catch (RuntimeException re) {
+                abandon(key, mine);
+                throw re;
+            }
+            catch (Error er) {
+                abandon(key, mine);
+                throw er;
+            }
             
-                b1.remove(key);
-                t2.put(key, new CarValue<V>(value));
+            synchronized (this) {
+                if (inFlight.get(key) == mine) {
+                    inFlight.remove(key);
+                }
+                
+                if (mine.invalidated) {
+                    // A remove, releaseMatching or clear happened during the computation
+                    cacheable = false;
+                }
+                
+                if (cacheable) {
+                    addValue(key, value);
+                }
             }
-            else {
-                // Must be in B2
-                int b2size = b2.size();
-                if (b2size == 0) b2size = 1;  // Can happen in a weak situation, we fake the one
             
-                int b1size = b1.size();
+            mine.finish(cacheable ? value : null);
             
-                int ratio = b1size / b2size;
-                if (ratio <= 0) ratio = 1;
+            return value;
+        }
+    }
+    
+    /**
+     * Must be called with this held.  Follows the threads that the
+     * given thread is waiting for in this cache
+     * 
+     * @param waiter The thread that may be waiting
+     * @param waitee The thread that may be waited for
+     * @return true if waiter is waitee or is waiting (possibly through
+     * other threads) for a computation owned by waitee
+     */
+    private boolean isWaitingFor(Thread waiter, Thread waitee) {
+        // A waiting thread waits for only one computation, and no cycles are
+        // ever added, so this walk ends after at most one step per waiter
+        for (int lcv = 0; lcv <= waiters.size(); lcv++) {
+            if (waiter == waitee) return true;
             
-                p = p - ratio;
-                if (p < 0) p = 0;
+            InFlight<V> waitingFor = waiters.get(waiter);
+            if (waitingFor == null) return false;
             
-                b2.remove(key);
-                t2.put(key, new CarValue<V>(value));
+            waiter = waitingFor.owner;
+        }
+        
+        return false;
+    }
+    
+    private void abandon(K key, InFlight<V> mine) {
+        synchronized (this) {
+            if (inFlight.get(key) == mine) {
+                inFlight.remove(key);
             }
         }
         
-        return value;
+        mine.finish(null);
+    }
+    
+    /**
+     * Must be called with this held.  Puts a newly computed
+     * value into the proper list, adjusting the lists as
+     * per the CAR algorithm
+     * 
+     * @param key The key of the newly computed value
+     * @param value The newly computed value
+     */
+    private void addValue(K key, V value) {
+        int cacheSize = getValueSize();
+        if (cacheSize >= maxSize) {
+            replace();
+        
+            boolean inB1 = b1.contains(key);
+            boolean inB2 = b2.contains(key);
+            if (!inB1 && !inB2) {
+                if ((t1.size() + b1.size()) >= maxSize) {
+                    b1.remove();
+                }
+                else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
+                    b2.remove();
+                }
+            }
+        }
+    
+        boolean inB1 = b1.contains(key);
+        boolean inB2 = b2.contains(key);
+    
+        if (!inB1 && !inB2) {
+            t1.put(key, new CarValue<V>(value));
+        }
+        else if (inB1) {
+            int b1size = b1.size();
+            if (b1size == 0) b1size = 1;  // Can happen in a weak situation, we fake the one
+        
+            int b2size = b2.size();
+        
+            int ratio = b2size / b1size;  // integer division
+            if (ratio <= 0) ratio = 1;
+        
+            p = p + ratio;
+            if (p > maxSize) p = maxSize;
+        
+            b1.remove(key);
+            t2.put(key, new CarValue<V>(value));
+        }
+        else {
+            // Must be in B2
+            int b2size = b2.size();
+            if (b2size == 0) b2size = 1;  // Can happen in a weak situation, we fake the one
+        
+            int b1size = b1.size();
+        
+            int ratio = b1size / b2size;
+            if (ratio <= 0) ratio = 1;
+        
+            p = p - ratio;
+            if (p < 0) p = 0;
+        
+            b2.remove(key);
+            t2.put(key, new CarValue<V>(value));
+        }
+    }
+    
+    /**
+     * Must be called with this held.  Any computation currently in flight
+     * for a matching key will not have its result cached
+     * 
+     * @param filter The filter for the keys to invalidate, null means all keys
+     */
+    private void invalidateInFlight(CacheKeyFilter<K> filter) {
+        if (inFlight == null || inFlight.isEmpty()) return;
+        
+        Iterator<Map.Entry<K, InFlight<V>>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, InFlight<V>> entry = iterator.next();
+            
+            if (filter == null || filter.matches(entry.getKey())) {
+                entry.getValue().invalidated = true;
+                iterator.remove();
+            }
+        }
     }
     
     private void replace() {
@@ -251,6 +451,8 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized void clear() {
+        invalidateInFlight(null);
+        
         t1.clear();
         t2.clear();
         b1.clear();
@@ -283,6 +485,11 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized boolean remove(K key) {
+        if (inFlight != null) {
+            InFlight<V> computing = inFlight.remove(key);
+            if (computing != null) computing.invalidated = true;
+        }
+        
         if (t1.remove(key) == null) {
             if (t2.remove(key) == null) {
                 if (!b1.remove(key)) {
@@ -305,6 +512,8 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     public synchronized void releaseMatching(CacheKeyFilter<K> filter) {
         if (filter == null) return;
         
+        invalidateInFlight(filter);
+        
         b2.releaseMatching(filter);
         b1.releaseMatching(filter);
         t1.releaseMatching(filter);
@@ -331,6 +540,49 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
         }
         
     }
+    
+    private static class InFlight<V> {
+        private final Thread owner = Thread.currentThread();
+        
+        // Protected by the cache
+        private boolean invalidated = false;
+        
+        // Protected by this
+        private boolean done = false;
+        private V value;
+        
+        private synchronized void finish(V value) {
+            this.value = value;
+            done = true;
+            
+            notifyAll();
+        }
+        
+        /**
+         * Waits for the owner of this computation to finish
+         * 
+         * @return The value if it was placed into the cache,
+         * or null if the waiter must compute the value again
+         */
+        private synchronized V waitForValue() {
+            boolean interrupted = false;
+            try {
+                while (!done) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            
+            return value;
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT1Size()
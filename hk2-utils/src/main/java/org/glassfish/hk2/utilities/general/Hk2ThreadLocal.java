@@ -39,26 +39,31 @@
  */
 package org.glassfish.hk2.utilities.general;
 
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is a poor mans version of a {@link java.lang.ThreadLocal} with
  * the one major upside of a {@link #removeAll()} method that
  * can be used to remove ALL instances of all thread locals on
  * ALL threads from any other thread.
+ * <p>
+ * The value for each thread is kept in a holder found with a real
+ * {@link java.lang.ThreadLocal}, so {@link #get()} takes no locks.  The holders
+ * are also kept in a registry keyed weakly by thread, which is only used by
+ * {@link #removeAll()} and {@link #getSize()}
  *
  * @author jwells
  *
  */
 public class Hk2ThreadLocal<T> {
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final WriteLock wLock = readWriteLock.writeLock();
-    private final ReadLock rLock = readWriteLock.readLock();
+    private final ThreadLocal<Holder<T>> locals = new ThreadLocal<Holder<T>>();
     
-    private final WeakHashMap<Thread, T> locals = new WeakHashMap<Thread, T>();
+    private final ReferenceQueue<Thread> staleThreads = new ReferenceQueue<Thread>();
+    private final ConcurrentHashMap<Reference<? extends Thread>, Holder<T>> registry =
+            new ConcurrentHashMap<Reference<? extends Thread>, Holder<T>>();
     
     /**
      * Returns the current thread's "initial value" for this
@@ -91,35 +96,19 @@ public class Hk2ThreadLocal<T> {
      * @return the current thread's value of this thread-local
      */
     public T get() {
-        Thread id = Thread.currentThread();
+        Holder<T> holder = getHolder();
         
-        rLock.lock();
-        try {
-            if (locals.containsKey(id)) {
-                return locals.get(id);
-            }
-        }
-        finally {
-            rLock.unlock();
+        Box<T> box = holder.box;
+        if (box != null) {
+            return box.value;
         }
         
-        // Did not previously get a value, so get it now
-        // under write lock
-        wLock.lock();
-        try {
-            if (locals.containsKey(id)) {
-                return locals.get(id);
-            }
-            
-            T initialValue = initialValue();
-            locals.put(id, initialValue);
-            
-            return initialValue;
-        }
-        finally {
-            wLock.unlock();
-        }
+        // Did not previously get a value, so get it now.  Only
+        // this thread ever sets the value in its own holder
+        T initialValue = initialValue();
+        holder.box = new Box<T>(initialValue);
         
+        return initialValue;
     }
     
     /**
@@ -132,16 +121,7 @@ public class Hk2ThreadLocal<T> {
      *        this thread-local.
      */
     public void set(T value) {
-        Thread id = Thread.currentThread();
-        
-        wLock.lock();
-        try {
-            locals.put(id, value);
-        }
-        finally {
-            wLock.unlock();
-        }
-        
+        getHolder().box = new Box<T>(value);
     }
     
     /**
@@ -154,16 +134,10 @@ public class Hk2ThreadLocal<T> {
      * <tt>initialValue</tt> method in the current thread.
      */
      public void remove() {
-         Thread id = Thread.currentThread();
-         
-         wLock.lock();
-         try {
-             locals.remove(id);
-         }
-         finally {
-             wLock.unlock();
-         }
+         Holder<T> holder = locals.get();
+         if (holder == null) return;
          
+         holder.box = null;
      }
      
      /**
@@ -176,14 +150,11 @@ public class Hk2ThreadLocal<T> {
       * <tt>initialValue</tt> method in the current thread.
       */
       public void removeAll() {
-          wLock.lock();
-          try {
-              locals.clear();
-          }
-          finally {
-              wLock.unlock();
-          }
+          expungeStaleThreads();
           
+          for (Holder<T> holder : registry.values()) {
+              holder.box = null;
+          }
       }
       
       /**
@@ -196,12 +167,53 @@ public class Hk2ThreadLocal<T> {
        * have data with the Hk2ThreadLocal
        */
       public int getSize() {
-          rLock.lock();
-          try {
-              return locals.size();
+          expungeStaleThreads();
+          
+          int retVal = 0;
+          for (Holder<T> holder : registry.values()) {
+              if (holder.box != null) retVal++;
+          }
+          
+          return retVal;
+      }
+      
+      private Holder<T> getHolder() {
+          Holder<T> holder = locals.get();
+          if (holder != null) return holder;
+          
+          // First use of this thread-local on this thread
+          expungeStaleThreads();
+          
+          holder = new Holder<T>();
+          locals.set(holder);
+          registry.put(new WeakReference<Thread>(Thread.currentThread(), staleThreads), holder);
+          
+          return holder;
+      }
+      
+      private void expungeStaleThreads() {
+          Reference<? extends Thread> stale;
+          while ((stale = staleThreads.poll()) != null) {
+              registry.remove(stale);
           }
-          finally {
-              rLock.unlock();
+      }
+      
+      /**
+       * The per-thread cell.  It is written only by its own thread
+       * (set, get and remove) or cleared by removeAll
+       */
+      private static class Holder<T> {
+          private volatile Box<T> box;
+      }
+      
+      /**
+       * Allows null to be a legal value for a thread
+       */
+      private static class Box<T> {
+          private final T value;
+          
+          private Box(T value) {
+              this.value = value;
           }
       }
 }
@@ -0,0 +1,180 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities.cache.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Contention benchmark comparing the single lock mode of the
+ * CAR cache with the concurrent mode at 1, 8 and 64 threads.
+ * The computable simulates a slow reification by parking on
+ * every miss
+ * 
+ * @author jwells
+ *
+ */
+public class WeakCARCacheContentionTest {
+    private final static int KEY_SPACE = 400;
+    private final static int CACHE_SIZE = 200;
+    private final static int TOTAL_OPERATIONS = 24000;
+    private final static long MISS_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    
+    private final static int[] THREAD_COUNTS = { 1, 8, 64 };
+    
+    private static long run(boolean concurrent, int numThreads, SlowComputable computable) throws InterruptedException {
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(computable, CACHE_SIZE, false, concurrent);
+        final int perThread = TOTAL_OPERATIONS / numThreads;
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(numThreads);
+        final AtomicInteger wrongAnswers = new AtomicInteger();
+        
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            final int seed = lcv;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        int key = seed;
+                        for (int i = 0; i < perThread; i++) {
+                            // Cheap LCG so threads walk the key space differently
+                            key = ((key * 1103515245) + 12345) & Integer.MAX_VALUE;
+                            Integer getMe = new Integer(key % KEY_SPACE);
+                            
+                            if (!getMe.equals(cache.compute(getMe))) {
+                                wrongAnswers.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (InterruptedException ie) {
+                        wrongAnswers.incrementAndGet();
+                    }
+                    finally {
+                        finish.countDown();
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+        
+        long elapsed = System.nanoTime();
+        start.countDown();
+        Assert.assertTrue(finish.await(5, TimeUnit.MINUTES));
+        elapsed = System.nanoTime() - elapsed;
+        
+        Assert.assertEquals(0, wrongAnswers.get());
+        
+        return elapsed;
+    }
+    
+    /**
+     * Runs the benchmark for both modes and prints the throughput
+     */
+    @Test
+    public void testContention() throws InterruptedException {
+        for (int numThreads : THREAD_COUNTS) {
+            SlowComputable lockedComputable = new SlowComputable();
+            long locked = run(false, numThreads, lockedComputable);
+            
+            SlowComputable concurrentComputable = new SlowComputable();
+            long concurrent = run(true, numThreads, concurrentComputable);
+            
+            System.out.println("WeakCARCache contention threads=" + numThreads +
+                    " locked=" + opsPerSecond(locked) + " ops/s (misses=" + lockedComputable.computations.get() +
+                    ") concurrent=" + opsPerSecond(concurrent) + " ops/s (misses=" + concurrentComputable.computations.get() +
+                    ",maxParallelMisses=" + concurrentComputable.maxParallel.get() + ")");
+            
+            // The locked mode never computes two values at once
+            Assert.assertEquals(1, lockedComputable.maxParallel.get());
+            if (numThreads > 1) {
+                Assert.assertTrue(concurrentComputable.maxParallel.get() > 1);
+            }
+        }
+    }
+    
+    private static long opsPerSecond(long nanos) {
+        if (nanos <= 0) nanos = 1;
+        return (TOTAL_OPERATIONS * TimeUnit.SECONDS.toNanos(1)) / nanos;
+    }
+    
+    private static class SlowComputable implements Computable<Integer, Integer> {
+        private final AtomicInteger computations = new AtomicInteger();
+        private final AtomicInteger inProgress = new AtomicInteger();
+        private final AtomicInteger maxParallel = new AtomicInteger();
+
+        /* (non-Javadoc)
+         * @see org.glassfish.hk2.utilities.cache.Computable#compute(java.lang.Object)
+         */
+        @Override
+        public Integer compute(Integer key) {
+            computations.incrementAndGet();
+            
+            int current = inProgress.incrementAndGet();
+            try {
+                int max = maxParallel.get();
+                while (current > max && !maxParallel.compareAndSet(max, current)) {
+                    max = maxParallel.get();
+                }
+                
+                LockSupport.parkNanos(MISS_NANOS);
+            }
+            finally {
+                inProgress.decrementAndGet();
+            }
+            
+            return key;
+        }
+        
+    }
+
+}
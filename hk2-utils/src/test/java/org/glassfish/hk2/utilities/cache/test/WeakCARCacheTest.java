@@ -41,6 +41,9 @@ package org.glassfish.hk2.utilities.cache.test;
 
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
@@ -741,6 +744,253 @@ public class WeakCARCacheTest {
         testConcurrency(cache);
     }
     
+    @Test // @org.junit.Ignore
+    public void testConcurrencyConcurrentModeWeak() throws InterruptedException {
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, true, true);
+        testConcurrency(cache);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testConcurrencyConcurrentModeStrong() throws InterruptedException {
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, false, true);
+        testConcurrency(cache);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testAddElevenToCacheSizeTenConcurrentMode() {
+        WeakCARCache<String, Integer> car = CacheUtilities.createWeakCARCache(TO_INTEGER, SMALL_CACHE_SIZE, false, true);
+        testAddElevenToCacheSizeTen(car);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testPushPToFiveThenBackToZeroConcurrentMode() {
+        WeakCARCache<Integer, Integer> car = CacheUtilities.createWeakCARCache(INT_TO_INT, SMALL_CACHE_SIZE, false, true);
+        testPushPToFiveThenBackToZero(car);
+    }
+    
+    /**
+     * The computation of key 0 cannot finish until key 1 has been
+     * computed on another thread, which would hang if misses were
+     * computed under a single lock
+     */
+    @Test // @org.junit.Ignore
+    public void testMissesOnDifferentKeysRunInParallel() throws Throwable {
+        final CountDownLatch oneComputed = new CountDownLatch(1);
+        
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                if (key.intValue() == 0) {
+                    try {
+                        if (!oneComputed.await(20, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("Key 1 was not computed in parallel");
+                        }
+                    }
+                    catch (InterruptedException ie) {
+                        throw new IllegalStateException(ie);
+                    }
+                }
+                else {
+                    oneComputed.countDown();
+                }
+                
+                return key;
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread zero = new ComputeThread(cache, 0);
+        zero.start();
+        
+        Assert.assertEquals(1, cache.compute(1).intValue());
+        
+        zero.join(30 * 1000);
+        zero.check();
+        Assert.assertEquals(0, zero.result.intValue());
+        
+        Assert.assertEquals(2, cache.getValueSize());
+    }
+    
+    /**
+     * Many threads missing on the same key only compute it once
+     */
+    @Test // @org.junit.Ignore
+    public void testConcurrentMissesOnSameKeyComputeOnce() throws Throwable {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger computations = new AtomicInteger();
+        
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                computations.incrementAndGet();
+                try {
+                    release.await(20, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                
+                return key;
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread threads[] = new ComputeThread[NUM_THREADS];
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv] = new ComputeThread(cache, 5);
+            threads[lcv].start();
+        }
+        
+        // Give the threads a chance to pile up behind the first computation
+        Thread.sleep(200);
+        release.countDown();
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].join(30 * 1000);
+            threads[lcv].check();
+            Assert.assertEquals(5, threads[lcv].result.intValue());
+        }
+        
+        Assert.assertEquals(1, computations.get());
+        Assert.assertEquals(1, cache.getValueSize());
+    }
+    
+    /**
+     * A key released while its value is being computed does
+     * not have the (possibly stale) value put into the cache
+     */
+    @Test // @org.junit.Ignore
+    public void testReleaseDuringComputationIsNotCached() throws Throwable {
+        final CountDownLatch computing = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                computing.countDown();
+                try {
+                    released.await(20, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                
+                return key;
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread computer = new ComputeThread(cache, 3);
+        computer.start();
+        
+        Assert.assertTrue(computing.await(20, TimeUnit.SECONDS));
+        
+        cache.releaseMatching(new CacheKeyFilter<Integer>() {
+
+            @Override
+            public boolean matches(Integer key) {
+                return key.intValue() == 3;
+            }
+            
+        });
+        released.countDown();
+        
+        computer.join(30 * 1000);
+        computer.check();
+        Assert.assertEquals(3, computer.result.intValue());
+        
+        Assert.assertEquals(0, cache.getValueSize());
+    }
+    
+    /**
+     * The computation of key 0 needs key 1 and the computation of
+     * key 1 needs key 0, each started on its own thread.  Waiting
+     * for each other's computation would hang forever
+     */
+    @SuppressWarnings("unchecked")
+    @Test // @org.junit.Ignore
+    public void testCrossDependentMissesDoNotDeadlock() throws Throwable {
+        final CountDownLatch bothComputing = new CountDownLatch(2);
+        final ThreadLocal<Boolean> nested = new ThreadLocal<Boolean>();
+        final WeakCARCache<Integer, Integer> cache[] = new WeakCARCache[1];
+        
+        cache[0] = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                if (nested.get() != null) return key;
+                
+                nested.set(Boolean.TRUE);
+                try {
+                    bothComputing.countDown();
+                    if (!bothComputing.await(20, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("The other key was not computed in parallel");
+                    }
+                    
+                    int other = 1 - key.intValue();
+                    return key.intValue() + 10 * cache[0].compute(other).intValue();
+                }
+                catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                finally {
+                    nested.remove();
+                }
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread zero = new ComputeThread(cache[0], 0);
+        ComputeThread one = new ComputeThread(cache[0], 1);
+        zero.start();
+        one.start();
+        
+        zero.join(30 * 1000);
+        one.join(30 * 1000);
+        zero.check();
+        one.check();
+        
+        // Whichever thread computed its dependency itself got the
+        // nested value, the other waited for the full value
+        int zeroResult = zero.result.intValue();
+        int oneResult = one.result.intValue();
+        Assert.assertTrue("zero=" + zeroResult + " one=" + oneResult,
+                (zeroResult == 10 && oneResult == 1) ||
+                (zeroResult == 10 && oneResult == 101));
+    }
+    
+    private static class ComputeThread extends Thread {
+        private final WeakCARCache<Integer, Integer> cache;
+        private final Integer key;
+        private volatile Integer result;
+        private volatile Throwable error;
+        
+        private ComputeThread(WeakCARCache<Integer, Integer> cache, Integer key) {
+            this.cache = cache;
+            this.key = key;
+            
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                result = cache.compute(key);
+            }
+            catch (Throwable th) {
+                error = th;
+            }
+        }
+        
+        private void check() throws Throwable {
+            Assert.assertFalse(isAlive());
+            if (error != null) throw error;
+        }
+    }
+    
     private final static int CONCURRENT_ITERATIONS = 100000;
     
     private static class Runner implements Runnable {
@@ -298,6 +298,33 @@ public class GeneralUtilitiesTest {
         g2.shutdown();
     }
     
+    /**
+     * Tests that removeAll clears the values of other threads
+     * while leaving the thread-local usable on those threads
+     */
+    @Test
+    public void testRemoveAllClearsSize() throws InterruptedException {
+        ThreadService ts = new ThreadService();
+        
+        ThreadSpecificReuppingGetter g1 = new ThreadSpecificReuppingGetter(ts, -1);
+        
+        Thread t1 = new Thread(g1);
+        t1.start();
+        
+        Assert.assertEquals(-1, g1.getThreadIdFromService());
+        Assert.assertEquals(Thread.currentThread().getId(), ts.getThreadIdFromLocal());
+        Assert.assertEquals(2, ts.getSize());
+        
+        ts.doRemoveAll();
+        Assert.assertEquals(0, ts.getSize());
+        
+        g1.reup();
+        Assert.assertEquals(t1.getId(), g1.getThreadIdFromService());
+        Assert.assertEquals(1, ts.getSize());
+        
+        g1.shutdown();
+    }
+    
     /**
      * Tests that a ThreadLocal can have a null value
      */
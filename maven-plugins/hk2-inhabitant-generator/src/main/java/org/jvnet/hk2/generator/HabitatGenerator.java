@@ -81,6 +81,8 @@ public class HabitatGenerator {
     public final static String DIRECTORY_ARG = "--directory";
     /** This option gives the name of directory in the target location where the file should be placed */
     public final static String NO_DATE_ARG = "--noDate";
+    /** This option writes the file in the binary format, which is faster to read but not human-readable */
+    public final static String BINARY_ARG = "--binary";
     
     private final String directoryOrFileToGenerateFor;
     private final String outjarName;
@@ -90,6 +92,7 @@ public class HabitatGenerator {
     private final boolean noSwap;
     private final String outputDirectory;
     private final boolean includeDate;
+    private final boolean binary;
     
     private HabitatGenerator(String directoryOrFileToGenerateFor,
             String outjarName,
@@ -98,7 +101,8 @@ public class HabitatGenerator {
             String searchPath,
             boolean noSwap,
             String outputDirectory,
-            boolean includeDate) {
+            boolean includeDate,
+            boolean binary) {
         this.directoryOrFileToGenerateFor = directoryOrFileToGenerateFor;
         this.outjarName = outjarName;
         this.locatorName = locatorName;
@@ -107,6 +111,7 @@ public class HabitatGenerator {
         this.noSwap = noSwap;
         this.outputDirectory = outputDirectory;
         this.includeDate = includeDate;
+        this.binary = binary;
     }
     
     private void printThrowable(Throwable th) {
@@ -124,7 +129,7 @@ public class HabitatGenerator {
     private int go() {
         GeneratorRunner runner = new GeneratorRunner(directoryOrFileToGenerateFor,
                 outjarName, locatorName, verbose, searchPath, noSwap, outputDirectory,
-                includeDate);
+                includeDate, binary);
         
         try {
             runner.go();
@@ -161,6 +166,7 @@ public class HabitatGenerator {
           "\t[--searchPath path-separator-delimited-classpath]\n" +
           "\t[--outjar jarFile]\n" +
           "\t[--locator locatorName]\n" +
+          "\t[--binary]\n" +
           "\t[--verbose]");
     }
     
@@ -173,7 +179,7 @@ public class HabitatGenerator {
      * A utility to generate inhabitants files.  By default the first element of the classpath will be analyzed and
      * an inhabitants file will be put into the JAR or directory.  The arguments are as follows:
      * <p>
-     * HabitatGenerator [--file jarFileOrDirectory] [--searchPath path-separator-delimited-classpath] [--outjar jarfile] [--locator locatorName] [--directory targetDirectory] [--verbose]
+     * HabitatGenerator [--file jarFileOrDirectory] [--searchPath path-separator-delimited-classpath] [--outjar jarfile] [--locator locatorName] [--directory targetDirectory] [--binary] [--verbose]
      * </p>
      * If the input file is a directory then the output file will go into META-INF/locatorName in the
      * original directory
@@ -185,6 +191,9 @@ public class HabitatGenerator {
      * name of the output jar file that should be written.  This defaults to the input jar file
      * itself if not specified.  If specified and the jarFileOrDirectory parameter is a directory
      * then this parameter is ignored
+     * <p>
+     * --binary writes the file in the format of {@link org.glassfish.hk2.utilities.BinaryDescriptorFile},
+     * which is faster for the populator to read than the text format
      * 
      * @param argv The set of command line arguments
      * @return 0 on success, non-zero on failure
@@ -198,6 +207,7 @@ public class HabitatGenerator {
         boolean userNoSwap = false;
         String outputDirectory = null;
         boolean defaultIncludeDate = true;
+        boolean defaultBinary = false;
         
         for (int lcv = 0; lcv < argv.length; lcv++) {
             if (VERBOSE_ARG.equals(argv[lcv])) {
@@ -245,6 +255,9 @@ public class HabitatGenerator {
             else if (NO_DATE_ARG.equals(argv[lcv])) {
                 defaultIncludeDate = false;
             }
+            else if (BINARY_ARG.equals(argv[lcv])) {
+                defaultBinary = true;
+            }
             else if (DIRECTORY_ARG.equals(argv[lcv])) {
                 lcv++;
                 if (lcv >= argv.length) {
@@ -289,7 +302,7 @@ public class HabitatGenerator {
         
         HabitatGenerator hg = new HabitatGenerator(defaultFileToHandle, outjarFile,
                 defaultLocatorName, defaultVerbose, searchPath, userNoSwap,
-                outputDirectory, defaultIncludeDate);
+                outputDirectory, defaultIncludeDate, defaultBinary);
         
         return hg.go();
     }
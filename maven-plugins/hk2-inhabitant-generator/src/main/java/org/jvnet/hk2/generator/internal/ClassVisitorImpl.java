@@ -56,11 +56,13 @@ import org.glassfish.hk2.api.ClassAnalyzer;
 import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.external.org.objectweb.asm.AnnotationVisitor;
 import org.glassfish.hk2.external.org.objectweb.asm.MethodVisitor;
 import org.glassfish.hk2.external.org.objectweb.asm.Type;
+import org.jvnet.hk2.generator.internal.GenericSignature.TypeReference;
 
 /**
  * @author jwells
@@ -214,7 +216,7 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
                 return baseName;
             }
             
-            return new MetadataAnnotationVisitor(loadQualifierName);
+            return new MetadataAnnotationVisitor(loadQualifierName, null, true);
         }
         
         GenerateMethodAnnotationData gmad = utilities.isClassAGenerator(searchHeres, loadQualifierName);
@@ -307,6 +309,8 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
             }
         }
         
+        addContractSignatures(generatedDescriptor, TypeReference.unknownArguments(implName, 0));
+        
         for (String qualifier : qualifiers) {
             generatedDescriptor.addQualifier(qualifier);
         }
@@ -352,6 +356,20 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
         generatedDescriptors.add(generatedDescriptor);
     }
     
+    /**
+     * Records the generic signatures of the advertised contracts so that the
+     * locator can rule this service out of parameterized lookups without loading it
+     */
+    private void addContractSignatures(DescriptorImpl di, TypeReference serviceType) {
+        List<String> signatures = utilities.getContractSignatures(searchHeres,
+                serviceType, di.getAdvertisedContracts());
+        if (signatures == null) return;
+        
+        for (String signature : signatures) {
+            di.addMetadata(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY, signature);
+        }
+    }
+    
     private MethodVisitor visitConfiguredMethod(int access, String name, String desc, String signature, String[] exceptions) {
         String methodListActual = Utilities.getListActualType(signature);
         if (methodListActual == null) {
@@ -412,6 +430,13 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
             for (String contract : associatedContracts) {
                 asAFactory.addAdvertisedContract(contract);
             }
+            
+            TypeReference providedType = (signature == null) ?
+                    TypeReference.unknownArguments(trueFactoryClass, 0) :
+                    GenericSignature.parseReturnType(signature);
+            if (providedType != null) {
+                addContractSignatures(asAFactory, providedType);
+            }
         }
         
         return new MethodVisitorImpl(asAFactory);
@@ -582,18 +607,42 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
     private class MetadataAnnotationVisitor extends AbstractAnnotationVisitorImpl {
         private final String scopeOrQualifierName;
         private final String arrayName;
+        private final boolean recordValues;
         
         private MetadataAnnotationVisitor(String scopeOrQualifierName) {
-            this(scopeOrQualifierName, null);
+            this(scopeOrQualifierName, null, false);
         }
         
-        private MetadataAnnotationVisitor(String scopeOrQualifierName, String arrayName) {
+        private MetadataAnnotationVisitor(String scopeOrQualifierName, String arrayName, boolean recordValues) {
             this.scopeOrQualifierName = scopeOrQualifierName;
             this.arrayName = arrayName;
+            this.recordValues = recordValues;
+        }
+        
+        /**
+         * Only values explicitly given in the class file are seen here, which is
+         * fine since the locator does not check members that were not recorded
+         */
+        private void recordQualifierValue(String name, String value) {
+            if (!recordValues || name == null || value == null) return;
+            
+            ReflectionHelper.addMetadata(metadata, ContractSignatures.QUALIFIER_VALUE_METADATA_KEY,
+                    ContractSignatures.encodeQualifierValue(scopeOrQualifierName, name, value));
         }
         
         @Override
         public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                Type type = (Type) value;
+                if (type.getSort() != Type.ARRAY) {
+                    recordQualifierValue(name, type.getClassName());
+                }
+            }
+            else if (value instanceof String || value instanceof Number ||
+                    value instanceof Boolean || value instanceof Character) {
+                recordQualifierValue(name, value.toString());
+            }
+            
             if (name == null) name = arrayName;
             String metadataKey = utilities.getMetadataKey(scopeOrQualifierName, name);
             
@@ -629,7 +678,15 @@ public class ClassVisitorImpl extends AbstractClassVisitorImpl {
          */
         @Override
         public AnnotationVisitor visitArray(String name) {
-            return new MetadataAnnotationVisitor(scopeOrQualifierName, name);
+            return new MetadataAnnotationVisitor(scopeOrQualifierName, name, false);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.AnnotationVisitor#visitEnum(java.lang.String, java.lang.String, java.lang.String)
+         */
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            recordQualifierValue(name, value);
         }
     }
     
@@ -70,6 +70,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
 /**
@@ -90,6 +91,7 @@ public class GeneratorRunner {
     private final boolean noSwap;
     private final String outputDirectory;  // Not used in the JAR case
     private final boolean includeDate;
+    private final boolean binary;
     private final boolean outJarIsInJar;
 
     /**
@@ -113,6 +115,34 @@ public class GeneratorRunner {
             boolean noSwap,
             String outputDirectory,
             boolean includeDate) {
+        this(fileOrDirectory, outjarName, locatorName, verbose, searchPath,
+                noSwap, outputDirectory, includeDate, false);
+    }
+    
+    /**
+     * This initializes the GeneratorRunner with the values needed to run
+     * 
+     * @param fileOrDirectory The fileOrDirectory to inspect for services
+     * @param outjarName The name of the jar file to create (can be the fileOrDirectory)
+     * @param locatorName The name of the locator these files should be put into
+     * @param verbose true if this should print information about progress
+     * @param searchPath The path-separator delimited list of files or directories to search for
+     *   contracts and qualifiers and various other annotations
+     * @param noSwap true if this run should NOT swap files (faster but riskier)
+     * @param outputDirectory The directory where the file should go
+     * @param includeDate Whether or not the output file should include a date (ignored if binary)
+     * @param binary true if the file should be written in the binary format of
+     *   {@link BinaryDescriptorFile} rather than as text
+     */
+    public GeneratorRunner(String fileOrDirectory,
+            String outjarName,
+            String locatorName,
+            boolean verbose,
+            String searchPath,
+            boolean noSwap,
+            String outputDirectory,
+            boolean includeDate,
+            boolean binary) {
         this.fileOrDirectory = fileOrDirectory;
         this.outjarName = outjarName;
         this.locatorName = locatorName;
@@ -121,11 +151,13 @@ public class GeneratorRunner {
         this.outputDirectory = outputDirectory;
         utilities = new Utilities(verbose, searchPath);
         this.includeDate = includeDate;
+        this.binary = binary;
         outJarIsInJar = fileOrDirectory.equals(outjarName);
         
         if (verbose) {
             System.out.println("HabitatGenerator: inputFile=" + fileOrDirectory + " outjarName=" + outjarName +
-                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory);
+                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory +
+                    " binary=" + binary);
         }
     }
     
@@ -325,14 +357,7 @@ public class GeneratorRunner {
         URI jarURI = URI.create("jar:" + jarFile.toURI());
         
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintWriter bWriter = new PrintWriter(baos);
-        writeHeader(bWriter);
-        
-        for (DescriptorImpl desc : descriptors) {
-            desc.writeObject(bWriter);
-        }
-        
-        bWriter.close();
+        writeDescriptors(descriptors, baos);
         baos.close();
         
         byte data[] = baos.toByteArray();
@@ -381,16 +406,12 @@ public class GeneratorRunner {
         }
         
         FileOutputStream fos = new FileOutputStream(outFile);
-        
-        PrintWriter pw = new PrintWriter(fos);
-        writeHeader(pw);
-        
-        for (DescriptorImpl di : descriptors) {
-            di.writeObject(pw);
+        try {
+            writeDescriptors(descriptors, fos);
+        }
+        finally {
+            fos.close();
         }
-        
-        pw.close();
-        fos.close();
         
         if (verbose) {
             System.out.println("Wrote " + descriptors.size() + " entries to inhabitant file " + outFile.getAbsolutePath());
@@ -399,6 +420,22 @@ public class GeneratorRunner {
         return outFile;
     }
     
+    private void writeDescriptors(List<DescriptorImpl> descriptors, OutputStream os) throws IOException {
+        if (binary) {
+            BinaryDescriptorFile.write(descriptors, os);
+            return;
+        }
+        
+        PrintWriter pw = new PrintWriter(os);
+        writeHeader(pw);
+        
+        for (DescriptorImpl di : descriptors) {
+            di.writeObject(pw);
+        }
+        
+        pw.flush();
+    }
+    
     private void writeHeader(PrintWriter writer) {
         writer.println("#");
         if (includeDate) {
@@ -0,0 +1,413 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.generator.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.glassfish.hk2.external.org.objectweb.asm.Opcodes;
+import org.glassfish.hk2.external.org.objectweb.asm.signature.SignatureReader;
+import org.glassfish.hk2.external.org.objectweb.asm.signature.SignatureVisitor;
+
+/**
+ * The generic information of a class file that is needed to record
+ * contract signatures: the number of type parameters of the class and
+ * its super types as declared
+ * 
+ * @author jwells
+ *
+ */
+public class GenericSignature {
+    private final int typeParameterCount;
+    private final List<TypeReference> superTypes;
+    
+    /* package */ GenericSignature(int typeParameterCount, List<TypeReference> superTypes) {
+        this.typeParameterCount = typeParameterCount;
+        this.superTypes = Collections.unmodifiableList(superTypes);
+    }
+    
+    /**
+     * Parses the generic signature of a class, falling back to the raw
+     * super types when the class has no generic signature
+     * 
+     * @param signature The signature attribute of the class, may be null
+     * @param superName The slash-delimited super class name, may be null
+     * @param interfaces The slash-delimited interface names, may be null
+     * @return The parsed class signature
+     */
+    public static GenericSignature parseClass(String signature, String superName, String interfaces[]) {
+        if (signature == null) {
+            List<TypeReference> superTypes = new LinkedList<TypeReference>();
+            if (interfaces != null) {
+                for (String iFace : interfaces) {
+                    superTypes.add(new TypeReference(iFace));
+                }
+            }
+            if (superName != null) {
+                superTypes.add(new TypeReference(superName));
+            }
+            
+            return new GenericSignature(0, superTypes);
+        }
+        
+        ClassSignatureVisitor visitor = new ClassSignatureVisitor();
+        new SignatureReader(signature).accept(visitor);
+        
+        List<TypeReference> superTypes = new LinkedList<TypeReference>(visitor.interfaces);
+        if (visitor.superclass != null) {
+            superTypes.add(visitor.superclass.reference);
+        }
+        
+        return new GenericSignature(visitor.typeParameterCount, superTypes);
+    }
+    
+    /**
+     * Parses the return type of a generic method signature
+     * 
+     * @param methodSignature The signature attribute of the method, may not be null
+     * @return The return type, or null if it is not a class type (for
+     * example a type variable or an array)
+     */
+    public static TypeReference parseReturnType(String methodSignature) {
+        MethodSignatureVisitor visitor = new MethodSignatureVisitor();
+        new SignatureReader(methodSignature).accept(visitor);
+        
+        TypeReference returnType = visitor.returnType.reference;
+        return returnType.getRawName() == null ? null : returnType;
+    }
+    
+    /**
+     * @return The number of type parameters declared by the class
+     */
+    public int getTypeParameterCount() {
+        return typeParameterCount;
+    }
+    
+    /**
+     * @return The declared interfaces followed by the declared super class
+     */
+    public List<TypeReference> getSuperTypes() {
+        return superTypes;
+    }
+    
+    /**
+     * A reference to a class type with its type arguments
+     * 
+     * @author jwells
+     */
+    public static class TypeReference {
+        private String rawName;
+        private final List<String> arguments = new ArrayList<String>();
+        
+        private TypeReference() {
+        }
+        
+        private TypeReference(String slashName) {
+            rawName = slashName.replace('/', '.');
+        }
+        
+        /**
+         * Creates a reference to the given class with an unknown
+         * type argument for each of its type parameters
+         * 
+         * @param rawName The dot-delimited name of the class
+         * @param typeParameterCount The number of type parameters of the class
+         * @return A reference to the class
+         */
+        public static TypeReference unknownArguments(String rawName, int typeParameterCount) {
+            TypeReference retVal = new TypeReference();
+            retVal.rawName = rawName;
+            
+            for (int lcv = 0; lcv < typeParameterCount; lcv++) {
+                retVal.arguments.add(null);
+            }
+            
+            return retVal;
+        }
+        
+        /**
+         * @return The dot-delimited name of the raw class
+         */
+        public String getRawName() {
+            return rawName;
+        }
+        
+        /**
+         * @return One entry per type argument, either the dot-delimited name of the
+         * raw class of the argument or null if the argument is not a class
+         */
+        public List<String> getArguments() {
+            return arguments;
+        }
+        
+        public String toString() {
+            return "TypeReference(" + rawName + "," + arguments + ")";
+        }
+    }
+    
+    /**
+     * Ignores everything it is given
+     */
+    private static class IgnoringVisitor extends SignatureVisitor {
+        private IgnoringVisitor() {
+            super(Opcodes.ASM6);
+        }
+    }
+    
+    private final static IgnoringVisitor IGNORE = new IgnoringVisitor();
+    
+    private static class ClassSignatureVisitor extends SignatureVisitor {
+        private int typeParameterCount = 0;
+        private TypeReferenceVisitor superclass;
+        private final List<TypeReference> interfaces = new LinkedList<TypeReference>();
+        
+        private ClassSignatureVisitor() {
+            super(Opcodes.ASM6);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitFormalTypeParameter(java.lang.String)
+         */
+        @Override
+        public void visitFormalTypeParameter(String name) {
+            typeParameterCount++;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitClassBound()
+         */
+        @Override
+        public SignatureVisitor visitClassBound() {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitInterfaceBound()
+         */
+        @Override
+        public SignatureVisitor visitInterfaceBound() {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitSuperclass()
+         */
+        @Override
+        public SignatureVisitor visitSuperclass() {
+            superclass = new TypeReferenceVisitor();
+            return superclass;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitInterface()
+         */
+        @Override
+        public SignatureVisitor visitInterface() {
+            TypeReferenceVisitor retVal = new TypeReferenceVisitor();
+            interfaces.add(retVal.reference);
+            return retVal;
+        }
+    }
+    
+    private static class MethodSignatureVisitor extends SignatureVisitor {
+        private final TypeReferenceVisitor returnType = new TypeReferenceVisitor();
+        
+        private MethodSignatureVisitor() {
+            super(Opcodes.ASM6);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitClassBound()
+         */
+        @Override
+        public SignatureVisitor visitClassBound() {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitInterfaceBound()
+         */
+        @Override
+        public SignatureVisitor visitInterfaceBound() {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitParameterType()
+         */
+        @Override
+        public SignatureVisitor visitParameterType() {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitReturnType()
+         */
+        @Override
+        public SignatureVisitor visitReturnType() {
+            return returnType;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitExceptionType()
+         */
+        @Override
+        public SignatureVisitor visitExceptionType() {
+            return IGNORE;
+        }
+    }
+    
+    /**
+     * Visits one class type signature.  Only the raw class of each of its
+     * type arguments is kept, anything that is not a class becomes null
+     */
+    private static class TypeReferenceVisitor extends SignatureVisitor {
+        private final TypeReference reference = new TypeReference();
+        
+        private TypeReferenceVisitor() {
+            super(Opcodes.ASM6);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitClassType(java.lang.String)
+         */
+        @Override
+        public void visitClassType(String name) {
+            reference.rawName = name.replace('/', '.');
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitInnerClassType(java.lang.String)
+         */
+        @Override
+        public void visitInnerClassType(String name) {
+            // The arguments seen so far belong to the outer class
+            reference.rawName = reference.rawName + "$" + name;
+            reference.arguments.clear();
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitTypeArgument()
+         */
+        @Override
+        public void visitTypeArgument() {
+            reference.arguments.add(null);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitTypeArgument(char)
+         */
+        @Override
+        public SignatureVisitor visitTypeArgument(char wildcard) {
+            int index = reference.arguments.size();
+            reference.arguments.add(null);
+            
+            if (wildcard != INSTANCEOF) return IGNORE;
+            
+            return new ArgumentVisitor(reference.arguments, index);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitTypeVariable(java.lang.String)
+         */
+        @Override
+        public void visitTypeVariable(String name) {
+            // Leaves the raw name null
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitArrayType()
+         */
+        @Override
+        public SignatureVisitor visitArrayType() {
+            return IGNORE;
+        }
+    }
+    
+    /**
+     * Records the raw class of one type argument
+     */
+    private static class ArgumentVisitor extends SignatureVisitor {
+        private final List<String> arguments;
+        private final int index;
+        
+        private ArgumentVisitor(List<String> arguments, int index) {
+            super(Opcodes.ASM6);
+            
+            this.arguments = arguments;
+            this.index = index;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitClassType(java.lang.String)
+         */
+        @Override
+        public void visitClassType(String name) {
+            arguments.set(index, name.replace('/', '.'));
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitInnerClassType(java.lang.String)
+         */
+        @Override
+        public void visitInnerClassType(String name) {
+            arguments.set(index, arguments.get(index) + "$" + name);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitTypeArgument(char)
+         */
+        @Override
+        public SignatureVisitor visitTypeArgument(char wildcard) {
+            return IGNORE;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.objectweb.asm.signature.SignatureVisitor#visitArrayType()
+         */
+        @Override
+        public SignatureVisitor visitArrayType() {
+            return IGNORE;
+        }
+    }
+}
@@ -51,6 +51,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -81,7 +82,9 @@ import org.jvnet.hk2.annotations.ContractsProvided;
 import org.glassfish.hk2.external.org.objectweb.asm.AnnotationVisitor;
 import org.glassfish.hk2.external.org.objectweb.asm.ClassReader;
 import org.glassfish.hk2.external.org.objectweb.asm.MethodVisitor;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.jvnet.hk2.generator.internal.GenericSignature.TypeReference;
 
 /**
  * @author jwells
@@ -103,6 +106,7 @@ public class Utilities {
     private final Map<String, String> FOUND_SUPERCLASS = new HashMap<String, String>();  // Terminal is null
     private final Map<String, Set<String>> FOUND_INTERFACES = new HashMap<String, Set<String>>();
     private final Map<String, GenerateMethodAnnotationData> FOUND_GENERATORS = new HashMap<String, GenerateMethodAnnotationData>();
+    private final Map<String, GenericSignature> FOUND_SIGNATURES = new HashMap<String, GenericSignature>();  // Only classes that were read
     
     // Map from scope or qualifier name to method name to metadata key value
     private final Map<String, Map<String, String>> METADATA =
@@ -308,6 +312,11 @@ public class Utilities {
             FOUND_SUPERCLASS.put(kcd.getClazz(), kcd.getSuperclass());
             FOUND_INTERFACES.put(kcd.getClazz(), kcd.getiFaces());
             FOUND_GENERATORS.put(kcd.getClazz(), null);
+            
+            GenericSignature knownSignature = getKnownSignature(kcd.getClazz());
+            if (knownSignature != null) {
+                FOUND_SIGNATURES.put(kcd.getClazz(), knownSignature);
+            }
         }
         
         if (verbose && searchPath != null) {
@@ -321,6 +330,24 @@ public class Utilities {
         }
     }
     
+    /**
+     * None of the known classes have super types, so only the number of type
+     * parameters is needed, which can be taken from the class itself if it is here
+     */
+    private static GenericSignature getKnownSignature(String dotDelimitedName) {
+        try {
+            Class<?> knownClass = Class.forName(dotDelimitedName, false, Utilities.class.getClassLoader());
+            
+            return new GenericSignature(knownClass.getTypeParameters().length, new LinkedList<TypeReference>());
+        }
+        catch (ClassNotFoundException cnfe) {
+            return null;
+        }
+        catch (LinkageError le) {
+            return null;
+        }
+    }
+    
     private static List<File> getFilesFromSearchPath(String searchPath) {
         if (searchPath == null) return null;
         
@@ -690,6 +717,134 @@ public class Utilities {
         return retVal;
     }
     
+    /**
+     * Gets the generic signatures of every occurrence of the given contracts in the
+     * hierarchy of the service.  Super types are recorded as declared, so type variables
+     * of the declaring class become unknown arguments
+     * 
+     * @param searchHeres The places to look for classes
+     * @param serviceType The type of the service, a raw type with no arguments
+     * for a class or the generic return type of a provide method
+     * @param contracts The contracts of the service
+     * @return The encoded signatures of the contracts, or null if nothing should be recorded
+     * because no contract is generic or because part of the hierarchy could not be read
+     */
+    public List<String> getContractSignatures(List<File> searchHeres, TypeReference serviceType, Set<String> contracts) {
+        LinkedHashSet<String> signatures = new LinkedHashSet<String>();
+        Set<String> reached = new HashSet<String>();
+        if (!addContractSignatures(searchHeres, serviceType, contracts, signatures, reached)) {
+            return null;
+        }
+        
+        // Every contract must be covered, otherwise the locator could wrongly rule this service out
+        if (!reached.containsAll(contracts)) return null;
+        
+        for (String signature : signatures) {
+            if (signature.indexOf('<') >= 0) {
+                return new ArrayList<String>(signatures);
+            }
+        }
+        
+        return null;
+    }
+    
+    private boolean addContractSignatures(List<File> searchHeres,
+            TypeReference type,
+            Set<String> contracts,
+            Set<String> signatures,
+            Set<String> cycleDetector) {
+        String dotDelimitedName = type.getRawName();
+        
+        List<String> arguments = type.getArguments();
+        
+        GenericSignature declared = getGenericSignature(searchHeres, dotDelimitedName);
+        if (declared == null) {
+            // Platform classes are not on the search path.  Their super types are never needed
+            // but a platform contract can only be recorded when its arguments are given
+            if (!dotDelimitedName.startsWith(ContractSignatures.PLATFORM_PACKAGE_PREFIX)) return false;
+            if (!contracts.contains(dotDelimitedName)) return true;
+            if (arguments.isEmpty()) return false;
+            
+            declared = new GenericSignature(arguments.size(), new LinkedList<TypeReference>());
+        }
+        
+        if (contracts.contains(dotDelimitedName)) {
+            if (arguments.isEmpty()) {
+                // A raw usage, at runtime the type variables of the class stand in for the arguments
+                arguments = TypeReference.unknownArguments(dotDelimitedName,
+                        declared.getTypeParameterCount()).getArguments();
+            }
+            
+            List<Set<String>> closures = new ArrayList<Set<String>>(arguments.size());
+            for (String argument : arguments) {
+                closures.add(getArgumentClosure(searchHeres, argument));
+            }
+            
+            signatures.add(ContractSignatures.encodeSignature(dotDelimitedName, closures));
+        }
+        
+        // Each class only needs to be walked once, its super types are always recorded as declared
+        if (!cycleDetector.add(dotDelimitedName)) return true;
+        
+        for (TypeReference superType : declared.getSuperTypes()) {
+            if (Object.class.getName().equals(superType.getRawName())) continue;
+            
+            if (!addContractSignatures(searchHeres, superType, contracts, signatures, cycleDetector)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the name of the argument class followed by the names of all of its
+     * super types up to the first platform class, or null if the argument is not a class
+     */
+    private Set<String> getArgumentClosure(List<File> searchHeres, String dotDelimitedArgument) {
+        if (dotDelimitedArgument == null) return null;
+        
+        LinkedHashSet<String> closure = new LinkedHashSet<String>();
+        if (Object.class.getName().equals(dotDelimitedArgument)) {
+            closure.add(dotDelimitedArgument);
+            
+            return closure;
+        }
+        
+        if (!addSuperTypeNames(searchHeres, dotDelimitedArgument, closure)) {
+            // Could not see the whole closure, an unknown argument is always safe
+            return null;
+        }
+        
+        return closure;
+    }
+    
+    private boolean addSuperTypeNames(List<File> searchHeres, String dotDelimitedName, Set<String> closure) {
+        if (Object.class.getName().equals(dotDelimitedName)) return true;
+        if (!closure.add(dotDelimitedName)) return true;
+        
+        // The locator works out the super types of platform classes itself
+        if (dotDelimitedName.startsWith(ContractSignatures.PLATFORM_PACKAGE_PREFIX)) return true;
+        
+        GenericSignature declared = getGenericSignature(searchHeres, dotDelimitedName);
+        if (declared == null) return false;
+        
+        for (TypeReference superType : declared.getSuperTypes()) {
+            if (!addSuperTypeNames(searchHeres, superType.getRawName(), closure)) return false;
+        }
+        
+        return true;
+    }
+    
+    private GenericSignature getGenericSignature(List<File> searchHeres, String dotDelimitedName) {
+        if (!FOUND_SIGNATURES.containsKey(dotDelimitedName)) {
+            // Reading the class fills in the signature cache
+            getSuperclass(searchHeres, dotDelimitedName);
+        }
+        
+        return FOUND_SIGNATURES.get(dotDelimitedName);
+    }
+    
     private void addSubInterface(List<File> searchHeres, String dotDelimitedInterface, LinkedHashSet<String> retVal) {
         Set<String> subInterfaces = FOUND_INTERFACES.get(dotDelimitedInterface);
         if (subInterfaces == null) return;
@@ -735,6 +890,10 @@ public class Utilities {
                 String signature,
                 String superName,
                 String[] interfaces) {
+            if (!FOUND_SIGNATURES.containsKey(cacheKey)) {
+                FOUND_SIGNATURES.put(cacheKey, GenericSignature.parseClass(signature, superName, interfaces));
+            }
+            
             if (!FOUND_INTERFACES.containsKey(cacheKey)) {
                 LinkedHashSet<String> iFaces = new LinkedHashSet<String>();
                 
@@ -84,6 +84,11 @@ public abstract class AbstractInhabitantsGeneratorMojo extends AbstractMojo {
      */
     private boolean includeDate = true;
     
+    /**
+     * @parameter default-value=false
+     */
+    private boolean binary;
+    
     /**
      * @parameter
      */
@@ -161,6 +166,10 @@ public abstract class AbstractInhabitantsGeneratorMojo extends AbstractMojo {
             arguments.add(HabitatGenerator.NO_DATE_ARG);
         }
         
+        if (binary) {
+            arguments.add(HabitatGenerator.BINARY_ARG);
+        }
+        
         if (isWar()) {
             // For WAR files, the hk2-locator files goes under WEB-INF/classes/hk2-locator, not META-INF/hk2-locator
             
@@ -51,11 +51,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -77,6 +79,7 @@ import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.ContractSignatures;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.general.GeneralUtilities;
 import org.junit.Before;
@@ -84,6 +87,15 @@ import org.junit.Test;
 import org.jvnet.hk2.config.GenerateServiceFromMethod;
 import org.jvnet.hk2.generator.HabitatGenerator;
 import org.jvnet.hk2.generator.InFlightGenerator;
+import org.jvnet.hk2.generator.tests.signatures.ConcreteStore;
+import org.jvnet.hk2.generator.tests.signatures.Holder;
+import org.jvnet.hk2.generator.tests.signatures.InnerBox;
+import org.jvnet.hk2.generator.tests.signatures.Key;
+import org.jvnet.hk2.generator.tests.signatures.RawStore;
+import org.jvnet.hk2.generator.tests.signatures.Store;
+import org.jvnet.hk2.generator.tests.signatures.SubKey;
+import org.jvnet.hk2.generator.tests.signatures.VariableAndArrayStore;
+import org.jvnet.hk2.generator.tests.signatures.WildcardStoreFactory;
 
 /**
  * Tests for the inhabitant generator
@@ -925,4 +937,72 @@ public class InhabitantsGeneratorTest {
         
         checkDescriptors(generatedImpls);
     }
+    
+    /**
+     * Generates the descriptors of the services in the signatures package
+     * and returns the contract signatures recorded for each of them, keyed
+     * by implementation class (and contract for provide methods)
+     */
+    private Map<String, List<String>> getContractSignatures() throws IOException, URISyntaxException {
+        File signaturesDirectory = new File(Store.class.getResource(
+                Store.class.getSimpleName() + ".class").toURI()).getParentFile();
+        
+        ServiceLoader<InFlightGenerator> loader = ServiceLoader.load(InFlightGenerator.class);
+        InFlightGenerator generator = loader.iterator().next();
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generator.generateFromMultipleDirectories(Collections.singletonList(signaturesDirectory),
+                convertClasspathToFiles(),
+                false,
+                baos);
+        baos.close();
+        
+        Map<String, List<String>> retVal = new HashMap<String, List<String>>();
+        for (DescriptorImpl di : getAllDescriptorsFromInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            String key = di.getImplementation();
+            if (DescriptorType.PROVIDE_METHOD.equals(di.getDescriptorType())) {
+                key = key + "#provide";
+            }
+            
+            retVal.put(key, di.getMetadata().get(ContractSignatures.CONTRACT_SIGNATURE_METADATA_KEY));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Tests the contract signatures recorded for class arguments, type variables,
+     * arrays, wildcards, inner classes and raw super types
+     */
+    @Test
+    public void testContractSignatures() throws IOException, URISyntaxException {
+        Map<String, List<String>> signatures = getContractSignatures();
+        
+        String store = Store.class.getName();
+        
+        // Class arguments are followed by their non-platform super types
+        Assert.assertEquals(Arrays.asList(ConcreteStore.class.getName(),
+                store + "<" + SubKey.class.getName() + "|" + Key.class.getName() + ";" + Integer.class.getName() + ">"),
+                signatures.get(ConcreteStore.class.getName()));
+        
+        // Type variables and arrays are unknown
+        Assert.assertEquals(Arrays.asList(VariableAndArrayStore.class.getName() + "<*>", store + "<*;*>"),
+                signatures.get(VariableAndArrayStore.class.getName()));
+        
+        // A raw super type has no signature at all, its parameters are unknown
+        Assert.assertEquals(Arrays.asList(RawStore.class.getName(), store + "<*;*>"),
+                signatures.get(RawStore.class.getName()));
+        
+        // The arguments of the outer class do not belong to the inner class
+        Assert.assertEquals(Arrays.asList(InnerBox.class.getName(),
+                Holder.Box.class.getName() + "<" + Integer.class.getName() + ">"),
+                signatures.get(InnerBox.class.getName()));
+        
+        // Wildcards are unknown, the raw class of an argument with a nested wildcard is known
+        Assert.assertEquals(Collections.singletonList(store + "<*;" + List.class.getName() + ">"),
+                signatures.get(WildcardStoreFactory.class.getName() + "#provide"));
+        Assert.assertEquals(Arrays.asList(WildcardStoreFactory.class.getName(),
+                Factory.class.getName() + "<" + store + ">"),
+                signatures.get(WildcardStoreFactory.class.getName()));
+    }
 }
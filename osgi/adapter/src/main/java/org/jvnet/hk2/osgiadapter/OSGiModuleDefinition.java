@@ -57,6 +57,7 @@ import java.util.jar.Manifest;
 import java.util.logging.Level;
 
 import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -291,25 +292,30 @@ public class OSGiModuleDefinition implements ModuleDefinition, Serializable {
                         List<Descriptor> descriptors = new ArrayList<Descriptor>();
 
                         try {
-                            is = url.openStream();
+                            is = new BufferedInputStream(url.openStream());
 
-                            BufferedReader br = new BufferedReader(new InputStreamReader(is));
+                            if (BinaryDescriptorFile.isBinaryDescriptorFile(is)) {
+                                descriptors.addAll(BinaryDescriptorFile.read(is).getDescriptors());
+                            }
+                            else {
+                                BufferedReader br = new BufferedReader(new InputStreamReader(is));
 
-                            try {
-                                boolean readOne = false;
+                                try {
+                                    boolean readOne = false;
 
-                                do {
-                                    DescriptorImpl descriptorImpl = new DescriptorImpl();
+                                    do {
+                                        DescriptorImpl descriptorImpl = new DescriptorImpl();
 
-                                    readOne = descriptorImpl.readObject(br);
+                                        readOne = descriptorImpl.readObject(br);
 
-                                    if (readOne) {
-                                        descriptors.add(descriptorImpl);
-                                    }
-                                } while (readOne);
+                                        if (readOne) {
+                                            descriptors.add(descriptorImpl);
+                                        }
+                                    } while (readOne);
 
-                            } finally {
-                                br.close();
+                                } finally {
+                                    br.close();
+                                }
                             }
 
                             result.addDescriptors(serviceLocatorName, descriptors);